@@ -0,0 +1,266 @@
+package bench.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Générateur de charge sans interface : des milliers d'utilisateurs simulés
+ * dans une seule JVM, qui parlent le vrai protocole (authentification, /join,
+ * messages, saisie, messages privés, fichiers, paquets vocaux UDP) contre un
+ * serveur déjà démarré, en local par défaut.
+ *
+ * Chaque message envoyé porte son horodatage (System.nanoTime()) : les
+ * récepteurs, dans la même JVM, en déduisent la latence de bout en bout.
+ *
+ * Le vocal (voice=N) rejoint les salons load-voice-0, load-voice-1... (un
+ * par groupe de voiceGroup utilisateurs), que le serveur doit déjà connaître :
+ * les créer avant l'exécution avec un compte autorisé (/create load-voice-0
+ * VOICE), sinon chaque utilisateur vocal compte une erreur
+ * voice_channel_missing.
+ *
+ * Paramètres "clé=valeur" (ou -Dload.clé=valeur), par exemple :
+ * java -cp benchmarks.jar bench.load.LoadGenerator users=2000 rate=0.5
+ * mix=chat:60,typing:25,dm:10,file:5 voice=40 duration=120
+ */
+public class LoadGenerator {
+
+    /**
+     * Configuration d'une exécution (valeurs par défaut entre parenthèses dans
+     * usage()).
+     */
+    static final class Config {
+        final String host;
+        final int port;
+        final int voicePort;
+        final int users;
+        final int rampPerSecond;
+        final int durationSeconds;
+        final int reportSeconds;
+        final double rate;
+        final int channels;
+        final int chatSize;
+        final int fileSize;
+        final int voiceUsers;
+        final int voiceGroup;
+        final int voiceFps;
+        final int voiceFrame;
+        final int threads;
+        final String prefix;
+        final String password;
+        // Poids cumulés des actions CHAT, TYPING, DM, FILE
+        private final int[] mix = new int[4];
+
+        Config(String[] args) {
+            java.util.Properties props = new java.util.Properties();
+            for (String name : System.getProperties().stringPropertyNames()) {
+                if (name.startsWith("load.")) {
+                    props.setProperty(name.substring(5), System.getProperty(name));
+                }
+            }
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq <= 0)
+                    throw new IllegalArgumentException("Paramètre invalide: " + arg);
+                props.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+            host = props.getProperty("host", "127.0.0.1");
+            port = intOf(props, "port", 5000);
+            voicePort = intOf(props, "voicePort", 5001);
+            users = intOf(props, "users", 100);
+            rampPerSecond = Math.max(1, intOf(props, "ramp", 50));
+            durationSeconds = intOf(props, "duration", 60);
+            reportSeconds = Math.max(1, intOf(props, "report", 5));
+            rate = Double.parseDouble(props.getProperty("rate", "0.2"));
+            channels = Math.max(1, intOf(props, "channels", 1));
+            chatSize = intOf(props, "chatSize", 80);
+            fileSize = intOf(props, "fileSize", 32 * 1024);
+            voiceUsers = Math.min(users, intOf(props, "voice", 0));
+            voiceGroup = Math.max(2, intOf(props, "voiceGroup", 10));
+            voiceFps = Math.max(1, intOf(props, "voiceFps", 50));
+            voiceFrame = Math.min(1000, intOf(props, "voiceFrame", 320));
+            threads = Math.max(1, intOf(props, "threads", Runtime.getRuntime().availableProcessors()));
+            prefix = props.getProperty("prefix", "lt");
+            password = props.getProperty("password", "loadtest");
+            parseMix(props.getProperty("mix", "chat:70,typing:20,dm:8,file:2"));
+        }
+
+        private void parseMix(String spec) {
+            int[] weights = new int[4];
+            for (String part : spec.split(",")) {
+                String[] kv = part.trim().split(":");
+                int weight = Integer.parseInt(kv[1].trim());
+                switch (kv[0].trim().toLowerCase(Locale.ROOT)) {
+                    case "chat":
+                        weights[0] = weight;
+                        break;
+                    case "typing":
+                        weights[1] = weight;
+                        break;
+                    case "dm":
+                        weights[2] = weight;
+                        break;
+                    case "file":
+                        weights[3] = weight;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Action inconnue dans mix: " + kv[0]);
+                }
+            }
+            int total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                total += weights[i];
+                mix[i] = total;
+            }
+            if (total <= 0)
+                throw new IllegalArgumentException("mix vide: " + spec);
+        }
+
+        /**
+         * Tire une action selon les poids du mix.
+         */
+        LoadStats.Kind pickAction(Random random) {
+            int r = random.nextInt(mix[mix.length - 1]);
+            if (r < mix[0])
+                return LoadStats.Kind.CHAT;
+            if (r < mix[1])
+                return LoadStats.Kind.TYPING;
+            if (r < mix[2])
+                return LoadStats.Kind.DM;
+            return LoadStats.Kind.FILE;
+        }
+
+        private static int intOf(java.util.Properties props, String key, int defaultValue) {
+            String value = props.getProperty(key);
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        }
+    }
+
+    private final Config config;
+    private final LoadStats stats = new LoadStats();
+    private final AtomicReferenceArray<SimulatedUser> online;
+    // Marque les messages de cette exécution (l'historique des précédentes est ignoré)
+    private final String runId = Long.toHexString(new Random().nextLong() & 0xFFFFFFL);
+
+    LoadGenerator(Config config) {
+        this.config = config;
+        this.online = new AtomicReferenceArray<>(config.users);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length > 0 && ("-h".equals(args[0]) || "--help".equals(args[0]))) {
+            usage();
+            return;
+        }
+        new LoadGenerator(new Config(args)).run();
+    }
+
+    private static void usage() {
+        System.out.println("Paramètres clé=valeur :");
+        System.out.println("  host (127.0.0.1) port (5000) voicePort (5001)");
+        System.out.println("  users (100) ramp (50 connexions/s) duration (60 s) report (5 s)");
+        System.out.println("  rate (0.2 action/s par utilisateur) mix (chat:70,typing:20,dm:8,file:2)");
+        System.out.println("  channels (1) chatSize (80 octets) fileSize (32768 octets)");
+        System.out.println("  voice (0 utilisateurs) voiceGroup (10 par salon) voiceFps (50) voiceFrame (320 octets)");
+        System.out.println("    salons vocaux load-voice-0, load-voice-1... à créer au préalable (/create ... VOICE)");
+        System.out.println("  threads (nombre de cœurs) prefix (lt) password (loadtest)");
+    }
+
+    void run() throws InterruptedException {
+        System.out.println(String.format(Locale.ROOT,
+                "Charge: %d utilisateurs (%d en vocal) sur %s:%d, %.2f action/s chacun, %d s (exécution %s)",
+                config.users, config.voiceUsers, config.host, config.port, config.rate, config.durationSeconds,
+                runId));
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(config.threads,
+                daemonFactory("LoadGen"));
+        // Connexions bloquantes (attente de la poignée de main) hors du planificateur
+        ExecutorService connector = Executors.newFixedThreadPool(Math.min(64, config.users),
+                daemonFactory("LoadGen-connect"));
+
+        List<SimulatedUser> users = new ArrayList<>(config.users);
+        for (int i = 0; i < config.users; i++) {
+            SimulatedUser user = new SimulatedUser(this, i, scheduler);
+            users.add(user);
+            long delayMs = i * 1000L / config.rampPerSecond;
+            scheduler.schedule(() -> connector.execute(user::start), delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= end)
+                break;
+            TimeUnit.NANOSECONDS.sleep(Math.min(end - now, TimeUnit.SECONDS.toNanos(config.reportSeconds)));
+            System.out.println(stats.intervalReport(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)));
+        }
+
+        // Arrêt des envois, puis délai pour laisser arriver les messages en vol
+        for (SimulatedUser user : users) {
+            user.stopSending();
+        }
+        double measured = (System.nanoTime() - start) / 1e9;
+        Thread.sleep(2000);
+        connector.shutdownNow();
+        for (SimulatedUser user : users) {
+            user.close();
+        }
+        scheduler.shutdownNow();
+
+        System.out.println();
+        System.out.print(stats.finalReport(measured));
+    }
+
+    Config getConfig() {
+        return config;
+    }
+
+    LoadStats getStats() {
+        return stats;
+    }
+
+    String getRunId() {
+        return runId;
+    }
+
+    String userName(int index) {
+        return String.format("%s_%05d", config.prefix, index);
+    }
+
+    void setOnline(int index, SimulatedUser user) {
+        online.set(index, user);
+    }
+
+    /**
+     * Un autre utilisateur connecté au hasard (destinataire de MP), ou null.
+     */
+    SimulatedUser randomPeer(int self) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int attempt = 0; attempt < 8; attempt++) {
+            int index = random.nextInt(config.users);
+            SimulatedUser peer = online.get(index);
+            if (index != self && peer != null)
+                return peer;
+        }
+        return null;
+    }
+
+    private static ThreadFactory daemonFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
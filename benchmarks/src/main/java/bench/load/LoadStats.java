@@ -0,0 +1,130 @@
+package bench.load;
+
+import server.Metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs et histogrammes de la charge simulée : envois et réceptions par
+ * type, latence de bout en bout (horodatage de l'envoi porté par le message)
+ * et erreurs par cause.
+ */
+class LoadStats {
+
+    enum Kind {
+        CHAT, TYPING, DM, FILE, VOICE
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final LongAdder[] sent = new LongAdder[KINDS.length];
+    private final LongAdder[] delivered = new LongAdder[KINDS.length];
+    private final Metrics.Histogram[] latency = new Metrics.Histogram[KINDS.length];
+    // Histogrammes de l'intervalle en cours, remplacés à chaque rapport
+    private final AtomicReferenceArray<Metrics.Histogram> window = new AtomicReferenceArray<>(KINDS.length);
+    private final Map<String, LongAdder> errors = new ConcurrentSkipListMap<>();
+    final LongAdder online = new LongAdder();
+
+    private final long[] lastSent = new long[KINDS.length];
+    private final long[] lastDelivered = new long[KINDS.length];
+    private long lastReportNanos = System.nanoTime();
+
+    LoadStats() {
+        for (Kind kind : KINDS) {
+            sent[kind.ordinal()] = new LongAdder();
+            delivered[kind.ordinal()] = new LongAdder();
+            latency[kind.ordinal()] = new Metrics.Histogram();
+            window.set(kind.ordinal(), new Metrics.Histogram());
+        }
+    }
+
+    void sent(Kind kind) {
+        sent[kind.ordinal()].increment();
+    }
+
+    void delivered(Kind kind) {
+        delivered[kind.ordinal()].increment();
+    }
+
+    void delivered(Kind kind, long latencyNanos) {
+        delivered[kind.ordinal()].increment();
+        latency[kind.ordinal()].record(latencyNanos);
+        window.get(kind.ordinal()).record(latencyNanos);
+    }
+
+    void error(String cause) {
+        errors.computeIfAbsent(cause, k -> new LongAdder()).increment();
+    }
+
+    long errorCount() {
+        long total = 0;
+        for (LongAdder count : errors.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Une ligne par intervalle : débits depuis le rapport précédent et
+     * centiles de latence de l'intervalle.
+     */
+    synchronized String intervalReport(long elapsedSeconds) {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - lastReportNanos) / 1e9);
+        lastReportNanos = now;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "[%4ds] connectés=%d erreurs=%d", elapsedSeconds, online.sum(),
+                errorCount()));
+        for (Kind kind : KINDS) {
+            int i = kind.ordinal();
+            long s = sent[i].sum();
+            long d = delivered[i].sum();
+            Metrics.Histogram h = window.getAndSet(i, new Metrics.Histogram());
+            if (s == lastSent[i] && d == lastDelivered[i])
+                continue;
+            sb.append(String.format(Locale.ROOT, " | %s %.0f/s→%.0f/s", kind.name().toLowerCase(Locale.ROOT),
+                    (s - lastSent[i]) / seconds, (d - lastDelivered[i]) / seconds));
+            if (h.getCount() > 0) {
+                sb.append(String.format(Locale.ROOT, " p50=%s p99=%s", millis(h.percentile(50)),
+                        millis(h.percentile(99))));
+            }
+            lastSent[i] = s;
+            lastDelivered[i] = d;
+        }
+        return sb.toString();
+    }
+
+    String finalReport(double durationSeconds) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-7s %10s %10s %9s %9s %9s %9s %9s %9s %9s%n", "type", "envoyés",
+                "reçus", "reçus/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "moy ms"));
+        for (Kind kind : KINDS) {
+            int i = kind.ordinal();
+            Metrics.Histogram h = latency[i];
+            sb.append(String.format(Locale.ROOT, "%-7s %10d %10d %9.0f", kind.name().toLowerCase(Locale.ROOT),
+                    sent[i].sum(), delivered[i].sum(), delivered[i].sum() / durationSeconds));
+            if (h.getCount() > 0) {
+                sb.append(String.format(Locale.ROOT, " %9s %9s %9s %9s %9s %9s", millis(h.percentile(50)),
+                        millis(h.percentile(90)), millis(h.percentile(99)), millis(h.percentile(99.9)),
+                        millis(h.getMax()), millis(h.getMean())));
+            }
+            sb.append(System.lineSeparator());
+        }
+        if (errors.isEmpty()) {
+            sb.append("Aucune erreur.").append(System.lineSeparator());
+        } else {
+            sb.append("Erreurs:").append(System.lineSeparator());
+            errors.forEach((cause, count) -> sb.append("  ").append(cause).append(' ').append(count.sum())
+                    .append(System.lineSeparator()));
+        }
+        return sb.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,348 @@
+package bench.load;
+
+import common.Message;
+import server.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tempête de reconnexions, comme après un redémarrage du serveur : les
+ * comptes sont d'abord créés (ou vérifiés) à un rythme modéré, puis tous les
+ * utilisateurs se connectent au même instant.
+ *
+ * Pour chacun on mesure la connexion TCP, la réponse d'authentification et la
+ * session prête (liste des membres de #general reçue avec son propre pseudo),
+ * depuis le signal de départ commun.
+ *
+ * Avec resume=true (par défaut), toutes les connexions sont ensuite coupées
+ * d'un coup, comme lors d'une micro-coupure réseau, et reprennent leur session
+ * ensemble avec leur jeton et le nombre de messages reçus (messages renvoyés :
+ * session_replayed_messages dans les métriques du serveur).
+ *
+ * Paramètres "clé=valeur" (ou -Dstorm.clé=valeur), par exemple :
+ * java -cp benchmarks.jar bench.load.ReconnectStorm users=3000 timeout=120
+ */
+public class ReconnectStorm {
+    private static final long READER_STACK = 256 * 1024;
+
+    private final String host;
+    private final int port;
+    private final int users;
+    private final int timeoutSeconds;
+    private final String prefix;
+    private final String password;
+    private final boolean resume;
+    private final int gapMillis;
+
+    private final Map<String, LongAdder> errors = new ConcurrentSkipListMap<>();
+
+    ReconnectStorm(Properties props) {
+        host = props.getProperty("host", "127.0.0.1");
+        port = Integer.parseInt(props.getProperty("port", "5000"));
+        users = Integer.parseInt(props.getProperty("users", "2000"));
+        timeoutSeconds = Integer.parseInt(props.getProperty("timeout", "120"));
+        prefix = props.getProperty("prefix", "storm");
+        password = props.getProperty("password", "loadtest");
+        resume = Boolean.parseBoolean(props.getProperty("resume", "true"));
+        gapMillis = Integer.parseInt(props.getProperty("gap", "1000"));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Properties props = new Properties();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("storm.")) {
+                props.setProperty(name.substring(6), System.getProperty(name));
+            }
+        }
+        for (String arg : args) {
+            if ("-h".equals(arg) || "--help".equals(arg)) {
+                System.out.println("Paramètres clé=valeur :");
+                System.out.println("  host (127.0.0.1) port (5000) users (2000) timeout (120 s)");
+                System.out.println("  prefix (storm) password (loadtest)");
+                System.out.println("  resume (true : coupure puis reprise de toutes les sessions) gap (1000 ms de coupure)");
+                return;
+            }
+            int eq = arg.indexOf('=');
+            if (eq <= 0)
+                throw new IllegalArgumentException("Paramètre invalide: " + arg);
+            props.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new ReconnectStorm(props).run();
+    }
+
+    void run() throws InterruptedException {
+        System.out.println(String.format(Locale.ROOT, "Préparation de %d comptes %s_* sur %s:%d", users, prefix,
+                host, port));
+        prepareAccounts();
+        if (!errors.isEmpty()) {
+            System.out.println("Échec de la préparation : " + errors);
+            return;
+        }
+
+        List<StormUser> storm = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            storm.add(new StormUser(userName(i)));
+        }
+
+        System.out.println(String.format(Locale.ROOT, "Tempête : %d connexions simultanées", users));
+        Phase login = new Phase(false);
+        login.run(storm);
+        System.out.println();
+        System.out.print(login.report());
+
+        if (resume) {
+            // Micro-coupure : toutes les connexions tombent, les sessions restent côté serveur
+            Thread.sleep(1000);
+            login.release.countDown();
+            for (StormUser user : storm) {
+                user.close();
+            }
+            Thread.sleep(gapMillis);
+
+            System.out.println();
+            System.out.println(String.format(Locale.ROOT, "Reprise : %d sessions après %d ms de coupure", users,
+                    gapMillis));
+            Phase resumed = new Phase(true);
+            resumed.run(storm);
+            System.out.println();
+            System.out.print(resumed.report());
+            resumed.release.countDown();
+        } else {
+            login.release.countDown();
+        }
+        for (StormUser user : storm) {
+            user.close();
+        }
+        if (!errors.isEmpty()) {
+            StringBuilder sb = new StringBuilder("Erreurs :");
+            errors.forEach((cause, count) -> sb.append(' ').append(cause).append('=').append(count.sum()));
+            System.out.println(sb);
+        }
+    }
+
+    /**
+     * Crée les comptes absents (inscription) sans tempête : 16 à la fois.
+     */
+    private void prepareAccounts() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        for (int i = 0; i < users; i++) {
+            String name = userName(i);
+            pool.execute(() -> {
+                try (Socket socket = new Socket(host, port)) {
+                    ObjectOutputStream output = new ObjectOutputStream(socket.getOutputStream());
+                    output.flush();
+                    ObjectInputStream input = new ObjectInputStream(socket.getInputStream());
+                    input.readObject();
+                    String refusal = authenticate(output, input, name, password + ":LOGIN");
+                    if (refusal != null && refusal.startsWith("Compte inexistant")) {
+                        refusal = authenticate(output, input, name, password + ":REGISTER");
+                    }
+                    if (refusal != null) {
+                        error("prepare: " + refusal, 1);
+                    }
+                    // Départ volontaire : pas de session gardée pour une reprise
+                    output.writeObject(new Message(name, "/logout", "system", Message.MessageType.COMMAND));
+                    output.flush();
+                } catch (IOException | ClassNotFoundException e) {
+                    error("prepare: " + e.getClass().getSimpleName(), 1);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
+        // Laisse le serveur traiter les déconnexions avant la tempête
+        Thread.sleep(1000);
+    }
+
+    // null si accepté, sinon le motif de refus envoyé par le serveur
+    private static String authenticate(ObjectOutputStream output, ObjectInputStream input, String name,
+            String content) throws IOException, ClassNotFoundException {
+        output.writeObject(new Message(name, content, "auth", Message.MessageType.SYSTEM));
+        output.flush();
+        Message response = (Message) input.readObject();
+        return "auth_success".equals(response.getChannel()) ? null : String.valueOf(response.getContent());
+    }
+
+    private String userName(int index) {
+        return String.format("%s_%05d", prefix, index);
+    }
+
+    private void error(String cause, long count) {
+        errors.computeIfAbsent(cause, k -> new LongAdder()).add(count);
+    }
+
+    private static void appendRow(StringBuilder sb, String label, Metrics.Histogram h) {
+        sb.append(String.format(Locale.ROOT, "%-14s %8d %9s %9s %9s %9s %9s%n", label, h.getCount(),
+                millis(h.percentile(50)), millis(h.percentile(90)), millis(h.percentile(99)), millis(h.getMax()),
+                millis(h.getMean())));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    /**
+     * Une vague de connexions simultanées (connexion complète ou reprise) :
+     * un thread par client, libérés ensemble, mesurés depuis le même instant.
+     */
+    private final class Phase {
+        final boolean resume;
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch settled = new CountDownLatch(users);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Metrics.Histogram connected = new Metrics.Histogram();
+        final Metrics.Histogram authenticated = new Metrics.Histogram();
+        final Metrics.Histogram ready = new Metrics.Histogram();
+        long start;
+        double elapsedSeconds;
+
+        Phase(boolean resume) {
+            this.resume = resume;
+        }
+
+        void run(List<StormUser> storm) throws InterruptedException {
+            for (int i = 0; i < storm.size(); i++) {
+                StormUser user = storm.get(i);
+                Thread t = new Thread(null, () -> user.connect(this), "Storm-" + i, READER_STACK);
+                t.setDaemon(true);
+                t.start();
+            }
+            Thread.sleep(500); // threads en attente du signal
+
+            start = System.nanoTime();
+            go.countDown();
+            boolean finished = settled.await(timeoutSeconds, TimeUnit.SECONDS);
+            elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            if (!finished) {
+                error("délai dépassé", settled.getCount());
+            }
+        }
+
+        String report() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "Sessions prêtes : %d/%d en %.2f s%n", ready.getCount(), users,
+                    elapsedSeconds));
+            sb.append(String.format(Locale.ROOT, "%-14s %8s %9s %9s %9s %9s %9s%n", "étape (ms)", "nombre", "p50",
+                    "p90", "p99", "max", "moyenne"));
+            appendRow(sb, "connexion TCP", connected);
+            appendRow(sb, resume ? "reprise" : "authentifié", authenticated);
+            if (!resume) {
+                appendRow(sb, "session prête", ready);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Un client de la tempête. Il compte les messages reçus depuis
+     * auth_success (numérotation de la reprise) et lit jusqu'à la fin de la
+     * phase : un client qui ne lit plus bloquerait les diffusions du serveur.
+     */
+    private final class StormUser {
+        private final String name;
+        private volatile Socket socket;
+        private volatile String token;
+        private volatile long received;
+
+        StormUser(String name) {
+            this.name = name;
+        }
+
+        void connect(Phase phase) {
+            boolean counted = false;
+            try {
+                phase.go.await();
+                socket = new Socket();
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(host, port), timeoutSeconds * 1000);
+                socket.setSoTimeout(timeoutSeconds * 1000);
+                ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                output.flush();
+                ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+                input.readObject(); // "Authentification requise"
+                phase.connected.recordSince(phase.start);
+
+                String refusal = phase.resume
+                        ? authenticate(output, input, name, token + ":RESUME:" + received)
+                        : authenticate(output, input, name, password + ":LOGIN");
+                if (refusal != null) {
+                    error("refusé: " + refusal, 1);
+                    return;
+                }
+                phase.authenticated.recordSince(phase.start);
+                if (!phase.resume) {
+                    received = 0;
+                    while (!isReady(read(input))) {
+                        // messages de mise en place
+                    }
+                }
+                phase.ready.recordSince(phase.start);
+                counted = true;
+                phase.settled.countDown();
+                // Vidange jusqu'à la fin de la phase
+                while (phase.release.getCount() > 0) {
+                    read(input);
+                }
+            } catch (SocketTimeoutException e) {
+                if (!counted)
+                    error("délai dépassé", 1);
+            } catch (IOException | ClassNotFoundException e) {
+                if (!counted && phase.release.getCount() > 0)
+                    error(e.getClass().getSimpleName(), 1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (!counted)
+                    phase.settled.countDown();
+            }
+        }
+
+        private Message read(ObjectInputStream input) throws IOException, ClassNotFoundException {
+            Message msg = (Message) input.readObject();
+            received++;
+            if ("session".equals(msg.getChannel())) {
+                token = msg.getContent().split(":")[0];
+            }
+            return msg;
+        }
+
+        private boolean isReady(Message msg) {
+            if (msg.getType() != Message.MessageType.CHANNEL_USERS || !"general".equals(msg.getChannel()))
+                return false;
+            for (String member : String.valueOf(msg.getContent()).split(",")) {
+                if (name.equals(member))
+                    return true;
+            }
+            return false;
+        }
+
+        void close() {
+            Socket s = socket;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException e) {
+                    // déjà fermée
+                }
+            }
+        }
+    }
+}
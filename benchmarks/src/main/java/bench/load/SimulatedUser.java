@@ -0,0 +1,387 @@
+package bench.load;
+
+import common.Message;
+import common.MessageBatch;
+import common.VoicePacket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Un utilisateur simulé : une connexion TCP comme NetworkClient (poignée de
+ * main, /join, commandes "/..." en messages COMMAND) et, s'il fait partie du
+ * vocal, une socket UDP comme VoiceManager (JOIN, KEEPALIVE, AUDIO).
+ *
+ * Les actions sont tirées selon le mix à intervalles exponentiels (arrivées
+ * de Poisson) sur le planificateur partagé ; la réception se fait sur un
+ * thread par connexion, à petite pile.
+ */
+class SimulatedUser {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int HANDSHAKE_TIMEOUT_MS = 15000;
+    private static final long READER_STACK = 256 * 1024;
+    // ObjectOutputStream garde une référence à chaque objet écrit : purge régulière
+    private static final int RESET_EVERY = 256;
+    private static final String MARK = "LT ";
+
+    private final LoadGenerator generator;
+    private final LoadGenerator.Config config;
+    private final LoadStats stats;
+    private final int index;
+    private final String name;
+    private final String channel;
+    private final ScheduledExecutorService scheduler;
+
+    private Socket socket;
+    private ObjectOutputStream output;
+    private ObjectInputStream input;
+    private final Object writeLock = new Object();
+    private int written;
+    private long joinedAt;
+    private volatile boolean running;
+    private volatile boolean sending = true;
+    private volatile ScheduledFuture<?> nextAction;
+
+    private DatagramSocket voiceSocket;
+    private ScheduledFuture<?> audioTask;
+    private ScheduledFuture<?> keepAliveTask;
+
+    SimulatedUser(LoadGenerator generator, int index, ScheduledExecutorService scheduler) {
+        this.generator = generator;
+        this.config = generator.getConfig();
+        this.stats = generator.getStats();
+        this.index = index;
+        this.name = generator.userName(index);
+        this.channel = config.channels == 1 ? "general" : "load-" + (index % config.channels);
+        this.scheduler = scheduler;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Connexion, authentification (inscription au premier passage) et entrée
+     * dans le salon ; appelé sur le pool de connexion.
+     */
+    void start() {
+        try {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(config.host, config.port), CONNECT_TIMEOUT_MS);
+            // Le serveur n'écrit son en-tête qu'une fois le ClientHandler démarré
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            output = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.flush();
+            input = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            input.readObject(); // "Authentification requise"
+            String refusal = authenticate("LOGIN");
+            if (refusal != null && refusal.startsWith("Compte inexistant")) {
+                refusal = authenticate("REGISTER");
+            }
+            if (refusal != null) {
+                stats.error("auth_refused");
+                close();
+                return;
+            }
+            socket.setSoTimeout(0);
+        } catch (SocketTimeoutException e) {
+            stats.error("handshake_timeout");
+            close();
+            return;
+        } catch (IOException | ClassNotFoundException e) {
+            stats.error("connect_failed");
+            close();
+            return;
+        }
+
+        running = true;
+        joinedAt = System.nanoTime();
+        stats.online.increment();
+        Thread reader = new Thread(null, this::readLoop, "LoadGen-" + name, READER_STACK);
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            if (!"general".equals(channel)) {
+                sendCommand("/join " + channel);
+            }
+            if (index < config.voiceUsers) {
+                sendCommand("/voice_join load-voice-" + (index / config.voiceGroup));
+            }
+        } catch (IOException e) {
+            fail("send_failed");
+            return;
+        }
+        generator.setOnline(index, this);
+        scheduleNext();
+    }
+
+    // null si accepté, sinon le motif de refus envoyé par le serveur
+    private String authenticate(String mode) throws IOException, ClassNotFoundException {
+        send(new Message(name, config.password + ":" + mode, "auth", Message.MessageType.SYSTEM));
+        Message response = (Message) input.readObject();
+        return "auth_success".equals(response.getChannel()) ? null : String.valueOf(response.getContent());
+    }
+
+    // --- ENVOI ---
+
+    private void scheduleNext() {
+        if (!running || !sending || config.rate <= 0)
+            return;
+        double u = ThreadLocalRandom.current().nextDouble();
+        long delayMicros = (long) (-Math.log(1 - u) * 1_000_000 / config.rate);
+        nextAction = scheduler.schedule(this::act, delayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void act() {
+        if (!running || !sending)
+            return;
+        LoadStats.Kind kind = config.pickAction(ThreadLocalRandom.current());
+        try {
+            switch (kind) {
+                case CHAT:
+                    send(new Message(name, stamp(config.chatSize), channel, Message.MessageType.CHAT));
+                    break;
+                case TYPING:
+                    sendCommand("/typing");
+                    break;
+                case DM:
+                    SimulatedUser peer = generator.randomPeer(index);
+                    if (peer == null) {
+                        kind = LoadStats.Kind.CHAT;
+                        send(new Message(name, stamp(config.chatSize), channel, Message.MessageType.CHAT));
+                    } else {
+                        sendCommand("/msg " + peer.getName() + " " + stamp(config.chatSize));
+                    }
+                    break;
+                case FILE:
+                    byte[] data = new byte[config.fileSize];
+                    ThreadLocalRandom.current().nextBytes(data);
+                    send(new Message(name, stamp(0) + ".bin", data, channel, Message.MessageType.FILE));
+                    break;
+                default:
+                    break;
+            }
+            stats.sent(kind);
+        } catch (IOException e) {
+            fail("send_failed");
+            return;
+        }
+        scheduleNext();
+    }
+
+    // "LT <exécution> <nanoTime> xxx..." complété jusqu'à size caractères
+    private String stamp(int size) {
+        StringBuilder sb = new StringBuilder(Math.max(size, 40));
+        sb.append(MARK).append(generator.getRunId()).append(' ').append(System.nanoTime());
+        if (sb.length() < size) {
+            sb.append(' ');
+            while (sb.length() < size) {
+                sb.append('x');
+            }
+        }
+        return sb.toString();
+    }
+
+    private void sendCommand(String command) throws IOException {
+        send(new Message(name, command, "system", Message.MessageType.COMMAND));
+    }
+
+    private void send(Message msg) throws IOException {
+        synchronized (writeLock) {
+            output.writeObject(msg);
+            output.flush();
+            if (++written % RESET_EVERY == 0) {
+                output.reset();
+            }
+        }
+    }
+
+    // --- RÉCEPTION ---
+
+    private void readLoop() {
+        try {
+            while (running) {
+                onMessage((Message) input.readObject());
+            }
+        } catch (EOFException e) {
+            fail("server_closed");
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            fail("read_failed");
+        }
+    }
+
+    private void onMessage(Message msg) throws IOException {
+        switch (msg.getType()) {
+            case CHAT:
+                recordStamped(LoadStats.Kind.CHAT, msg.getContent());
+                break;
+            case PRIVATE:
+                // L'écho à l'expéditeur n'est pas une livraison
+                if (!name.equals(msg.getUsername())) {
+                    recordStamped(LoadStats.Kind.DM, msg.getContent());
+                }
+                break;
+            case FILE:
+                recordStamped(LoadStats.Kind.FILE, msg.getFileName());
+                break;
+            case TYPING:
+                stats.delivered(LoadStats.Kind.TYPING);
+                break;
+            case SYSTEM:
+                if ("voice_session".equals(msg.getChannel())) {
+                    startVoice(msg.getContent());
+                } else if ("dm_backlog".equals(msg.getChannel()) && msg.getFileData() != null) {
+                    // MP reçus hors ligne (exécution précédente) : accuser réception
+                    List<Message> backlog = MessageBatch.unpack(msg.getFileData());
+                    if (!backlog.isEmpty()) {
+                        sendCommand("/dm_ack " + backlog.get(backlog.size() - 1).getId());
+                    }
+                } else if ("Serveur vocal saturé.".equals(msg.getContent())) {
+                    stats.error("voice_refused");
+                } else if (String.valueOf(msg.getContent()).startsWith("Salon vocal introuvable")) {
+                    // Salons load-voice-N pas créés sur le serveur (voir LoadGenerator)
+                    stats.error("voice_channel_missing");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Latence si le texte porte l'horodatage d'un envoi de cette exécution
+    // postérieur à l'arrivée dans le salon (sinon c'est de l'historique)
+    private void recordStamped(LoadStats.Kind kind, String text) {
+        String runId = generator.getRunId();
+        if (text == null || !text.startsWith(MARK) || !text.startsWith(runId, MARK.length()))
+            return;
+        int from = MARK.length() + runId.length() + 1;
+        int to = from;
+        while (to < text.length() && Character.isDigit(text.charAt(to))) {
+            to++;
+        }
+        if (to == from)
+            return;
+        long sentAt = Long.parseLong(text.substring(from, to));
+        if (sentAt >= joinedAt) {
+            stats.delivered(kind, System.nanoTime() - sentAt);
+        }
+    }
+
+    // --- VOCAL ---
+
+    // Session "streamId:tokenHex" reçue après /voice_join
+    private void startVoice(String session) {
+        String[] parts = session.split(":");
+        int streamId = Integer.parseInt(parts[0]);
+        byte[] token = VoicePacket.tokenToBytes(Long.parseUnsignedLong(parts[1], 16));
+        try {
+            voiceSocket = new DatagramSocket();
+            voiceSocket.connect(new InetSocketAddress(config.host, config.voicePort));
+            sendVoice(VoicePacket.build(VoicePacket.JOIN, streamId, token, 0, token.length));
+        } catch (IOException e) {
+            stats.error("voice_failed");
+            return;
+        }
+        Thread receiver = new Thread(null, this::voiceLoop, "LoadGen-voice-" + name, READER_STACK);
+        receiver.setDaemon(true);
+        receiver.start();
+
+        keepAliveTask = scheduler.scheduleAtFixedRate(
+                () -> sendVoice(VoicePacket.build(VoicePacket.KEEPALIVE, streamId, token, 0, token.length)),
+                VoicePacket.KEEPALIVE_INTERVAL_MS, VoicePacket.KEEPALIVE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        byte[] frame = new byte[Math.max(8, config.voiceFrame)];
+        long periodMicros = 1_000_000L / config.voiceFps;
+        audioTask = scheduler.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            for (int i = 7; i >= 0; i--) {
+                frame[i] = (byte) now;
+                now >>= 8;
+            }
+            sendVoice(VoicePacket.build(VoicePacket.AUDIO, streamId, frame, 0, frame.length));
+            stats.sent(LoadStats.Kind.VOICE);
+        }, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void sendVoice(byte[] data) {
+        DatagramSocket udp = voiceSocket;
+        if (udp == null || !running)
+            return;
+        try {
+            udp.send(new DatagramPacket(data, data.length));
+        } catch (IOException e) {
+            stats.error("voice_send_failed");
+        }
+    }
+
+    private void voiceLoop() {
+        byte[] buffer = new byte[2048];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        try {
+            while (running) {
+                voiceSocket.receive(packet);
+                if (packet.getLength() >= VoicePacket.HEADER_SIZE + 8 && buffer[0] == VoicePacket.AUDIO) {
+                    long sentAt = 0;
+                    for (int i = 0; i < 8; i++) {
+                        sentAt = (sentAt << 8) | (buffer[VoicePacket.HEADER_SIZE + i] & 0xFF);
+                    }
+                    stats.delivered(LoadStats.Kind.VOICE, System.nanoTime() - sentAt);
+                }
+            }
+        } catch (IOException e) {
+            if (running)
+                stats.error("voice_read_failed");
+        }
+    }
+
+    // --- ARRÊT ---
+
+    void stopSending() {
+        sending = false;
+        ScheduledFuture<?> next = nextAction;
+        if (next != null)
+            next.cancel(false);
+        if (audioTask != null)
+            audioTask.cancel(false);
+        if (keepAliveTask != null)
+            keepAliveTask.cancel(false);
+    }
+
+    private void fail(String cause) {
+        if (running) {
+            stats.error(cause);
+            close();
+        }
+    }
+
+    synchronized void close() {
+        if (running) {
+            running = false;
+            stats.online.decrement();
+        }
+        stopSending();
+        try {
+            if (voiceSocket != null)
+                voiceSocket.close();
+            if (socket != null)
+                socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package bench.ui;
+
+import client.FrameThrottle;
+import client.ModernComponents;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.border.EmptyBorder;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Profil CPU du client pendant un salon vocal animé, sans écran ni son : le
+ * niveau du micro local arrive à chaque trame capturée (900 octets, environ
+ * 18 par seconde) et chaque orateur distant envoie des paquets TALK quand il
+ * commence ou arrête de parler.
+ *
+ * Deux modes sont joués l'un après l'autre sur la même liste des membres :
+ * - direct : comme avant FrameThrottle, chaque mise à jour passe par
+ * invokeLater et redemande toute la liste ;
+ * - throttle : comme ChatController, les mises à jour sont fusionnées par
+ * FrameThrottle et seule la cellule de l'utilisateur concerné est redemandée.
+ *
+ * Faute d'écran, un RepaintManager minimal regroupe les zones demandées et
+ * les peint dans une image au prochain passage sur l'EDT, comme Swing.
+ * Rapport : exécutions sur l'EDT, peintures, cellules peintes, temps CPU du
+ * processus et de l'EDT.
+ *
+ * Paramètres "clé=valeur" : speakers (10), members (25), talkRate (4 TALK par
+ * seconde et par orateur), duration (10 s).
+ * java -cp benchmarks.jar bench.ui.VoiceUiProfile speakers=20
+ */
+public class VoiceUiProfile {
+    private static final int FRAME_INTERVAL_MS = 56; // 900 octets à 8 kHz, 16 bits
+    private static final int ROW_HEIGHT = 56;
+    private static final int WIDTH = 240;
+
+    private final int speakers;
+    private final int members;
+    private final double talkRate;
+    private final int durationSeconds;
+
+    VoiceUiProfile(Properties props) {
+        speakers = Integer.parseInt(props.getProperty("speakers", "10"));
+        members = Math.max(speakers + 1, Integer.parseInt(props.getProperty("members", "25")));
+        talkRate = Double.parseDouble(props.getProperty("talkRate", "4"));
+        durationSeconds = Integer.parseInt(props.getProperty("duration", "10"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        Properties props = new Properties();
+        for (String arg : args) {
+            if ("-h".equals(arg) || "--help".equals(arg)) {
+                System.out.println("Paramètres clé=valeur :");
+                System.out.println("  speakers (10) members (25) talkRate (4 /s par orateur) duration (10 s)");
+                return;
+            }
+            int eq = arg.indexOf('=');
+            if (eq <= 0)
+                throw new IllegalArgumentException("Paramètre invalide: " + arg);
+            props.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new VoiceUiProfile(props).run();
+    }
+
+    void run() throws Exception {
+        System.out.println(String.format(Locale.ROOT,
+                "%d membres, %d orateurs à %.1f TALK/s, niveau micro toutes les %d ms, %d s par mode (trame %d ms)",
+                members, speakers, talkRate, FRAME_INTERVAL_MS, durationSeconds, FrameThrottle.FRAME_MS));
+        // Chauffe (JIT, polices, avatars)
+        new Session(false).play(2);
+        new Session(true).play(2);
+        Result direct = new Session(false).play(durationSeconds);
+        Result throttled = new Session(true).play(durationSeconds);
+        System.out.println(String.format(Locale.ROOT, "%-9s %9s %9s %9s %9s %11s %9s", "mode", "updates",
+                "edt_runs", "paints", "cells", "cpu_ms/s", "edt_ms/s"));
+        System.out.println(direct.format("direct"));
+        System.out.println(throttled.format("throttle"));
+    }
+
+    static final class Result {
+        long updates;
+        long edtRuns;
+        long paints;
+        long cells;
+        double cpuMsPerSecond;
+        double edtMsPerSecond;
+
+        String format(String mode) {
+            return String.format(Locale.ROOT, "%-9s %9d %9d %9d %9d %11.1f %9.1f", mode, updates, edtRuns, paints,
+                    cells, cpuMsPerSecond, edtMsPerSecond);
+        }
+    }
+
+    /**
+     * Une liste des membres et ses sources de mises à jour, dans un mode.
+     */
+    private final class Session {
+        private final boolean throttle;
+        private final DefaultListModel<String> model = new DefaultListModel<>();
+        private final JList<String> list = new JList<>(model);
+        private final Map<String, Boolean> talking = new ConcurrentHashMap<>();
+        private final Map<String, Boolean> pendingTalking = new ConcurrentHashMap<>();
+        private final BufferedImage canvas = new BufferedImage(WIDTH, ROW_HEIGHT * members,
+                BufferedImage.TYPE_INT_RGB);
+        private final AtomicLong updates = new AtomicLong();
+        private final AtomicLong edtRuns = new AtomicLong();
+        private long paints;
+        private long cells;
+        private volatile int latestLevel;
+        private int level;
+
+        // Zones à repeindre, regroupées jusqu'au passage suivant sur l'EDT
+        private Rectangle dirty;
+        private boolean paintScheduled;
+
+        private final FrameThrottle levelThrottle = new FrameThrottle(this::applyLevel);
+        private final FrameThrottle talkingThrottle = new FrameThrottle(this::applyTalking);
+
+        Session(boolean throttle) {
+            this.throttle = throttle;
+            for (int i = 0; i < members; i++) {
+                model.addElement("membre" + i);
+            }
+            list.setCellRenderer(new MemberRenderer());
+            list.setFixedCellHeight(ROW_HEIGHT);
+            list.setSize(WIDTH, ROW_HEIGHT * members);
+        }
+
+        Result play(int seconds) throws Exception {
+            Random random = new Random(1);
+            ScheduledExecutorService sources = Executors.newScheduledThreadPool(2);
+            // Micro local : un niveau par trame capturée
+            sources.scheduleAtFixedRate(() -> onLevel(random.nextInt(60)), 0, FRAME_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+            // Orateurs distants : paquets TALK aux changements d'état
+            long talkPeriodMicros = (long) (1_000_000 / (talkRate * speakers));
+            sources.scheduleAtFixedRate(() -> {
+                String user = "membre" + (1 + random.nextInt(speakers));
+                onTalking(user, !talking.getOrDefault(user, false));
+            }, 0, Math.max(1, talkPeriodMicros), TimeUnit.MICROSECONDS);
+
+            long edtThread = edtThreadId();
+            long cpuStart = processCpuNanos();
+            long edtStart = threadCpuNanos(edtThread);
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            sources.shutdownNow();
+            sources.awaitTermination(1, TimeUnit.SECONDS);
+            SwingUtilities.invokeAndWait(() -> {
+            });
+            Thread.sleep(2L * FrameThrottle.FRAME_MS);
+            SwingUtilities.invokeAndWait(() -> {
+            });
+            double elapsed = (System.nanoTime() - start) / 1e9;
+
+            Result result = new Result();
+            result.updates = updates.get();
+            result.edtRuns = edtRuns.get();
+            result.cpuMsPerSecond = (processCpuNanos() - cpuStart) / 1e6 / elapsed;
+            result.edtMsPerSecond = (threadCpuNanos(edtThread) - edtStart) / 1e6 / elapsed;
+            SwingUtilities.invokeAndWait(() -> {
+                result.paints = paints;
+                result.cells = cells;
+            });
+            return result;
+        }
+
+        private void onLevel(int value) {
+            updates.incrementAndGet();
+            if (throttle) {
+                latestLevel = value;
+                levelThrottle.request();
+            } else {
+                SwingUtilities.invokeLater(() -> {
+                    edtRuns.incrementAndGet();
+                    level = value;
+                    repaint(null);
+                });
+            }
+        }
+
+        private void onTalking(String user, boolean value) {
+            updates.incrementAndGet();
+            if (throttle) {
+                pendingTalking.put(user, value);
+                talkingThrottle.request();
+            } else {
+                SwingUtilities.invokeLater(() -> {
+                    edtRuns.incrementAndGet();
+                    talking.put(user, value);
+                    repaint(null);
+                });
+            }
+        }
+
+        private void applyLevel() {
+            edtRuns.incrementAndGet();
+            int value = latestLevel;
+            // Même règle que ChatController.applyMicLevel
+            if (value == level && value <= 25)
+                return;
+            level = value;
+            repaintCell("membre0");
+        }
+
+        private void applyTalking() {
+            edtRuns.incrementAndGet();
+            for (String user : pendingTalking.keySet()) {
+                Boolean value = pendingTalking.remove(user);
+                if (value != null && !value.equals(talking.put(user, value))) {
+                    repaintCell(user);
+                }
+            }
+        }
+
+        private void repaintCell(String user) {
+            int index = model.indexOf(user);
+            if (index >= 0)
+                repaint(list.getCellBounds(index, index));
+        }
+
+        // null : toute la liste, comme JList.repaint()
+        private void repaint(Rectangle area) {
+            Rectangle r = area != null ? area : new Rectangle(0, 0, list.getWidth(), list.getHeight());
+            dirty = dirty == null ? r : dirty.union(r);
+            if (!paintScheduled) {
+                paintScheduled = true;
+                SwingUtilities.invokeLater(this::paintDirty);
+            }
+        }
+
+        private void paintDirty() {
+            paintScheduled = false;
+            Rectangle area = dirty;
+            dirty = null;
+            if (area == null)
+                return;
+            Graphics2D g = canvas.createGraphics();
+            g.setClip(area);
+            list.paint(g);
+            g.dispose();
+            paints++;
+            cells += (area.height + ROW_HEIGHT - 1) / ROW_HEIGHT;
+        }
+
+        // Cellule construite comme VoiceUserRenderer : avatar, pseudo, bordure si parle
+        private final class MemberRenderer extends DefaultListCellRenderer {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                    boolean isSelected, boolean cellHasFocus) {
+                JPanel panel = new JPanel(new BorderLayout(10, 0));
+                panel.setBackground(new Color(54, 57, 63));
+                panel.setBorder(new EmptyBorder(8, 10, 8, 10));
+                if (talking.getOrDefault(value.toString(), false)) {
+                    panel.setBorder(BorderFactory.createCompoundBorder(
+                            BorderFactory.createLineBorder(new Color(46, 204, 113), 2), new EmptyBorder(6, 8, 6, 8)));
+                }
+                panel.add(new JLabel(ModernComponents.generateAvatar(value.toString(), 40)),
+                        BorderLayout.WEST);
+                String label = index == 0 ? value + " (" + level + "%)" : value.toString();
+                panel.add(new JLabel(label), BorderLayout.CENTER);
+                return panel;
+            }
+        }
+    }
+
+    private static long edtThreadId() throws Exception {
+        long[] id = new long[1];
+        SwingUtilities.invokeAndWait(() -> id[0] = Thread.currentThread().getId());
+        return id[0];
+    }
+
+    private static long threadCpuNanos(long threadId) {
+        return ManagementFactory.getThreadMXBean().getThreadCpuTime(threadId);
+    }
+
+    private static long processCpuNanos() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        return 0;
+    }
+}
@@ -0,0 +1,47 @@
+package client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.ImageIcon;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ModernComponents.generateAvatar : avatar déjà en cache, et cache toujours
+ * manqué (1024 noms en rotation, plus que la capacité du cache).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class AvatarBenchmark {
+    private static final String[] NAMES = new String[1024];
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            NAMES[i] = "utilisateur" + i;
+        }
+    }
+
+    private int next = 0;
+
+    @Benchmark
+    public ImageIcon cached() {
+        return ModernComponents.generateAvatar("alice", 32);
+    }
+
+    @Benchmark
+    public ImageIcon uncached() {
+        next = (next + 1) & (NAMES.length - 1);
+        return ModernComponents.generateAvatar(NAMES[next], 32);
+    }
+}
@@ -0,0 +1,101 @@
+package client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repeinture complète d'une liste de membres, avec un renderer construit
+ * comme celui de la barre latérale (panneau, avatar 32 px, pseudo) : avatars
+ * pris dans le cache de ModernComponents, ou regénérés à chaque cellule comme
+ * avant le cache (cache=false). Sans écran : peinture dans une image.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class AvatarListPaintBenchmark {
+    private static final int AVATAR_SIZE = 32;
+    private static final int ROW_HEIGHT = 52;
+
+    @Param({ "20", "100", "200" })
+    public int users;
+
+    @Param({ "true", "false" })
+    public boolean cache;
+
+    private JList<String> list;
+    private BufferedImage canvas;
+    private Graphics2D graphics;
+
+    private final class MemberRenderer extends DefaultListCellRenderer {
+        private final Font nameFont = new Font("Segoe UI", Font.PLAIN, 14);
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                boolean cellHasFocus) {
+            JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 10));
+            panel.setBackground(new Color(47, 49, 54));
+            String username = value.toString();
+            panel.add(new JLabel(cache ? ModernComponents.generateAvatar(username, AVATAR_SIZE)
+                    : ModernComponents.renderAvatar(username, AVATAR_SIZE)));
+            JLabel name = new JLabel(username);
+            name.setFont(nameFont);
+            panel.add(name);
+            return panel;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        DefaultListModel<String> model = new DefaultListModel<>();
+        for (int i = 0; i < users; i++) {
+            model.addElement("membre" + i);
+        }
+        list = new JList<>(model);
+        list.setCellRenderer(new MemberRenderer());
+        list.setFixedCellHeight(ROW_HEIGHT);
+        list.setSize(240, users * ROW_HEIGHT);
+        list.doLayout();
+        canvas = new BufferedImage(240, users * ROW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        graphics = canvas.createGraphics();
+        if (cache) {
+            ModernComponents.prewarmAvatars(Collections.list(model.elements()), AVATAR_SIZE);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public void repaintList() {
+        list.paint(graphics);
+    }
+}
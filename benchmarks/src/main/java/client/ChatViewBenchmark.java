@@ -0,0 +1,102 @@
+package client;
+
+import common.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatView avec 10 000 messages : ajout un par un (comme à la réception) ou
+ * en un lot (historique), puis défilement de haut en bas en peignant une
+ * fenêtre de 800x600 à chaque cran. Sans écran : la peinture se fait dans une
+ * image, sur le thread du banc (la vue n'est pas affichée).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ChatViewBenchmark {
+    private static final int MESSAGES = 10_000;
+    private static final int WIDTH = 800;
+    private static final int VIEWPORT = 600;
+    private static final int SCROLL_STEP = 120;
+
+    private final List<ChatView.Entry> entries = new ArrayList<>(MESSAGES);
+    private ChatView view;
+    private BufferedImage canvas;
+    private Graphics2D graphics;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < MESSAGES; i++) {
+            String text = i % 10 == 0
+                    ? "Un message plus long, avec du **gras**, du `code` et assez de mots pour passer à la ligne "
+                            + "sur une fenêtre de taille normale (" + i + ")"
+                    : "message " + i;
+            Message msg = new Message(i % 3 == 0 ? "alice" : "bob", text, "general", Message.MessageType.CHAT);
+            msg.setId(i + 1);
+            entries.add(ChatView.createEntry(msg, "alice"));
+        }
+        canvas = new BufferedImage(WIDTH, VIEWPORT, BufferedImage.TYPE_INT_RGB);
+        graphics = canvas.createGraphics();
+    }
+
+    @Setup(Level.Invocation)
+    public void newView() {
+        view = new ChatView();
+        view.setBounds(0, 0, WIDTH, VIEWPORT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public int appendOneByOne() {
+        for (ChatView.Entry entry : entries) {
+            view.append(entry);
+        }
+        return view.getMessageCount();
+    }
+
+    @Benchmark
+    public int appendBatch() {
+        view.appendAll(entries);
+        return view.getMessageCount();
+    }
+
+    @Benchmark
+    public int appendAndScroll() {
+        view.appendAll(entries);
+        int height = view.getPreferredSize().height;
+        view.setBounds(0, 0, WIDTH, height);
+        int frames = 0;
+        for (int top = 0; top < view.getPreferredSize().height; top += SCROLL_STEP) {
+            Graphics2D g = (Graphics2D) graphics.create();
+            g.translate(0, -top);
+            g.setClip(0, top, WIDTH, VIEWPORT);
+            view.paint(g);
+            g.dispose();
+            frames++;
+        }
+        return frames;
+    }
+}
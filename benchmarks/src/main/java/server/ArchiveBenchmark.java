@@ -0,0 +1,127 @@
+package server;
+
+import common.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Historique partitionné par mois (MessageArchive) d'un moteur SQLite sur la
+ * base discord.db et le dossier archive/ du dossier courant (à lancer depuis
+ * un dossier de travail). Au premier lancement, rows messages sont répartis sur les douze
+ * derniers mois puis la maintenance déplace les mois froids dans les
+ * archives : compter une quinzaine de minutes pour 10 millions de lignes.
+ * Les lancements suivants réutilisent les fichiers.
+ *
+ * Trois salons actifs reçoivent presque tous les messages ; le salon "ancien"
+ * n'a écrit que pendant le premier mois, il n'existe donc que dans l'archive
+ * la plus ancienne, et le salon "inconnu" n'existe nulle part.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchiveBenchmark {
+    private static final String[] CHANNELS = { "général", "dev", "jeux" };
+    private static final String OLD_CHANNEL = "ancien";
+    private static final long YEAR_MILLIS = 365L * 24 * 3600 * 1000;
+
+    @Param({ "10000000" })
+    public int rows;
+
+    private SqliteStorageEngine engine;
+
+    @Setup
+    public void setUp() throws SQLException {
+        engine = new SqliteStorageEngine("jdbc:sqlite:discord.db", new File("archive"));
+        engine.init();
+        if (maxId() < rows) {
+            generate();
+        }
+        // Archive les mois froids au premier lancement, recharge les plages sinon
+        long start = System.nanoTime();
+        engine.archive().maintain();
+        System.out.println("Maintenance : " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private long maxId() throws SQLException {
+        try (Connection conn = engine.getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT IFNULL(MAX(id), 0) FROM messages")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void generate() throws SQLException {
+        Random random = new Random(42);
+        long first = System.currentTimeMillis() - YEAR_MILLIS;
+        long existing = maxId();
+        System.out.println("Génération de " + (rows - existing) + " messages...");
+        String sql = "INSERT INTO messages(channel, username, content, timestamp, type) VALUES(?, ?, ?, ?, 'CHAT')";
+        try (Connection conn = engine.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            for (long i = existing; i < rows; i++) {
+                // Premier mois : un message sur mille dans le salon "ancien"
+                boolean old = i < rows / 12 && i % 1000 == 0;
+                pstmt.setString(1, old ? OLD_CHANNEL : CHANNELS[random.nextInt(CHANNELS.length)]);
+                pstmt.setString(2, "auteur" + random.nextInt(200));
+                pstmt.setString(3, "message " + i + " du banc d'essai d'archivage");
+                pstmt.setLong(4, first + i * YEAR_MILLIS / rows);
+                pstmt.addBatch();
+                if ((i + 1) % 50_000 == 0) {
+                    pstmt.executeBatch();
+                    conn.commit();
+                }
+            }
+            pstmt.executeBatch();
+            conn.commit();
+        }
+    }
+
+    @Benchmark
+    public long saveMessage() {
+        Message msg = new Message("bench", "Message de test pour le banc d'essai", CHANNELS[0],
+                Message.MessageType.CHAT);
+        engine.saveMessage(msg);
+        return msg.getId();
+    }
+
+    // Partition chaude seule
+    @Benchmark
+    public List<Message> lastMessagesHot() {
+        return engine.getLastMessages(CHANNELS[1], 50);
+    }
+
+    // Complété par la seule archive où le salon existe
+    @Benchmark
+    public List<Message> lastMessagesOldChannel() {
+        return engine.getLastMessages(OLD_CHANNEL, 50);
+    }
+
+    // Aucune archive ouverte
+    @Benchmark
+    public List<Message> lastMessagesUnknownChannel() {
+        return engine.getLastMessages("inconnu", 50);
+    }
+}
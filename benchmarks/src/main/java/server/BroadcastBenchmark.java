@@ -0,0 +1,88 @@
+package server;
+
+import common.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Channel.broadcast vers N membres simulés : chaque membre sérialise le
+ * message dans son propre flux (comme une connexion réelle), vers un flux nul.
+ * broadcastSystem mesure la diffusion seule, broadcastChat y ajoute la
+ * persistance (moteur de stockage choisi par -Dstorage.engine).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int members;
+
+    private Channel channel;
+    private Message systemMessage;
+
+    // Membre sans socket : sérialise vers un flux nul
+    static final class MockHandler extends ClientHandler {
+        private final String name;
+        private final ObjectOutputStream out;
+
+        MockHandler(String name) throws IOException {
+            super(null);
+            this.name = name;
+            this.out = new ObjectOutputStream(OutputStream.nullOutputStream());
+        }
+
+        @Override
+        public synchronized void sendMessage(Message msg) {
+            try {
+                out.writeObject(msg);
+                out.flush();
+                out.reset();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public String getUsername() {
+            return name;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        DatabaseManager.init();
+        channel = new Channel("bench", "TEXT", "Main Server");
+        for (int i = 0; i < members; i++) {
+            channel.getMembers().add(new MockHandler("user" + i));
+        }
+        systemMessage = new Message("System", "Annonce : maintenance à 22h", "bench", Message.MessageType.SYSTEM);
+    }
+
+    @Benchmark
+    public void broadcastSystem() {
+        channel.broadcast(systemMessage);
+    }
+
+    @Benchmark
+    public void broadcastChat() {
+        channel.broadcast(new Message("user0", "Salut tout le monde !", "bench", Message.MessageType.CHAT));
+    }
+}
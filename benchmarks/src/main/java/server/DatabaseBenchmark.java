@@ -0,0 +1,58 @@
+package server;
+
+import common.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appels DatabaseManager sur la base discord.db du dossier courant (à lancer
+ * depuis un dossier de travail). Moteur : -jvmArgsAppend -Dstorage.engine=...
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+    private static final String CHANNEL = "bench-db";
+
+    @Setup
+    public void setUp() {
+        DatabaseManager.init();
+        if (!DatabaseManager.userExists("bench")) {
+            DatabaseManager.registerUser("bench", "bench");
+        }
+        for (int i = 0; i < 100; i++) {
+            DatabaseManager.saveMessage(new Message("bench", "historique " + i, CHANNEL, Message.MessageType.CHAT));
+        }
+    }
+
+    @Benchmark
+    public long saveMessage() {
+        Message msg = new Message("bench", "Message de test pour le banc d'essai", CHANNEL, Message.MessageType.CHAT);
+        DatabaseManager.saveMessage(msg);
+        return msg.getId();
+    }
+
+    @Benchmark
+    public List<Message> getLastMessages() {
+        return DatabaseManager.getLastMessages(CHANNEL, 50);
+    }
+
+    @Benchmark
+    public boolean hasPermission() {
+        return DatabaseManager.hasPermission("bench", "perm_create_channel");
+    }
+}
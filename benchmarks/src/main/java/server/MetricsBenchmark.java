@@ -0,0 +1,95 @@
+package server;
+
+import common.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût de l'instrumentation de Metrics : compteur, histogramme (avec son
+ * System.nanoTime) et proxy de chronométrage de DatabaseManager, seul sur un
+ * appel vide puis autour d'un saveMessage du moteur log (bench-metrics.db et
+ * bench-metrics-journal/ dans le dossier courant).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+    private final Metrics.Counter counter = Metrics.counter("bench_counter");
+    private final Metrics.Histogram histogram = Metrics.histogram("bench_histogram");
+    private final Runnable direct = () -> {
+    };
+    private final Runnable timed = Metrics.timed(Runnable.class, direct, "bench_");
+
+    private LogStorageEngine engine;
+    private StorageEngine timedEngine;
+
+    @Setup
+    public void setUp() {
+        engine = new LogStorageEngine("jdbc:sqlite:bench-metrics.db", new File("bench-metrics-journal"));
+        engine.init();
+        timedEngine = Metrics.timed(StorageEngine.class, engine, "bench_db_");
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public void counterInc() {
+        counter.inc();
+    }
+
+    @Benchmark
+    public void histogramRecordSince() {
+        histogram.recordSince(System.nanoTime());
+    }
+
+    @Benchmark
+    public void counterAndHistogram() {
+        long start = System.nanoTime();
+        counter.inc();
+        histogram.recordSince(start);
+    }
+
+    @Benchmark
+    public void callDirect() {
+        direct.run();
+    }
+
+    @Benchmark
+    public void callTimed() {
+        timed.run();
+    }
+
+    @Benchmark
+    public long saveMessageDirect() {
+        Message msg = new Message("bench", "Message de test pour le banc d'essai", "bench-metrics",
+                Message.MessageType.CHAT);
+        engine.saveMessage(msg);
+        return msg.getId();
+    }
+
+    @Benchmark
+    public long saveMessageTimed() {
+        Message msg = new Message("bench", "Message de test pour le banc d'essai", "bench-metrics",
+                Message.MessageType.CHAT);
+        timedEngine.saveMessage(msg);
+        return msg.getId();
+    }
+}
@@ -0,0 +1,190 @@
+package server;
+
+import common.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recherche plein texte (/search) sur une base SQLite de messages générés :
+ * bench-search-&lt;rows&gt;.db dans le dossier courant, créée au premier
+ * lancement (plusieurs minutes pour un million de lignes) puis réutilisée.
+ *
+ * Vocabulaire de 5 000 mots tirés selon une loi de Zipf (le mot le plus
+ * fréquent apparaît dans un message sur trois environ), 20 salons, 500
+ * auteurs, un an d'horodatages ; un mot rare est placé dans 100 messages.
+ * Chaque requête renvoie une page (MessageSearch.PAGE_SIZE).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int WORDS = 5000;
+    private static final int CHANNELS = 20;
+    private static final int USERS = 500;
+    private static final int RARE_MESSAGES = 100;
+    private static final String RARE_WORD = "zanzibar";
+    private static final long YEAR_MILLIS = 365L * 24 * 3600 * 1000;
+    private static final long START_MILLIS = LocalDate.of(2025, 1, 1).atStartOfDay(ZoneId.systemDefault())
+            .toInstant().toEpochMilli();
+
+    @Param({ "1000000" })
+    public int rows;
+
+    private SqliteStorageEngine engine;
+    private String commonWord;
+    private String midWord;
+    private long middleId;
+
+    @Setup
+    public void setUp() throws SQLException {
+        engine = new SqliteStorageEngine("jdbc:sqlite:bench-search-" + rows + ".db");
+        engine.init();
+        String[] vocabulary = vocabulary();
+        commonWord = vocabulary[0];
+        midWord = vocabulary[200];
+        if (count() < rows) {
+            generate(vocabulary);
+        }
+        middleId = rows / 2;
+    }
+
+    // Mots prononçables, toujours les mêmes d'un lancement à l'autre
+    private static String[] vocabulary() {
+        String consonants = "bcdfglmnprstv";
+        String vowels = "aeiou";
+        Random random = new Random(7);
+        String[] words = new String[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            StringBuilder sb = new StringBuilder();
+            int syllables = 2 + random.nextInt(2);
+            for (int s = 0; s < syllables; s++) {
+                sb.append(consonants.charAt(random.nextInt(consonants.length())));
+                sb.append(vowels.charAt(random.nextInt(vowels.length())));
+            }
+            words[i] = sb.append(i).toString();
+        }
+        return words;
+    }
+
+    private long count() throws SQLException {
+        try (Connection conn = engine.getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM messages")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void generate(String[] vocabulary) throws SQLException {
+        // Loi de Zipf : probabilités cumulées en 1/rang
+        double[] cumulative = new double[WORDS];
+        double sum = 0;
+        for (int i = 0; i < WORDS; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(42);
+        long existing = count();
+        System.out.println("Génération de " + (rows - existing) + " messages...");
+        String sql = "INSERT INTO messages(channel, username, content, timestamp, type) VALUES(?, ?, ?, ?, 'CHAT')";
+        try (Connection conn = engine.getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            for (long i = existing; i < rows; i++) {
+                StringBuilder content = new StringBuilder();
+                int length = 8 + random.nextInt(8);
+                for (int w = 0; w < length; w++) {
+                    if (w > 0)
+                        content.append(' ');
+                    double pick = random.nextDouble() * sum;
+                    int index = Arrays.binarySearch(cumulative, pick);
+                    content.append(vocabulary[index < 0 ? Math.min(WORDS - 1, -index - 1) : index]);
+                }
+                if (i % (rows / RARE_MESSAGES) == 0) {
+                    content.append(' ').append(RARE_WORD);
+                }
+                pstmt.setString(1, "salon" + random.nextInt(CHANNELS));
+                pstmt.setString(2, "auteur" + random.nextInt(USERS));
+                pstmt.setString(3, content.toString());
+                pstmt.setLong(4, START_MILLIS + i * YEAR_MILLIS / rows);
+                pstmt.addBatch();
+                if ((i + 1) % 50_000 == 0) {
+                    pstmt.executeBatch();
+                    conn.commit();
+                    System.out.println("  " + (i + 1));
+                }
+            }
+            pstmt.executeBatch();
+            conn.commit();
+        }
+    }
+
+    private List<Message> search(String args) {
+        MessageSearch search = MessageSearch.parse(args);
+        return engine.searchMessages("bench", search.match.toString(), search.channel, search.user,
+                search.fromMillis, search.toMillis, search.beforeId, MessageSearch.PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> rareWord() {
+        return search(RARE_WORD);
+    }
+
+    @Benchmark
+    public List<Message> commonWord() {
+        return search(commonWord);
+    }
+
+    @Benchmark
+    public List<Message> twoWords() {
+        return search(commonWord + " " + midWord);
+    }
+
+    @Benchmark
+    public List<Message> prefix() {
+        return search(midWord.substring(0, 4) + "*");
+    }
+
+    @Benchmark
+    public List<Message> inChannel() {
+        return search("#salon7 " + midWord);
+    }
+
+    @Benchmark
+    public List<Message> byUser() {
+        return search("@auteur42 " + commonWord);
+    }
+
+    @Benchmark
+    public List<Message> dateRange() {
+        return search("after:2025-03-01 before:2025-04-01 " + midWord);
+    }
+
+    @Benchmark
+    public List<Message> nextPage() {
+        return search("page:" + middleId + " " + midWord);
+    }
+}
@@ -0,0 +1,88 @@
+package server;
+
+import common.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moteurs de stockage comparés sur les mêmes appels, chacun sur ses propres
+ * fichiers du dossier courant (bench-engine-&lt;moteur&gt;.db et, pour log,
+ * bench-journal/), recréés à chaque essai avec 1000 messages d'historique.
+ * Mode SampleTime : JMH donne les percentiles (p99) en plus de la moyenne.
+ *
+ * saveThenRead enchaîne une écriture et la lecture de l'historique du même
+ * salon, comme un client qui envoie un message puis rouvre le salon.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageEngineBenchmark {
+    private static final String CHANNEL = "bench-engine";
+
+    @Param({ "sqlite", "log" })
+    public String engine;
+
+    private SqliteStorageEngine storage;
+
+    @Setup
+    public void setUp() {
+        File db = new File("bench-engine-" + engine + ".db");
+        File journal = new File("bench-journal");
+        db.delete();
+        File[] segments = journal.listFiles();
+        if (segments != null) {
+            for (File segment : segments) {
+                segment.delete();
+            }
+        }
+        String url = "jdbc:sqlite:" + db.getPath();
+        storage = "log".equals(engine) ? new LogStorageEngine(url, journal) : new SqliteStorageEngine(url);
+        storage.init();
+        for (int i = 0; i < 1000; i++) {
+            storage.saveMessage(new Message("bench", "historique " + i, CHANNEL, Message.MessageType.CHAT));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (storage instanceof LogStorageEngine) {
+            ((LogStorageEngine) storage).close();
+        }
+    }
+
+    @Benchmark
+    public long saveMessage() {
+        Message msg = new Message("bench", "Message de test pour le banc d'essai", CHANNEL, Message.MessageType.CHAT);
+        storage.saveMessage(msg);
+        return msg.getId();
+    }
+
+    @Benchmark
+    public List<Message> getLastMessages() {
+        return storage.getLastMessages(CHANNEL, 50);
+    }
+
+    @Benchmark
+    public List<Message> saveThenRead() {
+        storage.saveMessage(new Message("bench", "Message de test pour le banc d'essai", CHANNEL,
+                Message.MessageType.CHAT));
+        return storage.getLastMessages(CHANNEL, 50);
+    }
+}
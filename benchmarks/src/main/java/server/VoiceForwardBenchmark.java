@@ -0,0 +1,80 @@
+package server;
+
+import common.VoicePacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit de VoiceServer.handleForward : un paquet audio relayé aux autres
+ * participants du salon, envoyés en UDP sur la boucle locale vers un socket
+ * qui ne lit pas (le noyau jette le surplus, comme un client lent).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoiceForwardBenchmark {
+    private static final String CHANNEL = "bench-voice";
+
+    @Param({ "2", "10", "50" })
+    public int participants;
+
+    private VoiceServer server;
+    private DatagramSocket sink;
+    private VoiceSession sender;
+    private DatagramPacket packet;
+    private final List<String> users = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new VoiceServer(0);
+        sink = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        for (int i = 0; i < participants; i++) {
+            String user = "voice" + i;
+            VoiceSession session = VoiceServer.openSession(user, CHANNEL);
+            session.setAddress(sink.getLocalSocketAddress());
+            users.add(user);
+            if (sender == null) {
+                sender = session;
+            }
+        }
+        // En-tête + 20 ms d'audio compressé
+        byte[] data = new byte[VoicePacket.HEADER_SIZE + 160];
+        data[0] = (byte) VoicePacket.AUDIO;
+        packet = new DatagramPacket(data, data.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (String user : users) {
+            VoiceServer.closeSession(user);
+        }
+        server.stop();
+        sink.close();
+    }
+
+    @Benchmark
+    public void forward() {
+        server.handleForward(sender, packet);
+    }
+}
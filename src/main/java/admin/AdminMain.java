@@ -5,12 +5,23 @@ import javax.swing.border.EmptyBorder;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import server.DatabaseManager;
+import server.MessageTrace;
 
 public class AdminMain extends JFrame {
 
     private static final String PASSWORD = "Azerty1234";
+    // Métriques du serveur local (voir server.Metrics)
+    private static final int METRICS_PORT = Integer.getInteger("metrics.port", 9100);
     // Theme Colors
     private static final Color BG_DARK = new Color(54, 57, 63);
     private static final Color BG_SIDEBAR = new Color(47, 49, 54);
@@ -124,6 +135,7 @@ public class AdminMain extends JFrame {
 
         tabs.addTab("Utilisateurs", createUsersPanel());
         tabs.addTab("Salons", createChannelsPanel());
+        tabs.addTab("Latences", createLatencyPanel());
 
         JPanel mainPanel = new JPanel(new BorderLayout());
         mainPanel.setBackground(BG_DARK);
@@ -209,7 +221,7 @@ public class AdminMain extends JFrame {
 
     private void loadUsers(DefaultTableModel model) {
         model.setRowCount(0);
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:discord.db");
+        try (Connection conn = DatabaseManager.getConnection();
                 Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery("SELECT username, blocked, can_create_channel FROM users")) {
 
@@ -273,6 +285,87 @@ public class AdminMain extends JFrame {
         }
     }
 
+    // Latences par étape des messages tracés (histogrammes trace_* du serveur)
+    private JPanel createLatencyPanel() {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBackground(BG_DARK);
+
+        String[] columns = { "Étape", "Échantillons", "Moyenne (ms)", "p50 (ms)", "p90 (ms)", "p99 (ms)",
+                "Max (ms)" };
+        DefaultTableModel model = new DefaultTableModel(columns, 0);
+        JTable table = new JTable(model);
+        styleTable(table);
+        table.getColumnModel().getColumn(0).setPreferredWidth(260);
+
+        JLabel status = new JLabel();
+        status.setForeground(TEXT_HEADER);
+
+        JButton refreshBtn = new JButton("Rafraîchir");
+        styleButton(refreshBtn, new Color(74, 98, 100));
+
+        JPanel tools = new JPanel();
+        tools.setBackground(BG_DARK);
+        tools.add(status);
+        tools.add(refreshBtn);
+
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+        panel.add(tools, BorderLayout.SOUTH);
+
+        refreshBtn.addActionListener(e -> loadLatencies(model, status));
+
+        loadLatencies(model, status);
+        return panel;
+    }
+
+    private void loadLatencies(DefaultTableModel model, JLabel status) {
+        model.setRowCount(0);
+        Map<String, String> metrics = new HashMap<>();
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(
+                    "http://127.0.0.1:" + METRICS_PORT + "/metrics").openConnection();
+            conn.setConnectTimeout(2000);
+            conn.setReadTimeout(2000);
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    int space = line.indexOf(' ');
+                    if (space > 0 && line.startsWith("trace_")) {
+                        metrics.put(line.substring(0, space), line.substring(space + 1));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            status.setText("Serveur injoignable (métriques sur le port " + METRICS_PORT + ")");
+            return;
+        }
+
+        for (String[] stage : MessageTrace.STAGES) {
+            String count = metrics.get(stage[0] + "_count");
+            if (count == null) {
+                model.addRow(new Object[] { stage[1], "0", "-", "-", "-", "-", "-" });
+            } else {
+                model.addRow(new Object[] { stage[1], count,
+                        millis(metrics.get(stage[0] + "_mean_us")),
+                        millis(metrics.get(stage[0] + "_p50_us")),
+                        millis(metrics.get(stage[0] + "_p90_us")),
+                        millis(metrics.get(stage[0] + "_p99_us")),
+                        millis(metrics.get(stage[0] + "_max_us")) });
+            }
+        }
+        status.setText("Messages tracés : " + metrics.getOrDefault("trace_server_total_count", "0"));
+    }
+
+    private static String millis(String micros) {
+        if (micros == null)
+            return "-";
+        try {
+            return String.format(Locale.ROOT, "%.3f", Double.parseDouble(micros) / 1000.0);
+        } catch (NumberFormatException e) {
+            return micros;
+        }
+    }
+
     private void styleTable(JTable table) {
         table.setBackground(BG_SIDEBAR);
         table.setForeground(TEXT_NORMAL);
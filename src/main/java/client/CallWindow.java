@@ -34,7 +34,13 @@ public class CallWindow extends JFrame {
     private JPanel screenPanel;
 
     private boolean isScreenSharing = false;
-    private Thread screenShareThread;
+    private ScreenShareClient screenShareClient;
+    private JLabel screenView;
+    private int remoteSharer = -1;
+    // Niveau micro : appliqué au plus une fois par trame, seulement s'il change la barre
+    private volatile double latestMicLevel = 0;
+    private final FrameThrottle micLevelThrottle = new FrameThrottle(this::applyMicLevel);
+    private int micLevelWidth = -1;
     private long callStartTime;
 
     public CallWindow(VoiceManager voiceManager, ChatController controller, String channelName) {
@@ -54,10 +60,34 @@ public class CallWindow extends JFrame {
         buildUI();
         startTimer();
 
+        // Réception des partages d'écran des autres participants
+        if (voiceManager != null) {
+            screenShareClient = new ScreenShareClient(voiceManager, new ScreenShareClient.Listener() {
+                @Override
+                public void onFrame(int streamId, BufferedImage canvas) {
+                    ImageIcon icon = new ImageIcon(canvas);
+                    SwingUtilities.invokeLater(() -> showRemoteFrame(streamId, icon));
+                }
+
+                @Override
+                public void onStopped(int streamId) {
+                    SwingUtilities.invokeLater(() -> {
+                        if (streamId == remoteSharer && !isScreenSharing) {
+                            remoteSharer = -1;
+                            showPlaceholder();
+                        }
+                    });
+                }
+            });
+            screenShareClient.connect();
+        }
+
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
                 stopScreenShare();
+                if (screenShareClient != null)
+                    screenShareClient.close();
             }
         });
 
@@ -153,7 +183,8 @@ public class CallWindow extends JFrame {
         // Register mic level listener
         if (voiceManager != null) {
             voiceManager.setLevelListener(level -> {
-                SwingUtilities.invokeLater(() -> updateMicLevel(level));
+                latestMicLevel = level;
+                micLevelThrottle.request();
             });
         }
     }
@@ -236,9 +267,37 @@ public class CallWindow extends JFrame {
         screenShareBtn.setBackground(RED);
 
         // Replace center content with live screen preview
+        JLabel view = ensureScreenView();
+
+        if (screenShareClient != null) {
+            screenShareClient.startSharing(frame -> {
+                ImageIcon icon = new ImageIcon(frame);
+                SwingUtilities.invokeLater(() -> {
+                    if (isScreenSharing) {
+                        view.setIcon(icon);
+                        view.repaint();
+                    }
+                });
+            });
+        }
+    }
+
+    private void showRemoteFrame(int streamId, ImageIcon icon) {
+        if (isScreenSharing)
+            return; // Notre propre aperçu reste affiché
+        remoteSharer = streamId;
+        JLabel view = ensureScreenView();
+        view.setIcon(icon);
+        view.repaint();
+    }
+
+    private JLabel ensureScreenView() {
+        if (screenView != null && screenView.getParent() == screenPanel)
+            return screenView;
+
         screenPanel.removeAll();
 
-        JLabel screenView = new JLabel() {
+        screenView = new JLabel() {
             @Override
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
@@ -262,36 +321,21 @@ public class CallWindow extends JFrame {
         screenPanel.add(screenView, BorderLayout.CENTER);
         screenPanel.revalidate();
         screenPanel.repaint();
-
-        screenShareThread = new Thread(() -> {
-            try {
-                Robot robot = new Robot();
-                Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
-                Rectangle screenRect = new Rectangle(screenSize);
-
-                while (isScreenSharing) {
-                    BufferedImage capture = robot.createScreenCapture(screenRect);
-                    // Scale down for display
-                    ImageIcon icon = new ImageIcon(capture);
-                    SwingUtilities.invokeLater(() -> {
-                        screenView.setIcon(icon);
-                        screenView.repaint();
-                    });
-                    Thread.sleep(500); // 2 FPS for preview
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }, "ScreenShare-Capture");
-        screenShareThread.setDaemon(true);
-        screenShareThread.start();
+        return screenView;
     }
 
     private void stopScreenShare() {
+        boolean wasSharing = isScreenSharing;
         isScreenSharing = false;
         screenShareBtn.setText("🖥 Partager");
         screenShareBtn.setBackground(new Color(64, 68, 75));
 
+        if (wasSharing && screenShareClient != null)
+            screenShareClient.stopSharing();
+        showPlaceholder();
+    }
+
+    private void showPlaceholder() {
         screenPanel.removeAll();
         JLabel placeholderLabel = new JLabel("Activez le partage d'écran pour diffuser votre écran",
                 SwingConstants.CENTER);
@@ -304,6 +348,8 @@ public class CallWindow extends JFrame {
 
     private void hangUp() {
         stopScreenShare();
+        if (screenShareClient != null)
+            screenShareClient.close();
         if (voiceManager != null) {
             voiceManager.leaveChannel();
         }
@@ -311,9 +357,12 @@ public class CallWindow extends JFrame {
         dispose();
     }
 
-    private void updateMicLevel(double level) {
-        int width = (int) (screenPanel.getWidth() * (level / 100.0));
-        micLevelBar.setPreferredSize(new Dimension(Math.max(0, width), 6));
+    private void applyMicLevel() {
+        int width = Math.max(0, (int) (screenPanel.getWidth() * (latestMicLevel / 100.0)));
+        if (width == micLevelWidth)
+            return;
+        micLevelWidth = width;
+        micLevelBar.setPreferredSize(new Dimension(width, 6));
         micLevelBar.revalidate();
     }
 
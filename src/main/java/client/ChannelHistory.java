@@ -0,0 +1,61 @@
+package client;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Messages déjà reçus pour un salon, conservés côté client (déjà mis en forme)
+ * pour réafficher le salon instantanément. Le dernier ID vu permet de ne
+ * demander au serveur que les messages plus récents lors du /join.
+ * Accès depuis l'EDT uniquement.
+ */
+public class ChannelHistory {
+    // Ordre d'arrivée, indexé par ID de message
+    private final LinkedHashMap<Long, ChatView.Entry> entries = new LinkedHashMap<>();
+    private long lastSeenId = 0;
+
+    /**
+     * Ajoute un message persistant ; retourne false s'il était déjà connu.
+     */
+    public boolean add(ChatView.Entry entry) {
+        long id = entry.getMessage().getId();
+        if (id <= lastSeenId)
+            return false;
+        lastSeenId = id;
+        entries.put(id, entry);
+        Iterator<ChatView.Entry> it = entries.values().iterator();
+        while (entries.size() > ChatView.MAX_MESSAGES && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        return true;
+    }
+
+    public long getLastSeenId() {
+        return lastSeenId;
+    }
+
+    public List<ChatView.Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public void remove(long id) {
+        entries.remove(id);
+    }
+
+    /**
+     * Remplace un message modifié en conservant sa place.
+     */
+    public void replace(long id, ChatView.Entry entry) {
+        if (entries.containsKey(id)) {
+            entries.put(id, entry);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        lastSeenId = 0;
+    }
+}
@@ -2,10 +2,8 @@ package client;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.time.format.DateTimeFormatter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -33,8 +31,12 @@ public class ChatController extends JFrame {
     private int hoveredUserIndex = -1;
     private Map<String, Boolean> talkingStates = new HashMap<>();
     private Map<String, String> userStatuses = new HashMap<>(); // Stores status: ONLINE, IDLE, DND
+    private Map<String, ChannelHistory> channelHistories = new HashMap<>(); // Cache par salon (EDT uniquement)
+    private Map<String, Integer> unreadCounts = new HashMap<>(); // Badges de non-lus (EDT uniquement)
+    // Mises à jour venant du réseau : regroupées et appliquées une fois par trame
+    private final UiDispatcher<ChatView.Entry> uiDispatcher = new UiDispatcher<>(this::appendEntries);
 
-    private JTextPane chatArea;
+    private ChatView chatArea;
     private RoundedTextField inputField; // Changed to custom component
     private VoiceManager voiceManager; // Voice Manager
     private String currentUser;
@@ -56,7 +58,6 @@ public class ChatController extends JFrame {
     // Restored Fields
     private JList<String> userList;
     private DefaultListModel<String> userModel;
-    private StyledDocument chatDoc;
     private NetworkClient networkClient;
     private JLabel serverHeader;
     private JLabel channelLabel;
@@ -165,6 +166,11 @@ public class ChatController extends JFrame {
     private DefaultListModel<String> voiceUsersModel;
     private JList<String> voiceUsersList;
     private int currentMicLevel = 0;
+    // Niveau micro et états "parle" : mis à jour au plus une fois par trame
+    private volatile int latestMicLevel = 0;
+    private final FrameThrottle micLevelThrottle = new FrameThrottle(this::applyMicLevel);
+    private final Map<String, Boolean> pendingTalking = new java.util.concurrent.ConcurrentHashMap<>();
+    private final FrameThrottle talkingThrottle = new FrameThrottle(this::applyTalkingStates);
 
     // Voice Sidebar Controls
     private JPanel voiceControlPanel;
@@ -179,7 +185,7 @@ public class ChatController extends JFrame {
 
     public void updateUserStatus(String username, String status) {
         userStatuses.put(username, status);
-        SwingUtilities.invokeLater(() -> {
+        uiDispatcher.coalesce("statuses", () -> {
             if (userList != null)
                 userList.repaint();
             // Also update friends list status if friend is in list
@@ -191,7 +197,12 @@ public class ChatController extends JFrame {
     }
 
     public void updateFriendList(String[] friends) {
-        SwingUtilities.invokeLater(() -> {
+        java.util.List<String> names = new java.util.ArrayList<>();
+        for (String f : friends) {
+            names.add(f.split(":")[0]);
+        }
+        ModernComponents.prewarmAvatars(names, 28);
+        uiDispatcher.coalesce("friends", () -> {
             friendsModel.clear();
             for (String f : friends) {
                 friendsModel.addElement(f);
@@ -644,11 +655,9 @@ public class ChatController extends JFrame {
 
     private void initComponents() {
         // Zone de chat avec styles
-        chatArea = new JTextPane();
-        chatArea.setEditable(false);
-        chatArea.setBackground(BG_DARK);
-        chatArea.setForeground(TEXT_NORMAL);
-        chatDoc = chatArea.getStyledDocument();
+        chatArea = new ChatView();
+        chatArea.setImageClickListener(this::showImagePreview);
+        chatArea.setFileClickListener(this::saveFile);
 
         // Input moderne
         inputField = new RoundedTextField(15);
@@ -1007,36 +1016,57 @@ public class ChatController extends JFrame {
         JPopupMenu chatContextMenu = new JPopupMenu();
         chatContextMenu.setBackground(BG_SIDEBAR);
         chatContextMenu.setBorder(javax.swing.BorderFactory.createLineBorder(new Color(32, 34, 37)));
+        JMenuItem editItem = new JMenuItem("✏ Modifier");
+        editItem.setForeground(TEXT_NORMAL);
+        editItem.setBackground(BG_SIDEBAR);
+        editItem.setFont(new Font("Segoe UI", Font.PLAIN, 13));
         JMenuItem deleteItem = new JMenuItem("🗑 Supprimer");
         deleteItem.setForeground(new Color(237, 66, 69));
         deleteItem.setBackground(BG_SIDEBAR);
         deleteItem.setFont(new Font("Segoe UI", Font.PLAIN, 13));
-        deleteItem.addActionListener(e -> {
-            try {
-                int caretPos = chatArea.getCaretPosition();
-                int start = javax.swing.text.Utilities.getRowStart(chatArea, caretPos);
-                int end = javax.swing.text.Utilities.getRowEnd(chatArea, caretPos);
-                String lineText = chatArea.getText(start, end - start).trim();
-                if (!lineText.isEmpty() && networkClient != null) {
-                    networkClient.sendCommand("/delete " + lineText);
+        final Message[] contextMessage = { null };
+        editItem.addActionListener(e -> {
+            Message target = contextMessage[0];
+            if (target != null && networkClient != null) {
+                String text = (String) JOptionPane.showInputDialog(this, "Modifier le message :", "Modifier",
+                        JOptionPane.PLAIN_MESSAGE, null, null, target.getContent());
+                if (text != null && !text.trim().isEmpty() && !text.equals(target.getContent())) {
+                    networkClient.sendCommand("/edit " + target.getId() + " " + text.trim());
                 }
-            } catch (Exception ex) {
-                ex.printStackTrace();
             }
         });
+        deleteItem.addActionListener(e -> {
+            Message target = contextMessage[0];
+            if (target != null && networkClient != null) {
+                networkClient.sendCommand("/delete " + target.getId());
+            }
+        });
+        chatContextMenu.add(editItem);
         chatContextMenu.add(deleteItem);
 
         chatArea.addMouseListener(new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
                 if (e.isPopupTrigger())
-                    chatContextMenu.show(chatArea, e.getX(), e.getY());
+                    showChatContextMenu(e);
             }
 
             @Override
             public void mouseReleased(MouseEvent e) {
                 if (e.isPopupTrigger())
+                    showChatContextMenu(e);
+            }
+
+            private void showChatContextMenu(MouseEvent e) {
+                // Seuls nos propres messages texte enregistrés (avec ID) sont modifiables
+                Message target = chatArea.getMessageAt(e.getPoint());
+                if (target != null && target.getId() > 0
+                        && (target.getType() == Message.MessageType.CHAT
+                                || target.getType() == Message.MessageType.PRIVATE)
+                        && target.getUsername().equals(currentUser)) {
+                    contextMessage[0] = target;
                     chatContextMenu.show(chatArea, e.getX(), e.getY());
+                }
             }
         });
 
@@ -1320,10 +1350,7 @@ public class ChatController extends JFrame {
                             networkClient.sendCommand("/join " + selected.name);
 
                             if (voiceManager != null) {
-                                voiceManager.joinChannel(selected.name, currentUser);
-                                voiceManager.setTalkingListener((user, talking) -> {
-                                    SwingUtilities.invokeLater(() -> updateTalkingStatus(user, talking));
-                                });
+                                joinVoice(selected.name);
                             }
 
                             voiceControlPanel.setVisible(true);
@@ -1581,203 +1608,48 @@ public class ChatController extends JFrame {
     }
 
     public void displayMessage(Message msg) {
-        SwingUtilities.invokeLater(() -> {
-            try {
-                // Style pour le nom d'utilisateur
-                SimpleAttributeSet userStyle = new SimpleAttributeSet();
-                StyleConstants.setForeground(userStyle,
-                        msg.getUsername().equals(currentUser) ? ACCENT : new Color(46, 204, 113));
-                StyleConstants.setFontFamily(userStyle, "Segoe UI Emoji");
-                StyleConstants.setBold(userStyle, true);
-                StyleConstants.setFontSize(userStyle, 14);
-
-                // Style pour l'heure
-                SimpleAttributeSet timeStyle = new SimpleAttributeSet();
-                StyleConstants.setForeground(timeStyle, TEXT_GRAY);
-                StyleConstants.setFontSize(timeStyle, 11);
-
-                // Style pour le texte
-                SimpleAttributeSet textStyle = new SimpleAttributeSet();
-                StyleConstants.setForeground(textStyle,
-                        msg.getType() == Message.MessageType.SYSTEM ? TEXT_GRAY : TEXT_NORMAL);
-                StyleConstants.setFontFamily(textStyle, "Segoe UI Emoji");
-                StyleConstants.setFontSize(textStyle, 14);
-
-                // Insertion
-                if ("ROLES_LIST".equals(msg.getType().name())
-                        || "SYSTEM".equals(msg.getType().name()) && "ROLES_LIST".equals(msg.getFileName())) {
-                    // Hacky way to detect roles list if type enum not updated, but we updated it
-                    // below in logic usually.
-                    // Actually we sent it as SYSTEM type with "ROLES_LIST" as channel? No in
-                    // ClientHandler we sent:
-                    // new Message("System", rolesStr, "ROLES_LIST", Message.MessageType.SYSTEM) =>
-                    // channel is ROLES_LIST
-                    // Wait, constructor is (sender, content, channel, type)
-                    // ClientHandler: new Message("System", rolesStr, "ROLES_LIST",
-                    // Message.MessageType.SYSTEM)
-                }
-
-                if (msg.getType() == Message.MessageType.SYSTEM && "ROLES_LIST".equals(msg.getChannel())) {
-                    updateRoles(msg.getContent().split(","));
-                    return;
-                }
-
-                if (msg.getType() == Message.MessageType.SYSTEM) {
-                    chatDoc.insertString(chatDoc.getLength(), "🔒 " + msg.getContent() + "\n\n", textStyle);
-                } else if (msg.getType() == Message.MessageType.FILE) {
-                    // Affichage spécial pour les fichiers/images
-                    chatDoc.insertString(chatDoc.getLength(), msg.getUsername(), userStyle);
-                    chatDoc.insertString(chatDoc.getLength(),
-                            "  " + msg.getTimestamp().format(DateTimeFormatter.ofPattern("HH:mm")) + "\n", timeStyle);
-
-                    if (isImageFile(msg.getFileName())) {
-                        if (msg.getFileData() != null) {
-                            ImageIcon icon = new ImageIcon(msg.getFileData());
-                            // Scaling simple
-                            Image img = icon.getImage();
-                            if (icon.getIconWidth() > 400) {
-                                img = img.getScaledInstance(400, -1, Image.SCALE_SMOOTH);
-                                icon = new ImageIcon(img);
-                            }
-
-                            // Container pour Image
-                            JPanel container = new JPanel();
-                            container.setLayout(new BoxLayout(container, BoxLayout.Y_AXIS)); // Vertical
-                            container.setOpaque(false);
-                            container.setAlignmentX(Component.LEFT_ALIGNMENT);
-
-                            JLabel imgLabel = new JLabel(icon);
-                            imgLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                            imgLabel.setCursor(new Cursor(Cursor.HAND_CURSOR));
-                            imgLabel.setToolTipText("Cliquer pour agrandir");
-
-                            // Capture message for lambda
-                            Message msgRef = msg;
-                            imgLabel.addMouseListener(new MouseAdapter() {
-                                @Override
-                                public void mouseClicked(MouseEvent e) {
-                                    showImagePreview(msgRef);
-                                }
-                            });
-
-                            container.add(imgLabel);
-                            container.add(Box.createVerticalStrut(5));
-                            // Bouton téléchargement retiré ici pour épuré, disponible dans l'aperçu
+        if (msg.getType() == Message.MessageType.SYSTEM && "ROLES_LIST".equals(msg.getChannel())) {
+            updateRoles(msg.getContent().split(","));
+            return;
+        }
 
-                            chatArea.setCaretPosition(chatDoc.getLength());
-                            chatArea.insertComponent(container);
-                        } else {
-                            chatDoc.insertString(chatDoc.getLength(), "[Image: " + msg.getFileName() + "]\n",
-                                    textStyle);
-                        }
-                    } else {
-                        // Container Fichier
-                        JPanel container = new JPanel();
-                        container.setLayout(new BoxLayout(container, BoxLayout.Y_AXIS));
-                        container.setOpaque(false);
-                        container.setAlignmentX(Component.LEFT_ALIGNMENT);
-
-                        // Panel Info Fichier
-                        JPanel infoPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
-                        infoPanel.setBackground(new Color(47, 49, 54)); // BG sombre
-                        infoPanel.setBorder(new javax.swing.border.LineBorder(new Color(32, 34, 37), 1, true));
-                        infoPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-
-                        JLabel fileLabel = new JLabel("📁 " + msg.getFileName() + " (" +
-                                (msg.getFileData() != null ? msg.getFileData().length / 1024 + " KB" : "?") + ")");
-                        fileLabel.setForeground(TEXT_NORMAL);
-                        fileLabel.setFont(new Font("Segoe UI", Font.BOLD, 12));
-                        infoPanel.add(fileLabel);
-                        container.add(infoPanel);
-                        container.add(Box.createVerticalStrut(5));
-
-                        JButton downloadBtn = new ModernComponents.ModernButton("⬇ Télécharger le fichier");
-                        downloadBtn.setFont(new Font("Segoe UI", Font.BOLD, 12));
-                        downloadBtn.setBorder(new EmptyBorder(5, 10, 5, 10));
-                        downloadBtn.setAlignmentX(Component.LEFT_ALIGNMENT);
-                        downloadBtn.addActionListener(ev -> saveFile(msg));
-                        container.add(downloadBtn);
-
-                        chatArea.setCaretPosition(chatDoc.getLength());
-                        chatArea.insertComponent(container);
-                    }
-                    chatDoc.insertString(chatDoc.getLength(), "\n", textStyle);
+        // Mise en forme (document stylé, miniature) sur le thread appelant, pas sur l'EDT
+        uiDispatcher.append(ChatView.createEntry(msg, currentUser));
+    }
 
-                    if (!msg.getUsername().equals(currentUser)) {
-                        Toolkit.getDefaultToolkit().beep();
-                    }
-                } else {
-                    String time = msg.getTimestamp().format(DateTimeFormatter.ofPattern("HH:mm"));
-                    chatDoc.insertString(chatDoc.getLength(), msg.getUsername(), userStyle);
-                    chatDoc.insertString(chatDoc.getLength(), "  " + time + "\n", timeStyle);
-                    insertRichText(msg.getContent(), textStyle);
-                    chatDoc.insertString(chatDoc.getLength(), "\n", textStyle);
-
-                    // Notification sonore (si pas moi)
-                    if (!msg.getUsername().equals(currentUser)) {
-                        Toolkit.getDefaultToolkit().beep();
+    // Lot de messages reçus pendant une trame : une seule mise en page, un seul bip
+    private void appendEntries(java.util.List<ChatView.Entry> batch) {
+        java.util.List<ChatView.Entry> visible = new java.util.ArrayList<>(batch.size());
+        boolean notify = false;
+        for (ChatView.Entry entry : batch) {
+            Message msg = entry.getMessage();
+            boolean chat = msg.getType() == Message.MessageType.CHAT || msg.getType() == Message.MessageType.FILE;
+            if (chat && msg.getId() > 0 && msg.getChannel() != null) {
+                ChannelHistory history = channelHistories.computeIfAbsent(msg.getChannel(),
+                        k -> new ChannelHistory());
+                if (!history.add(entry) || !msg.getChannel().equals(currentChannel))
+                    continue; // Déjà affiché depuis le cache, ou salon quitté entre-temps
+            }
+            visible.add(entry);
+
+            // Notification sonore (si pas moi)
+            if (chat && !msg.getUsername().equals(currentUser)) {
+                notify = true;
+            }
+        }
+        if (!visible.isEmpty()) {
+            chatArea.appendAll(visible);
+            if (networkClient != null) {
+                for (ChatView.Entry entry : visible) {
+                    if (entry.getMessage().getTraceId() != 0) {
+                        networkClient.traceRendered(entry.getMessage());
                     }
                 }
-
-                // Scroll automatique
-                chatArea.setCaretPosition(chatDoc.getLength());
-
-            } catch (BadLocationException e) {
-                e.printStackTrace();
             }
-        });
-    }
-
-    // === RICH TEXT FORMATTING ===
-    private void insertRichText(String text, SimpleAttributeSet baseStyle) throws BadLocationException {
-        // Parse markdown-like formatting: **bold**, *italic*, `code`, ~~strikethrough~~
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(
-                "(\\*\\*(.+?)\\*\\*)" + // **bold**
-                        "|(\\*(.+?)\\*)" + // *italic*
-                        "|(`(.+?)`)" + // `code`
-                        "|(~~(.+?)~~)" // ~~strikethrough~~
-        );
-        java.util.regex.Matcher matcher = pattern.matcher(text);
-        int lastEnd = 0;
-
-        while (matcher.find()) {
-            // Insert text before match
-            if (matcher.start() > lastEnd) {
-                chatDoc.insertString(chatDoc.getLength(), text.substring(lastEnd, matcher.start()), baseStyle);
-            }
-
-            if (matcher.group(2) != null) {
-                // **Bold**
-                SimpleAttributeSet boldStyle = new SimpleAttributeSet(baseStyle);
-                StyleConstants.setBold(boldStyle, true);
-                chatDoc.insertString(chatDoc.getLength(), matcher.group(2), boldStyle);
-            } else if (matcher.group(4) != null) {
-                // *Italic*
-                SimpleAttributeSet italicStyle = new SimpleAttributeSet(baseStyle);
-                StyleConstants.setItalic(italicStyle, true);
-                chatDoc.insertString(chatDoc.getLength(), matcher.group(4), italicStyle);
-            } else if (matcher.group(6) != null) {
-                // `Code`
-                SimpleAttributeSet codeStyle = new SimpleAttributeSet(baseStyle);
-                StyleConstants.setFontFamily(codeStyle, "Consolas");
-                StyleConstants.setBackground(codeStyle, new Color(40, 42, 46));
-                StyleConstants.setForeground(codeStyle, new Color(230, 219, 116));
-                chatDoc.insertString(chatDoc.getLength(), " " + matcher.group(6) + " ", codeStyle);
-            } else if (matcher.group(8) != null) {
-                // ~~Strikethrough~~
-                SimpleAttributeSet strikeStyle = new SimpleAttributeSet(baseStyle);
-                StyleConstants.setStrikeThrough(strikeStyle, true);
-                StyleConstants.setForeground(strikeStyle, TEXT_GRAY);
-                chatDoc.insertString(chatDoc.getLength(), matcher.group(8), strikeStyle);
-            }
-            lastEnd = matcher.end();
-        }
-
-        // Insert remaining text
-        if (lastEnd < text.length()) {
-            chatDoc.insertString(chatDoc.getLength(), text.substring(lastEnd), baseStyle);
-        }
-        chatDoc.insertString(chatDoc.getLength(), "\n", baseStyle);
+        }
+        if (notify) {
+            Toolkit.getDefaultToolkit().beep();
+        }
     }
 
     private void sendMessage() {
@@ -1789,7 +1661,7 @@ public class ChatController extends JFrame {
                 inputField.setText("");
             } else {
                 Message msg = new Message(currentUser, text, currentChannel,
-                        text.startsWith("/") ? Message.MessageType.SYSTEM : Message.MessageType.CHAT);
+                        text.startsWith("/") ? Message.MessageType.COMMAND : Message.MessageType.CHAT);
                 networkClient.sendMessage(msg);
                 inputField.setText("");
             }
@@ -1812,10 +1684,7 @@ public class ChatController extends JFrame {
         }
 
         if (type.equals("VOICE")) {
-            voiceManager.joinChannel(newChannel, currentUser);
-            voiceManager.setTalkingListener((user, talking) -> {
-                SwingUtilities.invokeLater(() -> updateTalkingStatus(user, talking));
-            });
+            joinVoice(newChannel);
             // Switch to Voice View
             if (centerLayout != null && centerPanel != null) {
                 System.out.println("DEBUG: Switching to VOICE view");
@@ -1826,7 +1695,10 @@ public class ChatController extends JFrame {
                 System.out.println("DEBUG: centerLayout or centerPanel is null!");
             }
         } else {
-            voiceManager.leaveChannel();
+            if (voiceManager.isActive()) {
+                voiceManager.leaveChannel();
+                networkClient.sendCommand("/voice_leave");
+            }
             // Switch to Chat View
             if (centerLayout != null && centerPanel != null) {
                 centerLayout.show(centerPanel, "CHAT");
@@ -1840,15 +1712,110 @@ public class ChatController extends JFrame {
             channelLabel.setText(" # " + currentChannel);
         }
 
-        networkClient.sendCommand("/join " + newChannel);
+        if (unreadCounts.remove(newChannel) != null && channelList != null) {
+            channelList.repaint();
+        }
 
-        // Clear chat area if text
+        // Clear chat area if text, then replay the cached messages of this channel
+        ChannelHistory history = channelHistories.computeIfAbsent(newChannel, k -> new ChannelHistory());
         if (type.equals("TEXT")) {
-            chatArea.setText("");
+            chatArea.clear();
             addSystemMessage("Vous avez rejoint #" + newChannel);
+            java.util.List<ChatView.Entry> cached = history.getEntries();
+            if (!cached.isEmpty()) {
+                uiDispatcher.post(() -> chatArea.appendAll(cached));
+            }
         } else {
             addSystemMessage("Vous avez rejoint le salon vocal: " + newChannel);
         }
+
+        // Le serveur n'envoie que les messages postérieurs au dernier en cache
+        networkClient.sendCommand("/join " + newChannel + " " + history.getLastSeenId());
+    }
+
+    /**
+     * Compteurs de non-lus "salon:nombre,..." envoyés par le serveur (résumé à
+     * la connexion puis seulement les salons modifiés).
+     */
+    public void updateUnreadCounts(String csv) {
+        uiDispatcher.post(() -> {
+            for (String pair : csv.split(",")) {
+                int sep = pair.lastIndexOf(':');
+                if (sep <= 0)
+                    continue;
+                String channel = pair.substring(0, sep);
+                int count = Integer.parseInt(pair.substring(sep + 1));
+                if (count > 0 && !channel.equals(currentChannel)) {
+                    unreadCounts.put(channel, count);
+                } else {
+                    unreadCounts.remove(channel);
+                }
+            }
+            if (channelList != null) {
+                channelList.repaint();
+            }
+        });
+    }
+
+    /**
+     * Messages privés reçus pendant la déconnexion : ceux de la conversation
+     * ouverte sont affichés, les autres résumés en une seule notification
+     * (l'historique complet reste chargé à l'ouverture de la conversation).
+     */
+    public void deliverMissedDms(java.util.List<Message> missed) {
+        Map<String, Integer> bySender = new java.util.LinkedHashMap<>();
+        for (Message msg : missed) {
+            if (msg.getChannel().equals(currentChannel)) {
+                displayMessage(msg);
+            } else {
+                bySender.merge(msg.getUsername(), 1, Integer::sum);
+            }
+        }
+        if (bySender.isEmpty())
+            return;
+        StringBuilder sb = new StringBuilder();
+        int total = 0;
+        for (Map.Entry<String, Integer> entry : bySender.entrySet()) {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(entry.getKey()).append(" (").append(entry.getValue()).append(')');
+            total += entry.getValue();
+        }
+        showNotification(total + " message(s) privé(s) manqué(s)", sb.toString());
+    }
+
+    /**
+     * Le serveur n'a pas pu combler l'écart depuis le dernier message en cache :
+     * il renvoie les derniers messages, le cache du salon repart de zéro.
+     */
+    public void resetChannelHistory(String channel) {
+        uiDispatcher.post(() -> {
+            channelHistories.remove(channel);
+            if (channel.equals(currentChannel)) {
+                chatArea.clear();
+            }
+        });
+    }
+
+    /**
+     * Reconnexion avec une nouvelle session (l'ancienne avait expiré) : le
+     * serveur nous a replacés dans #general ; on revient au salon affiché sans
+     * recharger ce qui est en cache, et on redemande la session vocale.
+     */
+    public void onSessionRestarted() {
+        uiDispatcher.post(() -> {
+            if (currentDMUser != null || "general".equals(currentChannel))
+                return;
+            for (int i = 0; i < channelModel.getSize(); i++) {
+                SidebarItem item = channelModel.get(i);
+                if (item.isChannel() && item.getName().equals(currentChannel)
+                        && "VOICE".equals(((ChannelItem) item).type) && voiceManager.isActive()) {
+                    networkClient.sendCommand("/voice_join " + currentChannel);
+                }
+            }
+            ChannelHistory history = channelHistories.computeIfAbsent(currentChannel, k -> new ChannelHistory());
+            networkClient.sendCommand("/join " + currentChannel + " " + history.getLastSeenId());
+        });
     }
 
     private String currentDMUser = null; // Tracks who we're DMing
@@ -1875,7 +1842,7 @@ public class ChatController extends JFrame {
         }
 
         // Clear chat and load history
-        chatArea.setText("");
+        chatArea.clear();
         addSystemMessage("Conversation privée avec " + friendUsername);
 
         // Load DM history from server
@@ -1902,44 +1869,83 @@ public class ChatController extends JFrame {
     }
 
     public void showTypingIndicator(String username) {
-        SwingUtilities.invokeLater(() -> {
-            typingLabel.setText("  ✏️ " + username + " est en train d'écrire...");
-            // Clear after 3 seconds
-            if (typingClearTimer != null && typingClearTimer.isRunning()) {
-                typingClearTimer.restart();
-            } else {
-                typingClearTimer = new javax.swing.Timer(3000, e -> {
-                    typingLabel.setText(" ");
+        uiDispatcher.coalesce("typing", () -> setTypingText(username + " est en train d'écrire...", 3000));
+    }
+
+    /**
+     * Trame de saisie d'un salon : "pseudo1,pseudo2", vide quand plus
+     * personne n'écrit. Le serveur envoie lui-même la fin de saisie ; le
+     * minuteur n'est qu'un filet de sécurité.
+     */
+    public void updateTypingUsers(String channel, String csv) {
+        java.util.List<String> others = new java.util.ArrayList<>();
+        if (csv != null && !csv.isEmpty()) {
+            for (String user : csv.split(",")) {
+                if (!user.equals(currentUser))
+                    others.add(user);
+            }
+        }
+        uiDispatcher.coalesce("typing", () -> {
+            if (currentDMUser != null || !channel.equals(currentChannel))
+                return;
+            if (others.isEmpty()) {
+                typingLabel.setText(" ");
+                if (typingClearTimer != null)
                     typingClearTimer.stop();
-                });
-                typingClearTimer.setRepeats(false);
-                typingClearTimer.start();
+            } else if (others.size() == 1) {
+                setTypingText(others.get(0) + " est en train d'écrire...", 6000);
+            } else if (others.size() <= 3) {
+                setTypingText(String.join(", ", others) + " sont en train d'écrire...", 6000);
+            } else {
+                setTypingText("Plusieurs personnes sont en train d'écrire...", 6000);
             }
         });
     }
 
+    // Sur l'EDT : affiche le texte et l'efface après clearMs sans mise à jour
+    private void setTypingText(String text, int clearMs) {
+        typingLabel.setText("  ✏️ " + text);
+        if (typingClearTimer != null) {
+            typingClearTimer.stop();
+        }
+        typingClearTimer = new javax.swing.Timer(clearMs, e -> {
+            typingLabel.setText(" ");
+            typingClearTimer.stop();
+        });
+        typingClearTimer.setRepeats(false);
+        typingClearTimer.start();
+    }
+
     // === DELETE MESSAGE ===
-    public void deleteMessageFromChat(String username, String contentToDelete) {
-        SwingUtilities.invokeLater(() -> {
-            try {
-                String fullText = chatDoc.getText(0, chatDoc.getLength());
-                int idx = fullText.indexOf(contentToDelete);
-                if (idx >= 0) {
-                    // Find the line boundaries
-                    int lineStart = fullText.lastIndexOf('\n', idx);
-                    if (lineStart < 0)
-                        lineStart = 0;
-                    else
-                        lineStart++;
-                    int lineEnd = fullText.indexOf('\n', idx + contentToDelete.length());
-                    if (lineEnd < 0)
-                        lineEnd = fullText.length();
-                    else
-                        lineEnd++; // include newline
-                    chatDoc.remove(lineStart, lineEnd - lineStart);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+    public void deleteMessageFromChat(String channel, long messageId) {
+        uiDispatcher.post(() -> {
+            ChannelHistory history = channelHistories.get(channel);
+            if (history != null) {
+                history.remove(messageId);
+            }
+            if (channel.equals(currentChannel)) {
+                chatArea.remove(messageId);
+            }
+        });
+    }
+
+    // === EDIT MESSAGE ===
+    public void editMessageInChat(Message edit) {
+        // Le message modifié est réaffiché comme l'original (type, horodatage), mis en forme hors EDT
+        Message.MessageType type = edit.getChannel().startsWith("DM:") ? Message.MessageType.PRIVATE
+                : Message.MessageType.CHAT;
+        Message updated = new Message(edit.getUsername(), edit.getContent(), edit.getChannel(), type,
+                edit.getTimestamp());
+        updated.setId(edit.getId());
+        updated.setEdited(true);
+        ChatView.Entry entry = ChatView.createEntry(updated, currentUser);
+        uiDispatcher.post(() -> {
+            ChannelHistory history = channelHistories.get(edit.getChannel());
+            if (history != null) {
+                history.replace(edit.getId(), entry);
+            }
+            if (edit.getChannel().equals(currentChannel)) {
+                chatArea.replace(edit.getId(), entry);
             }
         });
     }
@@ -2144,10 +2150,7 @@ public class ChatController extends JFrame {
 
         // Use VoiceManager to join
         if (voiceManager != null) {
-            voiceManager.joinChannel(callChannel, currentUser);
-            voiceManager.setTalkingListener((user, talking) -> {
-                SwingUtilities.invokeLater(() -> updateTalkingStatus(user, talking));
-            });
+            joinVoice(callChannel);
             voiceControlPanel.setVisible(true);
             voiceStatusLabel.setText("Appel avec " + otherUser);
 
@@ -2158,18 +2161,70 @@ public class ChatController extends JFrame {
         addSystemMessage("Appel vocal avec " + otherUser + " en cours...");
     }
 
+    /**
+     * Ouvre l'audio local puis demande au serveur une session vocale (StreamId +
+     * token) ; le JOIN UDP part à la réception de la session.
+     */
+    private void joinVoice(String voiceChannel) {
+        voiceManager.joinChannel(voiceChannel, currentUser);
+        voiceManager.setTalkingListener((user, talking) -> {
+            pendingTalking.put(user, talking);
+            talkingThrottle.request();
+        });
+        networkClient.sendCommand("/voice_join " + voiceChannel);
+    }
+
+    public void bindVoiceSession(int streamId, long token) {
+        if (voiceManager != null) {
+            voiceManager.bindSession(streamId, token);
+        }
+    }
+
+    public void updateVoiceStreams(String streamsCsv) {
+        if (voiceManager != null) {
+            voiceManager.updateStreamNames(streamsCsv);
+        }
+    }
+
     private void updateMicLevel(Double level) {
-        SwingUtilities.invokeLater(() -> {
-            this.currentMicLevel = level.intValue();
-            // System.out.println("UI Mic Update: " + this.currentMicLevel); // Debug
-            if (voiceUsersList != null) {
-                voiceUsersList.repaint();
+        latestMicLevel = level.intValue();
+        micLevelThrottle.request();
+    }
+
+    private void applyMicLevel() {
+        int level = latestMicLevel;
+        // Au-dessus de 25 la barre clignote : il faut repeindre même sans changement
+        if (level == currentMicLevel && level <= 25)
+            return;
+        this.currentMicLevel = level;
+        repaintVoiceUser(currentUser);
+    }
+
+    private void applyTalkingStates() {
+        for (String user : pendingTalking.keySet()) {
+            Boolean talking = pendingTalking.remove(user);
+            if (talking != null) {
+                updateTalkingStatus(user, talking);
             }
-        });
+        }
+    }
+
+    // Ne repeint que la cellule de l'utilisateur dans la liste du salon vocal
+    private void repaintVoiceUser(String user) {
+        if (voiceUsersList == null)
+            return;
+        int index = voiceUsersModel.indexOf(user);
+        if (index >= 0) {
+            Rectangle bounds = voiceUsersList.getCellBounds(index, index);
+            if (bounds != null) {
+                voiceUsersList.repaint(bounds);
+            }
+        }
     }
 
     public void updateUserList(String[] users) {
-        SwingUtilities.invokeLater(() -> {
+        ModernComponents.prewarmAvatars(java.util.Arrays.asList(users), 32);
+        uiDispatcher.coalesce("users", () -> {
             userModel.clear();
             for (String user : users) {
                 userModel.addElement(user);
@@ -2190,8 +2245,13 @@ public class ChatController extends JFrame {
             if (item.isChannel()) {
                 ChannelItem cItem = (ChannelItem) item;
                 String prefix = cItem.type.equals("VOICE") ? "🔊 " : "# ";
+                int unread = unreadCounts.getOrDefault(cItem.name, 0);
+                String text = prefix + cItem.name;
+                if (unread > 0) {
+                    text += "  (" + (unread > 99 ? "99+" : unread) + ")";
+                }
                 JLabel label = (JLabel) super.getListCellRendererComponent(
-                        list, prefix + cItem.name, index, isSelected, cellHasFocus);
+                        list, text, index, isSelected, cellHasFocus);
 
                 label.setBorder(new EmptyBorder(0, 10, 0, 10));
 
@@ -2203,7 +2263,10 @@ public class ChatController extends JFrame {
                     label.setForeground(TEXT_NORMAL);
                 } else {
                     label.setBackground(BG_SIDEBAR);
-                    label.setForeground(TEXT_GRAY);
+                    label.setForeground(unread > 0 ? Color.WHITE : TEXT_GRAY);
+                }
+                if (unread > 0) {
+                    label.setFont(label.getFont().deriveFont(Font.BOLD));
                 }
                 return label;
             } else if (item instanceof PrivateMessageItem) {
@@ -2277,7 +2340,7 @@ public class ChatController extends JFrame {
     }
 
     public void updateServerList(String[] servers) {
-        SwingUtilities.invokeLater(() -> {
+        uiDispatcher.coalesce("servers", () -> {
             serverListPanel.removeAll();
             serverButtons.clear();
 
@@ -2437,7 +2500,7 @@ public class ChatController extends JFrame {
     }
 
     public void updateChannelList(String[] channelsData) {
-        SwingUtilities.invokeLater(() -> {
+        uiDispatcher.coalesce("channels", () -> {
             serverChannels.clear();
 
             for (String s : channelsData) {
@@ -2459,7 +2522,9 @@ public class ChatController extends JFrame {
     }
 
     public void updateVoiceUsers(String channelName, String[] users) {
-        SwingUtilities.invokeLater(() -> {
+        ModernComponents.prewarmAvatars(java.util.Arrays.asList(users), 24);
+        ModernComponents.prewarmAvatars(java.util.Arrays.asList(users), 40);
+        uiDispatcher.coalesce("voiceUsers:" + channelName, () -> {
             // Update Sidebar for this channel
             updateSidebarVoiceUsers(channelName, users);
 
@@ -2476,10 +2541,10 @@ public class ChatController extends JFrame {
     }
 
     private void updateTalkingStatus(String user, boolean talking) {
-        talkingStates.put(user, talking);
-        if (voiceUsersList != null) {
-            voiceUsersList.repaint();
-        }
+        Boolean previous = talkingStates.put(user, talking);
+        if (previous != null && previous == talking)
+            return;
+        repaintVoiceUser(user);
 
         for (int i = 0; i < channelModel.getSize(); i++) {
             SidebarItem item = channelModel.get(i);
@@ -2501,6 +2566,7 @@ public class ChatController extends JFrame {
 
         // Leave voice logic
         voiceManager.leaveChannel();
+        networkClient.sendCommand("/voice_leave");
         voiceControlPanel.setVisible(false);
 
         // Only rejoin text channel if NOT in DM mode
@@ -2974,13 +3040,6 @@ public class ChatController extends JFrame {
         emojiMenu.show(invoker, 0, -250);
     }
 
-    private boolean isImageFile(String name) {
-        if (name == null)
-            return false;
-        String lower = name.toLowerCase();
-        return lower.endsWith(".jpg") || lower.endsWith(".png") || lower.endsWith(".gif") || lower.endsWith(".jpeg");
-    }
-
     private JButton createRoundButton(String text, String tooltip) {
         JButton btn = new JButton(text) {
             @Override
@@ -3416,4 +3475,4 @@ public class ChatController extends JFrame {
     }
 
     private ImageIcon voiceIcon;
-}
\ No newline at end of file
+}
\ No newline at end of file
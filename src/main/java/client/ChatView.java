@@ -0,0 +1,755 @@
+package client;
+
+import common.Message;
+
+import javax.swing.*;
+import javax.swing.text.*;
+import java.awt.*;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Zone de messages virtualisée : chaque message est mis en forme une seule fois
+ * (document stylé construit hors EDT). Sa hauteur est d'abord estimée, puis
+ * mesurée réellement la première fois qu'il devient visible et mise en cache
+ * pour la largeur courante ; seuls les messages visibles sont peints via un
+ * tampon JTextPane partagé. Le nombre de messages conservés est plafonné.
+ *
+ * Les positions verticales ne sont pas stockées : elles découlent des
+ * hauteurs, tenues dans un arbre de Fenwick (RowHeights). Ajouter, modifier
+ * ou retirer un message, ou corriger sa hauteur, coûte O(log n) sans
+ * recalculer les suivants ; un message retiré laisse un emplacement vide
+ * jusqu'au prochain compactage.
+ *
+ * Le texte reste sélectionnable à la souris, y compris sur plusieurs
+ * messages : la sélection est gardée en positions dans les documents et
+ * surlignée au moment de peindre ; Ctrl+C la copie.
+ */
+public class ChatView extends JComponent implements Scrollable {
+
+    public static final int MAX_MESSAGES = 500;
+
+    private static final Color BG_DARK = new Color(54, 57, 63);
+    private static final Color BG_FILE = new Color(47, 49, 54);
+    private static final Color BORDER_FILE = new Color(32, 34, 37);
+    private static final Color ACCENT = new Color(88, 101, 242);
+    private static final Color GREEN = new Color(46, 204, 113);
+    private static final Color TEXT_NORMAL = new Color(220, 221, 222);
+    private static final Color TEXT_GRAY = new Color(142, 146, 151);
+    private static final Color SELECTION = new Color(88, 101, 242, 110);
+
+    private static final int PAD_LEFT = 20;
+    private static final int PAD_RIGHT = 20;
+    private static final int PAD_Y = 6;
+    private static final int FILE_BOX_HEIGHT = 64;
+    private static final int PLACEHOLDER_HEIGHT = 120;
+    private static final Font ESTIMATE_FONT = new Font("Segoe UI Emoji", Font.PLAIN, 14);
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+    private static final Pattern RICH_TEXT = Pattern.compile(
+            "(\\*\\*(.+?)\\*\\*)" + // **bold**
+                    "|(\\*(.+?)\\*)" + // *italic*
+                    "|(`(.+?)`)" + // `code`
+                    "|(~~(.+?)~~)" // ~~strikethrough~~
+    );
+
+    // Styles précalculés, partagés par tous les messages
+    private static final SimpleAttributeSet SELF_STYLE = userStyle(ACCENT);
+    private static final SimpleAttributeSet OTHER_STYLE = userStyle(GREEN);
+    private static final SimpleAttributeSet TIME_STYLE = new SimpleAttributeSet();
+    private static final SimpleAttributeSet TEXT_STYLE = textStyle(TEXT_NORMAL);
+    private static final SimpleAttributeSet SYSTEM_STYLE = textStyle(TEXT_GRAY);
+    private static final SimpleAttributeSet BOLD_STYLE = new SimpleAttributeSet(TEXT_STYLE);
+    private static final SimpleAttributeSet ITALIC_STYLE = new SimpleAttributeSet(TEXT_STYLE);
+    private static final SimpleAttributeSet CODE_STYLE = new SimpleAttributeSet(TEXT_STYLE);
+    private static final SimpleAttributeSet STRIKE_STYLE = new SimpleAttributeSet(TEXT_STYLE);
+
+    static {
+        StyleConstants.setForeground(TIME_STYLE, TEXT_GRAY);
+        StyleConstants.setFontSize(TIME_STYLE, 11);
+        StyleConstants.setBold(BOLD_STYLE, true);
+        StyleConstants.setItalic(ITALIC_STYLE, true);
+        StyleConstants.setFontFamily(CODE_STYLE, "Consolas");
+        StyleConstants.setBackground(CODE_STYLE, new Color(40, 42, 46));
+        StyleConstants.setForeground(CODE_STYLE, new Color(230, 219, 116));
+        StyleConstants.setStrikeThrough(STRIKE_STYLE, true);
+        StyleConstants.setForeground(STRIKE_STYLE, TEXT_GRAY);
+    }
+
+    private static SimpleAttributeSet userStyle(Color color) {
+        SimpleAttributeSet style = new SimpleAttributeSet();
+        StyleConstants.setForeground(style, color);
+        StyleConstants.setFontFamily(style, "Segoe UI Emoji");
+        StyleConstants.setBold(style, true);
+        StyleConstants.setFontSize(style, 14);
+        return style;
+    }
+
+    private static SimpleAttributeSet textStyle(Color color) {
+        SimpleAttributeSet style = new SimpleAttributeSet();
+        StyleConstants.setForeground(style, color);
+        StyleConstants.setFontFamily(style, "Segoe UI Emoji");
+        StyleConstants.setFontSize(style, 14);
+        return style;
+    }
+
+    /**
+     * Message mis en forme, prêt à être affiché. Construit hors EDT.
+     */
+    public static class Entry {
+        final Message message;
+        final StyledDocument document;
+        final boolean image;
+        Image thumbnail;
+        // Décodage de la miniature en cours (null si déjà disponible)
+        CompletableFuture<BufferedImage> pendingThumbnail;
+        int textHeight;
+        int height;
+        boolean measured;
+        // Emplacement dans la vue (-1 si absent)
+        int slot = -1;
+
+        private Entry(Message message, StyledDocument document, boolean image) {
+            this.message = message;
+            this.document = document;
+            this.image = image;
+        }
+
+        public Message getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Construit l'entrée d'un message (document stylé, miniature). Ne touche à
+     * aucun composant affiché : peut être appelé depuis le thread réseau.
+     */
+    public static Entry createEntry(Message msg, String currentUser) {
+        DefaultStyledDocument doc = new DefaultStyledDocument();
+        boolean image = false;
+        try {
+            if (msg.getType() == Message.MessageType.SYSTEM) {
+                doc.insertString(0, "🔒 " + msg.getContent(), SYSTEM_STYLE);
+            } else {
+                boolean self = msg.getUsername().equals(currentUser);
+                doc.insertString(doc.getLength(), msg.getUsername(), self ? SELF_STYLE : OTHER_STYLE);
+                doc.insertString(doc.getLength(), "  " + msg.getTimestamp().format(TIME_FORMAT), TIME_STYLE);
+
+                if (msg.getType() == Message.MessageType.FILE) {
+                    image = isImageFile(msg.getFileName()) && msg.getFileData() != null;
+                    if (isImageFile(msg.getFileName()) && msg.getFileData() == null) {
+                        doc.insertString(doc.getLength(), "\n[Image: " + msg.getFileName() + "]", TEXT_STYLE);
+                    }
+                } else {
+                    doc.insertString(doc.getLength(), "\n", TEXT_STYLE);
+                    insertRichText(doc, msg.getContent() != null ? msg.getContent() : "");
+                    if (msg.isEdited()) {
+                        doc.insertString(doc.getLength(), "  (modifié)", TIME_STYLE);
+                    }
+                }
+            }
+        } catch (BadLocationException e) {
+            e.printStackTrace();
+        }
+
+        Entry entry = new Entry(msg, doc, image);
+        if (image) {
+            String key = ThumbnailCache.keyOf(msg.getFileData());
+            entry.thumbnail = ThumbnailCache.getIfPresent(key);
+            if (entry.thumbnail == null) {
+                entry.pendingThumbnail = ThumbnailCache.load(key, msg.getFileData());
+            }
+        }
+        return entry;
+    }
+
+    private static void insertRichText(StyledDocument doc, String text) throws BadLocationException {
+        Matcher matcher = RICH_TEXT.matcher(text);
+        int lastEnd = 0;
+
+        while (matcher.find()) {
+            if (matcher.start() > lastEnd) {
+                doc.insertString(doc.getLength(), text.substring(lastEnd, matcher.start()), TEXT_STYLE);
+            }
+            if (matcher.group(2) != null) {
+                doc.insertString(doc.getLength(), matcher.group(2), BOLD_STYLE);
+            } else if (matcher.group(4) != null) {
+                doc.insertString(doc.getLength(), matcher.group(4), ITALIC_STYLE);
+            } else if (matcher.group(6) != null) {
+                doc.insertString(doc.getLength(), " " + matcher.group(6) + " ", CODE_STYLE);
+            } else if (matcher.group(8) != null) {
+                doc.insertString(doc.getLength(), matcher.group(8), STRIKE_STYLE);
+            }
+            lastEnd = matcher.end();
+        }
+
+        if (lastEnd < text.length()) {
+            doc.insertString(doc.getLength(), text.substring(lastEnd), TEXT_STYLE);
+        }
+    }
+
+    static boolean isImageFile(String name) {
+        if (name == null)
+            return false;
+        String lower = name.toLowerCase();
+        return lower.endsWith(".jpg") || lower.endsWith(".png") || lower.endsWith(".gif") || lower.endsWith(".jpeg");
+    }
+
+    // --- Composant ---
+
+    // Messages par emplacement, dans l'ordre d'affichage ; null = retiré
+    private Entry[] slots = new Entry[64];
+    private RowHeights heights = new RowHeights(slots.length);
+    private int used = 0; // emplacements attribués (pleins ou vides)
+    private int head = 0; // premier emplacement éventuellement plein
+    private int live = 0; // messages affichés
+    // ID de message -> entrée affichée
+    private final Map<Long, Entry> byId = new HashMap<>();
+    private final JTextPane stamp = new JTextPane();
+    private final CellRendererPane rendererPane = new CellRendererPane();
+    private int layoutWidth = -1;
+    private boolean scrollPending = false;
+
+    // Sélection : ancre (appui) et extrémité (glissé), position dans le document
+    private final Highlighter.HighlightPainter selectionPainter = new DefaultHighlighter.DefaultHighlightPainter(
+            SELECTION);
+    private Entry anchor;
+    private int anchorOffset;
+    private Entry focus;
+    private int focusOffset;
+
+    private Consumer<Message> imageClickListener;
+    private Consumer<Message> fileClickListener;
+
+    public ChatView() {
+        setOpaque(true);
+        setBackground(BG_DARK);
+        stamp.setEditable(false);
+        stamp.setOpaque(false);
+        stamp.setBorder(null);
+        add(rendererPane);
+        setFocusable(true);
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (!SwingUtilities.isLeftMouseButton(e))
+                    return;
+                requestFocusInWindow();
+                anchor = focus = nearestEntry(e.getY());
+                anchorOffset = focusOffset = anchor != null ? offsetAt(anchor, e.getPoint()) : 0;
+                repaint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (anchor == null || !SwingUtilities.isLeftMouseButton(e))
+                    return;
+                Entry entry = nearestEntry(e.getY());
+                if (entry == null)
+                    return;
+                focus = entry;
+                focusOffset = offsetAt(entry, e.getPoint());
+                scrollRectToVisible(new Rectangle(e.getX(), e.getY(), 1, 1));
+                repaint();
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (!SwingUtilities.isLeftMouseButton(e))
+                    return;
+                Entry entry = entryAt(e.getY());
+                if (entry == null || entry.message.getType() != Message.MessageType.FILE)
+                    return;
+                if (entry.image) {
+                    if (imageClickListener != null)
+                        imageClickListener.accept(entry.message);
+                } else if (fileClickListener != null) {
+                    fileClickListener.accept(entry.message);
+                }
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+
+        Action copy = new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                String text = getSelectedText();
+                if (!text.isEmpty())
+                    Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(text), null);
+            }
+        };
+        getActionMap().put("copy", copy);
+        getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_C, InputEvent.CTRL_DOWN_MASK), "copy");
+        getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_C, InputEvent.META_DOWN_MASK), "copy");
+    }
+
+    public void setImageClickListener(Consumer<Message> listener) {
+        this.imageClickListener = listener;
+    }
+
+    public void setFileClickListener(Consumer<Message> listener) {
+        this.fileClickListener = listener;
+    }
+
+    public void append(Entry entry) {
+        List<Entry> one = new ArrayList<>(1);
+        one.add(entry);
+        appendAll(one);
+    }
+
+    /**
+     * Ajoute plusieurs messages avec une seule remise en page et un seul défilement.
+     */
+    public void appendAll(List<Entry> batch) {
+        // Seuls les derniers MAX_MESSAGES d'un gros lot resteraient affichés
+        for (Entry entry : batch.subList(Math.max(0, batch.size() - MAX_MESSAGES), batch.size())) {
+            if (isShown(entry))
+                continue;
+            entry.measured = false;
+            entry.height = estimate(entry);
+            if (used == slots.length)
+                compact();
+            entry.slot = used++;
+            slots[entry.slot] = entry;
+            heights.add(entry.slot, entry.height);
+            live++;
+            if (entry.message.getId() > 0) {
+                byId.put(entry.message.getId(), entry);
+            }
+            if (entry.pendingThumbnail != null) {
+                entry.pendingThumbnail.thenAccept(
+                        thumb -> SwingUtilities.invokeLater(() -> thumbnailReady(entry, thumb)));
+            }
+        }
+        while (live > MAX_MESSAGES) {
+            Entry oldest = slots[head];
+            if (oldest != null) {
+                byId.remove(oldest.message.getId(), oldest);
+                removeShown(oldest);
+            }
+            head++;
+        }
+        revalidate();
+        repaint();
+        scrollToBottomLater();
+    }
+
+    // Remplace l'emplacement réservé par la miniature décodée
+    private void thumbnailReady(Entry entry, BufferedImage thumb) {
+        if (entry.pendingThumbnail == null)
+            return;
+        entry.pendingThumbnail = null;
+        entry.thumbnail = thumb;
+        if (!isShown(entry))
+            return; // Message retiré ou vue vidée entre-temps
+        Rectangle visible = getVisibleRect();
+        boolean atBottom = visible.y + visible.height >= heights.total() - 2;
+        entry.measured = false;
+        setHeight(entry, estimate(entry));
+        revalidate();
+        repaint();
+        if (atBottom)
+            scrollToBottomLater();
+    }
+
+    public void clear() {
+        anchor = focus = null;
+        for (int i = head; i < used; i++) {
+            if (slots[i] != null)
+                slots[i].slot = -1;
+        }
+        slots = new Entry[64];
+        heights = new RowHeights(slots.length);
+        used = head = live = 0;
+        byId.clear();
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Retire le message portant cet ID.
+     */
+    public boolean remove(long id) {
+        Entry entry = byId.remove(id);
+        if (entry == null)
+            return false;
+        removeShown(entry);
+        revalidate();
+        repaint();
+        return true;
+    }
+
+    /**
+     * Remplace le message portant cet ID (modification), à la même place.
+     */
+    public boolean replace(long id, Entry replacement) {
+        Entry entry = byId.get(id);
+        if (entry == null || isShown(replacement))
+            return false;
+        forgetSelection(entry);
+        replacement.measured = false;
+        replacement.height = estimate(replacement);
+        replacement.slot = entry.slot;
+        slots[entry.slot] = replacement;
+        heights.add(entry.slot, replacement.height - entry.height);
+        entry.slot = -1;
+        byId.put(id, replacement);
+        revalidate();
+        repaint();
+        return true;
+    }
+
+    private boolean isShown(Entry entry) {
+        return entry.slot >= 0 && entry.slot < used && slots[entry.slot] == entry;
+    }
+
+    // Vide l'emplacement du message : les suivants remontent d'eux-mêmes
+    private void removeShown(Entry entry) {
+        forgetSelection(entry);
+        heights.add(entry.slot, -entry.height);
+        slots[entry.slot] = null;
+        entry.slot = -1;
+        live--;
+    }
+
+    private void setHeight(Entry entry, int height) {
+        heights.add(entry.slot, height - entry.height);
+        entry.height = height;
+    }
+
+    /**
+     * Regroupe les messages en tête du tableau (et l'agrandit s'il reste
+     * plein à plus de moitié), puis reconstruit l'arbre des hauteurs en O(n).
+     * Appelé quand le tableau est plein : amorti sur les ajouts.
+     */
+    private void compact() {
+        Entry[] target = live > slots.length / 2 ? new Entry[slots.length * 2] : slots;
+        int[] rowHeights = new int[live];
+        int count = 0;
+        for (int i = head; i < used; i++) {
+            Entry entry = slots[i];
+            if (entry != null) {
+                entry.slot = count;
+                target[count] = entry;
+                rowHeights[count++] = entry.height;
+            }
+        }
+        Arrays.fill(target, count, target.length, null);
+        slots = target;
+        heights = new RowHeights(slots.length, rowHeights, count);
+        used = count;
+        head = 0;
+    }
+
+    // Bord supérieur du message
+    private int topOf(Entry entry) {
+        return heights.top(entry.slot);
+    }
+
+    /**
+     * Texte sélectionné, messages séparés par un retour à la ligne (vide si
+     * rien n'est sélectionné).
+     */
+    public String getSelectedText() {
+        if (anchor == null || focus == null)
+            return "";
+        boolean forward = isBefore(anchor, anchorOffset, focus, focusOffset);
+        Entry first = forward ? anchor : focus;
+        Entry last = forward ? focus : anchor;
+        StringBuilder text = new StringBuilder();
+        for (int i = first.slot; i <= last.slot; i++) {
+            Entry entry = slots[i];
+            int[] range = entry != null ? selectionIn(entry) : null;
+            if (range != null) {
+                if (text.length() > 0)
+                    text.append('\n');
+                try {
+                    text.append(entry.document.getText(range[0], range[1] - range[0]));
+                } catch (BadLocationException e) {
+                    // Document non modifié après création : impossible
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private void forgetSelection(Entry entry) {
+        if (entry == anchor || entry == focus)
+            anchor = focus = null;
+    }
+
+    private static boolean isBefore(Entry a, int offsetA, Entry b, int offsetB) {
+        return a == b ? offsetA <= offsetB : a.slot < b.slot;
+    }
+
+    // Partie sélectionnée du document de ce message [début, fin), ou null
+    private int[] selectionIn(Entry entry) {
+        if (anchor == null || focus == null || (anchor == focus && anchorOffset == focusOffset))
+            return null;
+        boolean forward = isBefore(anchor, anchorOffset, focus, focusOffset);
+        Entry first = forward ? anchor : focus;
+        Entry last = forward ? focus : anchor;
+        if (entry.slot < first.slot || entry.slot > last.slot)
+            return null;
+        int start = entry == first ? (forward ? anchorOffset : focusOffset) : 0;
+        int end = entry == last ? (forward ? focusOffset : anchorOffset) : entry.document.getLength();
+        return start < end ? new int[] { start, end } : null;
+    }
+
+    // Message sous y, ou le plus proche au-dessus/en dessous de la zone
+    private Entry nearestEntry(int y) {
+        if (live == 0)
+            return null;
+        int slot = heights.find(y);
+        return slots[slot < 0 ? heights.find(heights.total() - 1) : slot];
+    }
+
+    // Position dans le document du message sous le point
+    private int offsetAt(Entry entry, Point p) {
+        int top = topOf(entry) + PAD_Y;
+        if (p.y < top)
+            return 0;
+        if (!entry.measured || p.y >= top + entry.textHeight)
+            return entry.document.getLength();
+        stamp.setDocument(entry.document);
+        stamp.setSize(Math.max(1, getWidth() - PAD_LEFT - PAD_RIGHT), entry.textHeight);
+        return Math.max(0, stamp.viewToModel2D(new Point(p.x - PAD_LEFT, p.y - top)));
+    }
+
+    public int getMessageCount() {
+        return live;
+    }
+
+    public Message getMessageAt(Point p) {
+        Entry entry = entryAt(p.y);
+        return entry != null ? entry.message : null;
+    }
+
+    private Entry entryAt(int y) {
+        int slot = y < 0 ? -1 : heights.find(y);
+        return slot < 0 ? null : slots[slot];
+    }
+
+    /**
+     * Hauteur approximative sans mise en page : nombre de paragraphes plus
+     * retours à la ligne estimés d'après la largeur moyenne d'un caractère.
+     */
+    private int estimate(Entry entry) {
+        FontMetrics fm = getFontMetrics(ESTIMATE_FONT);
+        int textWidth = Math.max(1, (layoutWidth > 0 ? layoutWidth : 800) - PAD_LEFT - PAD_RIGHT);
+        int avgChar = Math.max(1, fm.stringWidth("abcdefghij") / 10);
+        int paragraphs = entry.document.getDefaultRootElement().getElementCount();
+        int wrapped = entry.document.getLength() * avgChar / textWidth;
+        int h = (paragraphs + wrapped) * fm.getHeight();
+        return h + extraHeight(entry) + 2 * PAD_Y;
+    }
+
+    private int extraHeight(Entry entry) {
+        if (entry.message.getType() == Message.MessageType.FILE) {
+            if (entry.image && entry.thumbnail != null) {
+                return 4 + entry.thumbnail.getHeight(null);
+            } else if (entry.image && entry.pendingThumbnail != null) {
+                return 4 + PLACEHOLDER_HEIGHT;
+            } else if (!entry.image) {
+                return 4 + FILE_BOX_HEIGHT;
+            }
+        }
+        return 0;
+    }
+
+    private int measure(Entry entry, int width) {
+        int textWidth = Math.max(1, width - PAD_LEFT - PAD_RIGHT);
+        stamp.setDocument(entry.document);
+        stamp.setSize(textWidth, Short.MAX_VALUE);
+        entry.textHeight = stamp.getPreferredSize().height;
+        return entry.textHeight + extraHeight(entry) + 2 * PAD_Y;
+    }
+
+    private void scrollToBottomLater() {
+        if (scrollPending)
+            return;
+        scrollPending = true;
+        SwingUtilities.invokeLater(() -> {
+            scrollPending = false;
+            scrollRectToVisible(new Rectangle(0, Math.max(0, heights.total() - 1), 1, 1));
+        });
+    }
+
+    @Override
+    public void setBounds(int x, int y, int width, int height) {
+        super.setBounds(x, y, width, height);
+        if (width != layoutWidth && width > 0) {
+            // Nouvelle largeur : les hauteurs mesurées ne valent plus, on ré-estime
+            layoutWidth = width;
+            for (int i = head; i < used; i++) {
+                Entry entry = slots[i];
+                if (entry != null) {
+                    entry.measured = false;
+                    entry.height = estimate(entry);
+                }
+            }
+            compact();
+            revalidate();
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(Math.max(layoutWidth, 0), heights.total());
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int first = heights.find(clip.y);
+        if (first < 0)
+            return;
+        int bottom = clip.y + clip.height;
+
+        // Mesure réelle des messages qui deviennent visibles
+        boolean changed = false;
+        int totalBefore = heights.total();
+        int y = heights.top(first);
+        for (int i = first; i < used && y <= bottom; i++) {
+            Entry entry = slots[i];
+            if (entry == null)
+                continue;
+            if (!entry.measured) {
+                int h = measure(entry, getWidth());
+                entry.measured = true;
+                if (h != entry.height) {
+                    setHeight(entry, h);
+                    changed = true;
+                }
+            }
+            y += entry.height;
+        }
+        if (changed) {
+            Rectangle visible = getVisibleRect();
+            boolean atBottom = visible.y + visible.height >= totalBefore - 2;
+            revalidate();
+            if (atBottom)
+                scrollToBottomLater();
+            repaint();
+            return;
+        }
+
+        int textWidth = Math.max(1, getWidth() - PAD_LEFT - PAD_RIGHT);
+        y = heights.top(first);
+        for (int i = first; i < used && y <= bottom; i++) {
+            Entry entry = slots[i];
+            if (entry == null)
+                continue;
+            paintEntry(g, entry, y, textWidth);
+            y += entry.height;
+        }
+    }
+
+    private void paintEntry(Graphics g, Entry entry, int top, int textWidth) {
+        stamp.setDocument(entry.document);
+        int y = top + PAD_Y;
+        Object highlight = null;
+        int[] range = selectionIn(entry);
+        if (range != null) {
+            try {
+                highlight = stamp.getHighlighter().addHighlight(range[0], range[1], selectionPainter);
+            } catch (BadLocationException e) {
+                // Plage issue du même document : impossible
+            }
+        }
+        rendererPane.paintComponent(g, stamp, this, PAD_LEFT, y, textWidth, entry.textHeight, true);
+        if (highlight != null)
+            stamp.getHighlighter().removeHighlight(highlight);
+        y += entry.textHeight + 4;
+
+        if (entry.message.getType() != Message.MessageType.FILE)
+            return;
+
+        if (entry.image) {
+            if (entry.thumbnail != null) {
+                g.drawImage(entry.thumbnail, PAD_LEFT, y, null);
+            } else if (entry.pendingThumbnail != null) {
+                g.setColor(BG_FILE);
+                g.fillRoundRect(PAD_LEFT, y, 200, PLACEHOLDER_HEIGHT, 8, 8);
+                g.setColor(TEXT_GRAY);
+                g.drawString("Chargement de l'image…", PAD_LEFT + 12, y + PLACEHOLDER_HEIGHT / 2);
+            }
+        } else {
+            paintFileBox((Graphics2D) g.create(), entry.message, PAD_LEFT, y);
+        }
+    }
+
+    private void paintFileBox(Graphics2D g2, Message msg, int x, int y) {
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        String label = "📁 " + msg.getFileName() + " ("
+                + (msg.getFileData() != null ? msg.getFileData().length / 1024 + " KB" : "?") + ")";
+        g2.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        FontMetrics fm = g2.getFontMetrics();
+        int boxWidth = Math.max(220, fm.stringWidth(label) + 20);
+
+        g2.setColor(BG_FILE);
+        g2.fillRoundRect(x, y, boxWidth, 28, 6, 6);
+        g2.setColor(BORDER_FILE);
+        g2.drawRoundRect(x, y, boxWidth, 28, 6, 6);
+        g2.setColor(TEXT_NORMAL);
+        g2.drawString(label, x + 10, y + 19);
+
+        // Bouton "Télécharger" (clic géré par fileClickListener)
+        g2.setColor(ACCENT);
+        g2.fillRoundRect(x, y + 34, 190, 28, 10, 10);
+        g2.setColor(Color.WHITE);
+        g2.drawString("⬇ Télécharger le fichier", x + 12, y + 53);
+        g2.dispose();
+    }
+
+    // --- Scrollable ---
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 16;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        Container parent = getParent();
+        return parent instanceof JViewport && parent.getHeight() > heights.total();
+    }
+}
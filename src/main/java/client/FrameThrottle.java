@@ -0,0 +1,61 @@
+package client;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limite une mise à jour d'interface à une exécution par rafraîchissement
+ * d'écran : les demandes reçues entre deux trames sont fusionnées en une seule
+ * exécution sur l'EDT, qui lit alors l'état le plus récent.
+ */
+public class FrameThrottle {
+    public static final int FRAME_MS = frameMillis();
+
+    private final Runnable task;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile long lastRun = 0;
+
+    public FrameThrottle(Runnable task) {
+        this.task = task;
+    }
+
+    /**
+     * Demande une exécution ; sans effet si une exécution est déjà prévue.
+     */
+    public void request() {
+        if (!scheduled.compareAndSet(false, true))
+            return;
+        long wait = FRAME_MS - (System.currentTimeMillis() - lastRun);
+        if (wait <= 0) {
+            SwingUtilities.invokeLater(this::run);
+        } else {
+            Timer timer = new Timer((int) wait, e -> run());
+            timer.setRepeats(false);
+            timer.start();
+        }
+    }
+
+    private void run() {
+        scheduled.set(false);
+        lastRun = System.currentTimeMillis();
+        task.run();
+    }
+
+    private static int frameMillis() {
+        int hz = 60;
+        try {
+            if (!GraphicsEnvironment.isHeadless()) {
+                int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                        .getDisplayMode().getRefreshRate();
+                if (rate != DisplayMode.REFRESH_RATE_UNKNOWN && rate > 0) {
+                    hz = rate;
+                }
+            }
+        } catch (RuntimeException ignored) {
+        }
+        return Math.max(1, 1000 / hz);
+    }
+}
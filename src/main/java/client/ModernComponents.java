@@ -9,6 +9,9 @@ import java.awt.event.MouseEvent;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.RoundRectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class ModernComponents {
 
@@ -19,21 +22,58 @@ public class ModernComponents {
     public static final Color BG_INPUT = new Color(64, 68, 75); // #40444b
     public static final Color TEXT_NORMAL = new Color(220, 221, 222);
 
+    // Palette de couleurs "Discord-like" pour les avatars
+    private static final Color[] AVATAR_COLORS = {
+            new Color(218, 55, 60), // Red
+            new Color(88, 101, 242), // Blue
+            new Color(87, 242, 135), // Green
+            new Color(254, 231, 92), // Yellow
+            new Color(235, 69, 158) // Pink
+    };
+
+    // Les renderers de listes redemandent l'avatar à chaque repaint : on garde
+    // les derniers avatars générés, une table LRU par taille
+    private static final int AVATARS_PER_SIZE = 256;
+    private static final Map<Integer, Map<String, ImageIcon>> avatarCache = new HashMap<>();
+    private static final Map<Integer, Font> avatarFonts = new HashMap<>();
+
     /**
      * Génère un avatar rond avec les initiales et une couleur de fond unique basée
-     * sur le pseudo.
+     * sur le pseudo. Le résultat est mis en cache par (pseudo, taille).
      */
     public static ImageIcon generateAvatar(String username, int size) {
-        int hash = username.hashCode();
-        // Palette de couleurs "Discord-like" pour les avatars
-        Color[] colors = {
-                new Color(218, 55, 60), // Red
-                new Color(88, 101, 242), // Blue
-                new Color(87, 242, 135), // Green
-                new Color(254, 231, 92), // Yellow
-                new Color(235, 69, 158) // Pink
-        };
-        Color bg = colors[Math.abs(hash) % colors.length];
+        Map<String, ImageIcon> bucket;
+        synchronized (avatarCache) {
+            bucket = avatarCache.computeIfAbsent(size, s -> new LinkedHashMap<String, ImageIcon>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ImageIcon> eldest) {
+                    return size() > AVATARS_PER_SIZE;
+                }
+            });
+            ImageIcon cached = bucket.get(username);
+            if (cached != null)
+                return cached;
+        }
+
+        ImageIcon icon = renderAvatar(username, size);
+        synchronized (avatarCache) {
+            bucket.put(username, icon);
+        }
+        return icon;
+    }
+
+    /**
+     * Prépare les avatars d'une liste qui va être affichée (appelable hors EDT).
+     */
+    public static void prewarmAvatars(Iterable<String> usernames, int size) {
+        for (String username : usernames) {
+            generateAvatar(username, size);
+        }
+    }
+
+    // Rendu sans cache (aussi utilisé par les bancs d'essai comme référence)
+    static ImageIcon renderAvatar(String username, int size) {
+        Color bg = AVATAR_COLORS[Math.abs(username.hashCode() % AVATAR_COLORS.length)];
 
         BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2 = img.createGraphics();
@@ -46,7 +86,11 @@ public class ModernComponents {
         // Initiales
         String initial = username.length() > 0 ? username.substring(0, 1).toUpperCase() : "?";
         g2.setColor(Color.WHITE);
-        g2.setFont(new Font("Segoe UI", Font.BOLD, size / 2));
+        Font font;
+        synchronized (avatarCache) {
+            font = avatarFonts.computeIfAbsent(size, s -> new Font("Segoe UI", Font.BOLD, s / 2));
+        }
+        g2.setFont(font);
 
         FontMetrics fm = g2.getFontMetrics();
         int x = (size - fm.stringWidth(initial)) / 2;
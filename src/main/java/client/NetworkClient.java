@@ -1,9 +1,13 @@
 package client;
 
 import common.Message;
+import common.MessageBatch;
+import common.StampedInputStream;
 import java.io.*;
 import java.net.Socket;
-import java.net.SocketException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NetworkClient implements Runnable {
 
@@ -16,7 +20,22 @@ public class NetworkClient implements Runnable {
     private Socket socket;
     private ObjectOutputStream output;
     private ObjectInputStream input;
-    private boolean running;
+    private volatile boolean running;
+    private StampedInputStream rawInput;
+    // Messages tracés par le serveur en attente d'affichage : traceId -> {premier octet, décodé}
+    private final Map<Long, long[]> traced = new ConcurrentHashMap<>();
+    private static final int MAX_TRACED = 256;
+
+    // Reprise de session : jeton et délai de grâce annoncés par le serveur, et
+    // nombre de messages reçus depuis auth_success (le serveur compte pareil)
+    private volatile String resumeToken;
+    private volatile long resumeGraceMs;
+    private long received;
+    // Authentifié sur la connexion courante : envois autorisés
+    private volatile boolean connected;
+    private static final long RECONNECT_MIN_DELAY_MS = 250;
+    private static final long RECONNECT_MAX_DELAY_MS = 5000;
+    private static final long RECONNECT_GIVE_UP_MS = 5 * 60 * 1000;
 
     public NetworkClient(String host, int port, String username, String password, String authMode,
             ChatController controller) {
@@ -31,55 +50,23 @@ public class NetworkClient implements Runnable {
     @Override
     public void run() {
         try {
-            socket = new Socket(host, port);
-            output = new ObjectOutputStream(socket.getOutputStream());
-            output.flush();
-            input = new ObjectInputStream(socket.getInputStream());
-
-            // Handshake
-            try {
-                // 1. Receive "Auth required"
-                Message prompt = (Message) input.readObject();
-                // 2. Send credentials
-                String content = password + ":" + authMode;
-                output.writeObject(new Message(username, content, "auth", Message.MessageType.SYSTEM));
-                output.flush();
-
-                // 3. Wait for Success or Error
-                Message response = (Message) input.readObject();
-                if ("auth_success".equals(response.getChannel())) {
-                    // Success
-                    controller.addSystemMessage("Authentification réussie !");
-                } else {
-                    // Failure (Server likely sent reason in content)
-                    controller.addSystemMessage("Erreur d'authentification: " + response.getContent());
-                    running = false;
-                    socket.close();
-                    return;
-                }
-
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
+            open();
+            // Handshake : identifiants, puis succès ou motif du refus
+            Message response = authenticate(password + ":" + authMode);
+            if (!"auth_success".equals(response.getChannel())) {
+                controller.addSystemMessage("Erreur d'authentification: " + response.getContent());
                 return;
             }
-
+            controller.addSystemMessage("Authentification réussie !");
             running = true;
+            connected = true;
 
-            // Listen loop
-            while (running) {
-                try {
-                    Message msg = (Message) input.readObject();
-                    handleMessage(msg);
-                } catch (EOFException e) {
-                    controller.addSystemMessage("Serveur déconnecté (EOF).");
-                    running = false;
-                } catch (SocketException e) {
-                    if (running)
-                        controller.addSystemMessage("Connexion perdue.");
-                    running = false;
-                }
+            // Réception, puis reconnexion automatique après chaque coupure
+            while (true) {
+                listen();
+                if (!running || !reconnect())
+                    break;
             }
-
         } catch (IOException | ClassNotFoundException e) {
             controller.addSystemMessage("Impossible de se connecter au serveur: " + e.getMessage());
             e.printStackTrace();
@@ -88,7 +75,114 @@ public class NetworkClient implements Runnable {
         }
     }
 
+    // Nouvelle connexion, jusqu'à la demande d'authentification du serveur
+    private void open() throws IOException, ClassNotFoundException {
+        socket = new Socket(host, port);
+        output = new ObjectOutputStream(socket.getOutputStream());
+        output.flush();
+        rawInput = new StampedInputStream(socket.getInputStream());
+        input = new ObjectInputStream(rawInput);
+        input.readObject(); // "Authentification requise"
+    }
+
+    private Message authenticate(String content) throws IOException, ClassNotFoundException {
+        synchronized (this) {
+            output.writeObject(new Message(username, content, "auth", Message.MessageType.SYSTEM));
+            output.flush();
+        }
+        return (Message) input.readObject();
+    }
+
+    // Boucle de réception de la connexion courante, jusqu'à sa coupure
+    private void listen() throws ClassNotFoundException {
+        while (running) {
+            try {
+                rawInput.arm();
+                Message msg = (Message) input.readObject();
+                received++;
+                if (msg.getTraceId() != 0) {
+                    if (traced.size() >= MAX_TRACED) {
+                        traced.clear(); // Messages tracés jamais affichés (autre salon...)
+                    }
+                    traced.put(msg.getTraceId(), new long[] { rawInput.getFirstByteNanos(), System.nanoTime() });
+                }
+                handleMessage(msg);
+            } catch (IOException e) {
+                connected = false;
+                if (running)
+                    controller.addSystemMessage(e instanceof EOFException ? "Serveur déconnecté (EOF)."
+                            : "Connexion perdue.");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reconnexion après une coupure, avec attente croissante entre les essais :
+     * reprise de la session tant que le serveur la garde (seuls les messages
+     * manqués sont renvoyés), sinon connexion complète.
+     */
+    private boolean reconnect() {
+        long lostAt = System.currentTimeMillis();
+        long delay = RECONNECT_MIN_DELAY_MS;
+        controller.addSystemMessage("Reconnexion...");
+        while (running && System.currentTimeMillis() - lostAt < RECONNECT_GIVE_UP_MS) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            delay = Math.min(delay * 2, RECONNECT_MAX_DELAY_MS);
+            closeSocket();
+            try {
+                open();
+                if (resumeToken != null && System.currentTimeMillis() - lostAt < resumeGraceMs) {
+                    Message response = authenticate(resumeToken + ":RESUME:" + received);
+                    if ("auth_success".equals(response.getChannel())) {
+                        connected = true;
+                        controller.addSystemMessage("Connexion rétablie.");
+                        return true;
+                    }
+                }
+                // Session expirée ou serveur redémarré : nouvelle session complète
+                resumeToken = null;
+                Message response = authenticate(password + ":LOGIN");
+                if ("auth_success".equals(response.getChannel())) {
+                    received = 0;
+                    connected = true;
+                    controller.addSystemMessage("Reconnecté.");
+                    controller.onSessionRestarted();
+                    return true;
+                }
+                String reason = String.valueOf(response.getContent());
+                if (!reason.startsWith("Serveur occupé") && !reason.startsWith("Utilisateur déjà connecté")) {
+                    controller.addSystemMessage("Erreur d'authentification: " + reason);
+                    return false;
+                }
+            } catch (IOException | ClassNotFoundException e) {
+                // Serveur injoignable : nouvel essai
+            }
+        }
+        return false;
+    }
+
     private void handleMessage(Message msg) {
+        if (msg.getType() == Message.MessageType.SYSTEM && "session".equals(msg.getChannel())) {
+            // "jeton:délai de grâce en secondes"
+            String[] parts = msg.getContent().split(":");
+            resumeToken = parts[0];
+            resumeGraceMs = parts.length > 1 ? Long.parseLong(parts[1]) * 1000 : 0;
+            return;
+        }
+        if (msg.getType() == Message.MessageType.SYSTEM && "session_end".equals(msg.getChannel())) {
+            // Expulsion, blocage ou flood : pas de reconnexion
+            controller.addSystemMessage(msg.getContent());
+            resumeToken = null;
+            running = false;
+            connected = false;
+            return;
+        }
         if (msg.getType() == Message.MessageType.USER_LIST) {
             String usersCsv = msg.getContent();
             String[] users = usersCsv.split(",");
@@ -131,20 +225,51 @@ public class NetworkClient implements Runnable {
                 controller.showNotification("Message de " + sender, msg.getContent());
             }
         } else if (msg.getType() == Message.MessageType.TYPING) {
-            // Typing indicator
-            String typingUser = msg.getContent();
-            if (!typingUser.equals(controller.getCurrentUser())) {
-                controller.showTypingIndicator(typingUser);
+            if ("typing_dm".equals(msg.getChannel())) {
+                // Typing indicator (DM)
+                String typingUser = msg.getContent();
+                if (!typingUser.equals(controller.getCurrentUser())) {
+                    controller.showTypingIndicator(typingUser);
+                }
+            } else {
+                // Salon : liste complète des pseudos en train d'écrire
+                controller.updateTypingUsers(msg.getChannel(), msg.getContent());
             }
         } else if (msg.getType() == Message.MessageType.DELETE) {
             // Message deletion
-            controller.deleteMessageFromChat(msg.getUsername(), msg.getContent());
+            controller.deleteMessageFromChat(msg.getChannel(), msg.getId());
+        } else if (msg.getType() == Message.MessageType.EDIT) {
+            controller.editMessageInChat(msg);
         } else {
             // Check for call request
             if ("call_request".equals(msg.getChannel())) {
                 String caller = msg.getContent();
                 controller.showIncomingCall(caller);
             }
+            // Voice session issued by /voice_join: "streamId:tokenHex"
+            else if ("voice_session".equals(msg.getChannel())) {
+                String[] parts = msg.getContent().split(":");
+                if (parts.length == 2) {
+                    controller.bindVoiceSession(Integer.parseInt(parts[0]), Long.parseUnsignedLong(parts[1], 16));
+                }
+            } else if ("voice_streams".equals(msg.getChannel())) {
+                controller.updateVoiceStreams(msg.getContent());
+            } else if ("unread_counts".equals(msg.getChannel())) {
+                controller.updateUnreadCounts(msg.getContent());
+            } else if ("history_reset".equals(msg.getChannel())) {
+                controller.resetChannelHistory(msg.getContent());
+            } else if ("dm_backlog".equals(msg.getChannel())) {
+                // Messages privés reçus hors ligne : lot compressé, accusé après décodage
+                try {
+                    List<Message> missed = MessageBatch.unpack(msg.getFileData());
+                    if (!missed.isEmpty()) {
+                        controller.deliverMissedDms(missed);
+                        sendCommand("/dm_ack " + missed.get(missed.size() - 1).getId());
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
             // Check for Roles List special channel name hack (from ClientHandler code)
             else if ("ROLES_LIST".equals(msg.getChannel())) {
                 String rolesCsv = msg.getContent();
@@ -156,32 +281,47 @@ public class NetworkClient implements Runnable {
         }
     }
 
-    public void sendMessage(Message msg) {
+    public synchronized void sendMessage(Message msg) {
         try {
-            if (output != null) {
-                output.writeObject(msg);
-                output.flush();
+            if (!connected) {
+                controller.addSystemMessage("Hors connexion : message non envoyé.");
+                return;
             }
+            output.writeObject(msg);
+            output.flush();
         } catch (IOException e) {
             controller.addSystemMessage("Erreur d'envoi du message.");
             e.printStackTrace();
         }
     }
 
+    /**
+     * Message tracé affiché : renvoie au serveur les durées de réception
+     * (décodage) et d'affichage, en microsecondes.
+     */
+    public void traceRendered(Message msg) {
+        long[] stamps = traced.remove(msg.getTraceId());
+        if (stamps == null)
+            return;
+        long receive = stamps[0] > 0 ? stamps[1] - stamps[0] : 0;
+        sendCommand("/trace " + receive / 1000 + " " + (System.nanoTime() - stamps[1]) / 1000);
+    }
+
     public void sendCommand(String cmd) {
-        // If command is like /join, we wrap it in a system message or chat message
-        // depending on server logic?
-        // Server handles /join in "content" of message regardless of type, but
-        // ClientHandler logic:
-        // "Message msg = (Message) input.readObject(); handleCommand(msg);"
-        // handleCommand uses msg.getContent().
-        // So we can send a SYSTEM or CHAT message with the command in content.
-
-        sendMessage(new Message(username, cmd, "system", Message.MessageType.SYSTEM));
+        // "/nom arguments" en message COMMAND : table de commandes du ClientHandler
+        sendMessage(new Message(username, cmd, "system", Message.MessageType.COMMAND));
     }
 
     public void disconnect() {
+        // Départ volontaire : le serveur ferme la session sans attendre de reprise
+        if (connected)
+            sendCommand("/logout");
         running = false;
+        connected = false;
+        closeSocket();
+    }
+
+    private void closeSocket() {
         try {
             if (socket != null && !socket.isClosed())
                 socket.close();
@@ -0,0 +1,78 @@
+package client;
+
+/**
+ * Hauteurs des lignes d'une liste, en arbre de Fenwick : position verticale
+ * d'une ligne (somme des hauteurs précédentes), changement de hauteur et
+ * recherche de la ligne sous un y, chacun en O(log n). Une ligne vide a une
+ * hauteur nulle et n'est jamais trouvée par find.
+ */
+class RowHeights {
+    private final int[] tree; // indices à partir de 1
+    private int total;
+
+    RowHeights(int capacity) {
+        this.tree = new int[capacity + 1];
+    }
+
+    /**
+     * Construit l'arbre en O(n) à partir des hauteurs des lignes 0..count-1.
+     */
+    RowHeights(int capacity, int[] heights, int count) {
+        this(capacity);
+        // Chaque nœud, une fois complet, remonte sa somme à son parent
+        for (int i = 1; i < tree.length; i++) {
+            if (i <= count) {
+                tree[i] += heights[i - 1];
+                total += heights[i - 1];
+            }
+            int parent = i + (i & -i);
+            if (parent < tree.length)
+                tree[parent] += tree[i];
+        }
+    }
+
+    int capacity() {
+        return tree.length - 1;
+    }
+
+    int total() {
+        return total;
+    }
+
+    void add(int row, int delta) {
+        total += delta;
+        for (int i = row + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Somme des hauteurs des lignes avant row : le y de son bord supérieur.
+     */
+    int top(int row) {
+        int sum = 0;
+        for (int i = row; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Première ligne dont le bas dépasse y (y négatif : première ligne non
+     * vide), ou -1 si y est sous la dernière.
+     */
+    int find(int y) {
+        if (y >= total)
+            return -1;
+        int remaining = Math.max(0, y);
+        int row = 0;
+        for (int step = Integer.highestOneBit(capacity()); step > 0; step >>= 1) {
+            int next = row + step;
+            if (next < tree.length && tree[next] <= remaining) {
+                row = next;
+                remaining -= tree[next];
+            }
+        }
+        return row;
+    }
+}
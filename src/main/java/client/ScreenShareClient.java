@@ -0,0 +1,216 @@
+package client;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connexion au relais de partage d'écran (port 5002). Émet les trames de
+ * l'écran local quand le partage est actif et décode celles des autres
+ * participants du salon vocal. Chaque seconde, les spectateurs renvoient leurs
+ * statistiques à l'émetteur, qui ajuste cadence et qualité.
+ */
+public class ScreenShareClient {
+    private static final int SERVER_PORT = 5002;
+    private static final int MAX_CAPTURE_WIDTH = 1280;
+
+    public interface Listener {
+        void onFrame(int streamId, BufferedImage canvas);
+
+        void onStopped(int streamId);
+    }
+
+    private final VoiceManager voiceManager;
+    private final Listener listener;
+    private final ScreenShareCodec.Encoder encoder = new ScreenShareCodec.Encoder(
+            ScreenShareCodec.DEFAULT_TILE_SIZE);
+    private final ScreenShareCodec.RateController rate = new ScreenShareCodec.RateController();
+    private final Map<Integer, ScreenShareCodec.Decoder> decoders = new ConcurrentHashMap<>();
+
+    private Socket socket;
+    private DataOutputStream output;
+    private volatile boolean connected = false;
+    private volatile boolean sharing = false;
+
+    public ScreenShareClient(VoiceManager voiceManager, Listener listener) {
+        this.voiceManager = voiceManager;
+        this.listener = listener;
+    }
+
+    /**
+     * Se connecte dès que la session vocale est disponible (le StreamId arrive
+     * en TCP peu après l'ouverture de l'appel).
+     */
+    public void connect() {
+        Thread t = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100 && voiceManager.getStreamId() < 0; i++) {
+                    if (!voiceManager.isActive())
+                        return;
+                    Thread.sleep(100);
+                }
+                if (voiceManager.getStreamId() < 0)
+                    return;
+
+                socket = new Socket(voiceManager.getServerHost(), SERVER_PORT);
+                socket.setTcpNoDelay(true);
+                output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                output.writeShort(voiceManager.getStreamId());
+                output.writeLong(voiceManager.getSessionToken());
+                output.flush();
+                connected = true;
+
+                Thread feedback = new Thread(this::feedbackLoop, "ScreenShare-Feedback");
+                feedback.setDaemon(true);
+                feedback.start();
+
+                readLoop(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+            } catch (InterruptedException e) {
+                // Fermeture
+            } catch (IOException e) {
+                if (connected)
+                    System.err.println("[ScreenShare] Connexion perdue: " + e.getMessage());
+            } finally {
+                close();
+            }
+        }, "ScreenShare-Receive");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void readLoop(DataInputStream in) throws IOException {
+        while (connected) {
+            byte type = in.readByte();
+            int from = in.readInt();
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+
+            if (type == 'F') {
+                ScreenShareCodec.Decoder decoder = decoders.computeIfAbsent(from,
+                        k -> new ScreenShareCodec.Decoder());
+                listener.onFrame(from, decoder.decode(payload));
+            } else if (type == 'S') {
+                decoders.remove(from);
+                listener.onStopped(from);
+            } else if (type == 'B') {
+                DataInputStream fb = new DataInputStream(new ByteArrayInputStream(payload));
+                int decoded = fb.readInt();
+                int dropped = fb.readInt();
+                int decodeMs = fb.readInt();
+                boolean wantsKeyframe = fb.readBoolean();
+                rate.onFeedback(decoded, dropped, decodeMs);
+                encoder.setQuality(rate.getQuality());
+                if (wantsKeyframe)
+                    encoder.requestKeyframe();
+            }
+        }
+    }
+
+    private void feedbackLoop() {
+        while (connected) {
+            try {
+                Thread.sleep(1000);
+                for (Map.Entry<Integer, ScreenShareCodec.Decoder> e : decoders.entrySet()) {
+                    int[] stats = e.getValue().drainStats();
+                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                    DataOutputStream out = new DataOutputStream(bos);
+                    out.writeInt(stats[0]);
+                    out.writeInt(stats[1]);
+                    out.writeInt(stats[2]);
+                    out.writeBoolean(e.getValue().needsKeyframe());
+                    send('B', e.getKey(), bos.toByteArray());
+                }
+            } catch (InterruptedException | IOException e) {
+                return;
+            }
+        }
+    }
+
+    public void startSharing(java.util.function.Consumer<BufferedImage> preview) {
+        if (sharing)
+            return;
+        sharing = true;
+        encoder.requestKeyframe();
+
+        Thread t = new Thread(() -> {
+            try {
+                Robot robot = new Robot();
+                Rectangle screenRect = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
+
+                while (sharing) {
+                    long start = System.currentTimeMillis();
+                    BufferedImage frame = downscale(robot.createScreenCapture(screenRect));
+                    if (preview != null)
+                        preview.accept(frame);
+
+                    if (connected) {
+                        byte[] encoded = encoder.encode(frame);
+                        if (encoded != null) {
+                            send('F', 0, encoded);
+                            rate.onFrameSent(encoded.length);
+                        }
+                    }
+
+                    long sleep = 1000 / rate.getFps() - (System.currentTimeMillis() - start);
+                    if (sleep > 0)
+                        Thread.sleep(sleep);
+                }
+            } catch (InterruptedException e) {
+                // Arrêt
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, "ScreenShare-Capture");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void stopSharing() {
+        if (!sharing)
+            return;
+        sharing = false;
+        try {
+            send('S', 0, new byte[0]);
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    private static BufferedImage downscale(BufferedImage capture) {
+        if (capture.getWidth() <= MAX_CAPTURE_WIDTH)
+            return capture;
+        int h = capture.getHeight() * MAX_CAPTURE_WIDTH / capture.getWidth();
+        BufferedImage scaled = new BufferedImage(MAX_CAPTURE_WIDTH, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(capture, 0, 0, MAX_CAPTURE_WIDTH, h, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private void send(char type, int target, byte[] payload) throws IOException {
+        if (!connected)
+            return;
+        synchronized (this) {
+            output.writeByte(type);
+            output.writeInt(target);
+            output.writeInt(payload.length);
+            output.write(payload);
+            output.flush();
+        }
+    }
+
+    public void close() {
+        sharing = false;
+        connected = false;
+        try {
+            if (socket != null && !socket.isClosed())
+                socket.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
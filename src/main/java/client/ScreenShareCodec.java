@@ -0,0 +1,278 @@
+package client;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodage du partage d'écran par tuiles : l'image est découpée en tuiles
+ * carrées, seules celles dont le hash a changé depuis la trame précédente sont
+ * compressées (JPEG) et envoyées. Une trame clé renvoie toutes les tuiles.
+ *
+ * Format d'une trame : [seq (4)] [timestamp (8)] [largeur (2)] [hauteur (2)]
+ * [taille tuile (2)] [clé (1)] [nb tuiles (4)] puis pour chaque tuile
+ * [index (4)] [longueur (4)] [JPEG...].
+ */
+public class ScreenShareCodec {
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    public static class Encoder {
+        private final int tileSize;
+        private final ImageWriter writer;
+        private long[] previousHashes;
+        private int width = -1;
+        private int height = -1;
+        private int sequence = 0;
+        private volatile boolean forceKeyframe = true;
+        private volatile float quality = 0.6f;
+
+        public Encoder(int tileSize) {
+            this.tileSize = tileSize;
+            this.writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        }
+
+        public void requestKeyframe() {
+            forceKeyframe = true;
+        }
+
+        public void setQuality(float quality) {
+            this.quality = quality;
+        }
+
+        /**
+         * Encode une trame ; retourne null si aucune tuile n'a changé.
+         */
+        public byte[] encode(BufferedImage frame) throws IOException {
+            if (frame.getType() != BufferedImage.TYPE_INT_RGB) {
+                BufferedImage rgb = new BufferedImage(frame.getWidth(), frame.getHeight(),
+                        BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = rgb.createGraphics();
+                g.drawImage(frame, 0, 0, null);
+                g.dispose();
+                frame = rgb;
+            }
+
+            int w = frame.getWidth();
+            int h = frame.getHeight();
+            int cols = (w + tileSize - 1) / tileSize;
+            int rows = (h + tileSize - 1) / tileSize;
+
+            if (w != width || h != height) {
+                width = w;
+                height = h;
+                previousHashes = new long[cols * rows];
+                forceKeyframe = true;
+            }
+
+            boolean keyframe = forceKeyframe;
+            forceKeyframe = false;
+
+            // Détection des tuiles modifiées
+            List<Integer> changed = new ArrayList<>();
+            int[] pixels = new int[tileSize * tileSize];
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    int x = col * tileSize;
+                    int y = row * tileSize;
+                    int tw = Math.min(tileSize, w - x);
+                    int th = Math.min(tileSize, h - y);
+                    frame.getRGB(x, y, tw, th, pixels, 0, tw);
+                    long hash = hash(pixels, tw * th);
+                    int index = row * cols + col;
+                    if (keyframe || hash != previousHashes[index]) {
+                        previousHashes[index] = hash;
+                        changed.add(index);
+                    }
+                }
+            }
+
+            if (changed.isEmpty())
+                return null;
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bos);
+            out.writeInt(sequence++);
+            out.writeLong(System.currentTimeMillis());
+            out.writeShort(w);
+            out.writeShort(h);
+            out.writeShort(tileSize);
+            out.writeBoolean(keyframe);
+            out.writeInt(changed.size());
+
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+
+            ByteArrayOutputStream tileBytes = new ByteArrayOutputStream();
+            for (int index : changed) {
+                int x = (index % cols) * tileSize;
+                int y = (index / cols) * tileSize;
+                BufferedImage tile = frame.getSubimage(x, y, Math.min(tileSize, w - x), Math.min(tileSize, h - y));
+
+                tileBytes.reset();
+                try (MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(tileBytes)) {
+                    writer.setOutput(ios);
+                    writer.write(null, new IIOImage(tile, null, null), param);
+                }
+                out.writeInt(index);
+                out.writeInt(tileBytes.size());
+                tileBytes.writeTo(out);
+            }
+            out.flush();
+            return bos.toByteArray();
+        }
+
+        // FNV-1a 64 bits sur les pixels de la tuile
+        private static long hash(int[] pixels, int count) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < count; i++) {
+                h ^= pixels[i];
+                h *= 0x100000001b3L;
+            }
+            return h;
+        }
+    }
+
+    public static class Decoder {
+        private BufferedImage canvas;
+        private int expectedSequence = -1;
+        private boolean needKeyframe = true;
+        private int droppedFrames = 0;
+        private int decodedFrames = 0;
+        private long decodeNanos = 0;
+
+        /**
+         * Applique une trame sur le canevas. Une trame manquante (séquence sautée)
+         * rend le canevas incohérent : on réclame alors une trame clé.
+         */
+        public synchronized BufferedImage decode(byte[] data) throws IOException {
+            long start = System.nanoTime();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            int seq = in.readInt();
+            in.readLong(); // timestamp émetteur (horloge distante, informatif)
+            int w = in.readUnsignedShort();
+            int h = in.readUnsignedShort();
+            int tileSize = in.readUnsignedShort();
+            boolean keyframe = in.readBoolean();
+            int count = in.readInt();
+
+            if (expectedSequence >= 0 && seq > expectedSequence) {
+                droppedFrames += seq - expectedSequence;
+                needKeyframe = true;
+            }
+            expectedSequence = seq + 1;
+
+            if (canvas == null || canvas.getWidth() != w || canvas.getHeight() != h) {
+                canvas = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+                needKeyframe = !keyframe;
+            }
+            if (keyframe) {
+                needKeyframe = false;
+            }
+
+            int cols = (w + tileSize - 1) / tileSize;
+            Graphics2D g = canvas.createGraphics();
+            try {
+                for (int i = 0; i < count; i++) {
+                    int index = in.readInt();
+                    byte[] jpeg = new byte[in.readInt()];
+                    in.readFully(jpeg);
+                    BufferedImage tile = ImageIO.read(new ByteArrayInputStream(jpeg));
+                    if (tile != null) {
+                        g.drawImage(tile, (index % cols) * tileSize, (index / cols) * tileSize, null);
+                    }
+                }
+            } finally {
+                g.dispose();
+            }
+
+            decodedFrames++;
+            decodeNanos += System.nanoTime() - start;
+            return canvas;
+        }
+
+        public synchronized boolean needsKeyframe() {
+            return needKeyframe;
+        }
+
+        /**
+         * Statistiques depuis le dernier appel : [trames décodées, trames perdues,
+         * temps moyen de décodage en ms].
+         */
+        public synchronized int[] drainStats() {
+            int avgMs = decodedFrames == 0 ? 0 : (int) (decodeNanos / decodedFrames / 1_000_000);
+            int[] stats = { decodedFrames, droppedFrames, avgMs };
+            decodedFrames = 0;
+            droppedFrames = 0;
+            decodeNanos = 0;
+            return stats;
+        }
+    }
+
+    /**
+     * Adapte la cadence et la qualité JPEG de l'émetteur à partir des retours
+     * des spectateurs : perte ou décodage trop lent => on baisse, plusieurs
+     * retours sains consécutifs => on remonte progressivement.
+     */
+    public static class RateController {
+        private static final int MIN_FPS = 1;
+        private static final int MAX_FPS = 15;
+        private static final float MIN_QUALITY = 0.2f;
+        private static final float MAX_QUALITY = 0.85f;
+        private static final int MAX_BYTES_PER_SECOND = 1_500_000;
+
+        private int fps = 5;
+        private float quality = 0.6f;
+        private int healthyReports = 0;
+        private long windowStart = System.currentTimeMillis();
+        private long windowBytes = 0;
+
+        public synchronized int getFps() {
+            return fps;
+        }
+
+        public synchronized float getQuality() {
+            return quality;
+        }
+
+        public synchronized void onFeedback(int framesDecoded, int framesDropped, int avgDecodeMs) {
+            boolean congested = framesDropped > 0 || (framesDecoded > 0 && avgDecodeMs > 1000 / fps);
+            if (congested) {
+                healthyReports = 0;
+                fps = Math.max(MIN_FPS, (int) (fps * 0.7));
+                quality = Math.max(MIN_QUALITY, quality - 0.1f);
+            } else if (++healthyReports >= 3) {
+                healthyReports = 0;
+                fps = Math.min(MAX_FPS, fps + 1);
+                quality = Math.min(MAX_QUALITY, quality + 0.05f);
+            }
+        }
+
+        /**
+         * Budget de débit côté émetteur, indépendant des retours.
+         */
+        public synchronized void onFrameSent(int bytes) {
+            long now = System.currentTimeMillis();
+            windowBytes += bytes;
+            if (now - windowStart >= 1000) {
+                if (windowBytes > MAX_BYTES_PER_SECOND) {
+                    quality = Math.max(MIN_QUALITY, quality - 0.1f);
+                }
+                windowStart = now;
+                windowBytes = 0;
+            }
+        }
+    }
+}
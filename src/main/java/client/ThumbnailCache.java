@@ -0,0 +1,141 @@
+package client;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Miniatures des images reçues en pièce jointe, décodées sur un petit pool de
+ * threads et conservées dans un cache LRU indexé par le hash SHA-1 du fichier.
+ * Le cache est borné en octets (largeur x hauteur x 4) : revenir sur un salon
+ * déjà affiché ne redécode aucune image.
+ */
+public final class ThumbnailCache {
+
+    public static final int MAX_WIDTH = 400;
+    private static final long MAX_BYTES = 32L * 1024 * 1024;
+    private static final int WORKERS = 2;
+    private static final int QUEUE_SIZE = 64;
+
+    // Ordre d'accès : l'entrée la plus ancienne est la moins récemment utilisée
+    private static final LinkedHashMap<String, BufferedImage> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private static long cachedBytes = 0;
+
+    // Décodages en cours : une même image reçue plusieurs fois n'est décodée qu'une fois
+    private static final Map<String, CompletableFuture<BufferedImage>> pending = new ConcurrentHashMap<>();
+
+    // File bornée ; si elle est pleine, le thread appelant (réseau) décode lui-même
+    private static final ExecutorService decoder = new ThreadPoolExecutor(WORKERS, WORKERS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(QUEUE_SIZE), r -> {
+                Thread t = new Thread(r, "Thumbnail-Decoder");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private ThumbnailCache() {
+    }
+
+    public static String keyOf(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static synchronized BufferedImage getIfPresent(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Retourne la miniature (immédiatement si elle est en cache) ; la valeur
+     * est null si les données ne sont pas une image lisible.
+     */
+    public static CompletableFuture<BufferedImage> load(String key, byte[] data) {
+        BufferedImage cached = getIfPresent(key);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+
+        CompletableFuture<BufferedImage> future = new CompletableFuture<>();
+        CompletableFuture<BufferedImage> inFlight = pending.putIfAbsent(key, future);
+        if (inFlight != null)
+            return inFlight;
+
+        decoder.execute(() -> {
+            // ImageIO peut lever autre chose qu'une IOException (fichier
+            // malformé, mémoire) : la future doit être complétée quoi qu'il
+            // arrive, sinon l'image reste bloquée dans pending
+            BufferedImage thumb = null;
+            try {
+                thumb = decode(data);
+                if (thumb != null) {
+                    put(key, thumb);
+                }
+            } catch (RuntimeException | Error e) {
+                thumb = null;
+                e.printStackTrace();
+            } finally {
+                pending.remove(key);
+                future.complete(thumb);
+            }
+        });
+        return future;
+    }
+
+    private static synchronized void put(String key, BufferedImage image) {
+        BufferedImage previous = cache.put(key, image);
+        if (previous != null) {
+            cachedBytes -= sizeOf(previous);
+        }
+        cachedBytes += sizeOf(image);
+
+        Iterator<Map.Entry<String, BufferedImage>> it = cache.entrySet().iterator();
+        while (cachedBytes > MAX_BYTES && cache.size() > 1 && it.hasNext()) {
+            Map.Entry<String, BufferedImage> eldest = it.next();
+            cachedBytes -= sizeOf(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    private static BufferedImage decode(byte[] data) {
+        try {
+            BufferedImage src = ImageIO.read(new ByteArrayInputStream(data));
+            if (src == null)
+                return null;
+            if (src.getWidth() <= MAX_WIDTH)
+                return src;
+            int h = Math.max(1, src.getHeight() * MAX_WIDTH / src.getWidth());
+            BufferedImage scaled = new BufferedImage(MAX_WIDTH, h, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = scaled.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(src, 0, 0, MAX_WIDTH, h, null);
+            g.dispose();
+            return scaled;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
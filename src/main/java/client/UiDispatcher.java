@@ -0,0 +1,167 @@
+package client;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * File d'attente des mises à jour d'interface venant du thread réseau.
+ * Au lieu d'un invokeLater par message, les tâches sont accumulées puis
+ * exécutées en une seule passe sur l'EDT, au plus une fois par trame :
+ * - une tâche "coalescée" remplace la précédente de même clé encore en
+ * attente (la dernière liste d'utilisateurs reçue gagne) ;
+ * - les messages de chat consécutifs sont remis d'un bloc au batchSink.
+ * L'ordre relatif des tâches est conservé.
+ */
+public class UiDispatcher<T> {
+    private static final int FRAME_MS = 16;
+    private static final long STATS_INTERVAL_MS = 30_000;
+
+    private final Consumer<List<T>> batchSink;
+    private final Object lock = new Object();
+    // Clé -> tâche ; les tâches non coalescées ont une clé unique
+    private LinkedHashMap<Object, Object> pending = new LinkedHashMap<>();
+    private boolean scheduled = false;
+    private long oldestEnqueueNanos = 0;
+    private volatile long lastFlushMillis = 0;
+
+    // Métriques : latence entre la mise en file et l'exécution sur l'EDT
+    private long flushes = 0;
+    private long tasksRun = 0;
+    private long coalesced = 0;
+    private long totalLatencyNanos = 0;
+    private long maxLatencyNanos = 0;
+    private long lastStatsMillis = System.currentTimeMillis();
+
+    // Élément de chat en attente (distingué des tâches Runnable)
+    private static final class BatchItem<T> {
+        final T item;
+
+        BatchItem(T item) {
+            this.item = item;
+        }
+    }
+
+    public UiDispatcher(Consumer<List<T>> batchSink) {
+        this.batchSink = batchSink;
+    }
+
+    /**
+     * Ajoute un élément au prochain lot (ex. message de chat à afficher).
+     */
+    public void append(T item) {
+        enqueue(new Object(), new BatchItem<>(item));
+    }
+
+    /**
+     * Tâche exécutée telle quelle, dans l'ordre.
+     */
+    public void post(Runnable task) {
+        enqueue(new Object(), task);
+    }
+
+    /**
+     * Tâche remplaçant une éventuelle tâche de même clé pas encore exécutée.
+     */
+    public void coalesce(String key, Runnable task) {
+        enqueue(key, task);
+    }
+
+    private void enqueue(Object key, Object task) {
+        boolean schedule;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                oldestEnqueueNanos = System.nanoTime();
+            }
+            // Retirer puis réinsérer : la tâche prend la place la plus récente
+            if (pending.remove(key) != null) {
+                coalesced++;
+            }
+            pending.put(key, task);
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            long wait = FRAME_MS - (System.currentTimeMillis() - lastFlushMillis);
+            if (wait <= 0) {
+                SwingUtilities.invokeLater(this::flush);
+            } else {
+                Timer timer = new Timer((int) wait, e -> flush());
+                timer.setRepeats(false);
+                timer.start();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void flush() {
+        LinkedHashMap<Object, Object> tasks;
+        long enqueued;
+        synchronized (lock) {
+            tasks = pending;
+            enqueued = oldestEnqueueNanos;
+            pending = new LinkedHashMap<>();
+            scheduled = false;
+        }
+        lastFlushMillis = System.currentTimeMillis();
+        long latency = System.nanoTime() - enqueued;
+
+        List<T> batch = new ArrayList<>();
+        Iterator<Map.Entry<Object, Object>> it = tasks.entrySet().iterator();
+        while (it.hasNext()) {
+            Object task = it.next().getValue();
+            if (task instanceof BatchItem) {
+                batch.add(((BatchItem<T>) task).item);
+                continue;
+            }
+            if (!batch.isEmpty()) {
+                deliver(batch);
+                batch = new ArrayList<>();
+            }
+            try {
+                ((Runnable) task).run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        if (!batch.isEmpty()) {
+            deliver(batch);
+        }
+
+        synchronized (lock) {
+            flushes++;
+            tasksRun += tasks.size();
+            totalLatencyNanos += latency;
+            maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+        }
+        if (Boolean.getBoolean("ui.metrics") && lastFlushMillis - lastStatsMillis >= STATS_INTERVAL_MS) {
+            lastStatsMillis = lastFlushMillis;
+            System.out.println("[UI] " + getStats());
+        }
+    }
+
+    private void deliver(List<T> batch) {
+        try {
+            batchSink.accept(batch);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Résumé des métriques : passes, tâches, tâches fusionnées, latence
+     * moyenne et maximale de la plus ancienne tâche en attente.
+     */
+    public String getStats() {
+        synchronized (lock) {
+            long avgMicros = flushes == 0 ? 0 : totalLatencyNanos / flushes / 1000;
+            return "flushes=" + flushes + " tasks=" + tasksRun + " coalesced=" + coalesced
+                    + " latencyAvg=" + avgMicros / 1000.0 + "ms latencyMax=" + maxLatencyNanos / 1_000_000 + "ms";
+        }
+    }
+}
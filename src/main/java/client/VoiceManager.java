@@ -1,9 +1,12 @@
 package client;
 
+import common.VoicePacket;
 import javax.sound.sampled.*;
 import java.io.IOException;
 import java.io.File;
 import java.net.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public class VoiceManager {
@@ -11,7 +14,11 @@ public class VoiceManager {
     private static final int BUFFER_SIZE = 1024;
     private String serverHost;
     private DatagramSocket socket;
-    private boolean active = false;
+    private volatile boolean active = false;
+    // Incrémenté à chaque entrée et sortie : les threads d'une session
+    // précédente s'arrêtent même si active est repassé à true entre-temps
+    private volatile int generation;
+    private Thread keepAliveThread;
     private boolean muted = false;
     private boolean deafened = false;
 
@@ -35,6 +42,18 @@ public class VoiceManager {
         return active;
     }
 
+    public String getServerHost() {
+        return serverHost;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public long getSessionToken() {
+        return sessionToken;
+    }
+
     private TargetDataLine microphone;
     private SourceDataLine speakers;
 
@@ -51,6 +70,11 @@ public class VoiceManager {
 
     private String username;
 
+    // Session attribuée par le serveur TCP (/voice_join) : -1 tant que non reçue
+    private volatile int streamId = -1;
+    private volatile long sessionToken;
+    private final Map<Integer, String> streamNames = new ConcurrentHashMap<>();
+
     public void joinChannel(String channelName, String username) {
         this.username = username;
         if (active) {
@@ -59,6 +83,7 @@ public class VoiceManager {
 
         try {
             socket = new DatagramSocket();
+            int session = ++generation;
             active = true;
 
             // Audio Format: 8kHz, 16bit, Mono
@@ -86,13 +111,15 @@ public class VoiceManager {
             speakers.start();
             System.out.println("[VoiceManager] Speakers started.");
 
-            // Send Join Packet
-            sendPacket('J', channelName.getBytes());
-            System.out.println("[VoiceManager] Sent JOIN for channel: " + channelName);
+            // Le paquet JOIN part dans bindSession(), une fois le StreamId reçu en TCP
+            System.out.println("[VoiceManager] Waiting voice session for channel: " + channelName);
 
             // Start Threads
-            new Thread(this::captureAudio, "Voice-Capture").start();
-            new Thread(this::playAudio, "Voice-Playback").start();
+            new Thread(() -> captureAudio(session), "Voice-Capture").start();
+            new Thread(() -> playAudio(session), "Voice-Playback").start();
+            keepAliveThread = new Thread(() -> keepAlive(session), "Voice-KeepAlive");
+            keepAliveThread.setDaemon(true);
+            keepAliveThread.start();
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -104,13 +131,20 @@ public class VoiceManager {
         if (!active)
             return;
         active = false;
+        generation++;
+        if (keepAliveThread != null) {
+            keepAliveThread.interrupt();
+            keepAliveThread = null;
+        }
 
         try {
-            sendPacket('L', new byte[0]);
+            sendPacket(VoicePacket.LEAVE, new byte[0]);
             System.out.println("[VoiceManager] Sent LEAVE.");
         } catch (Exception e) {
             // Ignore
         }
+        streamId = -1;
+        streamNames.clear();
 
         if (microphone != null)
             microphone.close();
@@ -121,11 +155,15 @@ public class VoiceManager {
         System.out.println("[VoiceManager] Voice Disconnected.");
     }
 
-    private void captureAudio() {
+    private boolean running(int session) {
+        return active && generation == session;
+    }
+
+    private void captureAudio(int session) {
         byte[] audioData = new byte[900]; // Payload size
 
         System.out.println("[VoiceManager] Capture thread started.");
-        while (active) {
+        while (running(session)) {
             try {
                 int bytesRead = microphone.read(audioData, 0, audioData.length);
                 if (bytesRead > 0) {
@@ -144,7 +182,7 @@ public class VoiceManager {
                             try {
                                 byte[] status = new byte[1];
                                 status[0] = (byte) '0';
-                                sendPacket('T', status);
+                                sendPacket(VoicePacket.TALK, status);
                             } catch (IOException e) {
                                 e.printStackTrace();
                             }
@@ -184,7 +222,7 @@ public class VoiceManager {
                                 // Send TALK status packet: 'T' + 1 or 0
                                 byte[] status = new byte[1];
                                 status[0] = (byte) (isTalking ? '1' : '0');
-                                sendPacket('T', status);
+                                sendPacket(VoicePacket.TALK, status);
                             } catch (IOException e) {
                                 e.printStackTrace();
                             }
@@ -192,9 +230,7 @@ public class VoiceManager {
                     }
 
                     // Send audio data
-                    byte[] validAudio = new byte[bytesRead];
-                    System.arraycopy(audioData, 0, validAudio, 0, bytesRead);
-                    sendPacket('A', validAudio);
+                    sendPacket(VoicePacket.AUDIO, audioData, bytesRead);
                 }
             } catch (IOException e) {
                 if (active)
@@ -212,11 +248,65 @@ public class VoiceManager {
         this.talkingListener = listener;
     }
 
-    private void playAudio() {
+    /**
+     * Lie la session vocale émise par le serveur et envoie le paquet JOIN
+     * authentifié par le token.
+     */
+    public void bindSession(int streamId, long token) {
+        if (!active)
+            return;
+        this.sessionToken = token;
+        this.streamId = streamId;
+        try {
+            sendPacket(VoicePacket.JOIN, VoicePacket.tokenToBytes(token));
+            System.out.println("[VoiceManager] Sent JOIN for stream: " + streamId);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Renvoie périodiquement le token : garde la session vivante côté serveur
+     * (même micro coupé) et ré-associe l'adresse si le NAT a changé de port.
+     */
+    private void keepAlive(int session) {
+        while (running(session)) {
+            try {
+                Thread.sleep(VoicePacket.KEEPALIVE_INTERVAL_MS);
+                if (running(session) && streamId >= 0) {
+                    sendPacket(VoicePacket.KEEPALIVE, VoicePacket.tokenToBytes(sessionToken));
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (active)
+                    e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Met à jour la table StreamId -> pseudo (format "id:user,id:user").
+     */
+    public void updateStreamNames(String streamsCsv) {
+        if (streamsCsv == null || streamsCsv.isEmpty())
+            return;
+        for (String entry : streamsCsv.split(",")) {
+            String[] parts = entry.split(":", 2);
+            if (parts.length == 2) {
+                try {
+                    streamNames.put(Integer.parseInt(parts[0]), parts[1]);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+    }
+
+    private void playAudio(int session) {
         byte[] buffer = new byte[BUFFER_SIZE];
 
         System.out.println("[VoiceManager] Playback thread started.");
-        while (active) {
+        while (running(session)) {
             try {
                 DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
                 socket.receive(packet); // Blocking
@@ -224,25 +314,20 @@ public class VoiceManager {
                 byte[] data = packet.getData();
                 int len = packet.getLength();
 
-                if (len < 2)
+                if (len < VoicePacket.HEADER_SIZE)
                     continue; // Too short
 
                 char type = (char) data[0];
-                int nameLen = data[1] & 0xFF; // Unsigned byte
-
-                if (len < 2 + nameLen)
-                    continue; // Invalid
-
-                String senderName = new String(data, 2, nameLen);
-                int payloadStart = 2 + nameLen;
+                int payloadStart = VoicePacket.HEADER_SIZE;
                 int payloadLen = len - payloadStart;
 
-                if (type == 'A') {
+                if (type == VoicePacket.AUDIO) {
                     if (payloadLen > 0 && !deafened)
                         speakers.write(data, payloadStart, payloadLen);
-                } else if (type == 'T') {
+                } else if (type == VoicePacket.TALK) {
                     // Parse '1' or '0'
-                    if (payloadLen > 0) {
+                    String senderName = streamNames.get(VoicePacket.readStreamId(data));
+                    if (payloadLen > 0 && senderName != null) {
                         boolean isTalking = (data[payloadStart] == '1');
                         if (talkingListener != null) {
                             talkingListener.accept(senderName, isTalking);
@@ -313,11 +398,9 @@ public class VoiceManager {
                 }
 
                 while ((bytesRead = audioIn.read(buffer)) != -1 && active) {
-                    byte[] data = new byte[bytesRead];
-                    System.arraycopy(buffer, 0, data, 0, bytesRead);
-                    sendPacket('A', data);
+                    sendPacket(VoicePacket.AUDIO, buffer, bytesRead);
                     if (localSfxLine != null) {
-                        localSfxLine.write(data, 0, bytesRead);
+                        localSfxLine.write(buffer, 0, bytesRead);
                     }
                     Thread.sleep(sleep);
                 }
@@ -330,14 +413,15 @@ public class VoiceManager {
     }
 
     private void sendPacket(char type, byte[] content) throws IOException {
-        byte[] nameBytes = username.getBytes();
-        int nameLen = nameBytes.length;
-
-        byte[] data = new byte[1 + 1 + nameLen + content.length];
-        data[0] = (byte) type;
-        data[1] = (byte) nameLen;
-        System.arraycopy(nameBytes, 0, data, 2, nameLen);
-        System.arraycopy(content, 0, data, 2 + nameLen, content.length);
+        sendPacket(type, content, content.length);
+    }
+
+    private void sendPacket(char type, byte[] content, int length) throws IOException {
+        int id = streamId;
+        if (id < 0)
+            return; // Pas encore de session vocale
+
+        byte[] data = VoicePacket.build(type, id, content, 0, length);
 
         DatagramPacket packet = new DatagramPacket(
                 data,
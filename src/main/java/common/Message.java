@@ -11,10 +11,13 @@ public class Message implements Serializable {
     private String channel;
     private LocalDateTime timestamp;
     private MessageType type;
+    private long id; // Identifiant en base (0 si non persisté)
+    private boolean edited;
+    private long traceId; // Trace de latence échantillonnée (0 si non tracé)
 
     public enum MessageType {
         CHAT, SYSTEM, PRIVATE, FILE, USER_LIST, CHANNEL_LIST, CHANNEL_USERS, STATUS_UPDATE, SERVER_LIST, CREATE_SERVER,
-        FRIEND_LIST, FRIEND_REQUEST, FRIEND_UPDATE, USER_INFO, TYPING, EDIT, DELETE
+        FRIEND_LIST, FRIEND_REQUEST, FRIEND_UPDATE, USER_INFO, TYPING, EDIT, DELETE, COMMAND
     }
 
     private byte[] fileData;
@@ -64,6 +67,30 @@ public class Message implements Serializable {
         return type;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public boolean isEdited() {
+        return edited;
+    }
+
+    public void setEdited(boolean edited) {
+        this.edited = edited;
+    }
+
+    public long getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(long traceId) {
+        this.traceId = traceId;
+    }
+
     public byte[] getFileData() {
         return fileData;
     }
@@ -0,0 +1,57 @@
+package common;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Flux d'entrée qui note l'instant (System.nanoTime()) du premier octet lu
+ * après arm() : placé sous l'ObjectInputStream, il date le début de réception
+ * du message suivant, pour séparer l'attente du réseau du décodage.
+ *
+ * À utiliser depuis le seul thread de lecture.
+ */
+public class StampedInputStream extends FilterInputStream {
+    private boolean armed;
+    private long firstByteNanos;
+
+    public StampedInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Le prochain octet lu sera daté.
+     */
+    public void arm() {
+        armed = true;
+        firstByteNanos = 0;
+    }
+
+    /**
+     * Instant du premier octet lu depuis arm(), 0 si aucun.
+     */
+    public long getFirstByteNanos() {
+        return firstByteNanos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (armed && b >= 0)
+            stamp();
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (armed && n > 0)
+            stamp();
+        return n;
+    }
+
+    private void stamp() {
+        firstByteNanos = System.nanoTime();
+        armed = false;
+    }
+}
@@ -0,0 +1,58 @@
+package common;
+
+/**
+ * Format des paquets vocaux UDP partagé entre client et serveur.
+ *
+ * Chaque paquet commence par [Type (1)] [StreamId (2, big-endian)] suivi du
+ * payload. Le StreamId est attribué par le serveur TCP lors de /voice_join et
+ * remplace le pseudo qui était répété dans chaque trame.
+ */
+public final class VoicePacket {
+    public static final char JOIN = 'J';
+    public static final char LEAVE = 'L';
+    public static final char AUDIO = 'A';
+    public static final char TALK = 'T';
+    public static final char KEEPALIVE = 'K';
+
+    public static final int HEADER_SIZE = 3;
+    public static final int TOKEN_SIZE = 8;
+    public static final int MAX_STREAMS = 1 << 16;
+
+    // Le client envoie un KEEPALIVE (même format que JOIN) à cet intervalle ;
+    // le serveur évince une session muette depuis SESSION_TIMEOUT_MS.
+    public static final long KEEPALIVE_INTERVAL_MS = 5000;
+    public static final long SESSION_TIMEOUT_MS = 15000;
+
+    private VoicePacket() {
+    }
+
+    public static byte[] build(char type, int streamId, byte[] payload, int offset, int length) {
+        byte[] data = new byte[HEADER_SIZE + length];
+        data[0] = (byte) type;
+        data[1] = (byte) (streamId >> 8);
+        data[2] = (byte) streamId;
+        System.arraycopy(payload, offset, data, HEADER_SIZE, length);
+        return data;
+    }
+
+    public static int readStreamId(byte[] data) {
+        return ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+    }
+
+    public static byte[] tokenToBytes(long token) {
+        byte[] out = new byte[TOKEN_SIZE];
+        for (int i = TOKEN_SIZE - 1; i >= 0; i--) {
+            out[i] = (byte) token;
+            token >>= 8;
+        }
+        return out;
+    }
+
+    public static long readToken(byte[] data, int offset) {
+        long token = 0;
+        for (int i = 0; i < TOKEN_SIZE; i++) {
+            token = (token << 8) | (data[offset + i] & 0xFF);
+        }
+        return token;
+    }
+}
@@ -0,0 +1,77 @@
+package server;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contrôle d'admission des nouvelles sessions. Après un redémarrage du
+ * serveur, tous les clients se reconnectent en même temps : plutôt que de
+ * lancer des centaines d'authentifications et de mises en place de session en
+ * parallèle (requêtes SQLite, historique, listes), les connexions font la
+ * queue dès réception de leurs identifiants.
+ *
+ * Les admissions sont lissées à -Dadmission.rate (sessions par seconde:rafale,
+ * 200:50 par défaut) et au plus -Dadmission.maxConcurrent sessions (8) sont
+ * en cours d'ouverture, dans l'ordre d'arrivée. Une connexion qui attendrait
+ * plus de -Dadmission.queueTimeoutMs (30 s) est refusée : le client réessaie.
+ */
+public class AdmissionControl {
+    private static final int MAX_CONCURRENT = Math.max(1, Integer.getInteger("admission.maxConcurrent", 8));
+    private static final long QUEUE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(Long.getLong("admission.queueTimeoutMs", 30_000L));
+
+    // Renvoyé par enter() quand la connexion doit être refusée
+    public static final long REFUSED = Long.MIN_VALUE;
+
+    private static final Semaphore permits = new Semaphore(MAX_CONCURRENT, true);
+    private static final RateLimiter.Bucket pacing = new RateLimiter.Bucket(
+            RateLimiter.Policy.of("admission.rate", "200:50"));
+    private static final AtomicInteger waiting = new AtomicInteger();
+
+    private static final Metrics.Histogram WAIT = Metrics.histogram("admission_wait");
+    private static final Metrics.Histogram SETUP = Metrics.histogram("admission_setup");
+    private static final Metrics.Counter REJECTED = Metrics.counter("admission_rejected");
+
+    static {
+        Metrics.gauge("admission_waiting", waiting::get);
+        Metrics.gauge("admission_active", () -> MAX_CONCURRENT - permits.availablePermits());
+    }
+
+    private AdmissionControl() {
+    }
+
+    /**
+     * Attend son tour. Renvoie l'instant d'admission, à rendre à leave() une
+     * fois la session ouverte (ou refusée), ou REFUSED si l'attente dépasse
+     * le délai : la connexion doit alors être refusée.
+     */
+    public static long enter() throws InterruptedException {
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            long delay = pacing.reserve(start);
+            if (delay >= QUEUE_TIMEOUT_NANOS) {
+                REJECTED.inc();
+                return REFUSED;
+            }
+            if (delay > 0)
+                TimeUnit.NANOSECONDS.sleep(delay);
+            long remaining = QUEUE_TIMEOUT_NANOS - (System.nanoTime() - start);
+            if (!permits.tryAcquire(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                REJECTED.inc();
+                return REFUSED;
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+        long admitted = System.nanoTime();
+        WAIT.record(admitted - start);
+        return admitted;
+    }
+
+    public static void leave(long admitted) {
+        SETUP.recordSince(admitted);
+        permits.release();
+    }
+}
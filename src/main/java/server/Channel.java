@@ -3,13 +3,25 @@ package server;
 import common.Message;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Channel {
+    private static final int HISTORY_SIZE = 50;
+    private static final Metrics.Histogram FANOUT = Metrics.histogram("broadcast_fanout");
+    private static final Metrics.Counter FANOUT_RECIPIENTS = Metrics.counter("broadcast_recipients");
+    private static final Metrics.Counter THROTTLED = Metrics.counter("ratelimit_throttled_channel");
+    private static final Metrics.Counter SLOWMODE = Metrics.counter("ratelimit_slowmode");
+
     private String name;
     private String type; // TEXT or VOICE
     private String serverName;
     private Set<ClientHandler> members = ConcurrentHashMap.newKeySet();
     private List<Message> history = new ArrayList<>();
+    // Débit total du salon et mode lent (intervalle minimal par utilisateur, 0 = désactivé)
+    private final RateLimiter.Bucket rateLimit = RateLimiter.newChannelBucket();
+    private volatile long slowModeNanos;
+    private final Map<String, AtomicLong> lastPost = new ConcurrentHashMap<>();
 
     public Channel(String name, String type, String serverName) {
         this.name = name;
@@ -33,38 +45,111 @@ public class Channel {
         return members;
     }
 
+    public int getSlowModeSeconds() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(slowModeNanos);
+    }
+
+    public void setSlowModeSeconds(int seconds) {
+        slowModeNanos = TimeUnit.SECONDS.toNanos(Math.max(0, seconds));
+        if (seconds <= 0) {
+            lastPost.clear();
+        }
+    }
+
+    /**
+     * Contrôle d'un message avant diffusion : null s'il est accepté, sinon le
+     * motif du refus (mode lent ou salon saturé).
+     */
+    public String admit(String username, long now) {
+        long interval = slowModeNanos;
+        AtomicLong last = null;
+        long previous = 0;
+        if (interval > 0) {
+            last = lastPost.computeIfAbsent(username, k -> new AtomicLong(now - interval));
+            previous = last.get();
+            if (now - previous < interval) {
+                SLOWMODE.inc();
+                long wait = TimeUnit.NANOSECONDS.toSeconds(interval - (now - previous)) + 1;
+                return "Mode lent dans #" + name + " : encore " + wait + " s avant votre prochain message.";
+            }
+        }
+        if (!rateLimit.tryAcquire(now)) {
+            THROTTLED.inc();
+            return "Le salon #" + name + " reçoit trop de messages, réessayez dans un instant.";
+        }
+        if (last != null && !last.compareAndSet(previous, now)) {
+            SLOWMODE.inc(); // Deux messages simultanés du même utilisateur
+            return "Mode lent dans #" + name + ".";
+        }
+        return null;
+    }
+
     public void broadcast(Message msg) {
         // Sauvegarder uniquement les messages de chat
         if (msg.getType() == Message.MessageType.CHAT || msg.getType() == Message.MessageType.FILE) {
+            MessageTrace.persistStart();
             DatabaseManager.saveMessage(msg);
+            MessageTrace.persistEnd();
+            ReadStateTracker.onMessage(name, msg.getId(), members);
         }
         history.add(msg); // Garder en mémoire pour session courante (optionnel maintenance)
+        MessageTrace.fanoutStart(msg);
+        long start = System.nanoTime();
         members.forEach(member -> member.sendMessage(msg));
+        FANOUT.recordSince(start);
+        MessageTrace.fanoutEnd();
+        FANOUT_RECIPIENTS.add(members.size());
     }
 
     public void addMember(ClientHandler client) {
+        addMember(client, 0);
+    }
+
+    /**
+     * Ajoute un membre en ne lui envoyant que les messages postérieurs à
+     * sinceId (dernier message déjà en cache côté client, 0 si aucun).
+     */
+    public void addMember(ClientHandler client, long sinceId) {
         // Envoyer l'historique
-        List<Message> savedHistory = DatabaseManager.getLastMessages(name, 50);
+        List<Message> savedHistory;
+        if (sinceId > 0) {
+            savedHistory = DatabaseManager.getMessagesSince(name, sinceId, HISTORY_SIZE + 1);
+            if (savedHistory.size() > HISTORY_SIZE) {
+                // Trou trop grand : le client repart des derniers messages
+                savedHistory = savedHistory.subList(1, savedHistory.size());
+                client.sendMessage(new Message("System", name, "history_reset", Message.MessageType.SYSTEM));
+            }
+        } else {
+            savedHistory = DatabaseManager.getLastMessages(name, HISTORY_SIZE);
+        }
         for (Message m : savedHistory) {
             client.sendMessage(m);
         }
+        // Le client a maintenant tout vu jusqu'au dernier message envoyé (ou déjà en cache)
+        long readUpTo = savedHistory.isEmpty() ? sinceId : savedHistory.get(savedHistory.size() - 1).getId();
+        ReadStateTracker.markRead(client.getUsername(), name, readUpTo);
 
         members.add(client);
         // broadcast(new Message("System", client.getUsername() + " a rejoint #" + name,
         // name, Message.MessageType.SYSTEM));
 
-        // Broadcast updated member list for this channel
-        broadcastMemberList();
+        // Liste des membres mise à jour au prochain envoi groupé
+        RosterBatcher.channelMembersChanged(this);
     }
 
     public void removeMember(ClientHandler client) {
         members.remove(client);
         // broadcast(new Message("System", client.getUsername() + " a quitté #" + name,
         // name, Message.MessageType.SYSTEM));
-        broadcastMemberList();
+        RosterBatcher.channelMembersChanged(this);
     }
 
-    private void broadcastMemberList() {
+    void broadcastMemberList() {
+        // Pour un salon vocal, la liste fait foi côté VoiceServer (sessions UDP actives)
+        if ("VOICE".equals(type)) {
+            Server.broadcastVoiceRoster(name);
+            return;
+        }
         StringBuilder sb = new StringBuilder();
         for (ClientHandler m : members) {
             if (sb.length() > 0)
@@ -1,16 +1,89 @@
 package server;
 
 import common.Message;
+import common.MessageBatch;
+import common.StampedInputStream;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 public class ClientHandler implements Runnable {
-    private Socket socket;
+    private volatile Socket socket;
     private ObjectInputStream input;
+    private StampedInputStream rawInput;
     private ObjectOutputStream output;
     private String username;
     private Channel currentChannel;
+    // IDs des messages privés du dernier lot hors ligne, en attente d'accusé
+    private final List<Long> deliveredDmIds = new ArrayList<>();
+
+    private static final int DM_BACKLOG_BATCH = 500;
+
+    private static final Metrics.Counter[] MESSAGES_IN = Metrics.counterPerType("messages_in");
+    private static final Metrics.Counter[] MESSAGES_OUT = Metrics.counterPerType("messages_out");
+    private static final Metrics.Histogram SOCKET_WRITE = Metrics.histogram("socket_write");
+    private static final Metrics.Counter[] THROTTLED = new Metrics.Counter[RateLimiter.Kind.values().length];
+    private static final Metrics.Counter FLOOD_DISCONNECTS = Metrics.counter("ratelimit_flood_disconnects");
+    private static final long NOTICE_INTERVAL_NANOS = 1_000_000_000L;
+
+    static {
+        for (RateLimiter.Kind kind : RateLimiter.Kind.values()) {
+            THROTTLED[kind.ordinal()] = Metrics.counter("ratelimit_throttled_" + kind.name().toLowerCase());
+        }
+    }
+
+    // Limitation de débit : un seau par classe, refus tolérés avant déconnexion
+    private final RateLimiter.Bucket[] rateBuckets = RateLimiter.newClientBuckets();
+    private final RateLimiter.Bucket strikes = RateLimiter.newStrikeBucket();
+    private long lastThrottleNotice;
+    private boolean flooding;
+    // Envois en cours ou en attente du verrou d'écriture de ce client
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    // Ouverture de session en cours (place réservée dans AdmissionControl)
+    private boolean admitted;
+    private long admittedAt;
+    private DatabaseManager.LoginInfo loginInfo;
+
+    // Reprise de session : après une coupure, la session (présence, salon,
+    // vocal) est conservée RESUME_GRACE_SECONDS ; le client se reconnecte avec
+    // son jeton et le nombre de messages reçus, seuls les manquants sont renvoyés.
+    private static final long RESUME_GRACE_SECONDS = Long.getLong("session.resumeSeconds", 30L);
+    private static final String RESUME_MODE = "RESUME:";
+    private static final SecureRandom TOKENS = new SecureRandom();
+    private static final ScheduledExecutorService SESSION_TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Sessions");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicInteger DETACHED_SESSIONS = new AtomicInteger();
+    private static final Metrics.Counter RESUMED = Metrics.counter("session_resumed");
+    private static final Metrics.Counter RESUME_REFUSED = Metrics.counter("session_resume_refused");
+    private static final Metrics.Counter EXPIRED = Metrics.counter("session_expired");
+    private static final Metrics.Counter REPLAYED = Metrics.counter("session_replayed_messages");
+
+    static {
+        Metrics.gauge("sessions_detached", DETACHED_SESSIONS::get);
+    }
+
+    private String resumeToken;
+    private final OutboundBuffer outbox = new OutboundBuffer();
+    // Connexion courante (incrémentée à chaque reprise), sous le verrou d'écriture
+    private int generation;
+    private boolean detached;
+    private boolean closed;
+    private ScheduledFuture<?> expiry;
 
     public ClientHandler(Socket socket) {
         this.socket = socket;
@@ -18,11 +91,15 @@ public class ClientHandler implements Runnable {
 
     @Override
     public void run() {
+        // Session servie par cette connexion : celle-ci, ou une session reprise
+        ClientHandler session = null;
+        int sessionGeneration = 0;
         try {
             output = new ObjectOutputStream(socket.getOutputStream());
             // Flush header immediately to avoid blocking on client side input creation
             output.flush();
-            input = new ObjectInputStream(socket.getInputStream());
+            rawInput = new StampedInputStream(socket.getInputStream());
+            input = new ObjectInputStream(rawInput);
 
             // Authentification
             output.writeObject(new Message("System", "Authentification requise", "auth", Message.MessageType.SYSTEM));
@@ -50,41 +127,43 @@ public class ClientHandler implements Runnable {
                         password = content;
                     }
 
-                    if ("REGISTER".equals(mode)) {
-                        if (DatabaseManager.userExists(candidatesUsername)) {
-                            output.writeObject(
-                                    new Message("System", "Ce pseudo est déjà utilisé. Essayez de vous connecter.",
-                                            "auth", Message.MessageType.SYSTEM));
-                            output.flush();
-                            continue;
-                        }
-                        DatabaseManager.registerUser(candidatesUsername, password);
-                    } else {
-                        // LOGIN
-                        if (!DatabaseManager.userExists(candidatesUsername)) {
-                            // Optionally auto-register if we want lazy-registration?
-                            // User asked for account creation system, so we should be strict.
-                            output.writeObject(new Message("System", "Compte inexistant. Veuillez vous inscrire.",
-                                    "auth", Message.MessageType.SYSTEM));
-                            output.flush();
-                            continue;
-                        }
-                        if (!DatabaseManager.authenticateUser(candidatesUsername, password)) {
-                            output.writeObject(new Message("System", "Mot de passe incorrect.", "auth",
+                    // "jeton:RESUME:dernierNuméro" : reprise sans base ni file d'admission
+                    if (mode.startsWith(RESUME_MODE)) {
+                        ClientHandler previous = Server.clients.get(candidatesUsername);
+                        int resumed = previous == null ? -1
+                                : previous.resume(this, password, mode.substring(RESUME_MODE.length()));
+                        if (resumed < 0) {
+                            RESUME_REFUSED.inc();
+                            output.writeObject(new Message("System", "Session expirée.", "auth",
                                     Message.MessageType.SYSTEM));
                             output.flush();
                             continue;
                         }
+                        session = previous;
+                        sessionGeneration = resumed;
+                        break;
+                    }
+
+                    // Attente de son tour avant tout accès à la base
+                    admittedAt = AdmissionControl.enter();
+                    if (admittedAt == AdmissionControl.REFUSED) {
+                        output.writeObject(new Message("System", "Serveur occupé, réessayez dans un instant.",
+                                "auth", Message.MessageType.SYSTEM));
+                        output.flush();
+                        return;
                     }
+                    admitted = true;
 
-                    if (Server.clients.containsKey(candidatesUsername)) {
-                        output.writeObject(new Message("System", "Utilisateur déjà connecté.", "auth",
-                                Message.MessageType.SYSTEM));
+                    String error = checkCredentials(candidatesUsername, password, mode);
+                    if (error != null) {
+                        leaveAdmission();
+                        output.writeObject(new Message("System", error, "auth", Message.MessageType.SYSTEM));
                         output.flush();
                         continue;
                     }
 
                     this.username = candidatesUsername;
+                    this.resumeToken = newResumeToken();
                     output.writeObject(new Message("System", "Authentification réussie", "auth_success",
                             Message.MessageType.SYSTEM));
                     output.flush();
@@ -96,403 +175,834 @@ public class ClientHandler implements Runnable {
                 }
             }
 
-            Server.registerClient(username, this);
-
-            // Vérifier/Accorder droits si localhost
-            InetAddress addr = socket.getInetAddress();
-            if (addr.isLoopbackAddress() || addr.getHostAddress().equals("127.0.0.1")
-                    || addr.getHostAddress().equals("0:0:0:0:0:0:0:1")) {
-                // DatabaseManager.setCanCreateChannel(username, true); // Legacy
-                // Always ensure localhost has Admin role
-                if (!DatabaseManager.hasPermission(username, "perm_manage_roles")) {
-                    DatabaseManager.assignRole(username, "Admin");
-                    System.out.println("Role Admin accordé automatiquement à " + username + " (Localhost)");
-                }
+            if (session == null) {
+                openSession();
+                session = this;
             }
-
-            // Vérifier si bloqué
-            if (DatabaseManager.isBlocked(username)) {
-                output.writeObject(new Message("System", "Vous êtes bloqué.", "auth", Message.MessageType.SYSTEM));
+        } catch (IOException e) {
+            System.err.println("Communication error with " + username + ": " + e.getMessage());
+        } finally {
+            leaveAdmission();
+            if (session == null)
                 disconnect();
-                return;
+        }
+
+        // Boucle de réception, sur ce thread même pour une session reprise
+        if (session != null)
+            session.serve(sessionGeneration);
+    }
+
+    /**
+     * Mise en place d'une nouvelle session : présence, droits, non-lus,
+     * messages privés en attente, #general, listes.
+     */
+    private void openSession() {
+        // Premier message numéroté : jeton de reprise et délai de grâce
+        sendMessage(new Message("System", resumeToken + ":" + RESUME_GRACE_SECONDS, "session",
+                Message.MessageType.SYSTEM));
+
+        Server.registerClient(username, this);
+
+        // Vérifier/Accorder droits si localhost
+        InetAddress addr = socket.getInetAddress();
+        if (addr.isLoopbackAddress() || addr.getHostAddress().equals("127.0.0.1")
+                || addr.getHostAddress().equals("0:0:0:0:0:0:0:1")) {
+            // DatabaseManager.setCanCreateChannel(username, true); // Legacy
+            // Always ensure localhost has Admin role
+            if (!loginInfo.admin) {
+                DatabaseManager.assignRole(username, "Admin");
+                System.out.println("Role Admin accordé automatiquement à " + username + " (Localhost)");
             }
+        }
+
+        System.out.println("Client enregistré: " + username);
+
+        // Positions de lecture et compteurs de non-lus
+        ReadStateTracker.load(this);
 
-            System.out.println("Client enregistré: " + username);
+        // Messages privés reçus hors ligne, en un seul envoi
+        sendDmBacklog();
 
-            // Rejoindre le général par défaut
-            joinChannel("general");
+        // Rejoindre le général par défaut
+        joinChannel("general", 0);
 
-            // Envoyer la liste des salons
-            Server.broadcastChannelList();
-            Server.broadcastServerList();
+        // Envoyer la liste des salons et des serveurs (au nouveau client seulement)
+        Server.sendChannelList(this);
+        Server.sendServerList(this);
 
-            // Boucle de réception
+        // Session ouverte : place libérée pour la connexion suivante
+        leaveAdmission();
+    }
+
+    /**
+     * Boucle de réception de la connexion n° gen ; s'arrête à la coupure ou
+     * quand une reprise a remplacé cette connexion.
+     */
+    private void serve(int gen) {
+        ObjectInputStream in;
+        StampedInputStream raw;
+        synchronized (this) {
+            if (gen != generation)
+                return;
+            in = input;
+            raw = rawInput;
+        }
+        try {
             while (true) {
-                Message msg = (Message) input.readObject();
-                if (msg.getType() == Message.MessageType.CREATE_SERVER) {
-                    Server.createServer(msg.getContent());
-                } else {
-                    handleCommand(msg);
+                raw.arm();
+                Message msg = (Message) in.readObject();
+                MESSAGES_IN[msg.getType().ordinal()].inc();
+                if (!admit(msg)) {
+                    if (flooding)
+                        break;
+                    continue;
+                }
+                MessageTrace.begin(raw.getFirstByteNanos(), System.nanoTime());
+                try {
+                    if (msg.getType() == Message.MessageType.CREATE_SERVER) {
+                        Server.createServer(msg.getContent());
+                    } else {
+                        handleMessage(msg);
+                    }
+                } finally {
+                    MessageTrace.end();
                 }
             }
         } catch (EOFException e) {
             // Client disconnected gracefully-ish
         } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Communication error with " + username + ": " + e.getMessage());
+            if (gen == currentGeneration())
+                System.err.println("Communication error with " + username + ": " + e.getMessage());
         } finally {
-            disconnect();
+            connectionLost(gen);
         }
     }
 
-    private void handleCommand(Message msg) {
-        String content = msg.getContent();
+    private synchronized int currentGeneration() {
+        return generation;
+    }
 
-        if (content.startsWith("/join ")) {
-            String channelName = content.substring(6).trim();
-            if (!channelName.isEmpty())
-                joinChannel(channelName);
-        } else if (content.startsWith("/msg ")) {
-            // Message privé: /msg username message
-            String[] parts = content.split(" ", 3);
-            if (parts.length >= 3) {
-                sendPrivateMessage(parts[1], parts[2]);
-            }
-        } else if (content.startsWith("/dm_history ")) {
-            // Load DM history: /dm_history targetUser
-            String targetUser = content.substring(12).trim();
-            String dmChannel = getDMChannelName(this.username, targetUser);
-            List<Message> history = DatabaseManager.getLastMessages(dmChannel, 50);
-            for (Message hMsg : history) {
-                sendMessage(hMsg);
-            }
-        } else if (content.startsWith("/call ")) {
-            // Voice call request: /call targetUser
-            String targetUser = content.substring(6).trim();
-            ClientHandler target = Server.clients.get(targetUser);
-            if (target != null) {
-                // Send call notification to target
-                target.sendMessage(
-                        new Message(this.username, this.username, "call_request", Message.MessageType.SYSTEM));
-                sendMessage(new Message("System", "Appel en cours vers " + targetUser + "...", "system",
-                        Message.MessageType.SYSTEM));
-            } else {
-                sendMessage(new Message("System", targetUser + " n'est pas connecté.", "system",
-                        Message.MessageType.SYSTEM));
-            }
-        } else if (content.startsWith("/list")) {
-            listChannels();
-        } else if (content.startsWith("/createrole ")) {
-            // /createrole Name bitmask? Or args? Simplification: /createrole Name 1 1 1 1
-            if (DatabaseManager.hasPermission(this.username, "perm_manage_roles")) {
-                String[] parts = content.split(" ");
-                if (parts.length >= 6) {
-                    String rName = parts[1];
-                    boolean pCreate = "1".equals(parts[2]) || "true".equalsIgnoreCase(parts[2]);
-                    boolean pBlock = "1".equals(parts[3]) || "true".equalsIgnoreCase(parts[3]);
-                    boolean pDel = "1".equals(parts[4]) || "true".equalsIgnoreCase(parts[4]);
-                    boolean pManage = "1".equals(parts[5]) || "true".equalsIgnoreCase(parts[5]);
-
-                    DatabaseManager.createRole(rName, pCreate, pBlock, pDel, pManage);
-                    sendMessage(
-                            new Message("System", "Rôle " + rName + " créé.", "system", Message.MessageType.SYSTEM));
-                    sendRolesList(); // Update client
-                } else {
-                    sendMessage(
-                            new Message("System", "Usage: /createrole <name> <pCreate> <pBlock> <pDel> <pManageRole>",
-                                    "system", Message.MessageType.SYSTEM));
-                }
-            } else {
-                sendMessage(new Message("System", "Permission refusée.", "system", Message.MessageType.SYSTEM));
-            }
-        } else if (content.startsWith("/assignrole ")) {
-            if (DatabaseManager.hasPermission(this.username, "perm_manage_roles")) {
-                String[] parts = content.split(" ");
-                if (parts.length >= 3) {
-                    DatabaseManager.assignRole(parts[1], parts[2]);
-                    sendMessage(new Message("System", "Rôle " + parts[2] + " donné à " + parts[1], "system",
-                            Message.MessageType.SYSTEM));
-                }
-            } else {
-                sendMessage(new Message("System", "Permission refusée.", "system", Message.MessageType.SYSTEM));
-            }
-        } else if (content.startsWith("/create ")) {
-            String[] parts = content.split(" ");
-            if (parts.length >= 2) {
-                String channelName = parts[1].trim();
-                String type = parts.length > 2 ? parts[2].toUpperCase() : "TEXT";
-                String server = "Main Server";
-                if (parts.length > 3) {
-                    server = String.join(" ", java.util.Arrays.copyOfRange(parts, 3, parts.length));
-                }
+    private static String newResumeToken() {
+        byte[] bytes = new byte[16];
+        TOKENS.nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(32);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
 
-                if (DatabaseManager.hasPermission(this.username, "perm_create_channel")) {
-                    Server.createChannel(channelName, type, server);
-                    sendMessage(new Message("System",
-                            "Salon #" + channelName + " (" + type + ") créé dans " + server + ".", "system",
-                            Message.MessageType.SYSTEM));
+    /**
+     * Reprise de cette session par la connexion de incoming (qui vient de
+     * lire "jeton:RESUME:dernierNuméro") : l'ancienne connexion est fermée, la
+     * nouvelle reçoit auth_success puis les messages postérieurs au dernier
+     * reçu. Renvoie le numéro de la connexion à servir, -1 si refusée.
+     */
+    private int resume(ClientHandler incoming, String token, String lastSeqText) {
+        if (resumeToken == null || !MessageDigest.isEqual(resumeToken.getBytes(StandardCharsets.US_ASCII),
+                token.getBytes(StandardCharsets.US_ASCII)))
+            return -1;
+        long lastSeq;
+        try {
+            lastSeq = Long.parseLong(lastSeqText.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        // Débloque un envoi en cours sur l'ancienne connexion (le serveur n'a
+        // pas forcément encore vu la coupure)
+        closeQuietly(socket);
+
+        List<Message> missed;
+        List<Long> replayedDms = new ArrayList<>();
+        int resumedGeneration = -1;
+        synchronized (this) {
+            if (closed)
+                return -1;
+            missed = outbox.since(lastSeq);
+            if (missed != null) {
+                generation++;
+                socket = incoming.socket;
+                input = incoming.input;
+                rawInput = incoming.rawInput;
+                output = incoming.output;
+                if (detached) {
+                    detached = false;
+                    DETACHED_SESSIONS.decrementAndGet();
                 }
-            }
-        } else if (content.startsWith("/deleteserver ")) {
-            String srvName = content.substring(14).trim();
-            InetAddress addr = socket.getInetAddress();
-            boolean isLocalhost = addr.isLoopbackAddress() || addr.getHostAddress().equals("127.0.0.1")
-                    || addr.getHostAddress().equals("0:0:0:0:0:0:0:1");
-
-            if (isLocalhost) {
-                if ("Main Server".equals(srvName)) {
-                    sendMessage(new Message("System", "Impossible de supprimer le serveur principal.", "system",
-                            Message.MessageType.SYSTEM));
-                } else {
-                    Server.deleteServer(srvName);
-                    sendMessage(new Message("System", "Serveur '" + srvName + "' supprimé.", "system",
-                            Message.MessageType.SYSTEM));
+                if (expiry != null) {
+                    expiry.cancel(false);
+                    expiry = null;
                 }
-            } else {
-                sendMessage(
-                        new Message("System", "Action réservée au localhost.", "system", Message.MessageType.SYSTEM));
-            }
-        } else if (content.startsWith("/deletechannel ")) {
-            String channelName = content.substring(15).trim();
-            if (DatabaseManager.hasPermission(this.username, "perm_create_channel")) {
-                Server.deleteChannel(channelName);
-                sendMessage(new Message("System", "Salon #" + channelName + " supprimé.", "system",
-                        Message.MessageType.SYSTEM));
-            } else {
-                sendMessage(new Message("System", "Permission refusée.", "system", Message.MessageType.SYSTEM));
-            }
-        } else if (content.startsWith("/renamechannel ")) {
-            String[] parts = content.split(" ");
-            if (parts.length >= 3) {
-                String oldName = parts[1];
-                String newName = parts[2];
-                if (DatabaseManager.hasPermission(this.username, "perm_create_channel")) {
-                    Server.renameChannel(oldName, newName);
-                    sendMessage(new Message("System", "Salon #" + oldName + " renommé en #" + newName, "system",
+                try {
+                    output.writeObject(new Message("System", "Session reprise", "auth_success",
                             Message.MessageType.SYSTEM));
+                    for (Message msg : missed) {
+                        output.writeObject(msg);
+                    }
+                    output.flush();
+                    // Messages privés reçus pendant la coupure : livrés, ils
+                    // quittent la file d'attente
+                    for (Message msg : missed) {
+                        if (msg.getType() == Message.MessageType.PRIVATE && msg.getId() > 0
+                                && !username.equals(msg.getUsername())) {
+                            replayedDms.add(msg.getId());
+                        }
+                    }
+                } catch (IOException e) {
+                    // Nouvelle coupure : vue par la boucle de réception
                 }
+                RESUMED.inc();
+                REPLAYED.add(missed.size());
+                System.out.println(username + " : session reprise (" + missed.size() + " messages renvoyés)");
+                resumedGeneration = generation;
             }
-        } else if (content.startsWith("/grant ")) {
-            if (DatabaseManager.hasPermission(this.username, "perm_manage_roles")) {
-                // String target = content.substring(7).trim(); // Unused
-                sendMessage(new Message("System", "Utilisez /assignrole pour gérer les permissions.", "system",
-                        Message.MessageType.SYSTEM));
+        }
+        if (resumedGeneration >= 0) {
+            if (!replayedDms.isEmpty()) {
+                DatabaseManager.ackPendingDms(username, replayedDms);
             }
-        } else if (content.startsWith("/block ")) {
-            if (DatabaseManager.hasPermission(this.username, "perm_block")) {
-                String target = content.substring(7).trim();
-                DatabaseManager.blockUser(target, true);
-                ClientHandler targetClient = Server.clients.get(target);
-                if (targetClient != null)
-                    targetClient.disconnect();
-
-                sendMessage(new Message("System", target + " a été bloqué.", "system", Message.MessageType.SYSTEM));
-            } else
-
-            {
-                sendMessage(new Message("System", "Commande réservée aux modérateurs.", "system",
-                        Message.MessageType.SYSTEM));
+            return resumedGeneration;
+        }
+        // Messages manquants déjà oubliés : la session ne peut plus être reprise
+        disconnect();
+        return -1;
+    }
+
+    /**
+     * Fin de la connexion n° gen : la session est gardée pour une reprise,
+     * sauf si elle n'a jamais été ouverte ou qu'elle a été interrompue pour
+     * flood.
+     */
+    private void connectionLost(int gen) {
+        boolean keep;
+        Socket lost;
+        synchronized (this) {
+            if (gen != generation || closed)
+                return;
+            lost = socket;
+            keep = username != null && resumeToken != null && !flooding && RESUME_GRACE_SECONDS > 0;
+            if (keep) {
+                detached = true;
+                DETACHED_SESSIONS.incrementAndGet();
+                expiry = SESSION_TIMER.schedule(() -> expire(gen), RESUME_GRACE_SECONDS, TimeUnit.SECONDS);
             }
-        } else if (content.startsWith("/friend add ")) {
-            String target = content.substring(12).trim();
-            System.out.println("[DEBUG] /friend add called by " + this.username + " for target: " + target);
-            // Expected format: pseudo#tag
-            String[] parts = target.split("#");
-            if (parts.length == 2) {
-                String pseudo = parts[0];
-                String tag = parts[1];
-
-                System.out.println("[DEBUG] Parsed pseudo=" + pseudo + " tag=" + tag);
-
-                if (pseudo.equals(this.username)) {
-                    sendMessage(new Message("System", "Vous ne pouvez pas vous ajouter vous-même.", "system",
-                            Message.MessageType.SYSTEM));
-                } else if (!DatabaseManager.userExists(pseudo)) {
-                    System.out.println("[DEBUG] User " + pseudo + " does NOT exist in database");
-                    sendMessage(new Message("System", "L'utilisateur '" + pseudo + "' n'existe pas.", "system",
-                            Message.MessageType.SYSTEM));
-                } else {
-                    String actualTag = DatabaseManager.getUserTag(pseudo);
-                    System.out.println(
-                            "[DEBUG] Actual tag for " + pseudo + " is: " + actualTag + " (provided: " + tag + ")");
-
-                    if (actualTag != null && actualTag.equals(tag)) {
-                        // Auto-accept: status=1 directement
-                        DatabaseManager.addFriend(this.username, pseudo);
-                        System.out.println(
-                                "[DEBUG] addFriend called successfully for " + this.username + " -> " + pseudo);
-
-                        sendMessage(new Message("System", "Vous êtes maintenant ami avec " + pseudo + " !", "system",
-                                Message.MessageType.SYSTEM));
-
-                        // Notify target if online
-                        ClientHandler targetClient = Server.clients.get(pseudo);
-                        if (targetClient != null) {
-                            targetClient.sendMessage(new Message("System",
-                                    this.username + " vous a ajouté en ami !", "system",
-                                    Message.MessageType.SYSTEM));
-                        }
+        }
+        if (keep) {
+            closeQuietly(lost);
+            System.out.println(username + " : connexion perdue, session conservée " + RESUME_GRACE_SECONDS + " s");
+        } else {
+            disconnect();
+        }
+    }
 
-                        // Refresh friend list
-                        List<String> friends = DatabaseManager.getFriends(this.username);
-                        System.out.println("[DEBUG] Friends list after add: " + friends);
-                        StringBuilder sb = new StringBuilder();
-                        for (String f : friends) {
-                            boolean online = Server.clients.containsKey(f);
-                            if (sb.length() > 0)
-                                sb.append(",");
-                            sb.append(f).append(":").append(online ? "Online" : "Offline");
-                        }
-                        sendMessage(new Message("System", sb.toString(), "friends", Message.MessageType.FRIEND_LIST));
-
-                        // Also send updated friend list to the target user if online
-                        if (targetClient != null) {
-                            List<String> targetFriends = DatabaseManager.getFriends(pseudo);
-                            StringBuilder sb2 = new StringBuilder();
-                            for (String f : targetFriends) {
-                                boolean onl = Server.clients.containsKey(f);
-                                if (sb2.length() > 0)
-                                    sb2.append(",");
-                                sb2.append(f).append(":").append(onl ? "Online" : "Offline");
-                            }
-                            targetClient.sendMessage(
-                                    new Message("System", sb2.toString(), "friends", Message.MessageType.FRIEND_LIST));
-                        }
-                    } else {
-                        sendMessage(new Message("System",
-                                "Tag incorrect pour " + pseudo + ". Vérifiez le tag.", "system",
-                                Message.MessageType.SYSTEM));
-                    }
-                }
+    private void expire(int gen) {
+        synchronized (this) {
+            if (gen != generation || !detached || closed)
+                return;
+        }
+        EXPIRED.inc();
+        disconnect();
+    }
+
+    synchronized boolean isDetached() {
+        return detached;
+    }
+
+    /**
+     * Fin de session décidée par le serveur (expulsion, blocage, flood) : le
+     * client ne tente pas de reprise.
+     */
+    private void endSession(String reason) {
+        sendMessage(new Message("System", reason, "session_end", Message.MessageType.SYSTEM));
+        disconnect();
+    }
+
+    private static void closeQuietly(Socket s) {
+        try {
+            if (s != null)
+                s.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Vérifie les identifiants (inscription ou connexion) d'après une seule
+     * lecture du compte ; renvoie le motif du refus, ou null si accepté.
+     */
+    private String checkCredentials(String candidate, String password, String mode) {
+        DatabaseManager.LoginInfo info = DatabaseManager.getLoginInfo(candidate);
+        if ("REGISTER".equals(mode)) {
+            if (info != null)
+                return "Ce pseudo est déjà utilisé. Essayez de vous connecter.";
+            DatabaseManager.registerUser(candidate, password);
+            info = new DatabaseManager.LoginInfo(password, false, "Admin".equals(candidate));
+        } else {
+            // User asked for account creation system, so we should be strict.
+            if (info == null)
+                return "Compte inexistant. Veuillez vous inscrire.";
+            if (!info.checkPassword(password))
+                return "Mot de passe incorrect.";
+        }
+        if (info.blocked)
+            return "Vous êtes bloqué.";
+        ClientHandler existing = Server.clients.get(candidate);
+        if (existing != null) {
+            if (!existing.isDetached())
+                return "Utilisateur déjà connecté.";
+            // Session en attente de reprise : la nouvelle connexion la remplace
+            existing.disconnect();
+        }
+        loginInfo = info;
+        return null;
+    }
+
+    private void leaveAdmission() {
+        if (admitted) {
+            admitted = false;
+            AdmissionControl.leave(admittedAt);
+        }
+    }
+
+    // --- COMMANDES ---
+
+    /**
+     * Entrée du tableau de répartition : les arguments sont découpés une seule
+     * fois (au plus maxArgs, le dernier reçoit le reste de la ligne) et la
+     * permission est vérifiée avant l'appel du gestionnaire.
+     */
+    private static final class Command {
+        final int maxArgs;
+        final BiConsumer<ClientHandler, String[]> handler;
+        int minArgs;
+        String permission;
+        String denied = "Permission refusée.";
+        String usage;
+
+        Command(int maxArgs, BiConsumer<ClientHandler, String[]> handler) {
+            this.maxArgs = maxArgs;
+            this.handler = handler;
+        }
+
+        Command minArgs(int minArgs) {
+            this.minArgs = minArgs;
+            return this;
+        }
+
+        Command permission(String permission) {
+            this.permission = permission;
+            return this;
+        }
+
+        Command denied(String denied) {
+            this.denied = denied;
+            return this;
+        }
+
+        Command usage(String usage) {
+            this.usage = usage;
+            return this;
+        }
+    }
+
+    private static final Map<String, Command> COMMANDS = new HashMap<>();
+
+    private static Command command(String name, int maxArgs, BiConsumer<ClientHandler, String[]> handler) {
+        Command command = new Command(maxArgs, handler);
+        COMMANDS.put(name, command);
+        return command;
+    }
+
+    static {
+        command("join", 1, ClientHandler::cmdJoin).minArgs(1);
+        command("msg", 2, ClientHandler::cmdMsg).minArgs(2);
+        command("dm_history", 1, ClientHandler::cmdDmHistory).minArgs(1);
+        command("dm_ack", 1, ClientHandler::cmdDmAck).minArgs(1);
+        command("trace", 2, ClientHandler::cmdTrace).minArgs(2);
+        command("call", 1, ClientHandler::cmdCall).minArgs(1);
+        command("list", 0, (c, a) -> c.listChannels());
+        // Départ volontaire : pas de session conservée pour une reprise
+        command("logout", 0, (c, a) -> c.disconnect());
+        command("createrole", 5, ClientHandler::cmdCreateRole).minArgs(5).permission("perm_manage_roles")
+                .usage("Usage: /createrole <name> <pCreate> <pBlock> <pDel> <pManageRole>");
+        command("assignrole", 2, ClientHandler::cmdAssignRole).minArgs(2).permission("perm_manage_roles");
+        command("deleterole", 1, ClientHandler::cmdDeleteRole).minArgs(1).permission("perm_manage_roles");
+        command("getroles", 0, (c, a) -> c.sendRolesList());
+        command("grant", 1, ClientHandler::cmdGrant).permission("perm_manage_roles");
+        command("create", 3, ClientHandler::cmdCreate).minArgs(1).permission("perm_create_channel");
+        command("deletechannel", 1, ClientHandler::cmdDeleteChannel).minArgs(1).permission("perm_create_channel");
+        command("renamechannel", 2, ClientHandler::cmdRenameChannel).minArgs(2).permission("perm_create_channel");
+        command("deleteserver", 1, ClientHandler::cmdDeleteServer).minArgs(1);
+        command("block", 1, ClientHandler::cmdBlock).minArgs(1).permission("perm_block")
+                .denied("Commande réservée aux modérateurs.");
+        command("kick", 1, ClientHandler::cmdKick).minArgs(1).permission("perm_block")
+                .denied("Commande réservée aux modérateurs.");
+        command("friend", 2, ClientHandler::cmdFriend).minArgs(1);
+        command("myid", 0, ClientHandler::cmdMyId);
+        command("status", 1, ClientHandler::cmdStatus).minArgs(1);
+        command("typing", 0, ClientHandler::cmdTyping);
+        command("typing_dm", 1, ClientHandler::cmdTypingDm).minArgs(1);
+        command("voice_join", 1, ClientHandler::cmdVoiceJoin).minArgs(1);
+        command("voice_leave", 0, (c, a) -> VoiceServer.closeSession(c.username));
+        command("delete", 1, ClientHandler::cmdDelete).minArgs(1);
+        command("edit", 2, ClientHandler::cmdEdit).minArgs(2);
+        command("search", 1, ClientHandler::cmdSearch).minArgs(1)
+                .usage("Usage: /search [#salon] [@pseudo] [after:AAAA-MM-JJ] [before:AAAA-MM-JJ] mots...");
+        command("passwd", 1, ClientHandler::cmdPasswd).minArgs(1);
+        command("slowmode", 1, ClientHandler::cmdSlowMode).permission("perm_create_channel");
+    }
+
+    /**
+     * Limitation de débit, avant tout traitement : false si le message est
+     * ignoré. Trop de refus rapprochés valent une déconnexion (flood).
+     */
+    private boolean admit(Message msg) {
+        long now = System.nanoTime();
+        RateLimiter.Kind kind = RateLimiter.classify(msg);
+        String refusal = null;
+        if (!rateBuckets[kind.ordinal()].tryAcquire(now)) {
+            THROTTLED[kind.ordinal()].inc();
+            refusal = "Vous envoyez des messages trop vite.";
+        } else if (currentChannel != null && RateLimiter.isChannelPost(msg)) {
+            refusal = currentChannel.admit(username, now);
+        }
+        if (refusal == null)
+            return true;
+
+        if (!strikes.tryAcquire(now)) {
+            FLOOD_DISCONNECTS.inc();
+            System.out.println("Flood de " + username + " : déconnexion");
+            sendMessage(new Message("System", "Déconnecté : trop de messages.", "session_end",
+                    Message.MessageType.SYSTEM));
+            flooding = true;
+        } else if (kind != RateLimiter.Kind.TYPING && now - lastThrottleNotice > NOTICE_INTERVAL_NANOS) {
+            // Au plus un avertissement par seconde, aucun pour la saisie
+            lastThrottleNotice = now;
+            sendSystem(refusal);
+        }
+        return false;
+    }
+
+    private void handleMessage(Message msg) {
+        // Chemin rapide : un message de chat ou un fichier n'est jamais une commande
+        if (msg.getType() != Message.MessageType.CHAT && msg.getType() != Message.MessageType.FILE
+                && dispatchCommand(msg)) {
+            return;
+        }
+
+        // Message normal ou Fichier dans le canal actuel
+        if (currentChannel != null) {
+            TypingTracker.stop(currentChannel, username);
+            // Si c'est un fichier, on diffuse le message tel quel (avec les bytes)
+            if (msg.getType() == Message.MessageType.FILE) {
+                currentChannel.broadcast(msg);
             } else {
-                sendMessage(new Message("System", "Format requis: pseudo#tag (ex: Victor#1234)", "system",
-                        Message.MessageType.SYSTEM));
+                // Sinon c'est un CHAT, on peut le reconstruire pour être sûr ou juste passer
+                currentChannel.broadcast(
+                        new Message(username, msg.getContent(), currentChannel.getName(), Message.MessageType.CHAT));
             }
-        } else if (content.startsWith("/friend list")) {
-            List<String> friends = DatabaseManager.getFriends(this.username);
-            StringBuilder sb = new StringBuilder();
-            for (String f : friends) {
-                boolean online = Server.clients.containsKey(f);
-                if (sb.length() > 0)
-                    sb.append(",");
-                sb.append(f).append(":").append(online ? "Online" : "Offline");
+        }
+    }
+
+    /**
+     * "/nom arguments" : exécute la commande. Retourne false pour un texte
+     * qui n'est pas une commande connue (un ancien client envoie encore en
+     * SYSTEM ce que l'utilisateur tape après "/", diffusé comme du chat).
+     */
+    private boolean dispatchCommand(Message msg) {
+        String content = msg.getContent();
+        if (content == null || content.length() < 2 || content.charAt(0) != '/') {
+            return msg.getType() == Message.MessageType.COMMAND;
+        }
+        int space = content.indexOf(' ');
+        String name = space < 0 ? content.substring(1) : content.substring(1, space);
+        Command command = COMMANDS.get(name);
+        if (command == null) {
+            if (msg.getType() != Message.MessageType.COMMAND)
+                return false;
+            sendSystem("Commande inconnue: /" + name);
+            return true;
+        }
+        if (command.permission != null && !DatabaseManager.hasPermission(username, command.permission)) {
+            sendSystem(command.denied);
+            return true;
+        }
+        String[] args = splitArgs(space < 0 ? "" : content.substring(space + 1), command.maxArgs);
+        if (args.length < command.minArgs) {
+            if (command.usage != null)
+                sendSystem(command.usage);
+            return true;
+        }
+        command.handler.accept(this, args);
+        return true;
+    }
+
+    // Découpe sur les espaces, au plus max morceaux ; le dernier garde le reste
+    static String[] splitArgs(String text, int max) {
+        List<String> args = new ArrayList<>(Math.min(max, 4));
+        int i = 0;
+        int length = text.length();
+        while (args.size() < max) {
+            while (i < length && text.charAt(i) == ' ')
+                i++;
+            if (i >= length)
+                break;
+            int end = args.size() == max - 1 ? length : text.indexOf(' ', i);
+            if (end < 0)
+                end = length;
+            String arg = text.substring(i, end).trim();
+            if (!arg.isEmpty())
+                args.add(arg);
+            i = end;
+        }
+        return args.toArray(new String[0]);
+    }
+
+    private void sendSystem(String text) {
+        sendMessage(new Message("System", text, "system", Message.MessageType.SYSTEM));
+    }
+
+    private void cmdJoin(String[] args) {
+        // /join channel [lastSeenId]
+        String channelName = args[0];
+        long sinceId = 0;
+        int space = channelName.lastIndexOf(' ');
+        if (space > 0) {
+            try {
+                sinceId = Long.parseLong(channelName.substring(space + 1));
+                channelName = channelName.substring(0, space).trim();
+            } catch (NumberFormatException ignored) {
             }
-            sendMessage(new Message("System", sb.toString(), "friends", Message.MessageType.FRIEND_LIST));
-        } else if (content.startsWith("/friend accept ")) {
-            String target = content.substring(15).trim();
-            DatabaseManager.acceptFriend(target, this.username);
-            sendMessage(new Message("System", "Vous êtes maintenant ami avec " + target, "system",
-                    Message.MessageType.SYSTEM));
-        } else if (content.startsWith("/myid")) {
-            String tag = DatabaseManager.getUserTag(this.username);
-            // Send as USER_INFO so client can handle it specifically (e.g. update UI)
-            sendMessage(new Message("System", this.username + "#" + tag, "user_info",
-                    Message.MessageType.USER_INFO));
-        } else if (content.startsWith("/kick ")) {
-            if (DatabaseManager.hasPermission(this.username, "perm_block")) {
-                String target = content.substring(6).trim();
-                // DatabaseManager.deleteUser(target); // FIX: Do not delete user on kick
-                ClientHandler targetClient = Server.clients.get(target);
+        }
+        if (!channelName.isEmpty())
+            joinChannel(channelName, sinceId);
+    }
+
+    private void cmdMsg(String[] args) {
+        // Message privé: /msg username message
+        sendPrivateMessage(args[0], args[1]);
+    }
+
+    private void cmdDmHistory(String[] args) {
+        // Load DM history: /dm_history targetUser
+        String dmChannel = getDMChannelName(this.username, args[0]);
+        List<Message> history = DatabaseManager.getLastMessages(dmChannel, 50);
+        for (Message hMsg : history) {
+            sendMessage(hMsg);
+        }
+    }
+
+    private void cmdDmAck(String[] args) {
+        // Accusé de réception du lot hors ligne: /dm_ack dernierId
+        try {
+            ackDmBacklog(Long.parseLong(args[0]));
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    private void cmdTrace(String[] args) {
+        // Mesures client d'un message tracé: /trace receptionMicros affichageMicros
+        try {
+            MessageTrace.clientReport(Long.parseLong(args[0]) * 1000, Long.parseLong(args[1]) * 1000);
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    private void cmdCall(String[] args) {
+        // Voice call request: /call targetUser
+        String targetUser = args[0];
+        ClientHandler target = Server.clients.get(targetUser);
+        if (target != null) {
+            // Send call notification to target
+            target.sendMessage(new Message(this.username, this.username, "call_request", Message.MessageType.SYSTEM));
+            sendSystem("Appel en cours vers " + targetUser + "...");
+        } else {
+            sendSystem(targetUser + " n'est pas connecté.");
+        }
+    }
+
+    private void cmdCreateRole(String[] args) {
+        // /createrole Name pCreate pBlock pDel pManage
+        String rName = args[0];
+        boolean pCreate = "1".equals(args[1]) || "true".equalsIgnoreCase(args[1]);
+        boolean pBlock = "1".equals(args[2]) || "true".equalsIgnoreCase(args[2]);
+        boolean pDel = "1".equals(args[3]) || "true".equalsIgnoreCase(args[3]);
+        boolean pManage = "1".equals(args[4]) || "true".equalsIgnoreCase(args[4]);
+
+        DatabaseManager.createRole(rName, pCreate, pBlock, pDel, pManage);
+        sendSystem("Rôle " + rName + " créé.");
+        sendRolesList(); // Update client
+    }
+
+    private void cmdAssignRole(String[] args) {
+        DatabaseManager.assignRole(args[0], args[1]);
+        sendSystem("Rôle " + args[1] + " donné à " + args[0]);
+    }
+
+    private void cmdDeleteRole(String[] args) {
+        String rName = args[0];
+        // Prevent deleting Admin role?
+        if ("Admin".equalsIgnoreCase(rName)) {
+            sendSystem("Impossible de supprimer le rôle Admin.");
+        } else {
+            DatabaseManager.deleteRole(rName);
+            sendSystem("Rôle " + rName + " supprimé.");
+            sendRolesList(); // Update client
+        }
+    }
+
+    private void cmdGrant(String[] args) {
+        sendSystem("Utilisez /assignrole pour gérer les permissions.");
+    }
+
+    private void cmdCreate(String[] args) {
+        // /create name [type] [serveur...]
+        String channelName = args[0];
+        String type = args.length > 1 ? args[1].toUpperCase() : "TEXT";
+        String server = args.length > 2 ? args[2] : "Main Server";
+
+        Server.createChannel(channelName, type, server);
+        sendSystem("Salon #" + channelName + " (" + type + ") créé dans " + server + ".");
+    }
+
+    private void cmdDeleteChannel(String[] args) {
+        Server.deleteChannel(args[0]);
+        sendSystem("Salon #" + args[0] + " supprimé.");
+    }
+
+    private void cmdRenameChannel(String[] args) {
+        Server.renameChannel(args[0], args[1]);
+        sendSystem("Salon #" + args[0] + " renommé en #" + args[1]);
+    }
+
+    private void cmdDeleteServer(String[] args) {
+        String srvName = args[0];
+        InetAddress addr = socket.getInetAddress();
+        boolean isLocalhost = addr.isLoopbackAddress() || addr.getHostAddress().equals("127.0.0.1")
+                || addr.getHostAddress().equals("0:0:0:0:0:0:0:1");
+
+        if (!isLocalhost) {
+            sendSystem("Action réservée au localhost.");
+        } else if ("Main Server".equals(srvName)) {
+            sendSystem("Impossible de supprimer le serveur principal.");
+        } else {
+            Server.deleteServer(srvName);
+            sendSystem("Serveur '" + srvName + "' supprimé.");
+        }
+    }
+
+    private void cmdBlock(String[] args) {
+        String target = args[0];
+        DatabaseManager.blockUser(target, true);
+        ClientHandler targetClient = Server.clients.get(target);
+        if (targetClient != null)
+            targetClient.endSession("Vous avez été bloqué.");
+
+        sendSystem(target + " a été bloqué.");
+    }
+
+    private void cmdKick(String[] args) {
+        String target = args[0];
+        ClientHandler targetClient = Server.clients.get(target);
+        if (targetClient != null) {
+            targetClient.endSession("Vous avez été expulsé.");
+            sendSystem(target + " a été expulsé.");
+        } else {
+            sendSystem(target + " n'est pas connecté.");
+        }
+    }
+
+    private void cmdFriend(String[] args) {
+        // /friend add pseudo#tag | /friend list | /friend accept pseudo
+        if ("list".equals(args[0])) {
+            sendFriendList();
+        } else if ("add".equals(args[0]) && args.length > 1) {
+            addFriend(args[1]);
+        } else if ("accept".equals(args[0]) && args.length > 1) {
+            DatabaseManager.acceptFriend(args[1], this.username);
+            sendSystem("Vous êtes maintenant ami avec " + args[1]);
+        }
+    }
+
+    private void addFriend(String target) {
+        // Expected format: pseudo#tag
+        String[] parts = target.split("#");
+        if (parts.length != 2) {
+            sendSystem("Format requis: pseudo#tag (ex: Victor#1234)");
+            return;
+        }
+        String pseudo = parts[0];
+        String tag = parts[1];
+
+        if (pseudo.equals(this.username)) {
+            sendSystem("Vous ne pouvez pas vous ajouter vous-même.");
+        } else if (!DatabaseManager.userExists(pseudo)) {
+            sendSystem("L'utilisateur '" + pseudo + "' n'existe pas.");
+        } else {
+            String actualTag = DatabaseManager.getUserTag(pseudo);
+            if (actualTag != null && actualTag.equals(tag)) {
+                // Auto-accept: status=1 directement
+                DatabaseManager.addFriend(this.username, pseudo);
+                sendSystem("Vous êtes maintenant ami avec " + pseudo + " !");
+
+                // Notify target if online
+                ClientHandler targetClient = Server.clients.get(pseudo);
                 if (targetClient != null) {
-                    targetClient.disconnect();
-                    sendMessage(
-                            new Message("System", target + " a été expulsé.", "system", Message.MessageType.SYSTEM));
-                } else {
-                    sendMessage(new Message("System", target + " n'est pas connecté.", "system",
-                            Message.MessageType.SYSTEM));
+                    targetClient.sendMessage(new Message("System", this.username + " vous a ajouté en ami !",
+                            "system", Message.MessageType.SYSTEM));
                 }
-            } else {
-                sendMessage(new Message("System", "Commande réservée aux modérateurs.", "system",
-                        Message.MessageType.SYSTEM));
-            }
-        } else if (content.startsWith("/getroles")) {
-            List<String> roles = DatabaseManager.getAllRoles();
-            String rolesStr = String.join(",", roles);
-
-            sendMessage(new Message("System", rolesStr, "ROLES_LIST", Message.MessageType.SYSTEM));
-        } else if (content.startsWith("/deleterole "))
-
-        {
-            if (DatabaseManager.hasPermission(this.username, "perm_manage_roles")) {
-                String rName = content.substring(12).trim();
-                // Prevent deleting Admin role?
-                if ("Admin".equalsIgnoreCase(rName)) {
-                    sendMessage(new Message("System", "Impossible de supprimer le rôle Admin.", "system",
-                            Message.MessageType.SYSTEM));
-                } else {
-                    DatabaseManager.deleteRole(rName);
-                    sendMessage(new Message("System", "Rôle " + rName + " supprimé.", "system",
-                            Message.MessageType.SYSTEM));
-                    sendRolesList(); // Update client
-                }
-            }
-        } else if (content.startsWith("/status ")) {
-            String statusPart = content.substring(8).trim();
-            // Diffuser le statut à tous les clients connectés (global broadcast)
-            Message statusMsg = new Message(this.username, statusPart, "GLOBAL", Message.MessageType.STATUS_UPDATE);
-            for (ClientHandler client : Server.clients.values()) {
-                client.sendMessage(statusMsg);
-            }
-        } else if (content.startsWith("/typing")) {
-            // Broadcast typing indicator to current channel
-            if (currentChannel != null) {
-                Message typingMsg = new Message(this.username, this.username, currentChannel.getName(),
-                        Message.MessageType.TYPING);
-                for (ClientHandler member : currentChannel.getMembers()) {
-                    if (member != this) {
-                        member.sendMessage(typingMsg);
-                    }
+
+                // Refresh friend lists
+                sendFriendList();
+                if (targetClient != null) {
+                    targetClient.sendFriendList();
                 }
+            } else {
+                sendSystem("Tag incorrect pour " + pseudo + ". Vérifiez le tag.");
             }
-        } else if (content.startsWith("/typing_dm ")) {
-            // Typing in DM: /typing_dm targetUser
-            String targetUser = content.substring(11).trim();
-            ClientHandler target = Server.clients.get(targetUser);
-            if (target != null) {
-                target.sendMessage(new Message(this.username, this.username, "typing_dm",
-                        Message.MessageType.TYPING));
-            }
-        } else if (content.startsWith("/delete ")) {
-            // Delete message: /delete messageText
-            String msgText = content.substring(8);
-            if (currentChannel != null) {
-                Message deleteMsg = new Message(this.username, msgText, currentChannel.getName(),
-                        Message.MessageType.DELETE);
-                currentChannel.broadcast(deleteMsg);
+        }
+    }
+
+    void sendFriendList() {
+        List<String> friends = DatabaseManager.getFriends(this.username);
+        StringBuilder sb = new StringBuilder();
+        for (String f : friends) {
+            boolean online = Server.clients.containsKey(f);
+            if (sb.length() > 0)
+                sb.append(",");
+            sb.append(f).append(":").append(online ? "Online" : "Offline");
+        }
+        sendMessage(new Message("System", sb.toString(), "friends", Message.MessageType.FRIEND_LIST));
+    }
+
+    private void cmdMyId(String[] args) {
+        String tag = DatabaseManager.getUserTag(this.username);
+        // Send as USER_INFO so client can handle it specifically (e.g. update UI)
+        sendMessage(new Message("System", this.username + "#" + tag, "user_info", Message.MessageType.USER_INFO));
+    }
+
+    private void cmdStatus(String[] args) {
+        // Diffuser le statut à tous les clients connectés (global broadcast)
+        Message statusMsg = new Message(this.username, args[0], "GLOBAL", Message.MessageType.STATUS_UPDATE);
+        for (ClientHandler client : Server.clients.values()) {
+            client.sendMessage(statusMsg);
+        }
+    }
+
+    private void cmdTyping(String[] args) {
+        // Indicateur de saisie : diffusé par lots par le TypingTracker
+        if (currentChannel != null) {
+            TypingTracker.onTyping(currentChannel, this.username);
+        }
+    }
+
+    private void cmdTypingDm(String[] args) {
+        // Typing in DM: /typing_dm targetUser
+        ClientHandler target = Server.clients.get(args[0]);
+        if (target != null) {
+            target.sendMessage(new Message(this.username, this.username, "typing_dm", Message.MessageType.TYPING));
+        }
+    }
+
+    private void cmdVoiceJoin(String[] args) {
+        // Session vocale: /voice_join channelName -> StreamId + token pour l'UDP
+        // La présence est diffusée par Server quand le VoiceServer publie VOICE_JOIN
+        // Salon vocal déclaré, ou appel privé call_<a>_<b> entre deux utilisateurs existants
+        String peer = Server.callPeer(args[0], this.username);
+        if (!Server.isVoiceChannel(args[0]) && (peer == null || !DatabaseManager.userExists(peer))) {
+            sendSystem("Salon vocal introuvable : " + args[0]);
+            return;
+        }
+        VoiceSession session = VoiceServer.openSession(this.username, args[0]);
+        if (session != null) {
+            sendMessage(new Message("System", session.getStreamId() + ":" + Long.toHexString(session.getToken()),
+                    "voice_session", Message.MessageType.SYSTEM));
+        } else {
+            sendSystem("Serveur vocal saturé.");
+        }
+    }
+
+    private void cmdDelete(String[] args) {
+        // Delete message: /delete messageId
+        try {
+            long id = Long.parseLong(args[0]);
+            String channelName = DatabaseManager.deleteMessage(id, this.username);
+            if (channelName != null) {
+                Message deleteMsg = new Message(this.username, "", channelName, Message.MessageType.DELETE);
+                deleteMsg.setId(id);
+                broadcastToMessageChannel(deleteMsg);
             }
-        } else if (content.startsWith("/passwd")) {
-            String[] parts = content.split(" ", 2);
-            if (parts.length >= 2) {
-                String newPass = parts[1];
-                DatabaseManager.updatePassword(this.username, newPass);
-                sendMessage(new Message("System", "Mot de passe mis à jour.", "system", Message.MessageType.SYSTEM));
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    private void cmdEdit(String[] args) {
+        // Edit message: /edit messageId newText
+        try {
+            Message edited = DatabaseManager.editMessage(Long.parseLong(args[0]), this.username, args[1]);
+            if (edited != null) {
+                Message editMsg = new Message(edited.getUsername(), edited.getContent(), edited.getChannel(),
+                        Message.MessageType.EDIT, edited.getTimestamp());
+                editMsg.setId(edited.getId());
+                editMsg.setEdited(true);
+                broadcastToMessageChannel(editMsg);
             }
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    private void cmdSearch(String[] args) {
+        // Recherche plein texte: /search [#salon] [@pseudo] [after:date] [before:date] mots...
+        MessageSearch search = MessageSearch.parse(args[0]);
+        if (search != null) {
+            search.sendResults(this, search.execute(this.username));
         } else {
-            // Message normal ou Fichier dans le canal actuel
-            if (currentChannel != null) {
-                // Si c'est un fichier, on diffuse le message tel quel (avec les bytes)
-                if (msg.getType() == Message.MessageType.FILE) {
-                    currentChannel.broadcast(msg);
-                } else {
-                    // Sinon c'est un CHAT, on peut le reconstruire pour être sûr ou juste passer
-                    currentChannel.broadcast(
-                            new Message(username, content, currentChannel.getName(), Message.MessageType.CHAT));
-                }
-            }
+            sendSystem(COMMANDS.get("search").usage);
+        }
+    }
+
+    private void cmdSlowMode(String[] args) {
+        // Mode lent du salon courant: /slowmode secondes (0 = désactivé), sans argument = état
+        if (currentChannel == null)
+            return;
+        if (args.length == 0) {
+            sendSystem("Mode lent de #" + currentChannel.getName() + " : " + currentChannel.getSlowModeSeconds()
+                    + " s.");
+            return;
+        }
+        int seconds;
+        try {
+            seconds = Integer.parseInt(args[0]);
+        } catch (NumberFormatException e) {
+            sendSystem("Usage: /slowmode <secondes>");
+            return;
+        }
+        currentChannel.setSlowModeSeconds(seconds);
+        Message notice = new Message("System", seconds > 0
+                ? "Mode lent activé : un message toutes les " + seconds + " s."
+                : "Mode lent désactivé.", "system", Message.MessageType.SYSTEM);
+        for (ClientHandler member : currentChannel.getMembers()) {
+            member.sendMessage(notice);
         }
     }
 
+    private void cmdPasswd(String[] args) {
+        DatabaseManager.updatePassword(this.username, args[0]);
+        sendSystem("Mot de passe mis à jour.");
+    }
+
     private void sendRolesList() {
         List<String> roles = DatabaseManager.getAllRoles();
         String rolesStr = String.join(",", roles);
         sendMessage(new Message("System", rolesStr, "ROLES_LIST", Message.MessageType.SYSTEM));
     }
 
-    private void joinChannel(String channelName) {
+    private void joinChannel(String channelName, long sinceId) {
         if (currentChannel != null) {
             currentChannel.removeMember(this);
+            TypingTracker.stop(currentChannel, username);
         }
         currentChannel = Server.getChannel(channelName);
-        currentChannel.addMember(this);
+        currentChannel.addMember(this, sinceId);
 
         // Envoyer l'historique au nouveau membre (Optional TODO)
         // sendMessage(new Message("System", "Vous êtes maintenant dans #" +
@@ -500,16 +1010,53 @@ public class ClientHandler implements Runnable {
         // Message.MessageType.SYSTEM));
     }
 
+    // Diffuse une modification aux destinataires du message d'origine (salon ou MP)
+    private void broadcastToMessageChannel(Message msg) {
+        String channelName = msg.getChannel();
+        if (channelName.startsWith("DM:")) {
+            String[] users = channelName.split(":");
+            for (int i = 1; i < users.length; i++) {
+                ClientHandler client = Server.clients.get(users[i]);
+                if (client != null) {
+                    client.sendMessage(msg);
+                }
+            }
+        } else {
+            Server.getChannel(channelName).broadcast(msg);
+        }
+    }
+
+    // Appelé depuis plusieurs threads (autres clients, EventBus, tâches planifiées)
     public void sendMessage(Message msg) {
+        long enqueued = System.nanoTime();
+        pendingWrites.incrementAndGet();
         try {
-            output.writeObject(msg);
-            output.flush();
+            synchronized (this) {
+                // Numéroté et gardé pour une reprise ; simplement gardé pendant une coupure
+                if (resumeToken != null)
+                    outbox.append(msg);
+                if (detached)
+                    return;
+                long start = System.nanoTime();
+                output.writeObject(msg);
+                output.flush();
+                long done = System.nanoTime();
+                SOCKET_WRITE.record(done - start);
+                MESSAGES_OUT[msg.getType().ordinal()].inc();
+                MessageTrace.written(msg, enqueued, start, done);
+            }
         } catch (IOException e) {
             // If sending fails, we might just assume disconnected or wait for the read loop
             // to catch it
+        } finally {
+            pendingWrites.decrementAndGet();
         }
     }
 
+    public int getPendingWrites() {
+        return pendingWrites.get();
+    }
+
     private void sendPrivateMessage(String targetUser, String content) {
         // Create consistent DM channel name (alphabetically sorted)
         String dmChannel = getDMChannelName(this.username, targetUser);
@@ -517,16 +1064,68 @@ public class ClientHandler implements Runnable {
         Message privMsg = new Message(username, content, dmChannel, Message.MessageType.PRIVATE);
 
         // Always save to database (history)
+        MessageTrace.persistStart();
         DatabaseManager.saveMessage(privMsg);
+        MessageTrace.persistEnd();
+        MessageTrace.fanoutStart(privMsg);
 
-        // Send to target if online
+        // Send to target if online, otherwise keep it for the next login. A
+        // session awaiting resume also keeps it queued: the resume may fail
+        // (buffer overflow, grace expiry) and the replay acknowledges it.
         ClientHandler target = Server.clients.get(targetUser);
+        if ((target == null || target.isDetached()) && privMsg.getId() > 0) {
+            DatabaseManager.queuePendingDm(targetUser, privMsg.getId());
+        }
         if (target != null) {
             target.sendMessage(privMsg);
         }
 
         // Echo to sender
         sendMessage(privMsg);
+        MessageTrace.fanoutEnd();
+    }
+
+    /**
+     * Envoie les messages privés manqués (toutes conversations) en un lot
+     * compressé ; ils restent en file jusqu'à l'accusé /dm_ack du client.
+     */
+    private void sendDmBacklog() {
+        List<Message> pending = DatabaseManager.getPendingDms(username, DM_BACKLOG_BATCH);
+        if (pending.isEmpty())
+            return;
+        try {
+            byte[] packed = MessageBatch.pack(pending);
+            synchronized (deliveredDmIds) {
+                deliveredDmIds.clear();
+                for (Message m : pending) {
+                    deliveredDmIds.add(m.getId());
+                }
+            }
+            sendMessage(new Message("System", String.valueOf(pending.size()), packed, "dm_backlog",
+                    Message.MessageType.SYSTEM));
+        } catch (IOException e) {
+            System.err.println("Erreur lot DM pour " + username + ": " + e.getMessage());
+        }
+    }
+
+    private void ackDmBacklog(long lastId) {
+        List<Long> acked = new ArrayList<>();
+        boolean full;
+        synchronized (deliveredDmIds) {
+            full = deliveredDmIds.size() == DM_BACKLOG_BATCH;
+            for (long id : deliveredDmIds) {
+                if (id <= lastId)
+                    acked.add(id);
+            }
+            deliveredDmIds.removeAll(acked);
+        }
+        if (acked.isEmpty())
+            return;
+        DatabaseManager.ackPendingDms(username, acked);
+        // Lot plein : il reste peut-être des messages en attente
+        if (full) {
+            sendDmBacklog();
+        }
     }
 
     private static String getDMChannelName(String user1, String user2) {
@@ -545,38 +1144,37 @@ public class ClientHandler implements Runnable {
     }
 
     private void disconnect() {
+        synchronized (this) {
+            if (closed) {
+                closeQuietly(socket);
+                return;
+            }
+            closed = true;
+            if (detached) {
+                detached = false;
+                DETACHED_SESSIONS.decrementAndGet();
+            }
+            if (expiry != null) {
+                expiry.cancel(false);
+                expiry = null;
+            }
+        }
         if (username != null) {
             if (currentChannel != null)
                 currentChannel.removeMember(this);
-            Server.removeClient(username);
+            VoiceServer.closeSession(username);
+            TypingTracker.remove(username);
+            ReadStateTracker.unload(username);
+            Server.removeClient(username, this);
             System.out.println(username + " déconnecté");
 
             // Notify all friends that this user went offline
-            List<String> friends = DatabaseManager.getFriends(username);
-            for (String friendName : friends) {
-                ClientHandler friendHandler = Server.clients.get(friendName);
-                if (friendHandler != null) {
-                    // Send updated friend list to each online friend
-                    List<String> theirFriends = DatabaseManager.getFriends(friendName);
-                    StringBuilder sb = new StringBuilder();
-                    for (String f : theirFriends) {
-                        boolean online = Server.clients.containsKey(f);
-                        if (sb.length() > 0)
-                            sb.append(",");
-                        sb.append(f).append(":").append(online ? "Online" : "Offline");
-                    }
-                    friendHandler.sendMessage(
-                            new Message("System", sb.toString(), "friends", Message.MessageType.FRIEND_LIST));
-                }
-            }
-        }
-        try {
-            socket.close();
-        } catch (IOException e) {
+            Server.notifyFriends(username);
         }
+        closeQuietly(socket);
     }
 
     public String getUsername() {
         return username;
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
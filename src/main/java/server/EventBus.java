@@ -0,0 +1,40 @@
+package server;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bus d'événements en mémoire entre les composants du serveur (VoiceServer UDP
+ * et Server TCP). Les événements sont livrés dans l'ordre sur un thread dédié,
+ * pour que le thread UDP ne bloque jamais sur une écriture TCP.
+ */
+public class EventBus {
+    public interface Listener {
+        void onEvent(ServerEvent event);
+    }
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private static final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "EventBus");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void publish(ServerEvent event) {
+        dispatcher.execute(() -> {
+            for (Listener listener : listeners) {
+                try {
+                    listener.onEvent(event);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,272 @@
+package server;
+
+import common.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Moteur "log", optimisé pour l'écriture des messages : saveMessage attribue
+ * l'ID et copie le message dans le journal projeté en mémoire
+ * (MessageJournal), sans transaction SQLite. Un thread de fond reverse les
+ * messages par lots dans SQLite, qui reste le stockage indexé des lectures ;
+ * le reste (utilisateurs, rôles, salons...) est géré comme par le moteur
+ * SQLite.
+ *
+ * Après chaque lot, le point de reprise du journal avance. Au démarrage, les
+ * messages postérieurs au point de reprise et pas encore dans SQLite sont
+ * rejoués.
+ *
+ * Les messages en attente restent dans la file jusqu'à leur insertion : les
+ * historiques et derniers IDs d'un salon fusionnent cette file avec SQLite.
+ * Les autres lectures (recherche, non lus, messages privés en attente,
+ * édition, suppression) ne reversent la file que si elle contient un
+ * message concerné.
+ *
+ * -Dstorage.fsync=true force l'écriture disque à chaque message.
+ */
+public class LogStorageEngine extends SqliteStorageEngine {
+    private static final long FLUSH_INTERVAL_MS = 200;
+    private static final int FLUSH_BATCH = 1000;
+    // Au-delà, l'écrivain reverse lui-même la file (le journal ne distance
+    // pas SQLite indéfiniment)
+    private static final int MAX_PENDING = 10 * FLUSH_BATCH;
+    private static final boolean FSYNC = Boolean.getBoolean("storage.fsync");
+
+    private final MessageJournal journal;
+    private final Object writeLock = new Object();
+    private final Object flushLock = new Object();
+    // Protégés par writeLock ; seul flush retire des messages, en tête
+    private final List<Message> pending = new ArrayList<>();
+    private long lastId;
+    private boolean flushScheduled;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "StorageLog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public LogStorageEngine(String url, File journalDir) {
+        this(url, journalDir, new File("archive"));
+    }
+
+    public LogStorageEngine(String url, File journalDir, File archiveDir) {
+        super(url, archiveDir);
+        this.journal = new MessageJournal(journalDir);
+    }
+
+    @Override
+    public void init() {
+        super.init();
+        try {
+            List<Message> replayed = journal.replay();
+            // Les lots sont insérés dans l'ordre des IDs : tout ID inférieur à
+            // la séquence de SQLite a déjà été reversé (et peut-être supprimé)
+            long flushed = lastMessageId();
+            replayed.removeIf(msg -> msg.getId() <= flushed);
+            if (!replayed.isEmpty()) {
+                insertMessages(replayed);
+                System.out.println("Journal rejoué: " + replayed.size() + " message(s)");
+            }
+            synchronized (writeLock) {
+                lastId = lastMessageId();
+                journal.reset(lastId + 1);
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Journal des messages inutilisable", e);
+        }
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "StorageLog-shutdown"));
+        System.out.println("Moteur de stockage: journal + SQLite");
+    }
+
+    @Override
+    public void saveMessage(Message msg) {
+        boolean full;
+        boolean backlog;
+        synchronized (writeLock) {
+            msg.setId(++lastId);
+            try {
+                journal.append(msg, FSYNC);
+            } catch (IOException e) {
+                // Le message reste en attente : il sera tout de même reversé
+                e.printStackTrace();
+            }
+            pending.add(msg);
+            backlog = pending.size() >= MAX_PENDING;
+            full = !backlog && !flushScheduled && pending.size() >= FLUSH_BATCH;
+            if (full) {
+                flushScheduled = true;
+            }
+        }
+        if (backlog) {
+            flushQuietly();
+        } else if (full) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    // --- LECTURES : file d'attente fusionnée ou reversée si concernée ---
+
+    @Override
+    public List<Message> getLastMessages(String channelName, int limit) {
+        // File relevée avant la requête : un lot inséré entre-temps est dédoublonné
+        List<Message> tail = pendingIn(channelName, 0);
+        return merge(super.getLastMessages(channelName, limit), tail, limit);
+    }
+
+    @Override
+    public List<Message> getMessagesSince(String channelName, long sinceId, int limit) {
+        List<Message> tail = pendingIn(channelName, sinceId);
+        return merge(super.getMessagesSince(channelName, sinceId, limit), tail, limit);
+    }
+
+    @Override
+    public List<Message> searchMessages(String requester, String matchQuery, String channel, String user,
+            long fromMillis, long toMillis, long beforeId, int limit) {
+        flushIfPending(msg -> channel == null || channel.equals(msg.getChannel()));
+        return super.searchMessages(requester, matchQuery, channel, user, fromMillis, toMillis, beforeId, limit);
+    }
+
+    @Override
+    public String deleteMessage(long id, String username) {
+        flushIfPending(msg -> msg.getId() == id);
+        return super.deleteMessage(id, username);
+    }
+
+    @Override
+    public Message editMessage(long id, String username, String content) {
+        flushIfPending(msg -> msg.getId() == id);
+        return super.editMessage(id, username, content);
+    }
+
+    @Override
+    public List<Message> getPendingDms(String recipient, int limit) {
+        // Conversation privée "DM:a:b" dont recipient est membre
+        flushIfPending(msg -> msg.getChannel() != null && msg.getChannel().startsWith("DM:")
+                && (msg.getChannel() + ":").contains(":" + recipient + ":"));
+        return super.getPendingDms(recipient, limit);
+    }
+
+    @Override
+    public Map<String, Long> getLatestMessageIds(Collection<String> channelNames) {
+        Map<String, Long> latest = super.getLatestMessageIds(channelNames);
+        synchronized (writeLock) {
+            for (Message msg : pending) {
+                if (channelNames.contains(msg.getChannel())) {
+                    latest.merge(msg.getChannel(), msg.getId(), Math::max);
+                }
+            }
+        }
+        return latest;
+    }
+
+    @Override
+    public Map<String, Integer> countUnread(Map<String, Long> lastRead, int cap) {
+        flushIfPending(msg -> {
+            Long read = lastRead.get(msg.getChannel());
+            return read != null && msg.getId() > read;
+        });
+        return super.countUnread(lastRead, cap);
+    }
+
+    // Messages en attente d'un salon, d'ID supérieur à sinceId
+    private List<Message> pendingIn(String channelName, long sinceId) {
+        List<Message> tail = new ArrayList<>();
+        synchronized (writeLock) {
+            for (Message msg : pending) {
+                if (msg.getId() > sinceId && channelName.equals(msg.getChannel())) {
+                    tail.add(msg);
+                }
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Ajoute la file d'attente (relevée avant la requête) à un historique
+     * chronologique lu dans SQLite, sans doublon si un lot a été inséré entre
+     * les deux, et garde les limit plus récents.
+     */
+    private static List<Message> merge(List<Message> stored, List<Message> tail, int limit) {
+        if (tail.isEmpty())
+            return stored;
+        long firstPending = tail.get(0).getId();
+        List<Message> merged = new ArrayList<>(stored.size() + tail.size());
+        for (Message msg : stored) {
+            if (msg.getId() < firstPending) {
+                merged.add(msg);
+            }
+        }
+        merged.addAll(tail);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(merged.size() - limit, merged.size())) : merged;
+    }
+
+    private void flushIfPending(Predicate<Message> concerned) {
+        boolean found = false;
+        synchronized (writeLock) {
+            for (Message msg : pending) {
+                if (concerned.test(msg)) {
+                    found = true;
+                    break;
+                }
+            }
+        }
+        if (found) {
+            flushQuietly();
+        }
+    }
+
+    // --- REVERSEMENT ---
+
+    /**
+     * Reverse les messages en attente, arrête le thread de fond et ferme le
+     * journal (arrêt propre, tests).
+     */
+    void close() {
+        scheduler.shutdown();
+        flushQuietly();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void flush() throws SQLException {
+        synchronized (flushLock) {
+            List<Message> batch;
+            synchronized (writeLock) {
+                flushScheduled = false;
+                if (pending.isEmpty())
+                    return;
+                batch = new ArrayList<>(pending);
+            }
+            // En cas d'échec le lot reste en file : il sera retenté au prochain passage
+            insertMessages(batch);
+            synchronized (writeLock) {
+                pending.subList(0, batch.size()).clear();
+            }
+            journal.checkpoint(batch.get(batch.size() - 1).getId());
+        }
+    }
+}
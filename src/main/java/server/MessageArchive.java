@@ -0,0 +1,452 @@
+package server;
+
+import common.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Partitionnement mensuel de l'historique d'un moteur SQLite.
+ *
+ * La table messages de la base du moteur ne garde que les mois récents
+ * (partition chaude, indexée pour la recherche). Les messages plus anciens
+ * sont déplacés dans une base SQLite par mois (messages-AAAA-MM.db dans le
+ * dossier d'archives du moteur, archive/ par défaut), contenu et pièces
+ * jointes compressés, compactée (VACUUM) puis ouverte en lecture seule.
+ * getLastMessages et getMessagesSince complètent leurs résultats avec les
+ * archives ; la recherche plein texte ne couvre que la partition chaude.
+ *
+ * Réglages : -Dstorage.hotMonths (3 par défaut, mois en cours compris),
+ * -Dstorage.retentionMonths (0 = archives conservées indéfiniment) et
+ * -Dstorage.maintenanceHour (heure locale de la maintenance, 4 par défaut).
+ */
+public class MessageArchive {
+    private static final String PREFIX = "messages-";
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final int HOT_MONTHS = Math.max(1, Integer.getInteger("storage.hotMonths", 3));
+    private static final int RETENTION_MONTHS = Integer.getInteger("storage.retentionMonths", 0);
+    private static final int BATCH_SIZE = 5000;
+    private static final long MAINTENANCE_INTERVAL_HOURS = 24;
+    private static final int MAINTENANCE_HOUR = Math.floorMod(Integer.getInteger("storage.maintenanceHour", 4), 24);
+
+    // Archive d'un mois, dernier ID qu'elle contient et plage d'IDs de chaque salon
+    private static final class Partition {
+        final YearMonth month;
+        final File file;
+        final long maxId;
+        final Map<String, long[]> channels;
+
+        Partition(YearMonth month, File file, Map<String, long[]> channels) {
+            this.month = month;
+            this.file = file;
+            this.channels = channels;
+            long max = Long.MIN_VALUE;
+            for (long[] range : channels.values()) {
+                max = Math.max(max, range[1]);
+            }
+            this.maxId = max;
+        }
+    }
+
+    // Ligne de la partition chaude en cours de déplacement
+    private static final class Row {
+        long id;
+        String channel;
+        String username;
+        String content;
+        long timestamp;
+        String type;
+        String fileName;
+        byte[] fileData;
+        int edited;
+    }
+
+    /**
+     * Connexions à la partition chaude (la base du moteur).
+     */
+    interface ConnectionSource {
+        Connection open() throws SQLException;
+    }
+
+    private final ConnectionSource hot;
+    private final File dir;
+    // Du mois le plus récent au plus ancien
+    private volatile List<Partition> partitions = Collections.emptyList();
+    private ScheduledExecutorService scheduler;
+
+    MessageArchive(ConnectionSource hot, File dir) {
+        this.hot = hot;
+        this.dir = dir;
+    }
+
+    /**
+     * Charge les archives existantes et planifie la maintenance (archivage des
+     * mois froids puis rétention) toutes les 24 h, à l'heure creuse
+     * storage.maintenanceHour plutôt qu'au démarrage du serveur.
+     */
+    public synchronized void start() {
+        if (scheduler != null)
+            return;
+        loadPartitions();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Archive");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::maintain, minutesUntil(MAINTENANCE_HOUR),
+                TimeUnit.HOURS.toMinutes(MAINTENANCE_INTERVAL_HOURS), TimeUnit.MINUTES);
+    }
+
+    // Minutes jusqu'au prochain passage à hour:00, heure locale
+    private static long minutesUntil(int hour) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(hour, 0);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        return Math.max(1, Duration.between(now, next).toMinutes());
+    }
+
+    public void maintain() {
+        try {
+            int archived = archiveColdMessages();
+            int removed = applyRetention();
+            loadPartitions();
+            if (archived > 0 || removed > 0) {
+                System.out.println("Archivage: " + archived + " message(s) déplacé(s), " + removed
+                        + " archive(s) supprimée(s)");
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Complète une liste de messages d'un salon (du plus récent au plus ancien)
+     * avec les archives, jusqu'à limit messages d'ID supérieur à sinceId.
+     * Seules les archives où le salon a des messages dans la plage sont ouvertes.
+     */
+    void fillOlder(String channel, long sinceId, int limit, List<Message> newestFirst) {
+        long before = newestFirst.isEmpty() ? Long.MAX_VALUE : newestFirst.get(newestFirst.size() - 1).getId();
+        String sql = "SELECT * FROM messages WHERE channel = ? AND id < ? AND id > ? ORDER BY id DESC LIMIT ?";
+        for (Partition partition : partitions) {
+            if (newestFirst.size() >= limit || partition.maxId <= sinceId)
+                break;
+            long[] range = partition.channels.get(channel);
+            if (range == null || range[0] >= before || range[1] <= sinceId)
+                continue;
+            try (Connection conn = openArchive(partition.file, true);
+                    PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, channel);
+                pstmt.setLong(2, before);
+                pstmt.setLong(3, sinceId);
+                pstmt.setInt(4, limit - newestFirst.size());
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    Message msg = readArchived(rs);
+                    newestFirst.add(msg);
+                    before = msg.getId();
+                }
+            } catch (SQLException | IOException e) {
+                System.err.println("Lecture archive " + partition.file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // --- ARCHIVAGE ---
+
+    /**
+     * Déplace les messages antérieurs à la fenêtre chaude vers leur archive
+     * mensuelle, par lots. Les messages privés pas encore livrés restent
+     * dans la partition chaude.
+     */
+    private int archiveColdMessages() {
+        long cutoff = YearMonth.now().minusMonths(HOT_MONTHS - 1).atDay(1).atStartOfDay(ZoneId.systemDefault())
+                .toInstant().toEpochMilli();
+        String select = "SELECT id, channel, username, content, timestamp, type, file_name, file_data, edited "
+                + "FROM messages WHERE id > ? AND id < ? "
+                + "AND id NOT IN (SELECT message_id FROM pending_dm) ORDER BY id LIMIT ?";
+        int moved = 0;
+        Set<YearMonth> touched = new TreeSet<>();
+        try (Connection conn = hot.open()) {
+            long boundary = firstHotId(conn, cutoff);
+            long cursor = 0;
+            while (true) {
+                List<Row> rows = new ArrayList<>();
+                try (PreparedStatement pstmt = conn.prepareStatement(select)) {
+                    pstmt.setLong(1, cursor);
+                    pstmt.setLong(2, boundary);
+                    pstmt.setInt(3, BATCH_SIZE);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        rows.add(readRow(rs));
+                    }
+                }
+                if (rows.isEmpty())
+                    break;
+                cursor = rows.get(rows.size() - 1).id;
+
+                Map<YearMonth, List<Row>> byMonth = new TreeMap<>();
+                for (Row row : rows) {
+                    byMonth.computeIfAbsent(monthOf(row.timestamp), m -> new ArrayList<>()).add(row);
+                }
+                // Écrire l'archive avant de supprimer : une interruption laisse
+                // au pire un doublon, ignoré au passage suivant
+                for (Map.Entry<YearMonth, List<Row>> entry : byMonth.entrySet()) {
+                    writeArchive(entry.getKey(), entry.getValue());
+                    touched.add(entry.getKey());
+                }
+                deleteHot(conn, rows);
+                moved += rows.size();
+            }
+        } catch (SQLException | IOException e) {
+            System.err.println("Erreur archivage: " + e.getMessage());
+        }
+        for (YearMonth month : touched) {
+            compact(month);
+        }
+        return moved;
+    }
+
+    // Premier ID de la fenêtre chaude (les IDs croissent avec le temps)
+    private static long firstHotId(Connection hot, long cutoff) throws SQLException {
+        try (PreparedStatement pstmt = hot.prepareStatement("SELECT MIN(id) FROM messages WHERE timestamp >= ?")) {
+            pstmt.setLong(1, cutoff);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next() && rs.getObject(1) != null)
+                return rs.getLong(1);
+        }
+        try (Statement stmt = hot.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT IFNULL(MAX(id), 0) + 1 FROM messages")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static Row readRow(ResultSet rs) throws SQLException {
+        Row row = new Row();
+        row.id = rs.getLong("id");
+        row.channel = rs.getString("channel");
+        row.username = rs.getString("username");
+        row.content = rs.getString("content");
+        row.timestamp = rs.getLong("timestamp");
+        row.type = rs.getString("type");
+        row.fileName = rs.getString("file_name");
+        row.fileData = rs.getBytes("file_data");
+        row.edited = rs.getInt("edited");
+        return row;
+    }
+
+    private void writeArchive(YearMonth month, List<Row> rows) throws SQLException, IOException {
+        File file = fileOf(month);
+        dir.mkdirs();
+        if (file.exists()) {
+            file.setWritable(true);
+        }
+        String insert = "INSERT OR IGNORE INTO messages(id, channel, username, timestamp, type, edited, file_name, "
+                + "content_z, file_z) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = openArchive(file, false)) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS messages (" +
+                        "id INTEGER PRIMARY KEY, " +
+                        "channel TEXT, " +
+                        "username TEXT, " +
+                        "timestamp INTEGER, " +
+                        "type TEXT, " +
+                        "edited INTEGER DEFAULT 0, " +
+                        "file_name TEXT, " +
+                        "content_z BLOB, " +
+                        "file_z BLOB" +
+                        ");");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_archive_channel ON messages(channel, id)");
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(insert)) {
+                for (Row row : rows) {
+                    pstmt.setLong(1, row.id);
+                    pstmt.setString(2, row.channel);
+                    pstmt.setString(3, row.username);
+                    pstmt.setLong(4, row.timestamp);
+                    pstmt.setString(5, row.type);
+                    pstmt.setInt(6, row.edited);
+                    pstmt.setString(7, row.fileName);
+                    pstmt.setBytes(8, row.content == null ? null
+                            : deflate(row.content.getBytes(StandardCharsets.UTF_8)));
+                    pstmt.setBytes(9, row.fileData == null ? null : deflate(row.fileData));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    private static void deleteHot(Connection hot, List<Row> rows) throws SQLException {
+        boolean autoCommit = hot.getAutoCommit();
+        hot.setAutoCommit(false);
+        try (PreparedStatement pstmt = hot.prepareStatement("DELETE FROM messages WHERE id = ?")) {
+            for (Row row : rows) {
+                pstmt.setLong(1, row.id);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            hot.commit();
+        } finally {
+            hot.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Compactage d'une archive terminée, puis passage en lecture seule
+    private void compact(YearMonth month) {
+        File file = fileOf(month);
+        try (Connection conn = openArchive(file, false);
+                Statement stmt = conn.createStatement()) {
+            stmt.execute("VACUUM");
+        } catch (SQLException e) {
+            System.err.println("Compactage " + file + ": " + e.getMessage());
+        }
+        file.setReadOnly();
+    }
+
+    // --- RÉTENTION ---
+
+    private int applyRetention() {
+        if (RETENTION_MONTHS <= 0)
+            return 0;
+        YearMonth oldestKept = YearMonth.now().minusMonths(Math.max(RETENTION_MONTHS, HOT_MONTHS) - 1);
+        int removed = 0;
+        for (Partition partition : partitions) {
+            if (partition.month.isBefore(oldestKept)) {
+                partition.file.setWritable(true);
+                if (partition.file.delete()) {
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    // --- PARTITIONS ---
+
+    private void loadPartitions() {
+        List<Partition> loaded = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(".db"));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                YearMonth month;
+                try {
+                    month = YearMonth.parse(name.substring(PREFIX.length(), name.length() - 3), MONTH);
+                } catch (DateTimeParseException e) {
+                    continue;
+                }
+                // Plage d'IDs de chaque salon, lue dans idx_archive_channel
+                Map<String, long[]> channels = new HashMap<>();
+                try (Connection conn = openArchive(file, true);
+                        Statement stmt = conn.createStatement();
+                        ResultSet rs = stmt.executeQuery(
+                                "SELECT channel, MIN(id), MAX(id) FROM messages GROUP BY channel")) {
+                    while (rs.next()) {
+                        channels.put(rs.getString(1), new long[] { rs.getLong(2), rs.getLong(3) });
+                    }
+                    if (!channels.isEmpty()) {
+                        loaded.add(new Partition(month, file, channels));
+                    }
+                } catch (SQLException e) {
+                    System.err.println("Archive illisible " + file + ": " + e.getMessage());
+                }
+            }
+        }
+        loaded.sort((a, b) -> b.month.compareTo(a.month));
+        partitions = Collections.unmodifiableList(loaded);
+    }
+
+    private File fileOf(YearMonth month) {
+        return new File(dir, PREFIX + month.format(MONTH) + ".db");
+    }
+
+    private static YearMonth monthOf(long millis) {
+        return YearMonth.from(Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()));
+    }
+
+    private static Connection openArchive(File file, boolean readOnly) throws SQLException {
+        Properties props = new Properties();
+        if (readOnly) {
+            props.setProperty("open_mode", "1"); // SQLITE_OPEN_READONLY
+        }
+        return DriverManager.getConnection("jdbc:sqlite:" + file.getPath(), props);
+    }
+
+    private static Message readArchived(ResultSet rs) throws SQLException, IOException {
+        String channel = rs.getString("channel");
+        String user = rs.getString("username");
+        LocalDateTime timestamp = new java.sql.Timestamp(rs.getLong("timestamp")).toLocalDateTime();
+        Message.MessageType type = Message.MessageType.CHAT;
+        String typeStr = rs.getString("type");
+        if (typeStr != null) {
+            try {
+                type = Message.MessageType.valueOf(typeStr);
+            } catch (IllegalArgumentException e) {
+                // ignore
+            }
+        }
+        byte[] content = rs.getBytes("content_z");
+        byte[] file = rs.getBytes("file_z");
+
+        Message msg;
+        if (type == Message.MessageType.FILE) {
+            msg = new Message(user, rs.getString("file_name"), file == null ? null : inflate(file), channel, type,
+                    timestamp);
+        } else {
+            msg = new Message(user, content == null ? null : new String(inflate(content), StandardCharsets.UTF_8),
+                    channel, type, timestamp);
+        }
+        msg.setId(rs.getLong("id"));
+        msg.setEdited(rs.getInt("edited") != 0);
+        return msg;
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(32, data.length / 2));
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        }
+    }
+}
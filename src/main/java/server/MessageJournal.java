@@ -0,0 +1,285 @@
+package server;
+
+import common.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Journal des messages en segments de fichiers projetés en mémoire : ajouter
+ * un message revient à copier l'enregistrement dans le segment courant.
+ *
+ * Segment (journal/segment-&lt;premier ID&gt;.log) : en-tête fixe (magique,
+ * version, premier ID, point de reprise) puis enregistrements
+ * [longueur][CRC32][données], terminés par une longueur nulle (le reste du
+ * fichier est à zéro). Un segment plein est fermé et un nouveau est créé.
+ *
+ * Le point de reprise (dernier ID reversé dans SQLite) est écrit dans
+ * l'en-tête du segment courant ; les segments entièrement reversés sont
+ * supprimés. Au démarrage, replay() relit les enregistrements postérieurs au
+ * point de reprise et s'arrête au premier enregistrement incomplet ou dont
+ * le CRC est faux (écriture interrompue).
+ */
+public class MessageJournal {
+    private static final int MAGIC = 0x444A524E; // "DJRN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int CHECKPOINT_OFFSET = 16;
+    private static final int RECORD_HEADER = 8;
+    private static final int SEGMENT_SIZE = Integer.getInteger("storage.segmentSize", 16 * 1024 * 1024);
+
+    // Segment fermé, en attente de suppression une fois reversé
+    private static final class Segment {
+        final File file;
+        final long lastId;
+
+        Segment(File file, long lastId) {
+            this.file = file;
+            this.lastId = lastId;
+        }
+    }
+
+    private final File dir;
+    private final List<Segment> closed = new ArrayList<>();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private File activeFile;
+    private long activeLastId;
+    private final CRC32 crc = new CRC32();
+
+    public MessageJournal(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Relit les messages non reversés de tous les segments existants, dans
+     * l'ordre des IDs.
+     */
+    public synchronized List<Message> replay() throws IOException {
+        List<Message> messages = new ArrayList<>();
+        File[] files = segmentFiles();
+        long checkpoint = 0;
+        for (File file : files) {
+            checkpoint = Math.max(checkpoint, readCheckpoint(file));
+        }
+        for (File file : files) {
+            readSegment(file, checkpoint, messages);
+        }
+        messages.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+        return messages;
+    }
+
+    /**
+     * Repart d'un journal vide (après rejeu des anciens segments), le premier
+     * message ayant l'ID nextId.
+     */
+    public synchronized void reset(long nextId) throws IOException {
+        closeActive();
+        for (File file : segmentFiles()) {
+            file.delete();
+        }
+        closed.clear();
+        dir.mkdirs();
+        roll(nextId, 0);
+    }
+
+    /**
+     * Ajoute un message déjà numéroté ; retourne après la copie dans le
+     * segment (sans écriture disque, sauf si force).
+     */
+    public synchronized void append(Message msg, boolean force) throws IOException {
+        byte[] payload = encode(msg);
+        int needed = RECORD_HEADER + payload.length + 4; // + marqueur de fin
+        if (buffer.remaining() < needed) {
+            roll(msg.getId(), needed);
+        }
+        crc.reset();
+        crc.update(payload);
+        int start = buffer.position();
+        buffer.position(start + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        // La longueur en dernier : un enregistrement n'est visible qu'une fois complet
+        buffer.putInt(start, payload.length);
+        activeLastId = msg.getId();
+        if (force) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Les messages jusqu'à messageId sont dans SQLite : note le point de
+     * reprise et supprime les segments fermés entièrement reversés. L'en-tête
+     * est écrit sur disque avant toute suppression, sans quoi un arrêt brutal
+     * pourrait laisser un segment actif sans point de reprise.
+     */
+    public synchronized void checkpoint(long messageId) {
+        if (buffer != null) {
+            buffer.putLong(CHECKPOINT_OFFSET, messageId);
+            buffer.force();
+        }
+        Iterator<Segment> it = closed.iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            // Sous Windows, la suppression échoue tant que la projection n'est
+            // pas libérée : nouvel essai au prochain point de reprise
+            if (segment.lastId <= messageId && (segment.file.delete() || !segment.file.exists())) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        closeActive();
+    }
+
+    private void roll(long firstId, int minCapacity) throws IOException {
+        if (activeFile != null) {
+            closed.add(new Segment(activeFile, activeLastId));
+            closeActive();
+        }
+        activeFile = new File(dir, String.format("segment-%020d.log", firstId));
+        int size = Math.max(SEGMENT_SIZE, HEADER_SIZE + minCapacity);
+        channel = FileChannel.open(activeFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, firstId);
+        buffer.putLong(CHECKPOINT_OFFSET, 0);
+        buffer.position(HEADER_SIZE);
+        activeLastId = firstId - 1;
+    }
+
+    private void closeActive() throws IOException {
+        if (channel != null) {
+            buffer.force();
+            channel.close();
+        }
+        channel = null;
+        buffer = null;
+        activeFile = null;
+    }
+
+    private File[] segmentFiles() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("segment-") && name.endsWith(".log"));
+        if (files == null)
+            return new File[0];
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static long readCheckpoint(File file) throws IOException {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && in.read(header) > 0) {
+            }
+            if (header.position() < HEADER_SIZE || header.getInt(0) != MAGIC)
+                return 0;
+            return header.getLong(CHECKPOINT_OFFSET);
+        }
+    }
+
+    private static void readSegment(File file, long checkpoint, List<Message> out) throws IOException {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (in.size() < HEADER_SIZE)
+                return;
+            MappedByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION)
+                return;
+            data.position(HEADER_SIZE);
+            CRC32 check = new CRC32();
+            while (data.remaining() >= RECORD_HEADER) {
+                int length = data.getInt();
+                int expected = data.getInt();
+                if (length <= 0 || length > data.remaining())
+                    return;
+                byte[] payload = new byte[length];
+                data.get(payload);
+                check.reset();
+                check.update(payload);
+                if ((int) check.getValue() != expected)
+                    return; // écriture interrompue
+                Message msg = decode(payload);
+                if (msg.getId() > checkpoint) {
+                    out.add(msg);
+                }
+            }
+        }
+    }
+
+    // --- FORMAT : id, horodatage, champs texte, fichier ---
+
+    static byte[] encode(Message msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(msg.getId());
+        out.writeLong(java.sql.Timestamp.valueOf(msg.getTimestamp()).getTime());
+        writeString(out, msg.getChannel());
+        writeString(out, msg.getUsername());
+        writeString(out, msg.getType().name());
+        writeString(out, msg.getContent());
+        writeString(out, msg.getFileName());
+        writeBytes(out, msg.getFileData());
+        return bytes.toByteArray();
+    }
+
+    static Message decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long id = in.readLong();
+        LocalDateTime timestamp = new java.sql.Timestamp(in.readLong()).toLocalDateTime();
+        String channel = readString(in);
+        String user = readString(in);
+        Message.MessageType type = Message.MessageType.valueOf(readString(in));
+        String content = readString(in);
+        String fileName = readString(in);
+        byte[] fileData = readBytes(in);
+        Message msg = type == Message.MessageType.FILE
+                ? new Message(user, fileName, fileData, channel, type, timestamp)
+                : new Message(user, content, channel, type, timestamp);
+        msg.setId(id);
+        return msg;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,119 @@
+package server;
+
+import common.Message;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Commande /search : analyse des filtres, requête FTS et mise en forme des
+ * résultats renvoyés au client sous forme de messages système.
+ *
+ * Syntaxe : /search [#salon] [@pseudo] [after:AAAA-MM-JJ] [before:AAAA-MM-JJ]
+ * [page:ID] mots... — page:ID reprend la recherche sous l'ID indiqué.
+ */
+public class MessageSearch {
+    public static final int PAGE_SIZE = 20;
+    private static final DateTimeFormatter RESULT_TIME = DateTimeFormatter.ofPattern("dd/MM HH:mm");
+
+    String channel;
+    String user;
+    long fromMillis;
+    long toMillis;
+    long beforeId;
+    final StringBuilder terms = new StringBuilder();
+    final StringBuilder match = new StringBuilder();
+
+    /**
+     * Analyse les arguments ; retourne null si la syntaxe est invalide.
+     */
+    public static MessageSearch parse(String args) {
+        MessageSearch search = new MessageSearch();
+        try {
+            for (String token : args.trim().split("\\s+")) {
+                if (token.isEmpty())
+                    continue;
+                if (token.startsWith("#") && token.length() > 1) {
+                    search.channel = token.substring(1);
+                } else if (token.startsWith("@") && token.length() > 1) {
+                    search.user = token.substring(1);
+                } else if (token.startsWith("after:")) {
+                    search.fromMillis = startOfDay(LocalDate.parse(token.substring(6)));
+                } else if (token.startsWith("before:")) {
+                    search.toMillis = startOfDay(LocalDate.parse(token.substring(7)));
+                } else if (token.startsWith("page:")) {
+                    search.beforeId = Long.parseLong(token.substring(5));
+                } else {
+                    search.addTerm(token);
+                }
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            return null;
+        }
+        return search.match.length() > 0 ? search : null;
+    }
+
+    private static long startOfDay(LocalDate date) {
+        return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // Chaque mot devient une phrase FTS5 entre guillemets (pas d'injection de
+    // syntaxe) ; un * final est conservé pour la recherche par préfixe
+    private void addTerm(String token) {
+        boolean prefix = token.endsWith("*") && token.length() > 1;
+        String word = prefix ? token.substring(0, token.length() - 1) : token;
+        if (terms.length() > 0) {
+            terms.append(' ');
+            match.append(' ');
+        }
+        terms.append(token);
+        match.append('"').append(word.replace("\"", "\"\"")).append('"');
+        if (prefix) {
+            match.append('*');
+        }
+    }
+
+    public List<Message> execute(String requester) {
+        return DatabaseManager.searchMessages(requester, match.toString(), channel, user, fromMillis, toMillis,
+                beforeId, PAGE_SIZE);
+    }
+
+    /**
+     * Envoie les résultats au client, avec la commande de la page suivante
+     * lorsque la page est pleine.
+     */
+    public void sendResults(ClientHandler client, List<Message> results) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("🔎 ").append(results.size()).append(results.size() == PAGE_SIZE ? "+" : "")
+                .append(" résultat(s) pour \"").append(terms).append("\"");
+        for (Message m : results) {
+            sb.append("\n[#").append(m.getChannel()).append("] ").append(m.getUsername()).append(" (")
+                    .append(m.getTimestamp().format(RESULT_TIME)).append(") : ").append(m.getContent());
+        }
+        if (results.size() == PAGE_SIZE) {
+            sb.append("\nPage suivante : /search ").append(filters())
+                    .append("page:").append(results.get(results.size() - 1).getId()).append(' ').append(terms);
+        }
+        client.sendMessage(new Message("System", sb.toString(), "system", Message.MessageType.SYSTEM));
+    }
+
+    private String filters() {
+        StringBuilder sb = new StringBuilder();
+        if (channel != null)
+            sb.append('#').append(channel).append(' ');
+        if (user != null)
+            sb.append('@').append(user).append(' ');
+        if (fromMillis > 0)
+            sb.append("after:").append(toDate(fromMillis)).append(' ');
+        if (toMillis > 0)
+            sb.append("before:").append(toDate(toMillis)).append(' ');
+        return sb.toString();
+    }
+
+    private static LocalDate toDate(long millis) {
+        return java.time.Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+}
@@ -0,0 +1,153 @@
+package server;
+
+import common.Message;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traçage échantillonné d'un message, étape par étape : réception (premier
+ * octet lu -> objet décodé), traitement, persistance, diffusion, puis pour
+ * chaque destinataire mise en file, attente du verrou et écriture. Le client
+ * renvoie ses propres mesures (décodage, affichage) par /trace.
+ *
+ * La trace suit le thread du ClientHandler de réception ; le message diffusé
+ * porte son traceId, ce qui permet de rattacher les écritures et la réponse du
+ * client. Chaque étape alimente l'histogramme trace_&lt;étape&gt; de Metrics.
+ *
+ * -Dtrace.sampleRate : proportion de messages tracés (0.01 par défaut, 0 =
+ * désactivé).
+ */
+public class MessageTrace {
+    private static final double SAMPLE_RATE = Double.parseDouble(System.getProperty("trace.sampleRate", "0.01"));
+    private static final long MAX_CLIENT_NANOS = 60_000_000_000L;
+
+    /**
+     * Étapes dans l'ordre du trajet : nom de l'histogramme et libellé.
+     */
+    public static final String[][] STAGES = {
+            { "trace_receive", "Réception (décodage)" },
+            { "trace_dispatch", "Traitement de la commande" },
+            { "trace_persist", "Persistance" },
+            { "trace_pre_fanout", "Avant diffusion (non-lus)" },
+            { "trace_enqueue", "Mise en file (position dans la diffusion)" },
+            { "trace_lock_wait", "Attente du verrou d'écriture" },
+            { "trace_write", "Écriture socket" },
+            { "trace_fanout", "Diffusion complète" },
+            { "trace_server_total", "Total serveur" },
+            { "trace_client_receive", "Client : réception (décodage)" },
+            { "trace_client_render", "Client : affichage" },
+    };
+
+    private static final Metrics.Histogram RECEIVE = Metrics.histogram("trace_receive");
+    private static final Metrics.Histogram DISPATCH = Metrics.histogram("trace_dispatch");
+    private static final Metrics.Histogram PERSIST = Metrics.histogram("trace_persist");
+    private static final Metrics.Histogram PRE_FANOUT = Metrics.histogram("trace_pre_fanout");
+    private static final Metrics.Histogram ENQUEUE = Metrics.histogram("trace_enqueue");
+    private static final Metrics.Histogram LOCK_WAIT = Metrics.histogram("trace_lock_wait");
+    private static final Metrics.Histogram WRITE = Metrics.histogram("trace_write");
+    private static final Metrics.Histogram FANOUT = Metrics.histogram("trace_fanout");
+    private static final Metrics.Histogram SERVER_TOTAL = Metrics.histogram("trace_server_total");
+    private static final Metrics.Histogram CLIENT_RECEIVE = Metrics.histogram("trace_client_receive");
+    private static final Metrics.Histogram CLIENT_RENDER = Metrics.histogram("trace_client_render");
+
+    private static final AtomicLong nextId = new AtomicLong();
+    private static final ThreadLocal<MessageTrace> current = new ThreadLocal<>();
+
+    private final long id;
+    private final long firstByte;
+    private final long decoded;
+    private long persistStart;
+    private long persistEnd;
+    private long fanoutStart;
+
+    private MessageTrace(long id, long firstByte, long decoded) {
+        this.id = id;
+        this.firstByte = firstByte;
+        this.decoded = decoded;
+    }
+
+    /**
+     * Tire au sort le message qui vient d'être décodé ; s'il est retenu, la
+     * trace devient celle du thread courant jusqu'à end().
+     */
+    public static void begin(long firstByteNanos, long decodedNanos) {
+        if (SAMPLE_RATE > 0 && ThreadLocalRandom.current().nextDouble() < SAMPLE_RATE) {
+            current.set(new MessageTrace(nextId.incrementAndGet(), firstByteNanos, decodedNanos));
+        }
+    }
+
+    public static void end() {
+        current.remove();
+    }
+
+    public static void persistStart() {
+        MessageTrace trace = current.get();
+        if (trace != null)
+            trace.persistStart = System.nanoTime();
+    }
+
+    public static void persistEnd() {
+        MessageTrace trace = current.get();
+        if (trace != null)
+            trace.persistEnd = System.nanoTime();
+    }
+
+    /**
+     * Début de diffusion : le message porte désormais l'identifiant de trace.
+     */
+    public static void fanoutStart(Message msg) {
+        MessageTrace trace = current.get();
+        if (trace != null) {
+            msg.setTraceId(trace.id);
+            trace.fanoutStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * Fin de diffusion : enregistre les étapes serveur de la trace, une seule
+     * fois (une commande peut diffuser plusieurs messages).
+     */
+    public static void fanoutEnd() {
+        MessageTrace trace = current.get();
+        if (trace == null || trace.fanoutStart == 0)
+            return;
+        long now = System.nanoTime();
+        long dispatched = trace.persistStart != 0 ? trace.persistStart : trace.fanoutStart;
+        if (trace.firstByte != 0)
+            RECEIVE.record(trace.decoded - trace.firstByte);
+        DISPATCH.record(dispatched - trace.decoded);
+        if (trace.persistStart != 0) {
+            PERSIST.record(trace.persistEnd - trace.persistStart);
+            PRE_FANOUT.record(trace.fanoutStart - trace.persistEnd);
+        }
+        FANOUT.record(now - trace.fanoutStart);
+        SERVER_TOTAL.record(now - (trace.firstByte != 0 ? trace.firstByte : trace.decoded));
+        current.remove();
+    }
+
+    /**
+     * Écriture d'un message tracé vers un destinataire : appel de sendMessage,
+     * verrou obtenu, écriture terminée.
+     */
+    public static void written(Message msg, long enqueued, long locked, long done) {
+        if (msg.getTraceId() == 0)
+            return;
+        MessageTrace trace = current.get();
+        if (trace != null && trace.id == msg.getTraceId() && trace.fanoutStart != 0) {
+            ENQUEUE.record(enqueued - trace.fanoutStart);
+        }
+        LOCK_WAIT.record(locked - enqueued);
+        WRITE.record(done - locked);
+    }
+
+    /**
+     * Mesures renvoyées par le client pour un message tracé (/trace).
+     */
+    public static void clientReport(long receiveNanos, long renderNanos) {
+        if (receiveNanos >= 0 && receiveNanos < MAX_CLIENT_NANOS)
+            CLIENT_RECEIVE.record(receiveNanos);
+        if (renderNanos >= 0 && renderNanos < MAX_CLIENT_NANOS)
+            CLIENT_RENDER.record(renderNanos);
+    }
+}
@@ -0,0 +1,250 @@
+package server;
+
+import com.sun.net.httpserver.HttpServer;
+import common.Message;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registre de métriques du serveur : compteurs, jauges et histogrammes de
+ * latence (nanosecondes, précision ~3 %, sans allocation à l'enregistrement).
+ *
+ * Exposition texte "nom valeur" sur http://127.0.0.1:&lt;metrics.port&gt;/metrics
+ * (9100 par défaut, 0 = désactivé) et copie dans la console toutes les
+ * metrics.dumpSeconds secondes (60 par défaut, 0 = désactivé).
+ */
+public class Metrics {
+    private static final int PORT = Integer.getInteger("metrics.port", 9100);
+    private static final int DUMP_SECONDS = Integer.getInteger("metrics.dumpSeconds", 60);
+
+    private static final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Metrics");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private Metrics() {
+    }
+
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Histogramme log-linéaire façon HDR : valeurs exactes sous 64, puis 32
+     * intervalles par puissance de deux.
+     */
+    public static final class Histogram {
+        private static final int LINEAR = 64;
+        private static final int SUB_BUCKETS = 32;
+        private static final int BUCKETS = LINEAR + 58 * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long value) {
+            if (value < 0)
+                value = 0;
+            counts.incrementAndGet(indexOf(value));
+            count.increment();
+            sum.add(value);
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        /**
+         * Enregistre le temps écoulé depuis startNanos (System.nanoTime()).
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public long getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : sum.sum() / n;
+        }
+
+        /**
+         * Valeur au centile p (0-100), borne haute de l'intervalle.
+         */
+        public long percentile(double p) {
+            long n = count.sum();
+            if (n == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(n * p / 100.0));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank)
+                    return Math.min(upperBound(i), max.get());
+            }
+            return max.get();
+        }
+
+        private static int indexOf(long value) {
+            if (value < LINEAR)
+                return (int) value;
+            int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+            return LINEAR + (shift - 1) * SUB_BUCKETS + (int) ((value >> shift) - SUB_BUCKETS);
+        }
+
+        private static long upperBound(int index) {
+            if (index < LINEAR)
+                return index;
+            int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+            long mantissa = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+            return ((mantissa + 1) << shift) - 1;
+        }
+    }
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    /**
+     * Un compteur par type de message, indexé par ordinal (name_TYPE).
+     */
+    public static Counter[] counterPerType(String name) {
+        Message.MessageType[] types = Message.MessageType.values();
+        Counter[] perType = new Counter[types.length];
+        for (Message.MessageType type : types) {
+            perType[type.ordinal()] = counter(name + "_" + type.name());
+        }
+        return perType;
+    }
+
+    public static void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    /**
+     * Enveloppe une implémentation d'interface : chaque appel est chronométré
+     * dans l'histogramme prefix + nom de la méthode.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T timed(Class<T> type, T target, String prefix) {
+        Map<Method, Histogram> perMethod = new ConcurrentHashMap<>();
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            Histogram histogram = perMethod.computeIfAbsent(method, m -> histogram(prefix + m.getName()));
+            long start = System.nanoTime();
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                histogram.recordSince(start);
+            }
+        });
+    }
+
+    /**
+     * Texte exporté : compteurs et jauges "nom valeur", histogrammes en
+     * microsecondes (nom_count, nom_mean_us, nom_p50_us, nom_p99_us...).
+     */
+    public static String render() {
+        StringBuilder sb = new StringBuilder();
+        counters.forEach((name, counter) -> sb.append(name).append(' ').append(counter.get()).append('\n'));
+        gauges.forEach((name, gauge) -> {
+            long value;
+            try {
+                value = gauge.getAsLong();
+            } catch (RuntimeException e) {
+                value = -1;
+            }
+            sb.append(name).append(' ').append(value).append('\n');
+        });
+        histograms.forEach((name, h) -> {
+            if (h.getCount() == 0)
+                return;
+            sb.append(name).append("_count ").append(h.getCount()).append('\n');
+            sb.append(name).append("_mean_us ").append(micros(h.getMean())).append('\n');
+            sb.append(name).append("_p50_us ").append(micros(h.percentile(50))).append('\n');
+            sb.append(name).append("_p90_us ").append(micros(h.percentile(90))).append('\n');
+            sb.append(name).append("_p99_us ").append(micros(h.percentile(99))).append('\n');
+            sb.append(name).append("_p999_us ").append(micros(h.percentile(99.9))).append('\n');
+            sb.append(name).append("_max_us ").append(micros(h.getMax())).append('\n');
+        });
+        return sb.toString();
+    }
+
+    private static String micros(long nanos) {
+        return String.format(java.util.Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
+    /**
+     * Démarre l'exposition HTTP locale et l'écriture périodique dans la console.
+     */
+    public static void start() {
+        if (PORT > 0) {
+            try {
+                HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT), 0);
+                http.createContext("/metrics", exchange -> {
+                    byte[] body = render().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                });
+                http.setExecutor(scheduler);
+                http.start();
+                System.out.println("📈 Métriques sur http://127.0.0.1:" + PORT + "/metrics");
+            } catch (IOException e) {
+                System.err.println("Métriques HTTP indisponibles: " + e.getMessage());
+            }
+        }
+        if (DUMP_SECONDS > 0) {
+            scheduler.scheduleAtFixedRate(() -> System.out.print("[METRICS]\n" + render()), DUMP_SECONDS,
+                    DUMP_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package server;
+
+import common.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Derniers messages envoyés à une session, numérotés dans l'ordre d'écriture
+ * à partir de 1 (le client compte de son côté les messages reçus depuis
+ * auth_success) : à la reprise, seuls ceux qu'il n'a pas reçus sont renvoyés.
+ *
+ * Borné en nombre (-Dsession.bufferMessages, 256) et en taille approximative
+ * (-Dsession.bufferBytes, 1 Mo de texte et de pièces jointes) : les plus
+ * anciens sont oubliés, une reprise antérieure est alors refusée.
+ *
+ * Non synchronisé : utilisé sous le verrou d'écriture du ClientHandler.
+ */
+class OutboundBuffer {
+    private static final int MAX_MESSAGES = Math.max(16, Integer.getInteger("session.bufferMessages", 256));
+    private static final long MAX_BYTES = Long.getLong("session.bufferBytes", 1 << 20);
+    // En-tête de sérialisation et champs fixes d'un Message, à peu près
+    private static final int MESSAGE_OVERHEAD = 128;
+
+    private final Message[] ring = new Message[MAX_MESSAGES];
+    private final int[] sizes = new int[MAX_MESSAGES];
+    private long firstSeq = 1; // plus ancien numéro conservé
+    private long nextSeq = 1; // numéro du prochain message
+    private long bytes;
+
+    void append(Message msg) {
+        if (nextSeq - firstSeq == ring.length)
+            dropOldest();
+        int slot = slot(nextSeq);
+        ring[slot] = msg;
+        sizes[slot] = sizeOf(msg);
+        bytes += sizes[slot];
+        nextSeq++;
+        // Le dernier message est toujours gardé, même trop gros
+        while (bytes > MAX_BYTES && nextSeq - firstSeq > 1)
+            dropOldest();
+    }
+
+    /**
+     * Messages postérieurs à lastSeq (dernier numéro reçu par le client), ou
+     * null si certains ont déjà été oubliés ou si lastSeq est incohérent.
+     */
+    List<Message> since(long lastSeq) {
+        if (lastSeq < firstSeq - 1 || lastSeq >= nextSeq)
+            return null;
+        List<Message> missed = new ArrayList<>((int) (nextSeq - 1 - lastSeq));
+        for (long seq = lastSeq + 1; seq < nextSeq; seq++) {
+            missed.add(ring[slot(seq)]);
+        }
+        return missed;
+    }
+
+    private void dropOldest() {
+        int slot = slot(firstSeq);
+        bytes -= sizes[slot];
+        ring[slot] = null;
+        firstSeq++;
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % ring.length);
+    }
+
+    private static int sizeOf(Message msg) {
+        int size = MESSAGE_OVERHEAD;
+        if (msg.getContent() != null)
+            size += msg.getContent().length();
+        if (msg.getFileData() != null)
+            size += msg.getFileData().length;
+        return size;
+    }
+}
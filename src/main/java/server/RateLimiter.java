@@ -0,0 +1,178 @@
+package server;
+
+import common.Message;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limitation de débit des clients, appliquée dans la boucle de lecture avant
+ * tout traitement (et donc tout accès à la base).
+ *
+ * Seaux à jetons sans verrou (algorithme GCRA : un seul AtomicLong par seau,
+ * l'instant théorique de la prochaine arrivée), un par connexion et par
+ * classe de message, plus un par salon pour le débit total des messages.
+ *
+ * Politiques -Dratelimit.&lt;classe&gt;=débit:rafale (messages par seconde,
+ * débit 0 = illimité), classes chat, file, typing, status, create, command,
+ * ainsi que channel (par salon) et strikes (refus tolérés avant
+ * déconnexion pour flood).
+ */
+public class RateLimiter {
+
+    public enum Kind {
+        CHAT("5:10"), FILE("1:3"), TYPING("1:3"), STATUS("0.2:2"), CREATE("0.1:2"), COMMAND("10:20");
+
+        final Policy policy;
+
+        Kind(String defaultSpec) {
+            this.policy = Policy.of("ratelimit." + name().toLowerCase(Locale.ROOT), defaultSpec);
+        }
+    }
+
+    private static final Policy CHANNEL = Policy.of("ratelimit.channel", "50:100");
+    private static final Policy STRIKES = Policy.of("ratelimit.strikes", "2:30");
+
+    /**
+     * Débit régulier (intervalle entre deux jetons) et rafale tolérée.
+     */
+    public static final class Policy {
+        final long intervalNanos;
+        final long burstNanos;
+
+        Policy(double perSecond, int burst) {
+            this.intervalNanos = perSecond <= 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+            this.burstNanos = intervalNanos * Math.max(1, burst);
+        }
+
+        static Policy of(String property, String defaultSpec) {
+            String spec = System.getProperty(property, defaultSpec);
+            try {
+                return parse(spec);
+            } catch (RuntimeException e) {
+                System.err.println("Politique invalide " + property + "=" + spec + ", valeur par défaut utilisée");
+                return parse(defaultSpec);
+            }
+        }
+
+        // "débit:rafale" ou "débit" (rafale = débit arrondi, au moins 1)
+        static Policy parse(String spec) {
+            String[] parts = spec.trim().split(":");
+            double perSecond = Double.parseDouble(parts[0]);
+            int burst = parts.length > 1 ? Integer.parseInt(parts[1]) : (int) Math.ceil(perSecond);
+            return new Policy(perSecond, burst);
+        }
+    }
+
+    /**
+     * Seau à jetons : tryAcquire consomme un jeton s'il en reste.
+     */
+    public static final class Bucket {
+        private final Policy policy;
+        private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+        Bucket(Policy policy) {
+            this.policy = policy;
+        }
+
+        public boolean tryAcquire(long now) {
+            if (policy.intervalNanos == 0)
+                return true;
+            while (true) {
+                long tat = theoreticalArrival.get();
+                long base = tat - now > 0 ? tat : now;
+                long next = base + policy.intervalNanos;
+                if (next - now > policy.burstNanos)
+                    return false;
+                if (theoreticalArrival.compareAndSet(tat, next))
+                    return true;
+            }
+        }
+
+        /**
+         * Réserve le prochain jeton même s'il n'est pas encore disponible :
+         * renvoie l'attente nécessaire avant de l'utiliser (0 s'il en restait
+         * un), les réservations suivantes se plaçant derrière.
+         */
+        public long reserve(long now) {
+            if (policy.intervalNanos == 0)
+                return 0;
+            while (true) {
+                long tat = theoreticalArrival.get();
+                long base = tat - now > 0 ? tat : now;
+                long next = base + policy.intervalNanos;
+                if (theoreticalArrival.compareAndSet(tat, next))
+                    return Math.max(0, next - now - policy.burstNanos);
+            }
+        }
+    }
+
+    private RateLimiter() {
+    }
+
+    /**
+     * Un seau par classe, pour une connexion.
+     */
+    public static Bucket[] newClientBuckets() {
+        Kind[] kinds = Kind.values();
+        Bucket[] buckets = new Bucket[kinds.length];
+        for (Kind kind : kinds) {
+            buckets[kind.ordinal()] = new Bucket(kind.policy);
+        }
+        return buckets;
+    }
+
+    public static Bucket newChannelBucket() {
+        return new Bucket(CHANNEL);
+    }
+
+    public static Bucket newStrikeBucket() {
+        return new Bucket(STRIKES);
+    }
+
+    /**
+     * Classe d'un message entrant, d'après son type et le nom de commande.
+     */
+    public static Kind classify(Message msg) {
+        switch (msg.getType()) {
+            case CHAT:
+                return Kind.CHAT;
+            case FILE:
+                return Kind.FILE;
+            case CREATE_SERVER:
+                return Kind.CREATE;
+            default:
+                break;
+        }
+        String content = msg.getContent();
+        if (content == null || !content.startsWith("/"))
+            return Kind.CHAT; // Ancien client : texte libre en SYSTEM
+        int space = content.indexOf(' ');
+        switch (space < 0 ? content.substring(1) : content.substring(1, space)) {
+            case "typing":
+            case "typing_dm":
+                return Kind.TYPING;
+            case "status":
+                return Kind.STATUS;
+            case "msg":
+                return Kind.CHAT;
+            case "create":
+            case "createrole":
+                return Kind.CREATE;
+            default:
+                return Kind.COMMAND;
+        }
+    }
+
+    /**
+     * Message diffusé dans le salon courant (soumis au débit du salon et au
+     * mode lent) plutôt qu'une commande.
+     */
+    public static boolean isChannelPost(Message msg) {
+        if (msg.getType() == Message.MessageType.CHAT || msg.getType() == Message.MessageType.FILE)
+            return true;
+        return msg.getType() != Message.MessageType.CREATE_SERVER
+                && (msg.getContent() == null || !msg.getContent().startsWith("/"));
+    }
+}
@@ -0,0 +1,228 @@
+package server;
+
+import common.Message;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Positions de lecture (dernier message lu par utilisateur et par salon) et
+ * compteurs de non-lus des utilisateurs connectés.
+ *
+ * Les positions sont gardées en mémoire et écrites en base par lots toutes les
+ * quelques secondes (et à la déconnexion) plutôt qu'à chaque message reçu.
+ * Les compteurs modifiés sont poussés au client au plus une fois par seconde,
+ * sous forme compacte "salon:nombre,salon:nombre" (canal "unread_counts").
+ *
+ * Un message diffusé n'incrémente que le compteur de son salon ; le nombre de
+ * non-lus de chaque connecté (différence avec le compteur vu à sa dernière
+ * lecture) est calculé au moment de l'envoi, hors du thread de diffusion.
+ */
+public class ReadStateTracker {
+    public static final int UNREAD_CAP = 100;
+    private static final long PUSH_INTERVAL_MS = 1000;
+    private static final long PERSIST_INTERVAL_MS = 5000;
+
+    private static class UserState {
+        final Map<String, Long> lastRead = new ConcurrentHashMap<>();
+        // Non-lus connus lors de la dernière lecture (ou du chargement)...
+        final Map<String, Integer> unread = new ConcurrentHashMap<>();
+        // ... et compteur du salon à ce moment-là
+        final Map<String, Long> seen = new ConcurrentHashMap<>();
+        // Derniers nombres envoyés au client (non nuls uniquement)
+        final Map<String, Integer> sent = new ConcurrentHashMap<>();
+        final Set<String> changed = ConcurrentHashMap.newKeySet();
+    }
+
+    private static final Map<String, UserState> users = new ConcurrentHashMap<>();
+    // Messages persistants diffusés par salon depuis le démarrage
+    private static final Map<String, AtomicLong> channelCounts = new ConcurrentHashMap<>();
+    // Salons ayant reçu un message depuis le dernier envoi
+    private static final Set<String> touched = ConcurrentHashMap.newKeySet();
+    // Positions modifiées depuis la dernière écriture : utilisateur -> salon -> ID
+    private static final Map<String, Map<String, Long>> dirty = new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ReadState");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        scheduler.scheduleAtFixedRate(ReadStateTracker::pushChanges, PUSH_INTERVAL_MS, PUSH_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(ReadStateTracker::persist, PERSIST_INTERVAL_MS, PERSIST_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private ReadStateTracker() {
+    }
+
+    /**
+     * Charge l'état de lecture à la connexion et envoie le résumé des non-lus.
+     * Un nouvel utilisateur part avec tout l'historique existant marqué comme lu.
+     */
+    public static void load(ClientHandler client) {
+        String username = client.getUsername();
+        UserState state = new UserState();
+        Map<String, Long> stored = DatabaseManager.getReadStates(username);
+        Map<String, Long> latest = DatabaseManager.getLatestMessageIds(Server.getTextChannelNames());
+
+        if (stored.isEmpty()) {
+            for (Map.Entry<String, Long> entry : latest.entrySet()) {
+                state.lastRead.put(entry.getKey(), entry.getValue());
+                markDirty(username, entry.getKey(), entry.getValue());
+            }
+        } else {
+            state.lastRead.putAll(stored);
+            Map<String, Long> toCount = new HashMap<>();
+            for (Map.Entry<String, Long> entry : latest.entrySet()) {
+                long read = stored.getOrDefault(entry.getKey(), 0L);
+                if (entry.getValue() > read) {
+                    toCount.put(entry.getKey(), read);
+                }
+            }
+            state.unread.putAll(DatabaseManager.countUnread(toCount, UNREAD_CAP));
+        }
+        for (Map.Entry<String, AtomicLong> entry : channelCounts.entrySet()) {
+            state.seen.put(entry.getKey(), entry.getValue().get());
+        }
+        state.sent.putAll(state.unread);
+        users.put(username, state);
+
+        if (!state.unread.isEmpty()) {
+            client.sendMessage(new Message("System", encode(state.unread, state.unread.keySet()), "unread_counts",
+                    Message.MessageType.SYSTEM));
+        }
+    }
+
+    /**
+     * Déconnexion : écrit la position de l'utilisateur et libère son état.
+     */
+    public static void unload(String username) {
+        users.remove(username);
+        Map<String, Long> pending = dirty.remove(username);
+        if (pending != null && !pending.isEmpty()) {
+            Map<String, Map<String, Long>> batch = new HashMap<>();
+            batch.put(username, pending);
+            DatabaseManager.saveReadStates(batch);
+        }
+    }
+
+    /**
+     * L'utilisateur a vu le salon jusqu'à messageId (historique reçu au /join ou
+     * message diffusé pendant qu'il est dans le salon).
+     */
+    public static void markRead(String username, String channel, long messageId) {
+        UserState state = users.get(username);
+        if (state == null || messageId <= 0)
+            return;
+        Long previous = state.lastRead.get(channel);
+        if (previous == null || messageId > previous) {
+            state.lastRead.put(channel, messageId);
+            markDirty(username, channel, messageId);
+        }
+        state.seen.put(channel, channelCount(channel).get());
+        state.unread.remove(channel);
+        if (state.sent.containsKey(channel)) {
+            state.changed.add(channel);
+        }
+    }
+
+    /**
+     * Appelé par Channel.broadcast pour un message persistant : lu pour les
+     * membres présents dans le salon ; pour les autres connectés, seul le
+     * compteur du salon avance (leurs non-lus sont calculés à l'envoi).
+     */
+    public static void onMessage(String channel, long messageId, Set<ClientHandler> members) {
+        channelCount(channel).incrementAndGet();
+        touched.add(channel);
+        for (ClientHandler member : members) {
+            markRead(member.getUsername(), channel, messageId);
+        }
+    }
+
+    private static AtomicLong channelCount(String channel) {
+        return channelCounts.computeIfAbsent(channel, c -> new AtomicLong());
+    }
+
+    private static int unreadCount(UserState state, String channel) {
+        AtomicLong count = channelCounts.get(channel);
+        long received = count == null ? 0 : count.get() - state.seen.getOrDefault(channel, 0L);
+        return (int) Math.min(UNREAD_CAP, state.unread.getOrDefault(channel, 0) + Math.max(0, received));
+    }
+
+    private static void markDirty(String username, String channel, long messageId) {
+        dirty.computeIfAbsent(username, u -> new ConcurrentHashMap<>()).merge(channel, messageId, Math::max);
+    }
+
+    private static void pushChanges() {
+        try {
+            Set<String> active = new HashSet<>(touched);
+            touched.removeAll(active);
+            for (Map.Entry<String, UserState> entry : users.entrySet()) {
+                UserState state = entry.getValue();
+                if (active.isEmpty() && state.changed.isEmpty())
+                    continue;
+                Set<String> candidates = new HashSet<>(state.changed);
+                state.changed.removeAll(candidates);
+                candidates.addAll(active);
+
+                Map<String, Integer> counts = new HashMap<>();
+                for (String channel : candidates) {
+                    int count = unreadCount(state, channel);
+                    if (count != state.sent.getOrDefault(channel, 0)) {
+                        counts.put(channel, count);
+                        if (count == 0) {
+                            state.sent.remove(channel);
+                        } else {
+                            state.sent.put(channel, count);
+                        }
+                    }
+                }
+                ClientHandler client = Server.clients.get(entry.getKey());
+                if (client != null && !counts.isEmpty()) {
+                    client.sendMessage(new Message("System", encode(counts, counts.keySet()), "unread_counts",
+                            Message.MessageType.SYSTEM));
+                }
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void persist() {
+        try {
+            if (dirty.isEmpty())
+                return;
+            Map<String, Map<String, Long>> batch = new HashMap<>();
+            for (String username : dirty.keySet()) {
+                Map<String, Long> pending = dirty.remove(username);
+                if (pending != null && !pending.isEmpty()) {
+                    batch.put(username, pending);
+                }
+            }
+            DatabaseManager.saveReadStates(batch);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // "salon:nombre,..." ; un salon absent de unread vaut 0 (lu)
+    private static String encode(Map<String, Integer> unread, Set<String> channels) {
+        StringBuilder sb = new StringBuilder();
+        for (String channel : channels) {
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(channel).append(':').append(unread.getOrDefault(channel, 0));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package server;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Listes de présence groupées : liste des connectés, membres des salons et
+ * listes d'amis. Envoyées aussitôt à chaque connexion ou déconnexion, elles
+ * coûtaient N² envois (et autant de lectures des amis) quand N clients se
+ * reconnectent ensemble.
+ *
+ * Les changements ne font que marquer la liste concernée ; un thread dédié
+ * envoie toutes les -Droster.flushMs (250 ms) l'état courant de chaque liste
+ * marquée, une seule fois quel que soit le nombre de changements.
+ */
+public class RosterBatcher {
+    private static final long FLUSH_INTERVAL_MS = Math.max(10, Long.getLong("roster.flushMs", 250L));
+
+    private static final AtomicBoolean userListDirty = new AtomicBoolean();
+    private static final Set<Channel> channelsDirty = ConcurrentHashMap.newKeySet();
+    private static final Set<String> friendsDirty = ConcurrentHashMap.newKeySet();
+
+    private static final Metrics.Counter CHANGES = Metrics.counter("roster_changes");
+    private static final Metrics.Counter FLUSHES = Metrics.counter("roster_lists_sent");
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Roster");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        scheduler.scheduleWithFixedDelay(RosterBatcher::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private RosterBatcher() {
+    }
+
+    public static void userListChanged() {
+        CHANGES.inc();
+        userListDirty.set(true);
+    }
+
+    public static void channelMembersChanged(Channel channel) {
+        CHANGES.inc();
+        channelsDirty.add(channel);
+    }
+
+    /**
+     * La liste d'amis de username (statuts en ligne) est à renvoyer.
+     */
+    public static void friendListChanged(String username) {
+        CHANGES.inc();
+        friendsDirty.add(username);
+    }
+
+    private static void flush() {
+        try {
+            if (userListDirty.getAndSet(false)) {
+                Server.broadcastUserList();
+                FLUSHES.inc();
+            }
+            for (Channel channel : channelsDirty) {
+                channelsDirty.remove(channel);
+                channel.broadcastMemberList();
+                FLUSHES.inc();
+            }
+            for (String username : friendsDirty) {
+                friendsDirty.remove(username);
+                ClientHandler client = Server.clients.get(username);
+                if (client != null) {
+                    client.sendFriendList();
+                    FLUSHES.inc();
+                }
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
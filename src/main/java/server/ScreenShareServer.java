@@ -0,0 +1,169 @@
+package server;
+
+import java.io.*;
+import java.net.*;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Relais du partage d'écran, sur un port TCP dédié pour ne pas bloquer le
+ * chat derrière des trames volumineuses.
+ *
+ * Le client s'authentifie avec sa session vocale : [StreamId (2)] [Token (8)].
+ * Ensuite, chaque paquet est [Type (1)] [Cible (4)] [Longueur (4)] [Données] :
+ * 'F' trame relayée aux autres participants du salon vocal, 'S' fin de partage,
+ * 'B' retour d'un spectateur adressé au StreamId cible.
+ * Le serveur renvoie [Type (1)] [StreamId source (4)] [Longueur (4)] [Données].
+ */
+public class ScreenShareServer implements Runnable {
+    private static final int PORT = 5002;
+    private static final int MAX_PACKET_SIZE = 8 * 1024 * 1024;
+    private static final int QUEUE_CAPACITY = 8;
+    // Places réservées dans la file pour les paquets de contrôle ('S', 'B')
+    private static final int CONTROL_RESERVE = 2;
+    // Délai accordé pour l'authentification, après quoi la connexion est fermée
+    private static final int AUTH_TIMEOUT_MS = 10_000;
+
+    private static final Map<Integer, Connection> connections = new ConcurrentHashMap<>();
+    private final ExecutorService pool = Executors.newCachedThreadPool();
+
+    @Override
+    public void run() {
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(PORT));
+            System.out.println("🖥 Relais de partage d'écran démarré sur le port " + PORT);
+
+            while (true) {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                pool.execute(() -> handle(socket));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void handle(Socket socket) {
+        Connection conn = null;
+        try {
+            socket.setSoTimeout(AUTH_TIMEOUT_MS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            int streamId = in.readUnsignedShort();
+            long token = in.readLong();
+            // Un spectateur n'envoie que de rares retours : plus de délai ensuite
+            socket.setSoTimeout(0);
+
+            VoiceSession session = VoiceServer.getSessionById(streamId);
+            if (session == null || session.getToken() != token) {
+                socket.close();
+                return;
+            }
+
+            conn = new Connection(session, socket);
+            Connection previous = connections.put(streamId, conn);
+            if (previous != null)
+                previous.close();
+            pool.execute(conn::writeLoop);
+
+            while (true) {
+                byte type = in.readByte();
+                int target = in.readInt();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_PACKET_SIZE)
+                    break;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                // La session vocale a pu expirer ou changer de salon
+                if (VoiceServer.getSessionById(streamId) != session)
+                    break;
+
+                if (type == 'F' || type == 'S') {
+                    byte[] packet = frame(type, streamId, payload);
+                    for (VoiceSession peer : VoiceServer.getSessions(session.getChannel())) {
+                        Connection viewer = connections.get(peer.getStreamId());
+                        if (viewer != null && viewer != conn) {
+                            viewer.enqueue(packet, type == 'S');
+                        }
+                    }
+                } else if (type == 'B') {
+                    Connection sharer = connections.get(target);
+                    if (sharer != null && sharer.session.getChannel().equals(session.getChannel())) {
+                        sharer.enqueue(frame(type, streamId, payload), true);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Client parti
+        } finally {
+            if (conn != null) {
+                connections.remove(conn.session.getStreamId(), conn);
+                conn.close();
+            } else {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    private static byte[] frame(byte type, int streamId, byte[] payload) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(9 + payload.length);
+        DataOutputStream out = new DataOutputStream(bos);
+        try {
+            out.writeByte(type);
+            out.writeInt(streamId);
+            out.writeInt(payload.length);
+            out.write(payload);
+        } catch (IOException e) {
+            // Impossible sur un ByteArrayOutputStream
+        }
+        return bos.toByteArray();
+    }
+
+    private static class Connection {
+        private final VoiceSession session;
+        private final Socket socket;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        Connection(VoiceSession session, Socket socket) {
+            this.session = session;
+            this.socket = socket;
+        }
+
+        /**
+         * Un spectateur lent perd des trames plutôt que de ralentir les autres ;
+         * il le détecte par la séquence et réclame une trame clé.
+         */
+        void enqueue(byte[] packet, boolean control) {
+            if (control || queue.remainingCapacity() > CONTROL_RESERVE) {
+                queue.offer(packet);
+            }
+        }
+
+        void writeLoop() {
+            try {
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                while (!socket.isClosed()) {
+                    byte[] packet = queue.poll(1, TimeUnit.SECONDS);
+                    if (packet == null)
+                        continue;
+                    out.write(packet);
+                    if (queue.isEmpty())
+                        out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+}
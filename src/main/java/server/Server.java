@@ -10,11 +10,28 @@ public class Server {
     private static final int PORT = 5000;
     public static Map<String, ClientHandler> clients = new ConcurrentHashMap<>();
     private static Map<String, Channel> channels = new ConcurrentHashMap<>();
-    private static ExecutorService pool = Executors.newFixedThreadPool(50);
+    // Un thread par connexion : la taille du pool ne borne plus le nombre de clients,
+    // les ouvertures de session sont régulées par AdmissionControl
+    private static ExecutorService pool = Executors.newCachedThreadPool();
+    // File d'attente des connexions TCP non encore acceptées (reconnexions en masse)
+    private static final int BACKLOG = Integer.getInteger("server.backlog", 4096);
 
     public static void main(String[] args) {
         // Initialisation BDD
         DatabaseManager.init();
+        // Partitions d'historique : archivage des mois froids et rétention
+        DatabaseManager.startArchive();
+
+        // Métriques : connexions et envois en attente
+        Metrics.gauge("connections", () -> clients.size());
+        Metrics.gauge("outbound_pending", () -> {
+            long pending = 0;
+            for (ClientHandler client : clients.values()) {
+                pending += client.getPendingWrites();
+            }
+            return pending;
+        });
+        Metrics.start();
 
         // Chargement des salons depuis la BDD
         for (DatabaseManager.ChannelData cd : DatabaseManager.getChannels()) {
@@ -23,12 +40,22 @@ public class Server {
 
         try (ServerSocket serverSocket = new ServerSocket()) {
             serverSocket.setReuseAddress(true);
-            serverSocket.bind(new InetSocketAddress(PORT));
+            serverSocket.bind(new InetSocketAddress(PORT), BACKLOG);
 
             System.out.println("🚀 Serveur Discord-like démarré sur le port " + PORT);
 
+            // Présence vocale : le VoiceServer publie, on rediffuse les rosters en TCP
+            EventBus.subscribe(event -> {
+                if (event.getType() == ServerEvent.Type.VOICE_JOIN
+                        || event.getType() == ServerEvent.Type.VOICE_LEAVE) {
+                    broadcastVoiceRoster(event.getChannel());
+                }
+            });
+
             // Start Voice UDP Server
             new Thread(new VoiceServer()).start();
+            // Relais du partage d'écran (TCP dédié, authentifié par la session vocale)
+            new Thread(new ScreenShareServer()).start();
 
             while (true) {
                 Socket clientSocket = serverSocket.accept();
@@ -43,31 +70,26 @@ public class Server {
 
     public static void registerClient(String username, ClientHandler handler) {
         clients.put(username, handler);
-        broadcastUserList();
-
-        // Notify friends that this user came online
-        java.util.List<String> friends = DatabaseManager.getFriends(username);
-        for (String friendName : friends) {
-            ClientHandler friendHandler = clients.get(friendName);
-            if (friendHandler != null) {
-                java.util.List<String> theirFriends = DatabaseManager.getFriends(friendName);
-                StringBuilder sb = new StringBuilder();
-                for (String f : theirFriends) {
-                    boolean online = clients.containsKey(f);
-                    if (sb.length() > 0)
-                        sb.append(",");
-                    sb.append(f).append(":").append(online ? "Online" : "Offline");
-                }
-                friendHandler
-                        .sendMessage(new Message("System", sb.toString(), "friends", Message.MessageType.FRIEND_LIST));
+        RosterBatcher.userListChanged();
+        notifyFriends(username);
+    }
+
+    /**
+     * Les amis connectés de username recevront leur liste d'amis à jour
+     * (statut en ligne) au prochain envoi groupé.
+     */
+    public static void notifyFriends(String username) {
+        for (String friendName : DatabaseManager.getFriends(username)) {
+            if (clients.containsKey(friendName)) {
+                RosterBatcher.friendListChanged(friendName);
             }
         }
     }
 
-    public static void removeClient(String username) {
-        if (username != null) {
-            clients.remove(username);
-            broadcastUserList();
+    public static void removeClient(String username, ClientHandler handler) {
+        // Seulement si c'est toujours cette session (une nouvelle a pu la remplacer)
+        if (username != null && clients.remove(username, handler)) {
+            RosterBatcher.userListChanged();
         }
     }
 
@@ -80,6 +102,87 @@ public class Server {
         }
     }
 
+    /**
+     * Diffuse la liste des participants d'un salon vocal, telle que vue par le
+     * VoiceServer : CHANNEL_USERS à tous les clients, et la table StreamId -> pseudo
+     * aux participants.
+     */
+    public static void broadcastVoiceRoster(String voiceChannel) {
+        List<VoiceSession> sessions = VoiceServer.getSessions(voiceChannel);
+        StringBuilder users = new StringBuilder();
+        StringBuilder streams = new StringBuilder();
+        for (VoiceSession s : sessions) {
+            if (users.length() > 0) {
+                users.append(",");
+                streams.append(",");
+            }
+            users.append(s.getUsername());
+            streams.append(s.getStreamId()).append(":").append(s.getUsername());
+        }
+
+        Message rosterMsg = new Message("System", users.toString(), voiceChannel, Message.MessageType.CHANNEL_USERS);
+        for (ClientHandler client : clients.values()) {
+            client.sendMessage(rosterMsg);
+        }
+
+        Message streamsMsg = new Message("System", streams.toString(), "voice_streams", Message.MessageType.SYSTEM);
+        for (VoiceSession s : sessions) {
+            ClientHandler member = clients.get(s.getUsername());
+            if (member != null) {
+                member.sendMessage(streamsMsg);
+            }
+        }
+    }
+
+    /**
+     * Noms des salons textuels connus (sans doublon entre serveurs).
+     */
+    public static Set<String> getTextChannelNames() {
+        Set<String> names = new HashSet<>();
+        for (Channel channel : channels.values()) {
+            if (!"VOICE".equals(channel.getType())) {
+                names.add(channel.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Vrai si un salon vocal porte ce nom (sur l'un des serveurs).
+     */
+    public static boolean isVoiceChannel(String name) {
+        for (Channel channel : channels.values()) {
+            if ("VOICE".equals(channel.getType()) && channel.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Interlocuteur d'un appel privé "call_<a>_<b>" (pseudos triés, comme
+     * ChatController.startVoiceCall) si username est l'un des deux, sinon null.
+     */
+    static String callPeer(String name, String username) {
+        if (!name.startsWith("call_"))
+            return null;
+        String pair = name.substring("call_".length());
+        String first;
+        String second;
+        if (pair.startsWith(username + "_")) {
+            first = username;
+            second = pair.substring(username.length() + 1);
+        } else if (pair.endsWith("_" + username)) {
+            first = pair.substring(0, pair.length() - username.length() - 1);
+            second = username;
+        } else {
+            return null;
+        }
+        if (first.isEmpty() || second.isEmpty() || first.compareTo(second) >= 0)
+            return null;
+        return first.equals(username) ? second : first;
+    }
+
     public static Channel getChannel(String name) {
         // Handle composite key or legacy key
         if (channels.containsKey(name))
@@ -141,16 +244,25 @@ public class Server {
     }
 
     public static void broadcastChannelList() {
+        Message msg = channelListMessage();
+        for (ClientHandler client : clients.values()) {
+            client.sendMessage(msg);
+        }
+    }
+
+    // Nouveau client : lui seul a besoin de la liste, inchangée pour les autres
+    public static void sendChannelList(ClientHandler client) {
+        client.sendMessage(channelListMessage());
+    }
+
+    private static Message channelListMessage() {
         StringBuilder sb = new StringBuilder();
         for (Channel ch : channels.values()) {
             if (sb.length() > 0)
                 sb.append(",");
             sb.append(ch.getName()).append(":").append(ch.getType()).append(":").append(ch.getServerName());
         }
-        Message msg = new Message("System", sb.toString(), "global", Message.MessageType.CHANNEL_LIST);
-        for (ClientHandler client : clients.values()) {
-            client.sendMessage(msg);
-        }
+        return new Message("System", sb.toString(), "global", Message.MessageType.CHANNEL_LIST);
     }
 
     public static void createServer(String name) {
@@ -178,14 +290,21 @@ public class Server {
     }
 
     public static void broadcastServerList() {
-        String serverListString = String.join(",", DatabaseManager.getServers());
-        Message msg = new Message("System", serverListString, "global", Message.MessageType.SERVER_LIST);
-
+        Message msg = serverListMessage();
         for (ClientHandler client : clients.values()) {
             client.sendMessage(msg);
         }
     }
 
+    public static void sendServerList(ClientHandler client) {
+        client.sendMessage(serverListMessage());
+    }
+
+    private static Message serverListMessage() {
+        String serverListString = String.join(",", DatabaseManager.getServers());
+        return new Message("System", serverListString, "global", Message.MessageType.SERVER_LIST);
+    }
+
     public static Collection<Channel> getAllChannels() {
         return channels.values();
     }
@@ -0,0 +1,32 @@
+package server;
+
+/**
+ * Événement interne publié sur l'EventBus (présence vocale, etc.).
+ */
+public class ServerEvent {
+    public enum Type {
+        VOICE_JOIN, VOICE_LEAVE
+    }
+
+    private final Type type;
+    private final String username;
+    private final String channel;
+
+    public ServerEvent(Type type, String username, String channel) {
+        this.type = type;
+        this.username = username;
+        this.channel = channel;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,1244 @@
+package server;
+
+import java.io.File;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import common.Message;
+
+/**
+ * Stockage SQLite : une base unique, une connexion JDBC ouverte par
+ * opération, et ses archives mensuelles (MessageArchive) dans archiveDir.
+ * Sert aussi de stockage indexé au moteur log.
+ */
+public class SqliteStorageEngine implements StorageEngine {
+    private final String url;
+    private final MessageArchive archive;
+
+    public SqliteStorageEngine(String url) {
+        this(url, new File("archive"));
+    }
+
+    public SqliteStorageEngine(String url, File archiveDir) {
+        this.url = url;
+        this.archive = new MessageArchive(this::getConnection, archiveDir);
+    }
+
+    @Override
+    public void init() {
+        try (Connection conn = DriverManager.getConnection(url);
+                Statement stmt = conn.createStatement()) {
+
+            // Table USERS
+            String sqlUsers = "CREATE TABLE IF NOT EXISTS users (" +
+                    "username TEXT PRIMARY KEY, " +
+                    "password TEXT, " +
+                    "tag TEXT DEFAULT '0000', " +
+                    "blocked BOOLEAN DEFAULT 0, " +
+                    "can_create_channel BOOLEAN DEFAULT 0" +
+                    ");";
+            stmt.execute(sqlUsers);
+
+            // Migration TAG
+            try {
+                stmt.execute("ALTER TABLE users ADD COLUMN tag TEXT DEFAULT '0000'");
+            } catch (SQLException ignored) {
+            }
+
+            // Table FRIENDS
+            String sqlFriends = "CREATE TABLE IF NOT EXISTS friends (" +
+                    "user1 TEXT, " +
+                    "user2 TEXT, " +
+                    "status INTEGER DEFAULT 0, " + // 0: Pending, 1: Accepted
+                    "PRIMARY KEY(user1, user2)" +
+                    ");";
+            stmt.execute(sqlFriends);
+
+            // Migration: ajout colonne password
+            try {
+                stmt.execute("ALTER TABLE users ADD COLUMN password TEXT");
+            } catch (SQLException ignored) {
+            }
+
+            // Migration simple: ajout de la colonne type si elle manque
+            try {
+                stmt.execute("ALTER TABLE channels ADD COLUMN type TEXT DEFAULT 'TEXT'");
+            } catch (SQLException ignored) {
+            }
+
+            // Table SERVERS
+            String sqlServers = "CREATE TABLE IF NOT EXISTS servers (" +
+                    "name TEXT PRIMARY KEY" +
+                    ");";
+            stmt.execute(sqlServers);
+
+            // Migration canaux -> ajout colonne server_name
+            try {
+                stmt.execute("ALTER TABLE channels ADD COLUMN server_name TEXT DEFAULT 'Main Server'");
+            } catch (SQLException ignored) {
+            }
+
+            // Fix PK constraint: Check if channels table needs migration (Composite PK)
+            boolean migrationNeeded = false;
+            try {
+                // SQLite specific query to get PK info
+                try (ResultSet rs = stmt.executeQuery("PRAGMA table_info('channels')")) {
+                    int pkCount = 0;
+                    while (rs.next()) {
+                        if (rs.getInt("pk") > 0)
+                            pkCount++;
+                    }
+                    if (pkCount == 1)
+                        migrationNeeded = true; // Old schema had only 'name' as PK
+                }
+            } catch (SQLException e) {
+                // Ignore
+            }
+
+            if (migrationNeeded) {
+                System.out.println("⚠️ Migration de la table channels (PK) requise...");
+                try {
+                    conn.setAutoCommit(false);
+                    // Create new table with correct schema
+                    stmt.execute(
+                            "CREATE TABLE channels_new (name TEXT, type TEXT DEFAULT 'TEXT', server_name TEXT DEFAULT 'Main Server', PRIMARY KEY(name, server_name))");
+                    // Copy data
+                    stmt.execute(
+                            "INSERT INTO channels_new(name, type, server_name) SELECT name, type, server_name FROM channels");
+                    // Swap
+                    stmt.execute("DROP TABLE channels");
+                    stmt.execute("ALTER TABLE channels_new RENAME TO channels");
+                    conn.commit();
+                    System.out.println("✅ Migration PK terminée.");
+                } catch (SQLException e) {
+                    try {
+                        conn.rollback();
+                    } catch (SQLException ex) {
+                    }
+                    e.printStackTrace();
+                } finally {
+                    try {
+                        conn.setAutoCommit(true);
+                    } catch (SQLException ex) {
+                    }
+                }
+            } else {
+                // Ensure table exists with correct schema if it didn't exist
+                String sqlChannels = "CREATE TABLE IF NOT EXISTS channels (" +
+                        "name TEXT, " +
+                        "type TEXT DEFAULT 'TEXT', " +
+                        "server_name TEXT DEFAULT 'Main Server', " +
+                        "PRIMARY KEY(name, server_name)" +
+                        ");";
+                stmt.execute(sqlChannels);
+            }
+
+            // Créer le serveur par défaut si aucun n'existe
+            if (!serverExists("Main Server")) {
+                createServer("Main Server");
+            }
+
+            // Table ROLES
+            String sqlRoles = "CREATE TABLE IF NOT EXISTS roles (" +
+                    "name TEXT PRIMARY KEY, " +
+                    "perm_create_channel BOOLEAN DEFAULT 0, " +
+                    "perm_block BOOLEAN DEFAULT 0, " +
+                    "perm_delete_msg BOOLEAN DEFAULT 0, " +
+                    "perm_manage_roles BOOLEAN DEFAULT 0" +
+                    ");";
+            stmt.execute(sqlRoles);
+
+            // Table USER_ROLES
+            String sqlUserRoles = "CREATE TABLE IF NOT EXISTS user_roles (" +
+                    "username TEXT, " +
+                    "role_name TEXT, " +
+                    "FOREIGN KEY(username) REFERENCES users(username) ON DELETE CASCADE, " +
+                    "FOREIGN KEY(role_name) REFERENCES roles(name) ON DELETE CASCADE, " +
+                    "PRIMARY KEY(username, role_name)" +
+                    ");";
+            stmt.execute(sqlUserRoles);
+
+            // Default ADMIN role - FORCE UPDATE
+            createRole("Admin", true, true, true, true);
+
+            // Table MESSAGES (Historique simple)
+            String sqlMessages = "CREATE TABLE IF NOT EXISTS messages (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "channel TEXT, " +
+                    "username TEXT, " +
+                    "content TEXT, " +
+                    "timestamp INTEGER, " +
+                    "type TEXT DEFAULT 'CHAT', " +
+                    "file_name TEXT, " +
+                    "file_data BLOB" +
+                    ");";
+            stmt.execute(sqlMessages);
+
+            // Migration pour supporter les fichiers si la table existe déjà
+            try {
+                stmt.execute("ALTER TABLE messages ADD COLUMN type TEXT DEFAULT 'CHAT'");
+            } catch (SQLException ignored) {
+            }
+            try {
+                stmt.execute("ALTER TABLE messages ADD COLUMN file_name TEXT");
+            } catch (SQLException ignored) {
+            }
+            try {
+                stmt.execute("ALTER TABLE messages ADD COLUMN file_data BLOB");
+            } catch (SQLException ignored) {
+            }
+            try {
+                stmt.execute("ALTER TABLE messages ADD COLUMN edited INTEGER DEFAULT 0");
+            } catch (SQLException ignored) {
+            }
+
+            // Index plein texte (FTS5 à contenu externe) tenu à jour par triggers
+            boolean ftsExists;
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'messages_fts'")) {
+                ftsExists = rs.next();
+            }
+            stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS messages_fts USING fts5("
+                    + "content, content='messages', content_rowid='id')");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS messages_fts_insert AFTER INSERT ON messages BEGIN "
+                    + "INSERT INTO messages_fts(rowid, content) VALUES (new.id, new.content); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS messages_fts_delete AFTER DELETE ON messages BEGIN "
+                    + "INSERT INTO messages_fts(messages_fts, rowid, content) VALUES ('delete', old.id, old.content); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS messages_fts_update AFTER UPDATE OF content ON messages BEGIN "
+                    + "INSERT INTO messages_fts(messages_fts, rowid, content) VALUES ('delete', old.id, old.content); "
+                    + "INSERT INTO messages_fts(rowid, content) VALUES (new.id, new.content); END");
+            // Historique et compteurs de non-lus par salon
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_messages_channel ON messages(channel, id)");
+
+            // Table READ_STATE (dernier message lu par utilisateur et par salon)
+            stmt.execute("CREATE TABLE IF NOT EXISTS read_state (" +
+                    "username TEXT, " +
+                    "channel TEXT, " +
+                    "last_read_id INTEGER DEFAULT 0, " +
+                    "PRIMARY KEY(username, channel)" +
+                    ");");
+
+            // Table PENDING_DM (messages privés reçus hors ligne, pas encore livrés)
+            stmt.execute("CREATE TABLE IF NOT EXISTS pending_dm (" +
+                    "recipient TEXT, " +
+                    "message_id INTEGER, " +
+                    "PRIMARY KEY(recipient, message_id)" +
+                    ") WITHOUT ROWID;");
+
+            // Recherche filtrée par auteur : parcours par index plutôt que par FTS
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_messages_user ON messages(username, id)");
+            if (!ftsExists) {
+                // Première création : indexer l'historique existant
+                stmt.execute("INSERT INTO messages_fts(messages_fts) VALUES ('rebuild')");
+            }
+
+            // Insertion des salons par défaut si la table est vide
+            if (getChannels().isEmpty()) {
+                createChannel("general", "TEXT", "Main Server");
+                createChannel("dev", "TEXT", "Main Server");
+                createChannel("gaming", "TEXT", "Main Server");
+                createChannel("vocal", "VOICE", "Main Server");
+            }
+
+            System.out.println("✅ Base de données initialisée (SQLite).");
+        } catch (SQLException e) {
+            System.err.println("Erreur init DB: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(url);
+    }
+
+    @Override
+    public void startArchive() {
+        archive.start();
+    }
+
+    MessageArchive archive() {
+        return archive;
+    }
+
+    // --- GESTION UTILISATEURS ---
+
+    @Override
+    public boolean registerUser(String username, String password) {
+        // Generate random 4-digit tag
+        String tag = String.format("%04d", new java.util.Random().nextInt(10000));
+
+        String sql = "INSERT INTO users(username, password, tag) VALUES(?, ?, ?)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            pstmt.setString(2, password);
+            pstmt.setString(3, tag);
+            pstmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            // e.printStackTrace(); // Likely duplicate key
+            return false;
+        }
+    }
+
+    @Override
+    public String getUserTag(String username) {
+        String sql = "SELECT tag FROM users WHERE username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next())
+                    return rs.getString("tag");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return "0000";
+    }
+
+    @Override
+    public List<String> getFriends(String username) {
+        List<String> list = new ArrayList<>();
+        // Get friends where status=1
+        String sql = "SELECT user2 as friend FROM friends WHERE user1 = ? AND status = 1 " +
+                "UNION SELECT user1 as friend FROM friends WHERE user2 = ? AND status = 1";
+
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            pstmt.setString(2, username);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next())
+                    list.add(rs.getString("friend"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return list;
+    }
+
+    @Override
+    public void addFriend(String fromUser, String toUser) {
+        String sql = "INSERT OR REPLACE INTO friends(user1, user2, status) VALUES(?, ?, 1)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, fromUser);
+            pstmt.setString(2, toUser);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void addFriendRequest(String fromUser, String toUser) {
+        String sql = "INSERT OR IGNORE INTO friends(user1, user2, status) VALUES(?, ?, 0)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, fromUser);
+            pstmt.setString(2, toUser);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean areFriends(String user1, String user2) {
+        return getFriends(user1).contains(user2);
+    }
+
+    @Override
+    public void acceptFriend(String requester, String accepter) {
+        String sql = "UPDATE friends SET status = 1 WHERE user1 = ? AND user2 = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, requester);
+            pstmt.setString(2, accepter);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean updatePassword(String username, String newPassword) {
+        String sql = "UPDATE users SET password = ? WHERE username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, newPassword);
+            pstmt.setString(2, username);
+            pstmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean authenticateUser(String username, String password) {
+        String sql = "SELECT password FROM users WHERE username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                String storedParams = rs.getString("password");
+                // Compatibility with old users (no password) -> allow any or require set?
+                // Let's assume old users effectively have no password or null.
+                if (storedParams == null)
+                    return true; // weak security for migration
+                return storedParams.equals(password);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    @Override
+    public boolean userExists(String username) {
+        String sql = "SELECT 1 FROM users WHERE username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    @Override
+    public void setCanCreateChannel(String username, boolean canCreate) {
+        String sql = "UPDATE users SET can_create_channel = ? WHERE username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setBoolean(1, canCreate);
+            pstmt.setString(2, username);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean canCreateChannel(String username) {
+        String sql = "SELECT can_create_channel FROM users WHERE username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getBoolean("can_create_channel");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    @Override
+    public void blockUser(String username, boolean blocked) {
+        String sql = "UPDATE users SET blocked = ? WHERE username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setBoolean(1, blocked);
+            pstmt.setString(2, username);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean isBlocked(String username) {
+        String sql = "SELECT blocked FROM users WHERE username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getBoolean("blocked");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    @Override
+    public DatabaseManager.LoginInfo getLoginInfo(String username) {
+        String sql = "SELECT u.password, u.blocked, EXISTS(SELECT 1 FROM user_roles ur "
+                + "JOIN roles r ON r.name = ur.role_name "
+                + "WHERE ur.username = u.username AND r.perm_manage_roles = 1) AS admin "
+                + "FROM users u WHERE u.username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return new DatabaseManager.LoginInfo(rs.getString("password"), rs.getBoolean("blocked"),
+                        "Admin".equals(username) || rs.getBoolean("admin"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // --- GESTION ROLES ---
+
+    @Override
+    public void createRole(String name, boolean pCreate, boolean pBlock, boolean pDelMsg, boolean pManageRoles) {
+        String sql = "INSERT OR REPLACE INTO roles(name, perm_create_channel, perm_block, perm_delete_msg, perm_manage_roles) VALUES(?, ?, ?, ?, ?)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            pstmt.setBoolean(2, pCreate);
+            pstmt.setBoolean(3, pBlock);
+            pstmt.setBoolean(4, pDelMsg);
+            pstmt.setBoolean(5, pManageRoles);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void deleteRole(String name) {
+        String sql = "DELETE FROM roles WHERE name = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean roleExists(String name) {
+        String sql = "SELECT 1 FROM roles WHERE name = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            return pstmt.executeQuery().next();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void assignRole(String username, String roleName) {
+        String sql = "INSERT OR IGNORE INTO user_roles(username, role_name) VALUES(?, ?)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            pstmt.setString(2, roleName);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void removeRole(String username, String roleName) {
+        String sql = "DELETE FROM user_roles WHERE username = ? AND role_name = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            pstmt.setString(2, roleName);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean hasPermission(String username, String permColumn) {
+        if ("Admin".equals(username))
+            return true; // Hardcoded fallback
+
+        // permColumn should be one of "perm_create_channel", "perm_block", etc.
+        // Check local overrides first (can_create_channel legacy)?
+        // Let's migrate legacy to role for best practice, or check both.
+        // For now, check joined roles.
+        if ("perm_create_channel".equals(permColumn) && canCreateChannel(username))
+            return true;
+
+        String sql = "SELECT r." + permColumn + " FROM roles r " +
+                "JOIN user_roles ur ON r.name = ur.role_name " +
+                "WHERE ur.username = ? AND r." + permColumn + " = 1";
+
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            return pstmt.executeQuery().next();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public List<String> getAllRoles() {
+        List<String> list = new ArrayList<>();
+        try (Connection conn = getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT name FROM roles")) {
+            while (rs.next())
+                list.add(rs.getString("name"));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return list;
+    }
+
+    @Override
+    public List<String> getUserRoles(String username) {
+        List<String> list = new ArrayList<>();
+        String sql = "SELECT role_name FROM user_roles WHERE username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next())
+                    list.add(rs.getString("role_name"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return list;
+    }
+
+    @Override
+    public void deleteUser(String username) {
+        String sql = "DELETE FROM users WHERE username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // --- GESTION SALONS ---
+
+    // --- GESTION SERVERS ---
+
+    @Override
+    public void createServer(String name) {
+        String sql = "INSERT OR IGNORE INTO servers(name) VALUES(?)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean serverExists(String name) {
+        String sql = "SELECT 1 FROM servers WHERE name = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            return pstmt.executeQuery().next();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public void deleteServer(String name) {
+        // First delete channels associated with server
+        String deleteChannels = "DELETE FROM channels WHERE server_name = ?";
+        String deleteServer = "DELETE FROM servers WHERE name = ?";
+
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement chStmt = conn.prepareStatement(deleteChannels);
+                    PreparedStatement srvStmt = conn.prepareStatement(deleteServer)) {
+
+                chStmt.setString(1, name);
+                chStmt.executeUpdate();
+
+                srvStmt.setString(1, name);
+                srvStmt.executeUpdate();
+
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                e.printStackTrace();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public List<String> getServers() {
+        List<String> list = new ArrayList<>();
+        String sql = "SELECT name FROM servers";
+        try (Connection conn = getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                list.add(rs.getString("name"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return list;
+    }
+
+    // --- GESTION SALONS ---
+
+    @Override
+    public void createChannel(String name, String serverName) {
+        createChannel(name, "TEXT", serverName);
+    }
+
+    @Override
+    public void createChannel(String name, String type, String serverName) {
+        String sql = "INSERT OR IGNORE INTO channels(name, type, server_name) VALUES(?, ?, ?)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            pstmt.setString(2, type);
+            pstmt.setString(3, serverName);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void deleteChannel(String name) { // Legacy
+        deleteChannel(name, "Main Server");
+    }
+
+    @Override
+    public void deleteChannel(String name, String serverName) {
+        String sql = "DELETE FROM channels WHERE name = ? AND server_name = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            pstmt.setString(2, serverName);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void renameChannel(String oldName, String newName) {
+        renameChannel(oldName, newName, "Main Server");
+    }
+
+    @Override
+    public void renameChannel(String oldName, String newName, String serverName) {
+        String sql = "UPDATE channels SET name = ? WHERE name = ? AND server_name = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, newName);
+            pstmt.setString(2, oldName);
+            pstmt.setString(3, serverName);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public List<DatabaseManager.ChannelData> getChannels() {
+        List<DatabaseManager.ChannelData> channels = new ArrayList<>();
+        String sql = "SELECT name, type, server_name FROM channels";
+        try (Connection conn = getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                // Compatible with NULL server_name (migration)
+                String srv = rs.getString("server_name");
+                if (srv == null)
+                    srv = "Main Server";
+                channels.add(new DatabaseManager.ChannelData(rs.getString("name"), rs.getString("type"), srv));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return channels;
+    }
+
+    // --- GESTION MESSAGES ---
+
+    @Override
+    public void saveMessage(Message msg) {
+        String sql = "INSERT INTO messages(channel, username, content, timestamp, type, file_name, file_data) VALUES(?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pstmt.setString(1, msg.getChannel());
+            pstmt.setString(2, msg.getUsername());
+            pstmt.setString(3, msg.getContent());
+            pstmt.setLong(4, java.sql.Timestamp.valueOf(msg.getTimestamp()).getTime());
+            pstmt.setString(5, msg.getType().name());
+            pstmt.setString(6, msg.getFileName());
+            pstmt.setBytes(7, msg.getFileData());
+            pstmt.executeUpdate();
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (keys.next()) {
+                    msg.setId(keys.getLong(1));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Insère en une transaction des messages dont l'ID est déjà attribué ; les
+     * IDs déjà présents sont ignorés (rejeu idempotent d'un journal).
+     */
+    protected void insertMessages(List<Message> messages) throws SQLException {
+        String sql = "INSERT OR IGNORE INTO messages(id, channel, username, content, timestamp, type, file_name, "
+                + "file_data) VALUES(?, ?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            for (Message msg : messages) {
+                pstmt.setLong(1, msg.getId());
+                pstmt.setString(2, msg.getChannel());
+                pstmt.setString(3, msg.getUsername());
+                pstmt.setString(4, msg.getContent());
+                pstmt.setLong(5, java.sql.Timestamp.valueOf(msg.getTimestamp()).getTime());
+                pstmt.setString(6, msg.getType().name());
+                pstmt.setString(7, msg.getFileName());
+                pstmt.setBytes(8, msg.getFileData());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            conn.commit();
+        }
+    }
+
+    /**
+     * Plus grand ID de message déjà attribué, y compris aux messages supprimés
+     * ou archivés (séquence AUTOINCREMENT).
+     */
+    protected long lastMessageId() throws SQLException {
+        String sql = "SELECT max(IFNULL((SELECT seq FROM sqlite_sequence WHERE name = 'messages'), 0), "
+                + "IFNULL((SELECT MAX(id) FROM messages), 0))";
+        try (Connection conn = getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    @Override
+    public List<Message> getLastMessages(String channelName, int limit) {
+        List<Message> history = new ArrayList<>();
+        // Les IDs croissent avec le temps : parcours de idx_messages_channel sans tri
+        String sql = "SELECT * FROM messages WHERE channel = ? ORDER BY id DESC LIMIT ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, channelName);
+            pstmt.setInt(2, limit);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                history.add(readMessage(rs, channelName));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        if (history.size() < limit) {
+            archive.fillOlder(channelName, 0, limit, history);
+        }
+        Collections.reverse(history);
+        return history;
+    }
+
+    /**
+     * Messages postérieurs à sinceId (au plus limit, les plus récents), dans
+     * l'ordre chronologique. Sert à compléter le cache d'un client qui revient
+     * sur un salon.
+     */
+    @Override
+    public List<Message> getMessagesSince(String channelName, long sinceId, int limit) {
+        List<Message> history = new ArrayList<>();
+        String sql = "SELECT * FROM messages WHERE channel = ? AND id > ? ORDER BY id DESC LIMIT ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, channelName);
+            pstmt.setLong(2, sinceId);
+            pstmt.setInt(3, limit);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                history.add(readMessage(rs, channelName));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        if (history.size() < limit) {
+            archive.fillOlder(channelName, sinceId, limit, history);
+        }
+        Collections.reverse(history);
+        return history;
+    }
+
+    /**
+     * Recherche plein texte, du plus récent au plus ancien. Les filtres null
+     * sont ignorés ; beforeId (0 = aucun) sert de curseur de pagination. Les
+     * conversations privées dont requester n'est pas membre sont exclues.
+     */
+    @Override
+    public List<Message> searchMessages(String requester, String matchQuery, String channel, String user,
+            long fromMillis, long toMillis, long beforeId, int limit) {
+        List<Message> results = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(
+                "SELECT m.id, m.channel, m.username, m.content, m.timestamp, m.type, m.file_name, m.edited, "
+                        + "NULL AS file_data ");
+        List<Object> params = new ArrayList<>();
+        // Colonne d'ordre du plan choisi (tri sans matérialiser les résultats)
+        String order = user != null ? "m.id" : "messages_fts.rowid";
+        if (user != null) {
+            // Auteur connu : peu de lignes via idx_messages_user, chacune vérifiée dans l'index FTS
+            sql.append("FROM messages m WHERE EXISTS (SELECT 1 FROM messages_fts "
+                    + "WHERE messages_fts MATCH ? AND messages_fts.rowid = m.id)");
+        } else {
+            // Sinon on parcourt les correspondances FTS de la plus récente à la plus ancienne
+            sql.append("FROM messages_fts JOIN messages m ON m.id = messages_fts.rowid WHERE messages_fts MATCH ?");
+        }
+        params.add(matchQuery);
+        sql.append(" AND (m.channel NOT LIKE 'DM:%' OR instr(m.channel || ':', ':' || ? || ':') > 0)");
+        params.add(requester);
+        if (beforeId > 0) {
+            sql.append(" AND ").append(order).append(" < ?");
+            params.add(beforeId);
+        }
+        if (channel != null) {
+            sql.append(" AND m.channel = ?");
+            params.add(channel);
+        }
+        if (user != null) {
+            sql.append(" AND m.username = ?");
+            params.add(user);
+        }
+
+        try (Connection conn = getConnection()) {
+            // Les IDs croissent avec le temps : la période devient aussi une
+            // plage d'IDs, que FTS5 parcourt directement au lieu de filtrer
+            // toutes les correspondances plus récentes
+            if (fromMillis > 0) {
+                sql.append(" AND m.timestamp >= ? AND ").append(order).append(" >= ?");
+                params.add(fromMillis);
+                params.add(firstIdFrom(conn, fromMillis));
+            }
+            if (toMillis > 0) {
+                sql.append(" AND m.timestamp < ? AND ").append(order).append(" < ?");
+                params.add(toMillis);
+                params.add(firstIdFrom(conn, toMillis));
+            }
+            sql.append(" ORDER BY ").append(order).append(" DESC LIMIT ?");
+            params.add(limit);
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                for (int i = 0; i < params.size(); i++) {
+                    pstmt.setObject(i + 1, params.get(i));
+                }
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    results.add(readMessage(rs, rs.getString("channel")));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return results;
+    }
+
+    /**
+     * Plus petit ID dont le message date de millis ou après (MAX(id) + 1 s'il
+     * n'y en a pas), par dichotomie sur la clé primaire.
+     */
+    private static long firstIdFrom(Connection conn, long millis) throws SQLException {
+        long low = 0;
+        long high;
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT IFNULL(MAX(id), 0) + 1 FROM messages")) {
+            high = rs.next() ? rs.getLong(1) : 1;
+        }
+        try (PreparedStatement pstmt = conn
+                .prepareStatement("SELECT id, timestamp FROM messages WHERE id >= ? ORDER BY id LIMIT 1")) {
+            while (low < high) {
+                long mid = low + (high - low) / 2;
+                pstmt.setLong(1, mid);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next() || rs.getLong(2) >= millis) {
+                        high = mid;
+                    } else {
+                        low = rs.getLong(1) + 1;
+                    }
+                }
+            }
+        }
+        return low;
+    }
+
+    private static Message readMessage(ResultSet rs, String channelName) throws SQLException {
+        String user = rs.getString("username");
+        String content = rs.getString("content");
+        long ts = rs.getLong("timestamp");
+        String typeStr = rs.getString("type");
+        String fileName = rs.getString("file_name");
+        byte[] fileData = rs.getBytes("file_data");
+        java.time.LocalDateTime timestamp = new java.sql.Timestamp(ts).toLocalDateTime();
+
+        Message.MessageType type = Message.MessageType.CHAT;
+        if (typeStr != null) {
+            try {
+                type = Message.MessageType.valueOf(typeStr);
+            } catch (IllegalArgumentException e) {
+                // ignore
+            }
+        }
+
+        Message msg;
+        if (type == Message.MessageType.FILE) {
+            msg = new Message(user, fileName, fileData, channelName, type, timestamp);
+        } else {
+            msg = new Message(user, content, channelName, type, timestamp);
+        }
+        msg.setId(rs.getLong("id"));
+        msg.setEdited(rs.getInt("edited") != 0);
+        return msg;
+    }
+
+    /**
+     * Supprime un message de son auteur. Retourne le salon du message, ou null
+     * si l'ID n'existe pas ou n'appartient pas à cet utilisateur.
+     */
+    @Override
+    public String deleteMessage(long id, String username) {
+        String select = "SELECT channel FROM messages WHERE id = ? AND username = ?";
+        String delete = "DELETE FROM messages WHERE id = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement selectStmt = conn.prepareStatement(select);
+                PreparedStatement deleteStmt = conn.prepareStatement(delete)) {
+            selectStmt.setLong(1, id);
+            selectStmt.setString(2, username);
+            ResultSet rs = selectStmt.executeQuery();
+            if (!rs.next())
+                return null;
+            String channel = rs.getString("channel");
+            deleteStmt.setLong(1, id);
+            deleteStmt.executeUpdate();
+            if (channel != null && channel.startsWith("DM:")) {
+                // Plus rien à livrer pour ce message
+                try (PreparedStatement pendingStmt = conn
+                        .prepareStatement("DELETE FROM pending_dm WHERE message_id = ?")) {
+                    pendingStmt.setLong(1, id);
+                    pendingStmt.executeUpdate();
+                }
+            }
+            return channel;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Modifie le texte d'un message de son auteur. Retourne le message mis à
+     * jour (horodatage d'origine), ou null si la modification est refusée.
+     */
+    @Override
+    public Message editMessage(long id, String username, String content) {
+        String update = "UPDATE messages SET content = ?, edited = 1 "
+                + "WHERE id = ? AND username = ? AND type IN ('CHAT', 'PRIVATE')";
+        String select = "SELECT * FROM messages WHERE id = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement updateStmt = conn.prepareStatement(update);
+                PreparedStatement selectStmt = conn.prepareStatement(select)) {
+            updateStmt.setString(1, content);
+            updateStmt.setLong(2, id);
+            updateStmt.setString(3, username);
+            if (updateStmt.executeUpdate() == 0)
+                return null;
+            selectStmt.setLong(1, id);
+            ResultSet rs = selectStmt.executeQuery();
+            if (rs.next()) {
+                return readMessage(rs, rs.getString("channel"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // --- MESSAGES PRIVÉS EN ATTENTE ---
+
+    @Override
+    public void queuePendingDm(String recipient, long messageId) {
+        String sql = "INSERT OR IGNORE INTO pending_dm(recipient, message_id) VALUES(?, ?)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, recipient);
+            pstmt.setLong(2, messageId);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Messages privés en attente pour recipient, toutes conversations
+     * confondues, du plus ancien au plus récent (une seule requête).
+     */
+    @Override
+    public List<Message> getPendingDms(String recipient, int limit) {
+        List<Message> pending = new ArrayList<>();
+        String sql = "SELECT m.* FROM pending_dm p JOIN messages m ON m.id = p.message_id "
+                + "WHERE p.recipient = ? ORDER BY p.message_id LIMIT ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, recipient);
+            pstmt.setInt(2, limit);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                pending.add(readMessage(rs, rs.getString("channel")));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return pending;
+    }
+
+    /**
+     * Retire de la file les messages dont le client a accusé réception.
+     */
+    @Override
+    public void ackPendingDms(String recipient, Collection<Long> messageIds) {
+        String sql = "DELETE FROM pending_dm WHERE recipient = ? AND message_id = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            for (long id : messageIds) {
+                pstmt.setString(1, recipient);
+                pstmt.setLong(2, id);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // --- ÉTAT DE LECTURE ---
+
+    @Override
+    public Map<String, Long> getReadStates(String username) {
+        Map<String, Long> states = new HashMap<>();
+        String sql = "SELECT channel, last_read_id FROM read_state WHERE username = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, username);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                states.put(rs.getString("channel"), rs.getLong("last_read_id"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return states;
+    }
+
+    /**
+     * Enregistre en une transaction les positions de lecture accumulées
+     * (utilisateur -> salon -> dernier ID lu). Une position ne recule jamais.
+     */
+    @Override
+    public void saveReadStates(Map<String, Map<String, Long>> states) {
+        String sql = "INSERT INTO read_state(username, channel, last_read_id) VALUES(?, ?, ?) "
+                + "ON CONFLICT(username, channel) DO UPDATE SET last_read_id = "
+                + "max(last_read_id, excluded.last_read_id)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            conn.setAutoCommit(false);
+            for (Map.Entry<String, Map<String, Long>> user : states.entrySet()) {
+                for (Map.Entry<String, Long> channel : user.getValue().entrySet()) {
+                    pstmt.setString(1, user.getKey());
+                    pstmt.setString(2, channel.getKey());
+                    pstmt.setLong(3, channel.getValue());
+                    pstmt.addBatch();
+                }
+            }
+            pstmt.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Dernier ID de message de chacun des salons donnés (une recherche
+     * d'index par salon) ; les salons sans message sont omis.
+     */
+    @Override
+    public Map<String, Long> getLatestMessageIds(Collection<String> channelNames) {
+        Map<String, Long> latest = new HashMap<>();
+        String sql = "SELECT MAX(id) FROM messages WHERE channel = ?";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (String channel : channelNames) {
+                pstmt.setString(1, channel);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next() && rs.getLong(1) > 0) {
+                        latest.put(channel, rs.getLong(1));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return latest;
+    }
+
+    /**
+     * Nombre de messages postérieurs à la position de lecture, par salon,
+     * plafonné à cap (le client affiche "99+").
+     */
+    @Override
+    public Map<String, Integer> countUnread(Map<String, Long> lastRead, int cap) {
+        Map<String, Integer> counts = new HashMap<>();
+        String sql = "SELECT COUNT(*) FROM (SELECT 1 FROM messages WHERE channel = ? AND id > ? LIMIT ?)";
+        try (Connection conn = getConnection();
+                PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Long> entry : lastRead.entrySet()) {
+                pstmt.setString(1, entry.getKey());
+                pstmt.setLong(2, entry.getValue());
+                pstmt.setInt(3, cap);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next() && rs.getInt(1) > 0) {
+                        counts.put(entry.getKey(), rs.getInt(1));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,95 @@
+package server;
+
+import common.Message;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moteur de stockage derrière DatabaseManager : utilisateurs, rôles, amis,
+ * serveurs, salons et messages. Choisi au démarrage par -Dstorage.engine
+ * (sqlite par défaut, ou log).
+ */
+public interface StorageEngine {
+    /**
+     * Création et migration du schéma.
+     */
+    void init();
+
+    /**
+     * Connexion SQL à la base principale (outils d'administration, archivage).
+     */
+    Connection getConnection() throws SQLException;
+
+    /**
+     * Charge les archives d'historique et planifie leur maintenance
+     * (archivage des mois froids, rétention).
+     */
+    void startArchive();
+
+    // --- GESTION UTILISATEURS ---
+    boolean registerUser(String username, String password);
+    String getUserTag(String username);
+    List<String> getFriends(String username);
+    void addFriend(String fromUser, String toUser);
+    void addFriendRequest(String fromUser, String toUser);
+    boolean areFriends(String user1, String user2);
+    void acceptFriend(String requester, String accepter);
+    boolean updatePassword(String username, String newPassword);
+    boolean authenticateUser(String username, String password);
+    boolean userExists(String username);
+    void setCanCreateChannel(String username, boolean canCreate);
+    boolean canCreateChannel(String username);
+    void blockUser(String username, boolean blocked);
+    boolean isBlocked(String username);
+    DatabaseManager.LoginInfo getLoginInfo(String username);
+
+    // --- GESTION ROLES ---
+    void createRole(String name, boolean pCreate, boolean pBlock, boolean pDelMsg, boolean pManageRoles);
+    void deleteRole(String name);
+    boolean roleExists(String name);
+    void assignRole(String username, String roleName);
+    void removeRole(String username, String roleName);
+    boolean hasPermission(String username, String permColumn);
+    List<String> getAllRoles();
+    List<String> getUserRoles(String username);
+    void deleteUser(String username);
+
+    // --- GESTION SERVERS ---
+    void createServer(String name);
+    boolean serverExists(String name);
+    void deleteServer(String name);
+    List<String> getServers();
+
+    // --- GESTION SALONS ---
+    void createChannel(String name, String serverName);
+    void createChannel(String name, String type, String serverName);
+    void deleteChannel(String name);
+    void deleteChannel(String name, String serverName);
+    void renameChannel(String oldName, String newName);
+    void renameChannel(String oldName, String newName, String serverName);
+    List<DatabaseManager.ChannelData> getChannels();
+
+    // --- GESTION MESSAGES ---
+    void saveMessage(Message msg);
+    List<Message> getLastMessages(String channelName, int limit);
+    List<Message> getMessagesSince(String channelName, long sinceId, int limit);
+    List<Message> searchMessages(String requester, String matchQuery, String channel, String user, long fromMillis,
+            long toMillis, long beforeId, int limit);
+    String deleteMessage(long id, String username);
+    Message editMessage(long id, String username, String content);
+
+    // --- MESSAGES PRIVÉS EN ATTENTE ---
+    void queuePendingDm(String recipient, long messageId);
+    List<Message> getPendingDms(String recipient, int limit);
+    void ackPendingDms(String recipient, Collection<Long> messageIds);
+
+    // --- ÉTAT DE LECTURE ---
+    Map<String, Long> getReadStates(String username);
+    void saveReadStates(Map<String, Map<String, Long>> states);
+    Map<String, Long> getLatestMessageIds(Collection<String> channelNames);
+    Map<String, Integer> countUnread(Map<String, Long> lastRead, int cap);
+}
@@ -0,0 +1,114 @@
+package server;
+
+import common.Message;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indicateurs de saisie des salons. Un /typing ne fait que noter (ou
+ * prolonger) l'état "en train d'écrire" de l'utilisateur ; seul le passage à
+ * cet état, son expiration après TIMEOUT_MS sans nouveau /typing, l'envoi
+ * d'un message ou le départ du salon modifient la liste.
+ *
+ * Les salons modifiés sont diffusés toutes les FLUSH_INTERVAL_MS par un
+ * thread dédié, en une seule trame TYPING par salon : canal = nom du salon,
+ * contenu = "pseudo1,pseudo2" (vide si plus personne n'écrit).
+ */
+public class TypingTracker {
+    private static final long TIMEOUT_MS = 4000;
+    private static final long FLUSH_INTERVAL_MS = 500;
+
+    // Salon -> pseudo -> échéance (ms)
+    private static final Map<Channel, Map<String, Long>> typing = new ConcurrentHashMap<>();
+    private static final Set<Channel> dirty = ConcurrentHashMap.newKeySet();
+
+    private static final Metrics.Counter EVENTS = Metrics.counter("typing_events");
+    private static final Metrics.Counter FRAMES = Metrics.counter("typing_frames");
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Typing");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        scheduler.scheduleAtFixedRate(TypingTracker::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private TypingTracker() {
+    }
+
+    /**
+     * /typing reçu : seul le début de saisie sera diffusé.
+     */
+    public static void onTyping(Channel channel, String username) {
+        EVENTS.inc();
+        long expiry = System.currentTimeMillis() + TIMEOUT_MS;
+        boolean[] started = new boolean[1];
+        typing.compute(channel, (c, users) -> {
+            if (users == null)
+                users = new ConcurrentHashMap<>();
+            started[0] = users.put(username, expiry) == null;
+            return users;
+        });
+        if (started[0]) {
+            dirty.add(channel);
+        }
+    }
+
+    /**
+     * Fin de saisie : message envoyé ou salon quitté.
+     */
+    public static void stop(Channel channel, String username) {
+        if (channel == null)
+            return;
+        typing.computeIfPresent(channel, (c, users) -> {
+            if (users.remove(username) != null) {
+                dirty.add(c);
+            }
+            return users.isEmpty() ? null : users;
+        });
+    }
+
+    /**
+     * Déconnexion : l'utilisateur n'écrit plus nulle part.
+     */
+    public static void remove(String username) {
+        for (Channel channel : typing.keySet()) {
+            stop(channel, username);
+        }
+    }
+
+    private static void flush() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Channel channel : typing.keySet()) {
+                typing.computeIfPresent(channel, (c, users) -> {
+                    if (users.values().removeIf(expiry -> expiry <= now)) {
+                        dirty.add(c);
+                    }
+                    return users.isEmpty() ? null : users;
+                });
+            }
+
+            for (Channel channel : dirty) {
+                dirty.remove(channel);
+                Map<String, Long> users = typing.get(channel);
+                String list = users == null ? "" : String.join(",", users.keySet());
+                Message frame = new Message("System", list, channel.getName(), Message.MessageType.TYPING);
+                for (ClientHandler member : channel.getMembers()) {
+                    member.sendMessage(frame);
+                }
+                FRAMES.inc();
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,31 +1,138 @@
 package server;
 
+import common.VoicePacket;
 import java.io.IOException;
 import java.net.*;
+import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class VoiceServer implements Runnable {
     private static final int PORT = 5001;
     private static final int BUFFER_SIZE = 1024;
 
-    private Map<String, Set<SocketAddress>> channels = new ConcurrentHashMap<>();
-    private Map<SocketAddress, String> clientChannels = new ConcurrentHashMap<>();
+    // Table plate indexée par StreamId (16 bits) : routage en O(1) sans hash
+    private static final AtomicReferenceArray<VoiceSession> sessions = new AtomicReferenceArray<>(
+            VoicePacket.MAX_STREAMS);
+    private static final Map<String, VoiceSession> userSessions = new ConcurrentHashMap<>();
+    private static final Map<String, Set<VoiceSession>> channels = new ConcurrentHashMap<>();
+    private static final SecureRandom random = new SecureRandom();
+    private static int nextStreamId = 1;
+
+    private static final Metrics.Counter PACKETS_IN = Metrics.counter("voice_packets_in");
+    private static final Metrics.Counter FORWARDED = Metrics.counter("voice_packets_forwarded");
+    private static final Metrics.Counter DROPPED = Metrics.counter("voice_packets_dropped");
 
     private DatagramSocket socket;
     private boolean running;
+    private ScheduledExecutorService reaper;
 
     public VoiceServer() {
+        this(PORT);
+    }
+
+    // Port 0 : port libre choisi par le système (bancs d'essai)
+    VoiceServer(int port) {
         try {
             // Bind to all interfaces (0.0.0.0)
-            socket = new DatagramSocket(PORT);
+            socket = new DatagramSocket(port);
             running = true;
-            System.out.println("🎤 Serveur Vocal (UDP) démarré sur le port " + PORT);
+            System.out.println("🎤 Serveur Vocal (UDP) démarré sur le port " + socket.getLocalPort());
+
+            // Éviction des sessions sans keep-alive (client planté, NAT expiré...)
+            reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Voice-Reaper");
+                t.setDaemon(true);
+                return t;
+            });
+            reaper.scheduleAtFixedRate(VoiceServer::evictStaleSessions, VoicePacket.KEEPALIVE_INTERVAL_MS,
+                    VoicePacket.KEEPALIVE_INTERVAL_MS, TimeUnit.MILLISECONDS);
         } catch (SocketException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Attribue un StreamId et un token à l'utilisateur pour ce salon vocal.
+     * Une éventuelle session précédente de l'utilisateur est libérée.
+     * Retourne null si les 65535 identifiants sont occupés.
+     */
+    public static synchronized VoiceSession openSession(String username, String channelName) {
+        closeSession(username);
+
+        for (int i = 0; i < VoicePacket.MAX_STREAMS - 1; i++) {
+            int id = nextStreamId;
+            nextStreamId = nextStreamId == VoicePacket.MAX_STREAMS - 1 ? 1 : nextStreamId + 1;
+            if (sessions.get(id) == null) {
+                VoiceSession session = new VoiceSession(id, random.nextLong(), username, channelName);
+                sessions.set(id, session);
+                userSessions.put(username, session);
+                channels.computeIfAbsent(channelName, k -> Collections.synchronizedSet(new HashSet<>()))
+                        .add(session);
+                return session;
+            }
+        }
+        return null;
+    }
+
+    public static synchronized void closeSession(String username) {
+        VoiceSession session = userSessions.remove(username);
+        if (session != null) {
+            release(session);
+        }
+    }
+
+    private static synchronized void release(VoiceSession session) {
+        if (!sessions.compareAndSet(session.getStreamId(), session, null))
+            return; // Déjà libérée
+        userSessions.remove(session.getUsername(), session);
+        Set<VoiceSession> set = channels.get(session.getChannel());
+        if (set != null) {
+            set.remove(session);
+            if (set.isEmpty()) {
+                channels.remove(session.getChannel());
+            }
+        }
+        // Après le retrait : la liste diffusée ne contient plus la session
+        EventBus.publish(new ServerEvent(ServerEvent.Type.VOICE_LEAVE, session.getUsername(), session.getChannel()));
+    }
+
+    static void evictStaleSessions() {
+        long deadline = System.currentTimeMillis() - VoicePacket.SESSION_TIMEOUT_MS;
+        for (VoiceSession session : userSessions.values()) {
+            if (session.getLastSeen() < deadline) {
+                System.out.println("[VoiceServer] Session expirée: " + session.getUsername());
+                release(session);
+            }
+        }
+    }
+
+    public static VoiceSession getSession(String username) {
+        return userSessions.get(username);
+    }
+
+    public static VoiceSession getSessionById(int streamId) {
+        if (streamId < 0 || streamId >= VoicePacket.MAX_STREAMS)
+            return null;
+        return sessions.get(streamId);
+    }
+
+    /**
+     * Sessions ouvertes dans un salon vocal (copie).
+     */
+    public static List<VoiceSession> getSessions(String channelName) {
+        Set<VoiceSession> set = channels.get(channelName);
+        if (set == null)
+            return Collections.emptyList();
+        synchronized (set) {
+            return new ArrayList<>(set);
+        }
+    }
+
     @Override
     public void run() {
         byte[] buffer = new byte[BUFFER_SIZE];
@@ -39,30 +146,52 @@ public class VoiceServer implements Runnable {
                 byte[] data = packet.getData();
                 int len = packet.getLength();
 
-                if (len < 1)
+                PACKETS_IN.inc();
+                if (len < VoicePacket.HEADER_SIZE) {
+                    DROPPED.inc();
                     continue;
+                }
 
                 char type = (char) data[0]; // First byte is type
+                VoiceSession session = sessions.get(VoicePacket.readStreamId(data));
+                if (session == null) {
+                    DROPPED.inc();
+                    continue;
+                }
 
-                if (type == 'J') { // JOIN
-                    // Packet format: [Type] [UserLen] [User...] [ChannelName...]
-                    // We need to parse UserLen to skip User and get ChannelName
-                    int userLen = data[1] & 0xFF;
-                    int headerLen = 2 + userLen; // 1 (Type) + 1 (Len) + UserLen
-
-                    if (len > headerLen) {
-                        String channelName = new String(data, headerLen, len - headerLen).trim();
-                        System.out.println("[VoiceServer] Client " + sender + " joining " + channelName);
-                        handleJoin(sender, channelName);
+                if (type == VoicePacket.JOIN || type == VoicePacket.KEEPALIVE) { // JOIN / KEEPALIVE
+                    // Packet format: [Type] [StreamId] [Token (8)]
+                    if (len >= VoicePacket.HEADER_SIZE + VoicePacket.TOKEN_SIZE
+                            && VoicePacket.readToken(data, VoicePacket.HEADER_SIZE) == session.getToken()) {
+                        boolean firstBind = session.getAddress() == null;
+                        if (!sender.equals(session.getAddress())) {
+                            System.out.println("[VoiceServer] " + session.getUsername() + " (" + sender + ") joining "
+                                    + session.getChannel());
+                            session.setAddress(sender);
+                        }
+                        session.touch();
+                        if (firstBind) {
+                            EventBus.publish(new ServerEvent(ServerEvent.Type.VOICE_JOIN, session.getUsername(),
+                                    session.getChannel()));
+                        }
                     }
-                } else if (type == 'L') { // LEAVE
-                    System.out.println("[VoiceServer] Client " + sender + " leaving");
-                    handleLeave(sender);
-                } else if (type == 'A') { // AUDIO
-                    // System.out.println("[VoiceServer] Audio from " + sender);
-                    handleAudio(sender, packet);
-                } else if (type == 'T') { // TALK STATUS
-                    handleForward(sender, packet);
+                    continue;
+                }
+
+                // Tout autre paquet doit venir de l'adresse liée par le JOIN
+                if (!sender.equals(session.getAddress())) {
+                    DROPPED.inc();
+                    continue;
+                }
+                session.touch();
+
+                if (type == VoicePacket.LEAVE) { // LEAVE
+                    System.out.println("[VoiceServer] " + session.getUsername() + " leaving");
+                    release(session);
+                } else if (type == VoicePacket.AUDIO) { // AUDIO
+                    handleAudio(session, packet);
+                } else if (type == VoicePacket.TALK) { // TALK STATUS
+                    handleForward(session, packet);
                 }
 
             } catch (IOException e) {
@@ -72,59 +201,28 @@ public class VoiceServer implements Runnable {
         }
     }
 
-    private void handleJoin(SocketAddress sender, String channelName) {
-        // Force leave ANY channel before joining new one
-        String current = clientChannels.get(sender);
-        if (current != null && !current.equals(channelName)) {
-            handleLeave(sender);
-        } else if (current != null && current.equals(channelName)) {
-            return; // Already in this channel, ignore? Or update?
-        }
-
-        handleLeave(sender); // Just to be safe/clean
-        channels.computeIfAbsent(channelName, k -> Collections.synchronizedSet(new HashSet<>())).add(sender);
-        clientChannels.put(sender, channelName);
-
-        // Broadcast user list update via ClientHandler/Server mechanisms?
-        // Voice Server is separate (UDP), doesn't easily talk to TCP Server.
-        // We rely on Client calling /join X on TCP side to update user lists.
-    }
-
-    private void handleLeave(SocketAddress sender) {
-        String channel = clientChannels.remove(sender);
-        if (channel != null) {
-            Set<SocketAddress> set = channels.get(channel);
-            if (set != null) {
-                set.remove(sender);
-                if (set.isEmpty()) {
-                    channels.remove(channel);
-                }
-            }
-        }
-    }
-
-    private void handleAudio(SocketAddress sender, DatagramPacket originalPacket) {
+    private void handleAudio(VoiceSession sender, DatagramPacket originalPacket) {
         handleForward(sender, originalPacket);
     }
 
-    private void handleForward(SocketAddress sender, DatagramPacket originalPacket) {
-        String channel = clientChannels.get(sender);
-        if (channel != null) {
-            Set<SocketAddress> recipients = channels.get(channel);
-            if (recipients != null) {
-                synchronized (recipients) {
-                    for (SocketAddress recipient : recipients) {
-                        // Forward to everyone ELSE.
-                        if (!recipient.equals(sender)) {
-                            try {
-                                DatagramPacket forward = new DatagramPacket(
-                                        originalPacket.getData(),
-                                        originalPacket.getLength(),
-                                        recipient);
-                                socket.send(forward);
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
+    void handleForward(VoiceSession sender, DatagramPacket originalPacket) {
+        Set<VoiceSession> recipients = channels.get(sender.getChannel());
+        if (recipients != null) {
+            synchronized (recipients) {
+                for (VoiceSession recipient : recipients) {
+                    SocketAddress address = recipient.getAddress();
+                    // Forward to everyone ELSE.
+                    if (recipient != sender && address != null) {
+                        try {
+                            DatagramPacket forward = new DatagramPacket(
+                                    originalPacket.getData(),
+                                    originalPacket.getLength(),
+                                    address);
+                            socket.send(forward);
+                            FORWARDED.inc();
+                        } catch (IOException e) {
+                            DROPPED.inc();
+                            e.printStackTrace();
                         }
                     }
                 }
@@ -134,6 +232,9 @@ public class VoiceServer implements Runnable {
 
     public void stop() {
         running = false;
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
         if (socket != null && !socket.isClosed()) {
             socket.close();
         }
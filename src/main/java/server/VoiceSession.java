@@ -0,0 +1,56 @@
+package server;
+
+import java.net.SocketAddress;
+
+/**
+ * Session vocale émise par le ClientHandler lors de /voice_join.
+ * L'adresse UDP n'est liée qu'après réception d'un paquet JOIN portant le bon
+ * token, ce qui permet aussi de suivre un client dont le NAT change de port.
+ */
+public class VoiceSession {
+    private final int streamId;
+    private final long token;
+    private final String username;
+    private final String channel;
+    private volatile SocketAddress address;
+    private volatile long lastSeen = System.currentTimeMillis();
+
+    public VoiceSession(int streamId, long token, String username, String channel) {
+        this.streamId = streamId;
+        this.token = token;
+        this.username = username;
+        this.channel = channel;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public long getToken() {
+        return token;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    public void setAddress(SocketAddress address) {
+        this.address = address;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public void touch() {
+        lastSeen = System.currentTimeMillis();
+    }
+}
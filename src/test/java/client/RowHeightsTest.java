@@ -0,0 +1,79 @@
+package client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * RowHeights comparé à un simple tableau de hauteurs, sur des mises à jour
+ * aléatoires (lignes vidées comprises).
+ */
+class RowHeightsTest {
+
+    // Réponse attendue de find, par parcours linéaire
+    private static int naiveFind(int[] heights, int y) {
+        int bottom = 0;
+        for (int i = 0; i < heights.length; i++) {
+            bottom += heights[i];
+            if (bottom > Math.max(0, y))
+                return i;
+        }
+        return -1;
+    }
+
+    private static void assertMatches(int[] heights, RowHeights tree) {
+        int sum = 0;
+        for (int i = 0; i < heights.length; i++) {
+            assertEquals(sum, tree.top(i), "top(" + i + ")");
+            sum += heights[i];
+        }
+        assertEquals(sum, tree.total());
+        for (int y = -5; y <= sum + 5; y += 3) {
+            assertEquals(naiveFind(heights, y), tree.find(y), "find(" + y + ")");
+        }
+    }
+
+    @Test
+    void matchesLinearScanUnderRandomUpdates() {
+        Random random = new Random(42);
+        int[] heights = new int[100];
+        RowHeights tree = new RowHeights(heights.length);
+        for (int i = 0; i < heights.length; i++) {
+            heights[i] = 10 + random.nextInt(50);
+            tree.add(i, heights[i]);
+        }
+        assertMatches(heights, tree);
+
+        for (int round = 0; round < 200; round++) {
+            int row = random.nextInt(heights.length);
+            // Une fois sur quatre la ligne est vidée (message retiré)
+            int height = random.nextInt(4) == 0 ? 0 : 10 + random.nextInt(80);
+            tree.add(row, height - heights[row]);
+            heights[row] = height;
+        }
+        assertMatches(heights, tree);
+    }
+
+    @Test
+    void bulkConstructionEqualsIncrementalAdds() {
+        int[] heights = { 20, 0, 35, 0, 0, 18, 60, 12, 0, 40, 25 };
+        RowHeights built = new RowHeights(16, heights, heights.length);
+        RowHeights added = new RowHeights(16);
+        for (int i = 0; i < heights.length; i++) {
+            added.add(i, heights[i]);
+        }
+        for (int i = 0; i <= heights.length; i++) {
+            assertEquals(added.top(i), built.top(i));
+        }
+        assertMatches(heights, built);
+    }
+
+    @Test
+    void emptyTreeFindsNothing() {
+        RowHeights tree = new RowHeights(8);
+        assertEquals(-1, tree.find(0));
+        assertEquals(0, tree.total());
+    }
+}
@@ -0,0 +1,186 @@
+package client;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Encodeur, décodeur et régulation du partage d'écran sur des trames
+ * synthétiques, sans écran ni réseau.
+ */
+class ScreenShareCodecTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 200;
+    private static final int TILE = ScreenShareCodec.DEFAULT_TILE_SIZE;
+    // Écart moyen toléré par composante (JPEG avec perte)
+    private static final double MAX_MEAN_ERROR = 6.0;
+
+    // Dégradé horizontal et bandes : assez de détail pour que JPEG travaille
+    private static BufferedImage syntheticFrame() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int r = x * 255 / WIDTH;
+                int g = y * 255 / HEIGHT;
+                int b = (y / 20) % 2 == 0 ? 60 : 180;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage copy(BufferedImage source) {
+        BufferedImage image = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(source, 0, 0, null);
+        g.dispose();
+        return image;
+    }
+
+    private static double meanError(BufferedImage expected, BufferedImage actual) {
+        long sum = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int a = expected.getRGB(x, y);
+                int b = actual.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    sum += Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF));
+                }
+            }
+        }
+        return sum / (3.0 * expected.getWidth() * expected.getHeight());
+    }
+
+    // En-tête : [seq (4)] [timestamp (8)] [largeur (2)] [hauteur (2)] [tuile (2)] [clé (1)] [nb (4)]
+    private static int[] header(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int seq = in.readInt();
+        in.readLong();
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        boolean keyframe = in.readBoolean();
+        int count = in.readInt();
+        return new int[] { seq, keyframe ? 1 : 0, count };
+    }
+
+    @Test
+    void keyframeRoundTrip() throws IOException {
+        ScreenShareCodec.Encoder encoder = new ScreenShareCodec.Encoder(TILE);
+        ScreenShareCodec.Decoder decoder = new ScreenShareCodec.Decoder();
+        BufferedImage frame = syntheticFrame();
+
+        byte[] data = encoder.encode(frame);
+        assertNotNull(data);
+        int tiles = ((WIDTH + TILE - 1) / TILE) * ((HEIGHT + TILE - 1) / TILE);
+        assertArrayEquals(new int[] { 0, 1, tiles }, header(data));
+
+        BufferedImage decoded = decoder.decode(data);
+        assertEquals(WIDTH, decoded.getWidth());
+        assertEquals(HEIGHT, decoded.getHeight());
+        assertTrue(meanError(frame, decoded) < MAX_MEAN_ERROR);
+        assertFalse(decoder.needsKeyframe());
+    }
+
+    @Test
+    void deltaFrameSendsOnlyChangedTiles() throws IOException {
+        ScreenShareCodec.Encoder encoder = new ScreenShareCodec.Encoder(TILE);
+        ScreenShareCodec.Decoder decoder = new ScreenShareCodec.Decoder();
+        BufferedImage frame = syntheticFrame();
+        decoder.decode(encoder.encode(frame));
+
+        assertNull(encoder.encode(copy(frame)), "trame identique : rien à envoyer");
+
+        // Un rectangle à cheval sur deux tuiles de la première rangée
+        BufferedImage changed = copy(frame);
+        Graphics2D g = changed.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(TILE - 10, 10, 20, 20);
+        g.dispose();
+
+        byte[] delta = encoder.encode(changed);
+        assertNotNull(delta);
+        assertArrayEquals(new int[] { 1, 0, 2 }, header(delta));
+
+        BufferedImage decoded = decoder.decode(delta);
+        assertTrue(meanError(changed, decoded) < MAX_MEAN_ERROR);
+        assertFalse(decoder.needsKeyframe());
+    }
+
+    @Test
+    void lostFrameRequestsKeyframe() throws IOException {
+        ScreenShareCodec.Encoder encoder = new ScreenShareCodec.Encoder(TILE);
+        ScreenShareCodec.Decoder decoder = new ScreenShareCodec.Decoder();
+        BufferedImage frame = syntheticFrame();
+        decoder.decode(encoder.encode(frame));
+
+        BufferedImage changed = copy(frame);
+        changed.setRGB(0, 0, 0xFFFFFF);
+        encoder.encode(changed); // perdue en route
+        changed.setRGB(WIDTH - 1, HEIGHT - 1, 0x000000);
+        decoder.decode(encoder.encode(changed));
+
+        assertTrue(decoder.needsKeyframe());
+        int[] stats = decoder.drainStats();
+        assertEquals(2, stats[0]);
+        assertEquals(1, stats[1]);
+
+        encoder.requestKeyframe();
+        byte[] keyframe = encoder.encode(changed);
+        assertEquals(1, header(keyframe)[1]);
+        BufferedImage decoded = decoder.decode(keyframe);
+        assertFalse(decoder.needsKeyframe());
+        assertTrue(meanError(changed, decoded) < MAX_MEAN_ERROR);
+    }
+
+    @Test
+    void resizeForcesKeyframe() throws IOException {
+        ScreenShareCodec.Encoder encoder = new ScreenShareCodec.Encoder(TILE);
+        encoder.encode(syntheticFrame());
+        byte[] data = encoder.encode(new BufferedImage(WIDTH / 2, HEIGHT / 2, BufferedImage.TYPE_INT_RGB));
+        assertEquals(1, header(data)[1]);
+    }
+
+    @Test
+    void rateControllerBacksOffAndRecovers() {
+        ScreenShareCodec.RateController rate = new ScreenShareCodec.RateController();
+        int fps = rate.getFps();
+        float quality = rate.getQuality();
+
+        rate.onFeedback(10, 3, 5);
+        assertTrue(rate.getFps() < fps);
+        assertTrue(rate.getQuality() < quality);
+
+        // Décodage plus lent que l'intervalle entre trames : congestion aussi
+        int congestedFps = rate.getFps();
+        rate.onFeedback(congestedFps, 0, 2000);
+        assertTrue(rate.getFps() <= congestedFps);
+
+        int lowFps = rate.getFps();
+        float lowQuality = rate.getQuality();
+        for (int i = 0; i < 3; i++) {
+            rate.onFeedback(lowFps, 0, 1);
+        }
+        assertEquals(lowFps + 1, rate.getFps());
+        assertTrue(rate.getQuality() > lowQuality);
+
+        // Jamais en dessous du plancher
+        for (int i = 0; i < 50; i++) {
+            rate.onFeedback(1, 5, 5000);
+        }
+        assertEquals(1, rate.getFps());
+        assertTrue(rate.getQuality() >= 0.2f - 1e-6f);
+    }
+}
@@ -0,0 +1,17 @@
+package server;
+
+import java.io.File;
+
+class LogStorageEngineTest extends StorageEngineConformanceTest {
+
+    @Override
+    StorageEngine createEngine(File dir) {
+        return new LogStorageEngine("jdbc:sqlite:" + new File(dir, "test.db").getPath(), new File(dir, "journal"),
+                new File(dir, "archive"));
+    }
+
+    @Override
+    void closeEngine(StorageEngine engine) {
+        ((LogStorageEngine) engine).close();
+    }
+}
@@ -0,0 +1,157 @@
+package server;
+
+import common.Message;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Reprise après arrêt brutal : segments écrits puis rouverts par un nouveau
+ * journal, éventuellement abîmés à la main, et contenu rendu par replay().
+ */
+class MessageJournalTest {
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_HEADER = 8;
+    // Plus grand qu'un segment par défaut (16 Mo) : force un changement de segment
+    private static final int LARGE_FILE = 16 * 1024 * 1024 + 1;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void replaysOnlyMessagesAboveTheCheckpoint() throws IOException {
+        MessageJournal journal = new MessageJournal(dir);
+        journal.reset(1);
+        for (long id = 1; id <= 5; id++) {
+            journal.append(message(id), false);
+        }
+        journal.checkpoint(3);
+        journal.close();
+
+        List<Message> replayed = new MessageJournal(dir).replay();
+        assertEquals(Arrays.asList(4L, 5L), ids(replayed));
+        assertEquals("message 4", replayed.get(0).getContent());
+        assertEquals("journal", replayed.get(0).getChannel());
+    }
+
+    @Test
+    void stopsAtATornRecord() throws IOException {
+        long[] offsets = writeSegment(3);
+        // Arrêt au milieu du troisième enregistrement : la fin du fichier manque
+        try (RandomAccessFile file = new RandomAccessFile(onlySegment(), "rw")) {
+            file.setLength(offsets[2] + RECORD_HEADER + 4);
+        }
+
+        assertEquals(Arrays.asList(1L, 2L), ids(new MessageJournal(dir).replay()));
+    }
+
+    @Test
+    void stopsAtACrcMismatch() throws IOException {
+        long[] offsets = writeSegment(3);
+        // Un octet du deuxième enregistrement modifié : le troisième, intact,
+        // n'est pas relu non plus
+        try (RandomAccessFile file = new RandomAccessFile(onlySegment(), "rw")) {
+            long position = offsets[1] + RECORD_HEADER + 2;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+
+        assertEquals(Arrays.asList(1L), ids(new MessageJournal(dir).replay()));
+    }
+
+    @Test
+    void rollsToANewSegmentWhenFull() throws IOException {
+        MessageJournal journal = new MessageJournal(dir);
+        journal.reset(1);
+        journal.append(message(1), false);
+        journal.append(largeFile(2), false);
+        journal.append(message(3), false);
+        journal.close();
+
+        assertEquals(Arrays.asList("segment-00000000000000000001.log", "segment-00000000000000000002.log",
+                "segment-00000000000000000003.log"), segmentNames());
+        List<Message> replayed = new MessageJournal(dir).replay();
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(replayed));
+        assertEquals(LARGE_FILE, replayed.get(1).getFileData().length);
+        assertEquals("gros.bin", replayed.get(1).getFileName());
+    }
+
+    @Test
+    void deletesClosedSegmentsOnceFolded() throws IOException {
+        MessageJournal journal = new MessageJournal(dir);
+        journal.reset(1);
+        journal.append(message(1), false);
+        journal.append(largeFile(2), false);
+        journal.append(message(3), false);
+
+        journal.checkpoint(1);
+        assertEquals(Arrays.asList("segment-00000000000000000002.log", "segment-00000000000000000003.log"),
+                segmentNames());
+
+        journal.checkpoint(2);
+        assertEquals(Arrays.asList("segment-00000000000000000003.log"), segmentNames());
+        journal.close();
+
+        assertEquals(Arrays.asList(3L), ids(new MessageJournal(dir).replay()));
+    }
+
+    // Un segment de count messages ; retourne la position de chaque enregistrement
+    private long[] writeSegment(int count) throws IOException {
+        MessageJournal journal = new MessageJournal(dir);
+        journal.reset(1);
+        long[] offsets = new long[count];
+        long offset = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            Message msg = message(i + 1);
+            journal.append(msg, false);
+            offsets[i] = offset;
+            offset += RECORD_HEADER + MessageJournal.encode(msg).length;
+        }
+        journal.close();
+        return offsets;
+    }
+
+    private File onlySegment() {
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    private List<String> segmentNames() {
+        String[] names = dir.list();
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+    private static Message message(long id) {
+        Message msg = new Message("alice", "message " + id, "journal", Message.MessageType.CHAT);
+        msg.setId(id);
+        return msg;
+    }
+
+    private static Message largeFile(long id) {
+        byte[] data = new byte[LARGE_FILE];
+        data[data.length - 1] = 42;
+        Message msg = new Message("alice", "gros.bin", data, "journal", Message.MessageType.FILE);
+        msg.setId(id);
+        return msg;
+    }
+
+    private static List<Long> ids(List<Message> messages) {
+        List<Long> ids = new ArrayList<>();
+        for (Message msg : messages) {
+            ids.add(msg.getId());
+        }
+        return ids;
+    }
+}
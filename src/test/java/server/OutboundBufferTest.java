@@ -0,0 +1,98 @@
+package server;
+
+import common.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bornes de since() : reprise juste avant le plus ancien message conservé,
+ * messages oubliés (nombre ou taille) et numéro supérieur au dernier envoyé.
+ * Les bornes sont celles par défaut (256 messages, 1 Mo).
+ */
+class OutboundBufferTest {
+    private static final int MAX_MESSAGES = 256;
+
+    @Test
+    void emptyBufferHasNothingToReplay() {
+        OutboundBuffer buffer = new OutboundBuffer();
+        assertTrue(buffer.since(0).isEmpty());
+    }
+
+    @Test
+    void replaysEverythingAfterLastSeq() {
+        OutboundBuffer buffer = filled(3);
+        assertEquals(List.of("2", "3"), contents(buffer.since(1)));
+        assertTrue(buffer.since(3).isEmpty());
+    }
+
+    @Test
+    void lastSeqAheadOfTheBufferIsRefused() {
+        OutboundBuffer buffer = filled(3);
+        assertNull(buffer.since(4));
+        assertNull(buffer.since(100));
+    }
+
+    @Test
+    void resumesJustBeforeTheOldestKeptMessage() {
+        // Les 5 premiers sont oubliés : le plus ancien conservé est le n° 6
+        OutboundBuffer buffer = filled(MAX_MESSAGES + 5);
+        List<Message> missed = buffer.since(5);
+        assertEquals(MAX_MESSAGES, missed.size());
+        assertEquals("6", missed.get(0).getContent());
+        assertEquals(String.valueOf(MAX_MESSAGES + 5), missed.get(missed.size() - 1).getContent());
+        assertNull(buffer.since(4));
+    }
+
+    @Test
+    void messagesEvictedByTheByteCapCannotBeReplayed() {
+        OutboundBuffer buffer = new OutboundBuffer();
+        buffer.append(file("1", 600 * 1024));
+        buffer.append(file("2", 600 * 1024));
+        // Le premier a été oublié pour rester sous 1 Mo
+        assertNull(buffer.since(0));
+        assertEquals(List.of("2"), fileNames(buffer.since(1)));
+    }
+
+    @Test
+    void oversizedLastMessageIsKept() {
+        OutboundBuffer buffer = new OutboundBuffer();
+        buffer.append(file("1", 10));
+        buffer.append(file("2", 2 * 1024 * 1024));
+        assertNull(buffer.since(0));
+        assertEquals(List.of("2"), fileNames(buffer.since(1)));
+    }
+
+    private static OutboundBuffer filled(int count) {
+        OutboundBuffer buffer = new OutboundBuffer();
+        for (int i = 1; i <= count; i++) {
+            buffer.append(new Message("alice", String.valueOf(i), "général", Message.MessageType.CHAT));
+        }
+        return buffer;
+    }
+
+    private static Message file(String name, int size) {
+        return new Message("alice", name, new byte[size], "général", Message.MessageType.FILE);
+    }
+
+    private static List<String> contents(List<Message> messages) {
+        List<String> contents = new ArrayList<>();
+        for (Message msg : messages) {
+            contents.add(msg.getContent());
+        }
+        return contents;
+    }
+
+    private static List<String> fileNames(List<Message> messages) {
+        List<String> names = new ArrayList<>();
+        for (Message msg : messages) {
+            names.add(msg.getFileName());
+        }
+        return names;
+    }
+}
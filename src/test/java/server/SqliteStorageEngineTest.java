@@ -0,0 +1,11 @@
+package server;
+
+import java.io.File;
+
+class SqliteStorageEngineTest extends StorageEngineConformanceTest {
+
+    @Override
+    StorageEngine createEngine(File dir) {
+        return new SqliteStorageEngine("jdbc:sqlite:" + new File(dir, "test.db").getPath(), new File(dir, "archive"));
+    }
+}
@@ -0,0 +1,178 @@
+package server;
+
+import common.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Comportement commun à tous les moteurs de stockage, vérifié sur une base
+ * vide dans un dossier temporaire. Chaque moteur a sa sous-classe ; les
+ * lectures suivent immédiatement les écritures, sans attendre un éventuel
+ * reversement en tâche de fond.
+ */
+abstract class StorageEngineConformanceTest {
+    @TempDir
+    File dir;
+
+    StorageEngine engine;
+
+    abstract StorageEngine createEngine(File dir);
+
+    // Libère les ressources du moteur (threads, fichiers projetés)
+    void closeEngine(StorageEngine engine) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        engine = createEngine(dir);
+        engine.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        closeEngine(engine);
+    }
+
+    private Message save(String user, String content, String channel) {
+        Message msg = new Message(user, content, channel, Message.MessageType.CHAT);
+        engine.saveMessage(msg);
+        return msg;
+    }
+
+    private static String contents(List<Message> messages) {
+        StringBuilder sb = new StringBuilder();
+        for (Message msg : messages) {
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(msg.getContent());
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void saveMessageAssignsIncreasingIds() {
+        long previous = 0;
+        for (int i = 0; i < 5; i++) {
+            Message msg = save("alice", "m" + i, "général");
+            assertTrue(msg.getId() > previous, "ID " + msg.getId() + " après " + previous);
+            previous = msg.getId();
+        }
+    }
+
+    @Test
+    void lastMessagesAreTheNewestInChronologicalOrder() {
+        for (int i = 0; i < 5; i++) {
+            save("alice", "a" + i, "général");
+            save("bob", "b" + i, "dev");
+        }
+        assertEquals("a2,a3,a4", contents(engine.getLastMessages("général", 3)));
+        assertEquals("b0,b1,b2,b3,b4", contents(engine.getLastMessages("dev", 50)));
+        assertTrue(engine.getLastMessages("inconnu", 50).isEmpty());
+    }
+
+    @Test
+    void messagesSinceReturnsOnlyNewerOnes() {
+        save("alice", "a0", "général");
+        Message read = save("alice", "a1", "général");
+        save("bob", "b0", "dev");
+        save("alice", "a2", "général");
+        save("alice", "a3", "général");
+        assertEquals("a2,a3", contents(engine.getMessagesSince("général", read.getId(), 50)));
+        assertEquals("a3", contents(engine.getMessagesSince("général", read.getId(), 1)));
+    }
+
+    @Test
+    void editAndDeleteAreLimitedToTheAuthor() {
+        Message msg = save("alice", "avant", "général");
+        assertNull(engine.editMessage(msg.getId(), "bob", "piraté"));
+        Message edited = engine.editMessage(msg.getId(), "alice", "après");
+        assertNotNull(edited);
+        assertEquals("après", edited.getContent());
+        assertTrue(edited.isEdited());
+        assertEquals("après", engine.getLastMessages("général", 1).get(0).getContent());
+
+        assertNull(engine.deleteMessage(msg.getId(), "bob"));
+        assertEquals("général", engine.deleteMessage(msg.getId(), "alice"));
+        assertTrue(engine.getLastMessages("général", 50).isEmpty());
+    }
+
+    @Test
+    void searchFindsJustSavedMessages() {
+        save("alice", "le chat dort", "général");
+        save("bob", "le chien aboie", "dev");
+        save("alice", "un chat noir", "dev");
+        List<Message> all = engine.searchMessages("alice", "\"chat\"", null, null, 0, 0, 0, 20);
+        assertEquals("un chat noir,le chat dort", contents(all));
+        List<Message> inDev = engine.searchMessages("alice", "\"chat\"", "dev", null, 0, 0, 0, 20);
+        assertEquals("un chat noir", contents(inDev));
+        List<Message> byBob = engine.searchMessages("alice", "\"le\"", null, "bob", 0, 0, 0, 20);
+        assertEquals("le chien aboie", contents(byBob));
+    }
+
+    @Test
+    void searchHidesOtherPeoplesPrivateConversations() {
+        save("alice", "secret partagé", "DM:alice:bob");
+        assertEquals(1, engine.searchMessages("bob", "\"secret\"", null, null, 0, 0, 0, 20).size());
+        assertTrue(engine.searchMessages("carol", "\"secret\"", null, null, 0, 0, 0, 20).isEmpty());
+    }
+
+    @Test
+    void latestIdsAndUnreadCountsIncludeNewMessages() {
+        Message first = save("alice", "a0", "général");
+        save("alice", "a1", "général");
+        Message last = save("alice", "a2", "général");
+        Map<String, Long> latest = engine.getLatestMessageIds(Arrays.asList("général", "vide"));
+        assertEquals(Collections.singletonMap("général", last.getId()), latest);
+
+        Map<String, Integer> unread = engine.countUnread(Collections.singletonMap("général", first.getId()), 99);
+        assertEquals(Integer.valueOf(2), unread.get("général"));
+        unread = engine.countUnread(Collections.singletonMap("général", first.getId()), 1);
+        assertEquals(Integer.valueOf(1), unread.get("général"));
+        assertFalse(engine.countUnread(Collections.singletonMap("général", last.getId()), 99)
+                .containsKey("général"));
+    }
+
+    @Test
+    void pendingDmsAreDeliveredUntilAcknowledged() {
+        Message first = save("alice", "tu es là ?", "DM:alice:bob");
+        Message second = save("alice", "réponds", "DM:alice:bob");
+        engine.queuePendingDm("bob", first.getId());
+        engine.queuePendingDm("bob", second.getId());
+        assertEquals("tu es là ?,réponds", contents(engine.getPendingDms("bob", 50)));
+
+        engine.ackPendingDms("bob", Collections.singletonList(first.getId()));
+        assertEquals("réponds", contents(engine.getPendingDms("bob", 50)));
+        assertTrue(engine.getPendingDms("alice", 50).isEmpty());
+    }
+
+    @Test
+    void readStatesNeverMoveBackwards() {
+        engine.saveReadStates(Collections.singletonMap("alice", Collections.singletonMap("général", 10L)));
+        engine.saveReadStates(Collections.singletonMap("alice", Collections.singletonMap("général", 5L)));
+        assertEquals(Long.valueOf(10), engine.getReadStates("alice").get("général"));
+    }
+
+    @Test
+    void usersCanRegisterOnceAndAuthenticate() {
+        assertTrue(engine.registerUser("alice", "secret"));
+        assertFalse(engine.registerUser("alice", "autre"));
+        assertTrue(engine.userExists("alice"));
+        assertTrue(engine.authenticateUser("alice", "secret"));
+        assertFalse(engine.authenticateUser("alice", "mauvais"));
+        assertFalse(engine.userExists("bob"));
+    }
+}
@@ -0,0 +1,44 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * /voice_join d'un appel privé : le salon "call_<a>_<b>" construit par
+ * ChatController.startVoiceCall n'est ouvert qu'à ses deux participants.
+ */
+class VoiceJoinTest {
+
+    @Test
+    void bothParticipantsCanJoinTheirCall() {
+        assertEquals("bob", Server.callPeer("call_alice_bob", "alice"));
+        assertEquals("alice", Server.callPeer("call_alice_bob", "bob"));
+    }
+
+    @Test
+    void otherUsersCannotJoinACall() {
+        assertNull(Server.callPeer("call_alice_bob", "carol"));
+        assertNull(Server.callPeer("call_alice_bob", "ali"));
+    }
+
+    @Test
+    void onlyTheSortedNameIsAccepted() {
+        assertNull(Server.callPeer("call_bob_alice", "alice"));
+        assertNull(Server.callPeer("call_alice_alice", "alice"));
+        assertNull(Server.callPeer("call_alice_", "alice"));
+    }
+
+    @Test
+    void underscoresInUsernamesAreKept() {
+        assertEquals("bob", Server.callPeer("call_al_ice_bob", "al_ice"));
+        assertEquals("al_ice", Server.callPeer("call_al_ice_bob", "bob"));
+    }
+
+    @Test
+    void regularChannelsAreNotCalls() {
+        assertNull(Server.callPeer("général", "alice"));
+        assertNull(Server.callPeer("load-voice-0", "alice"));
+    }
+}